@@ -12,6 +12,7 @@ import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.globalstatus.*;
 import org.jitsi.protocol.xmpp.*;
 import org.jitsi.util.*;
+import org.jivesoftware.smack.packet.*;
 import org.jivesoftware.smackx.muc.*;
 
 /**
@@ -40,7 +41,16 @@ public class ChatMemberImpl
      */
     private final String address;
 
-    private ChatRoomMemberRole role;
+    /**
+     * Cached role of this member. Reset by the chat room when role or
+     * affiliation change is reported.
+     */
+    private volatile ChatRoomMemberRole role;
+
+    /**
+     * Cached real JID of this member.
+     */
+    private volatile String jabberId;
 
     public ChatMemberImpl(String participant, ChatRoomImpl chatRoom)
     {
@@ -125,6 +135,17 @@ public class ChatMemberImpl
     @Override
     public String getJabberID()
     {
-        return chatRoom.getMemberJid(address);
+        // Real JID does not change as long as we're in the room
+        if (jabberId == null)
+        {
+            jabberId = chatRoom.getMemberJid(address);
+        }
+        return jabberId;
+    }
+
+    @Override
+    public Presence getPresence()
+    {
+        return chatRoom.getOccupantPresence(this);
     }
 }
@@ -0,0 +1,167 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.impl.protocol.xmpp;
+
+import net.java.sip.communicator.service.protocol.*;
+
+import org.jitsi.protocol.xmpp.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Registry of the members of the chat room indexed by MUC address and real
+ * JID. Lookups do not require any locking and the list of all members is kept
+ * as an immutable snapshot which is rebuilt only when somebody joins or
+ * leaves, so iterating over it is safe and cheap. The real JID may not be
+ * known when the member joins, so it has to be re-indexed with
+ * {@link #updateJid(String)} when the member's presence is received.
+ *
+ * @param <T> the type of the members.
+ *
+ * @author agent
+ */
+class ChatMemberRegistry<T extends XmppChatMember>
+{
+    /**
+     * Members indexed by full MUC address(room@muc.server.net/nickname).
+     */
+    private final ConcurrentMap<String, T> byAddress
+        = new ConcurrentHashMap<String, T>();
+
+    /**
+     * Members indexed by real JID(if known).
+     */
+    private final ConcurrentMap<String, T> byJid
+        = new ConcurrentHashMap<String, T>();
+
+    /**
+     * Immutable snapshot of all members.
+     */
+    private volatile List<ChatRoomMember> snapshot
+        = Collections.emptyList();
+
+    /**
+     * Adds new member to this registry.
+     *
+     * @param member the member to be added.
+     *
+     * @return <tt>true</tt> if the member has been added or <tt>false</tt> if
+     *         there is already a member with the same MUC address.
+     */
+    synchronized boolean add(T member)
+    {
+        if (byAddress.putIfAbsent(member.getContactAddress(), member) != null)
+            return false;
+
+        indexJid(member);
+
+        updateSnapshot();
+
+        return true;
+    }
+
+    /**
+     * Indexes the real JID of the member for given MUC address, if it has
+     * become known since the member was added.
+     *
+     * @param address full MUC address of the member.
+     */
+    synchronized void updateJid(String address)
+    {
+        T member = byAddress.get(address);
+        if (member != null)
+        {
+            indexJid(member);
+        }
+    }
+
+    /**
+     * Removes the member for given MUC address.
+     *
+     * @param address full MUC address of the member to be removed.
+     *
+     * @return the member removed or <tt>null</tt> if there was no member for
+     *         given address.
+     */
+    synchronized T remove(String address)
+    {
+        T removed = byAddress.remove(address);
+        if (removed == null)
+            return null;
+
+        String jid = removed.getJabberID();
+        if (jid != null)
+        {
+            byJid.remove(jid, removed);
+        }
+
+        updateSnapshot();
+
+        return removed;
+    }
+
+    /**
+     * Returns the member for given MUC address or <tt>null</tt> if not found.
+     *
+     * @param address full MUC address of the member.
+     */
+    T get(String address)
+    {
+        return byAddress.get(address);
+    }
+
+    /**
+     * Returns the member for given real JID or <tt>null</tt> if not found.
+     *
+     * @param jid real JID of the member.
+     */
+    T getByJid(String jid)
+    {
+        return byJid.get(jid);
+    }
+
+    /**
+     * Returns immutable list of all members currently in the registry.
+     */
+    List<ChatRoomMember> getSnapshot()
+    {
+        return snapshot;
+    }
+
+    /**
+     * Returns the number of members in the registry.
+     */
+    int size()
+    {
+        return snapshot.size();
+    }
+
+    /**
+     * Puts the member in {@link #byJid} if its real JID is known. Must be
+     * called with this instance's lock held.
+     */
+    private void indexJid(T member)
+    {
+        String jid = member.getJabberID();
+        if (jid != null)
+        {
+            byJid.put(jid, member);
+        }
+    }
+
+    /**
+     * Rebuilds {@link #snapshot}. Must be called with this instance's lock
+     * held.
+     */
+    private void updateSnapshot()
+    {
+        snapshot
+            = Collections.unmodifiableList(
+                    new ArrayList<ChatRoomMember>(byAddress.values()));
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.impl.protocol.xmpp;
+
+import org.jivesoftware.smackx.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Prepares the configuration form submitted by the focus when it creates new
+ * MUC room. All the rooms hosted on the same MUC service share the same
+ * configuration form schema, so it is fetched only for the first room and
+ * the answer form for any next room is created from the cached schema. This
+ * saves one round trip to the server on the conference startup path.
+ *
+ * @author agent
+ */
+class ChatRoomConfigForm
+{
+    /**
+     * The name of configuration form field which controls who can see real
+     * JIDs of the occupants.
+     */
+    static final String WHOIS_FIELD = "muc#roomconfig_whois";
+
+    /**
+     * Configuration form schemas indexed by MUC service address.
+     */
+    private static final ConcurrentMap<String, List<FormField>> schemas
+        = new ConcurrentHashMap<String, List<FormField>>();
+
+    /**
+     * Creates the answer form from the schema cached for given MUC service.
+     *
+     * @param mucService the address of MUC service which hosts the room.
+     *
+     * @return new answer form ready to be submitted or <tt>null</tt> if the
+     *         schema for given service has not been cached yet.
+     */
+    static Form createCachedAnswer(String mucService)
+    {
+        List<FormField> schema = schemas.get(mucService);
+
+        return schema != null ? createAnswer(schema) : null;
+    }
+
+    /**
+     * Caches the schema of given configuration form and creates the answer
+     * form for it.
+     *
+     * @param mucService the address of MUC service which hosts the room.
+     * @param config the configuration form obtained from the server.
+     *
+     * @return new answer form ready to be submitted.
+     */
+    static Form cacheAndCreateAnswer(String mucService, Form config)
+    {
+        List<FormField> schema = new ArrayList<FormField>();
+
+        Iterator<FormField> fields = config.getFields();
+        while (fields.hasNext())
+        {
+            FormField field = fields.next();
+            // Only hidden field values are copied to the answer form
+            if (field.getVariable() != null
+                    && FormField.TYPE_HIDDEN.equals(field.getType()))
+            {
+                schema.add(copyField(field));
+            }
+        }
+
+        schema = Collections.unmodifiableList(schema);
+
+        schemas.put(mucService, schema);
+
+        return createAnswer(schema);
+    }
+
+    /**
+     * Removes the schema cached for given MUC service, so that it will be
+     * fetched again for the next room.
+     *
+     * @param mucService the address of MUC service.
+     */
+    static void invalidate(String mucService)
+    {
+        schemas.remove(mucService);
+    }
+
+    /**
+     * Creates the answer form which consists of the fields from given
+     * <tt>schema</tt> and the values set by the focus.
+     */
+    private static Form createAnswer(List<FormField> schema)
+    {
+        Form answer = new Form(Form.TYPE_SUBMIT);
+
+        for (FormField field : schema)
+        {
+            answer.addField(copyField(field));
+        }
+
+        // Make the room non-anonymous, so that others can
+        // recognize focus JID
+        FormField whois = new FormField(WHOIS_FIELD);
+        whois.addValue("anyone");
+        answer.addField(whois);
+        // Room moderated
+        // FormField roomModerated
+        // = new FormField("muc#roomconfig_moderatedroom");
+        // roomModerated.addValue("true");
+        // answer.addField(roomModerated);
+        // Only participants can send private messages
+        // FormField onlyParticipantsPm
+        // = new FormField("muc#roomconfig_allowpm");
+        // onlyParticipantsPm.addValue("participants");
+        // answer.addField(onlyParticipantsPm);
+        // Presence broadcast
+        // FormField presenceBroadcast
+        // = new FormField("muc#roomconfig_presencebroadcast");
+        // presenceBroadcast.addValue("participant");
+        // answer.addField(presenceBroadcast);
+        // Get member list
+        // FormField getMemberList
+        // = new FormField("muc#roomconfig_getmemberlist");
+        // getMemberList.addValue("participant");
+        // answer.addField(getMemberList);
+        // Public logging
+        // FormField publicLogging
+        // = new FormField("muc#roomconfig_enablelogging");
+        // publicLogging.addValue("false");
+        // answer.addField(publicLogging);
+
+        return answer;
+    }
+
+    /**
+     * Creates a copy of given form field.
+     */
+    private static FormField copyField(FormField field)
+    {
+        FormField copy = new FormField(field.getVariable());
+
+        copy.setType(field.getType());
+
+        Iterator<String> values = field.getValues();
+        while (values.hasNext())
+        {
+            copy.addValue(values.next());
+        }
+
+        return copy;
+    }
+}
@@ -12,9 +12,11 @@ import net.java.sip.communicator.service.protocol.Message;
 import net.java.sip.communicator.service.protocol.event.*;
 import net.java.sip.communicator.util.Logger;
 
+import org.jitsi.jicofo.util.*;
 import org.jitsi.protocol.xmpp.*;
 import org.jivesoftware.smack.*;
 import org.jivesoftware.smack.packet.*;
+import org.jivesoftware.smack.util.*;
 import org.jivesoftware.smackx.*;
 import org.jivesoftware.smackx.muc.*;
 import org.jivesoftware.smackx.packet.*;
@@ -33,6 +35,12 @@ public class ChatRoomImpl extends AbstractChatRoom {
 	 */
 	private final static Logger logger = Logger.getLogger(ChatRoomImpl.class);
 
+	/**
+	 * Room creation and configuration latency of all the rooms created by
+	 * the focus.
+	 */
+	private final static LatencyStats roomSetupStats = new LatencyStats();
+
 	/**
 	 * Parent MUC operation set.
 	 */
@@ -74,19 +82,19 @@ public class ChatRoomImpl extends AbstractChatRoom {
 	private CopyOnWriteArrayList<ChatRoomLocalUserRoleListener> localUserRoleListeners = new CopyOnWriteArrayList<ChatRoomLocalUserRoleListener>();
 
 	/**
-	 * Nickname to member impl class map.
+	 * Registry of chat room members indexed by MUC address and real JID.
 	 */
-	private final Map<String, ChatMemberImpl> members = new HashMap<String, ChatMemberImpl>();
+	private final ChatMemberRegistry<ChatMemberImpl> members = new ChatMemberRegistry<ChatMemberImpl>();
 
 	/**
 	 * Local user role.
 	 */
-	private ChatRoomMemberRole role;
+	private volatile ChatRoomMemberRole role;
 
 	/**
-	 * Stores our last MUC presence packet for future update.
+	 * Stores our last MUC presence packet and publishes extension updates.
 	 */
-	private Presence lastPresenceSent;
+	private final PresencePublisher presencePublisher;
 
 	/**
 	 * Creates new instance of <tt>ChatRoomImpl</tt>.
@@ -105,6 +113,9 @@ public class ChatRoomImpl extends AbstractChatRoom {
 		muc = new MultiUserChat(parentChatOperationSet.getConnection(),
 				roomName);
 
+		this.presencePublisher = new PresencePublisher(
+				parentChatOperationSet.getProtocolProvider());
+
 		this.memberListener = new MemberListener();
 		muc.addParticipantStatusListener(memberListener);
 		muc.addParticipantListener(new ParticipantListener());
@@ -132,12 +143,13 @@ public class ChatRoomImpl extends AbstractChatRoom {
 
 	@Override
 	public void joinAs(String nickname) throws OperationFailedException {
+		long startTime = System.currentTimeMillis();
 		try {
 			muc.addPresenceInterceptor(new PacketInterceptor() {
 				@Override
 				public void interceptPacket(Packet packet) {
 					if (packet instanceof Presence) {
-						lastPresenceSent = (Presence) packet;
+						presencePublisher.presenceSent((Presence) packet);
 					}
 				}
 			});
@@ -147,50 +159,52 @@ public class ChatRoomImpl extends AbstractChatRoom {
 			this.myNickName = nickname;
 			this.myMucAddress = muc.getRoom() + "/" + muc.getNickname();
 
-			// Make the room non-anonymous, so that others can
-			// recognize focus JID
-			Form config = muc.getConfigurationForm();
-			/*
-			 * Iterator<FormField> fields = config.getFields(); while
-			 * (fields.hasNext()) { FormField field = fields.next();
-			 * logger.info("FORM: " + field.toXML()); }
-			 */
-			Form answer = config.createAnswerForm();
-			// Room non-anonymous
-			FormField whois = new FormField("muc#roomconfig_whois");
-			whois.addValue("anyone");
-			answer.addField(whois);
-			// Room moderated
-			// FormField roomModerated
-			// = new FormField("muc#roomconfig_moderatedroom");
-			// roomModerated.addValue("true");
-			// answer.addField(roomModerated);
-			// Only participants can send private messages
-			// FormField onlyParticipantsPm
-			// = new FormField("muc#roomconfig_allowpm");
-			// onlyParticipantsPm.addValue("participants");
-			// answer.addField(onlyParticipantsPm);
-			// Presence broadcast
-			// FormField presenceBroadcast
-			// = new FormField("muc#roomconfig_presencebroadcast");
-			// presenceBroadcast.addValue("participant");
-			// answer.addField(presenceBroadcast);
-			// Get member list
-			// FormField getMemberList
-			// = new FormField("muc#roomconfig_getmemberlist");
-			// getMemberList.addValue("participant");
-			// answer.addField(getMemberList);
-			// Public logging
-			// FormField publicLogging
-			// = new FormField("muc#roomconfig_enablelogging");
-			// publicLogging.addValue("false");
-			// answer.addField(publicLogging);
-
-			muc.sendConfigurationForm(answer);
+			configureRoom();
 		} catch (XMPPException e) {
 			throw new OperationFailedException("Failed to join the room",
 					OperationFailedException.GENERAL_ERROR, e);
 		}
+
+		long setupTime = System.currentTimeMillis() - startTime;
+		roomSetupStats.record(setupTime);
+		logger.info("Room " + roomName + " set up in " + setupTime + " ms");
+	}
+
+	/**
+	 * Submits the configuration form of newly created room. The answer form
+	 * is prepared from the schema cached for our MUC service, so that the
+	 * configuration form has to be fetched only for the first room(or when
+	 * the cached one gets rejected).
+	 */
+	private void configureRoom() throws XMPPException {
+		String mucService = StringUtils.parseServer(roomName);
+
+		Form answer = ChatRoomConfigForm.createCachedAnswer(mucService);
+		if (answer != null) {
+			try {
+				muc.sendConfigurationForm(answer);
+				return;
+			} catch (XMPPException e) {
+				logger.warn("Failed to configure " + roomName
+						+ " with cached form, will fetch new one", e);
+
+				ChatRoomConfigForm.invalidate(mucService);
+			}
+		}
+
+		Form config = muc.getConfigurationForm();
+
+		answer = ChatRoomConfigForm.cacheAndCreateAnswer(mucService, config);
+
+		muc.sendConfigurationForm(answer);
+	}
+
+	/**
+	 * Returns the statistics of the time it takes to create and configure
+	 * MUC room.
+	 */
+	public static LatencyStats getRoomSetupStats() {
+		return roomSetupStats;
 	}
 
 	@Override
@@ -217,13 +231,10 @@ public class ChatRoomImpl extends AbstractChatRoom {
 			muc.leave();
 		}
 
-		// Simulate member left events
-		HashMap<String, ChatMemberImpl> membersCopy;
-		synchronized (members) {
-			membersCopy = new HashMap<String, ChatMemberImpl>(members);
-		}
+		presencePublisher.dispose();
 
-		for (ChatMemberImpl member : membersCopy.values()) {
+		// Simulate member left events
+		for (ChatRoomMember member : members.getSnapshot()) {
 			memberListener.left(member.getContactAddress());
 		}
 
@@ -407,9 +418,41 @@ public class ChatRoomImpl extends AbstractChatRoom {
 
 	}
 
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The list returned is an immutable snapshot which is shared between
+	 * callers until somebody joins or leaves the room.
+	 */
 	@Override
 	public List<ChatRoomMember> getMembers() {
-		return new ArrayList<ChatRoomMember>(members.values());
+		return members.getSnapshot();
+	}
+
+	/**
+	 * Finds chat member for given MUC address.
+	 *
+	 * @param mucAddress
+	 *            full MUC address of the member(room@muc.server.net/nick).
+	 *
+	 * @return <tt>ChatMemberImpl</tt> for given address or <tt>null</tt> if
+	 *         there is no such member in the room.
+	 */
+	public ChatMemberImpl findChatMember(String mucAddress) {
+		return members.get(mucAddress);
+	}
+
+	/**
+	 * Finds chat member for given real JID.
+	 *
+	 * @param jid
+	 *            the real JID of the member.
+	 *
+	 * @return <tt>ChatMemberImpl</tt> for given JID or <tt>null</tt> if there
+	 *         is no such member in the room.
+	 */
+	public ChatMemberImpl findChatMemberForJid(String jid) {
+		return members.getByJid(jid);
 	}
 
 	@Override
@@ -645,6 +688,18 @@ public class ChatRoomImpl extends AbstractChatRoom {
 		return muc.getOccupant(chatMemeber.getContactAddress());
 	}
 
+	/**
+	 * Returns the last MUC presence received from given chat member.
+	 * 
+	 * @param chatMember
+	 *            the member for whom we want to obtain the presence.
+	 * @return the <tt>Presence</tt> of given member or <tt>null</tt> if not
+	 *         found.
+	 */
+	public Presence getOccupantPresence(ChatMemberImpl chatMember) {
+		return muc.getOccupantPresence(chatMember.getContactAddress());
+	}
+
 	/**
 	 * Returns the MUCUser packet extension included in the packet or
 	 * <tt>null</tt> if none.
@@ -662,45 +717,25 @@ public class ChatRoomImpl extends AbstractChatRoom {
 		return null;
 	}
 
+	/**
+	 * Includes given extension in focus MUC presence. Updates made within
+	 * short time window are sent in single presence stanza and the ones which
+	 * do not change anything are not sent at all.
+	 * 
+	 * @param extension
+	 *            the extension to be added or replaced in our presence.
+	 */
 	public void sendPresenceExtension(PacketExtension extension) {
-		if (lastPresenceSent == null) {
-			logger.error("No presence packet obtained yet");
-			return;
-		}
-
-		XmppProtocolProvider xmppProtocolProvider = (XmppProtocolProvider) getParentProvider();
-
-		// Remove old
-		PacketExtension old = lastPresenceSent.getExtension(
-				extension.getElementName(), extension.getNamespace());
-		if (old != null) {
-			lastPresenceSent.removeExtension(old);
-		}
-
-		// Add new
-		lastPresenceSent.addExtension(extension);
-
-		XmppConnection connection = xmppProtocolProvider.getConnectionAdapter();
-		if (connection == null) {
-			logger.error("Failed to send presence extension - no connection");
-			return;
-		}
-
-		connection.sendPacket(lastPresenceSent);
+		presencePublisher.publish(extension);
 	}
 
 	private ChatMemberImpl addMember(String participant) {
-		ChatMemberImpl newMember;
-
-		synchronized (members) {
-			if (members.containsKey(participant)) {
-				logger.error(participant + " already in " + roomName);
-				return null;
-			}
-
-			newMember = new ChatMemberImpl(participant, ChatRoomImpl.this);
+		ChatMemberImpl newMember = new ChatMemberImpl(participant,
+				ChatRoomImpl.this);
 
-			members.put(participant, newMember);
+		if (!members.add(newMember)) {
+			logger.error(participant + " already in " + roomName);
+			return null;
 		}
 
 		return newMember;
@@ -744,11 +779,7 @@ public class ChatRoomImpl extends AbstractChatRoom {
 				logger.debug("Left " + participant + " room: " + roomName);
 			}
 
-			ChatMemberImpl member;
-
-			synchronized (members) {
-				member = removeMember(participant);
-			}
+			ChatMemberImpl member = removeMember(participant);
 
 			if (member != null) {
 				notifyParticipantLeft(member);
@@ -763,11 +794,7 @@ public class ChatRoomImpl extends AbstractChatRoom {
 			if (logger.isTraceEnabled())
 				logger.trace("Kicked: " + participant + ", " + s2 + ", " + s3);
 
-			ChatMemberImpl member;
-
-			synchronized (members) {
-				member = removeMember(participant);
-			}
+			ChatMemberImpl member = removeMember(participant);
 
 			if (member == null) {
 				logger.error("Kicked participant does not exist: "
@@ -958,8 +985,10 @@ public class ChatRoomImpl extends AbstractChatRoom {
 		 * occupants.
 		 */
 		private void processOtherPresence(Presence presence) {
-			// Not used anymore- but can implement some presence processing
-			// here if needed
+			// Real JID might have not been known when the member joined
+			if (presence.isAvailable()) {
+				members.updateJid(presence.getFrom());
+			}
 		}
 	}
 }
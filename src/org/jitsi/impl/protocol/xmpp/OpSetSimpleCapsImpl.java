@@ -6,11 +6,16 @@
  */
 package org.jitsi.impl.protocol.xmpp;
 
+import net.java.sip.communicator.impl.protocol.jabber.extensions.caps.*;
 import net.java.sip.communicator.util.*;
 
+import org.jitsi.jicofo.*;
 import org.jitsi.protocol.xmpp.*;
+import org.jitsi.protocol.xmpp.util.*;
+import org.jitsi.service.configuration.*;
 
 import org.jivesoftware.smack.*;
+import org.jivesoftware.smackx.packet.*;
 
 import java.util.*;
 
@@ -26,6 +31,36 @@ public class OpSetSimpleCapsImpl
     private final static Logger logger
         = Logger.getLogger(OpSetSimpleCapsImpl.class);
 
+    /**
+     * The name of configuration property which specifies the maximum number
+     * of entries stored in entity capabilities cache.
+     */
+    public static final String CAPS_CACHE_SIZE_PNAME
+        = "org.jitsi.jicofo.CAPS_CACHE_SIZE";
+
+    /**
+     * The name of configuration property which specifies the time in
+     * milliseconds after which entity capabilities cache entry will expire.
+     */
+    public static final String CAPS_CACHE_TTL_PNAME
+        = "org.jitsi.jicofo.CAPS_CACHE_TTL";
+
+    /**
+     * Default entity capabilities cache size.
+     */
+    private static final int DEFAULT_CAPS_CACHE_SIZE = 1000;
+
+    /**
+     * Default entity capabilities cache entry lifetime(24H).
+     */
+    private static final long DEFAULT_CAPS_CACHE_TTL = 24 * 60 * 60 * 1000;
+
+    /**
+     * Features cache shared by all XMPP providers(every conference has its
+     * own connection, but the clients are the same).
+     */
+    private static EntityCapsCache capsCache;
+
     private final XmppProtocolProvider xmppProvider;
 
     public OpSetSimpleCapsImpl(XmppProtocolProvider xmppProtocolProvider)
@@ -60,6 +95,78 @@ public class OpSetSimpleCapsImpl
         return xmppProvider.getEntityFeatures(node);
     }
 
+    @Override
+    public List<String> getFeatures(String node, EntityCapsManager.Caps caps)
+    {
+        if (caps == null || caps.hash == null || caps.ver == null)
+        {
+            return getFeatures(node);
+        }
+
+        EntityCapsCache cache = getCapsCache();
+
+        List<String> features = cache.get(caps.ver);
+        if (features != null)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug(
+                    "Caps cache hit for " + node + " ver: " + caps.ver);
+            }
+            return features;
+        }
+
+        DiscoverInfo info;
+        try
+        {
+            info = xmppProvider.discoverInfo(node);
+        }
+        catch (XMPPException e)
+        {
+            logger.error(e, e);
+            return null;
+        }
+
+        features = XmppProtocolProvider.getFeatureList(info);
+
+        // Only verified entries can be shared with other entities
+        if (caps.isValid(info))
+        {
+            cache.put(caps.ver, features);
+        }
+        else
+        {
+            logger.warn(
+                "Caps verification failed for " + node
+                    + " node: " + caps.node + " ver: " + caps.ver);
+        }
+
+        return features;
+    }
+
+    /**
+     * Lazy initializer for {@link #capsCache}.
+     */
+    private static synchronized EntityCapsCache getCapsCache()
+    {
+        if (capsCache == null)
+        {
+            int size = DEFAULT_CAPS_CACHE_SIZE;
+            long ttl = DEFAULT_CAPS_CACHE_TTL;
+
+            ConfigurationService config
+                = FocusBundleActivator.getConfigService();
+            if (config != null)
+            {
+                size = config.getInt(CAPS_CACHE_SIZE_PNAME, size);
+                ttl = config.getLong(CAPS_CACHE_TTL_PNAME, ttl);
+            }
+
+            capsCache = new EntityCapsCache(size, ttl);
+        }
+        return capsCache;
+    }
+
     //@Override
     public boolean hasFeatureSupport(String node, String subnode,
                                      String[] features)
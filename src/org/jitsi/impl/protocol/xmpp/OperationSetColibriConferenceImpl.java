@@ -142,9 +142,18 @@ public class OperationSetColibriConferenceImpl
         ColibriConferenceIQ allocateRequest
             = colibriBuilder.getRequest(jitsiVideobridge);
 
+        long start = System.nanoTime();
+
         //FIXME: retry allocation on timeout
         Packet response = connection.sendPacketAndGetReply(allocateRequest);
 
+        SignalingEvents.getInstance().record(
+            SignalingEvents.Type.CHANNEL_ALLOCATION,
+            jitsiVideobridge,
+            response instanceof ColibriConferenceIQ
+                && response.getError() == null ? 1 : 0,
+            System.nanoTime() - start);
+
         if (response == null)
         {
             throw new OperationFailedException(
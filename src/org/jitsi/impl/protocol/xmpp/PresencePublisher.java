@@ -0,0 +1,238 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.impl.protocol.xmpp;
+
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.jicofo.*;
+import org.jitsi.protocol.xmpp.*;
+import org.jitsi.service.configuration.*;
+import org.jivesoftware.smack.packet.*;
+
+import java.util.*;
+
+/**
+ * Publishes the extensions of the focus MUC presence. Every presence sent by
+ * the focus is broadcast by the MUC service to all the occupants of the room,
+ * so extension updates which arrive within short time window are merged and
+ * sent in single presence stanza. Updates which do not change the presence
+ * are dropped.
+ *
+ * @author agent
+ */
+class PresencePublisher
+{
+    /**
+     * The logger.
+     */
+    private final static Logger logger
+        = Logger.getLogger(PresencePublisher.class);
+
+    /**
+     * The name of configuration property which specifies the time window in
+     * milliseconds during which presence extension updates are merged into
+     * single presence stanza. Zero means that every update is sent
+     * immediately.
+     */
+    public static final String PRESENCE_COALESCE_WINDOW_PNAME
+        = "org.jitsi.jicofo.PRESENCE_COALESCE_WINDOW";
+
+    /**
+     * Default presence coalescing window.
+     */
+    private static final long DEFAULT_PRESENCE_COALESCE_WINDOW = 100;
+
+    /**
+     * The timer used to schedule presence sending for all the rooms.
+     */
+    private static Timer timer;
+
+    /**
+     * Parent XMPP provider.
+     */
+    private final XmppProtocolProvider xmppProvider;
+
+    /**
+     * The time window in milliseconds during which the updates are merged.
+     */
+    private final long window;
+
+    /**
+     * The last presence sent to the room.
+     */
+    private Presence lastPresence;
+
+    /**
+     * Extension updates which wait to be sent, indexed by element name and
+     * namespace.
+     */
+    private final Map<String, PacketExtension> pending
+        = new LinkedHashMap<String, PacketExtension>();
+
+    /**
+     * The task which will send pending updates or <tt>null</tt> if none is
+     * scheduled.
+     */
+    private TimerTask flushTask;
+
+    /**
+     * Creates new instance of <tt>PresencePublisher</tt>.
+     *
+     * @param xmppProvider the XMPP provider used to send presence.
+     */
+    PresencePublisher(XmppProtocolProvider xmppProvider)
+    {
+        this.xmppProvider = xmppProvider;
+
+        long window = DEFAULT_PRESENCE_COALESCE_WINDOW;
+        ConfigurationService config = FocusBundleActivator.getConfigService();
+        if (config != null)
+        {
+            window = config.getLong(PRESENCE_COALESCE_WINDOW_PNAME, window);
+        }
+        this.window = window;
+    }
+
+    /**
+     * Called whenever presence is being sent to the room, so that we know
+     * which presence packet has to be updated.
+     *
+     * @param presence the presence packet sent to the room.
+     */
+    synchronized void presenceSent(Presence presence)
+    {
+        this.lastPresence = presence;
+    }
+
+    /**
+     * Adds or replaces given extension in focus MUC presence. Presence will
+     * be sent when coalescing window expires, unless the update does not
+     * change anything.
+     *
+     * @param extension the extension to be included in the presence.
+     */
+    synchronized void publish(PacketExtension extension)
+    {
+        if (lastPresence == null)
+        {
+            logger.error("No presence packet obtained yet");
+            return;
+        }
+
+        String key = getKey(extension);
+        if (!pending.containsKey(key) && isPublished(extension))
+        {
+            if (logger.isDebugEnabled())
+                logger.debug("Presence unchanged: " + extension.toXML());
+            return;
+        }
+
+        pending.put(key, extension);
+
+        if (window <= 0)
+        {
+            flush();
+        }
+        else if (flushTask == null)
+        {
+            flushTask = new TimerTask()
+            {
+                @Override
+                public void run()
+                {
+                    flush();
+                }
+            };
+            getTimer().schedule(flushTask, window);
+        }
+    }
+
+    /**
+     * Sends pending updates immediately.
+     */
+    synchronized void flush()
+    {
+        if (flushTask != null)
+        {
+            flushTask.cancel();
+            flushTask = null;
+        }
+
+        if (pending.isEmpty() || lastPresence == null)
+            return;
+
+        boolean modified = false;
+        for (PacketExtension extension : pending.values())
+        {
+            if (isPublished(extension))
+                continue;
+
+            PacketExtension old = lastPresence.getExtension(
+                extension.getElementName(), extension.getNamespace());
+            if (old != null)
+            {
+                lastPresence.removeExtension(old);
+            }
+            lastPresence.addExtension(extension);
+
+            modified = true;
+        }
+        pending.clear();
+
+        if (!modified)
+            return;
+
+        XmppConnection connection = xmppProvider.getConnectionAdapter();
+        if (connection == null)
+        {
+            logger.error("Failed to send presence extension - no connection");
+            return;
+        }
+
+        connection.sendPacket(lastPresence);
+    }
+
+    /**
+     * Drops pending updates and cancels scheduled sending.
+     */
+    synchronized void dispose()
+    {
+        if (flushTask != null)
+        {
+            flushTask.cancel();
+            flushTask = null;
+        }
+        pending.clear();
+        lastPresence = null;
+    }
+
+    /**
+     * Checks if exactly the same extension is already included in the last
+     * presence sent.
+     */
+    private boolean isPublished(PacketExtension extension)
+    {
+        PacketExtension current = lastPresence.getExtension(
+            extension.getElementName(), extension.getNamespace());
+
+        return current != null && current.toXML().equals(extension.toXML());
+    }
+
+    private static String getKey(PacketExtension extension)
+    {
+        return extension.getElementName() + ":" + extension.getNamespace();
+    }
+
+    private static synchronized Timer getTimer()
+    {
+        if (timer == null)
+        {
+            timer = new Timer("PresencePublisher", true);
+        }
+        return timer;
+    }
+}
@@ -11,7 +11,10 @@ import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.event.*;
 import net.java.sip.communicator.service.protocol.jabber.*;
 
+import org.jitsi.jicofo.*;
 import org.jitsi.protocol.xmpp.*;
+import org.jitsi.protocol.xmpp.util.*;
+import org.jitsi.service.configuration.*;
 import org.jitsi.util.*;
 
 import org.jivesoftware.smack.*;
@@ -36,6 +39,32 @@ public class XmppProtocolProvider
     private final static Logger logger
         = Logger.getLogger(XmppProtocolProvider.class);
 
+    /**
+     * The name of configuration property which specifies the number of
+     * the most recent packets remembered in {@link PacketTrace} of each
+     * connection. 0 disables the trace.
+     */
+    public static final String PACKET_TRACE_SIZE_PNAME
+        = "org.jitsi.jicofo.xmpp.PACKET_TRACE_SIZE";
+
+    /**
+     * The name of configuration property which specifies that every n-th
+     * packet in {@link PacketTrace} will be kept for XML dump. 0 disables
+     * XML.
+     */
+    public static final String PACKET_TRACE_XML_SAMPLE_INTERVAL_PNAME
+        = "org.jitsi.jicofo.xmpp.PACKET_TRACE_XML_SAMPLE_INTERVAL";
+
+    /**
+     * The default value of {@link #PACKET_TRACE_SIZE_PNAME}.
+     */
+    private static final int DEFAULT_PACKET_TRACE_SIZE = 200;
+
+    /**
+     * The default value of {@link #PACKET_TRACE_XML_SAMPLE_INTERVAL_PNAME}.
+     */
+    private static final int DEFAULT_PACKET_TRACE_XML_SAMPLE_INTERVAL = 10;
+
     /**
      * Active account.
      */
@@ -73,6 +102,12 @@ public class XmppProtocolProvider
      */
     private ScServiceDiscoveryManager discoInfoManager;
 
+    /**
+     * The trace of the most recent packets sent and received over
+     * {@link #connection} or <tt>null</tt> if disabled.
+     */
+    private PacketTrace packetTrace;
+
     /**
      * Creates new instance of {@link XmppProtocolProvider} for given AccountID.
      *
@@ -142,6 +177,8 @@ public class XmppProtocolProvider
                 enableDebugPacketsLogging();
             }
 
+            enablePacketTrace();
+
             connection.connect();
 
             if (jabberAccountID.isAnonymousAuthUsed())
@@ -195,6 +232,52 @@ public class XmppProtocolProvider
         connection.addPacketListener(inLogger, inLogger);
     }
 
+    /**
+     * Starts recording the packets sent and received over
+     * {@link #connection} into new {@link PacketTrace}, unless disabled with
+     * {@link #PACKET_TRACE_SIZE_PNAME}.
+     */
+    private void enablePacketTrace()
+    {
+        int size = DEFAULT_PACKET_TRACE_SIZE;
+        int xmlSampleInterval = DEFAULT_PACKET_TRACE_XML_SAMPLE_INTERVAL;
+
+        ConfigurationService config = FocusBundleActivator.getConfigService();
+        if (config != null)
+        {
+            size = config.getInt(PACKET_TRACE_SIZE_PNAME, size);
+            xmlSampleInterval
+                = config.getInt(
+                        PACKET_TRACE_XML_SAMPLE_INTERVAL_PNAME,
+                        xmlSampleInterval);
+        }
+        if (size <= 0)
+        {
+            packetTrace = null;
+            return;
+        }
+
+        packetTrace = new PacketTrace(size, xmlSampleInterval);
+
+        PacketTracer outTracer = new PacketTracer(packetTrace, true);
+
+        connection.addPacketSendingListener(outTracer, outTracer);
+
+        PacketTracer inTracer = new PacketTracer(packetTrace, false);
+
+        connection.addPacketListener(inTracer, inTracer);
+    }
+
+    /**
+     * Returns the trace of the most recent packets sent and received by this
+     * provider or <tt>null</tt> if the trace is disabled or the provider has
+     * not been registered yet.
+     */
+    public PacketTrace getPacketTrace()
+    {
+        return packetTrace;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -422,17 +505,7 @@ public class XmppProtocolProvider
     {
         try
         {
-            DiscoverInfo info = discoInfoManager.discoverInfo(node);
-            
-            Iterator<DiscoverInfo.Feature> features =  info.getFeatures();
-            
-            List<String> featureList = new ArrayList<String>();
-            while (features.hasNext())
-            {
-                featureList.add(features.next().getVar());
-            }
-            
-            return featureList;
+            return getFeatureList(discoverInfo(node));
         }
         catch (XMPPException e)
         {
@@ -441,6 +514,41 @@ public class XmppProtocolProvider
         }
     }
 
+    /**
+     * Sends disco#info query to given <tt>node</tt>.
+     *
+     * @param node XMPP address of the entity to be queried.
+     *
+     * @return <tt>DiscoverInfo</tt> received from the <tt>node</tt>.
+     *
+     * @throws XMPPException if we fail to obtain the response.
+     */
+    public DiscoverInfo discoverInfo(String node)
+        throws XMPPException
+    {
+        return discoInfoManager.discoverInfo(node);
+    }
+
+    /**
+     * Extracts the list of feature names from given <tt>DiscoverInfo</tt>.
+     *
+     * @param info the <tt>DiscoverInfo</tt> to be converted.
+     *
+     * @return the list of feature names contained in <tt>info</tt>.
+     */
+    static List<String> getFeatureList(DiscoverInfo info)
+    {
+        Iterator<DiscoverInfo.Feature> features =  info.getFeatures();
+
+        List<String> featureList = new ArrayList<String>();
+        while (features.hasNext())
+        {
+            featureList.add(features.next().getVar());
+        }
+
+        return featureList;
+    }
+
     /**
      * Implements {@link XmppConnection}.
      */
@@ -474,10 +582,45 @@ public class XmppProtocolProvider
 
             packetCollector.cancel();
 
+            if (response == null)
+            {
+                SignalingEvents.getInstance().record(
+                    SignalingEvents.Type.IQ_TIMEOUT, packet.getTo());
+            }
+
             return response;
         }
     }
 
+    /**
+     * Records all the packets into {@link PacketTrace}.
+     */
+    static class PacketTracer
+        implements PacketFilter, PacketListener
+    {
+        private final PacketTrace trace;
+
+        private final boolean outgoing;
+
+        PacketTracer(PacketTrace trace, boolean outgoing)
+        {
+            this.trace = trace;
+            this.outgoing = outgoing;
+        }
+
+        @Override
+        public boolean accept(Packet packet)
+        {
+            return true;
+        }
+
+        @Override
+        public void processPacket(Packet packet)
+        {
+            trace.record(packet, outgoing);
+        }
+    }
+
     class DebugLogger
         implements PacketFilter, PacketListener
     {
@@ -0,0 +1,49 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.impl.protocol.xmpp.extensions;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.*;
+
+/**
+ * Packet extension included in MUC presence by Jitsi Meet participant in
+ * order to advertise its audio mute status.
+ *
+ * @author agent
+ */
+public class AudioMutedPacketExt
+    extends AbstractPacketExtension
+{
+    /**
+     * XML namespace of this packet extension.
+     */
+    public static final String NAMESPACE = "http://jitsi.org/jitmeet/audio";
+
+    /**
+     * XML element name of this packet extension.
+     */
+    public static final String ELEMENT_NAME = "audiomuted";
+
+    /**
+     * Creates new instance of <tt>AudioMutedPacketExt</tt>.
+     */
+    public AudioMutedPacketExt()
+    {
+        super(NAMESPACE, ELEMENT_NAME);
+    }
+
+    /**
+     * Returns <tt>true</tt> if the participant has muted its audio,
+     * <tt>false</tt> if it's not muted or <tt>null</tt> if the status is
+     * not specified.
+     */
+    public Boolean isMuted()
+    {
+        String text = getText();
+
+        return text != null ? Boolean.valueOf(text.trim()) : null;
+    }
+}
@@ -208,10 +208,20 @@ public class BridgeSelector
      * @param bridgeJid the XMPP address of the bridge.
      * @param isWorking <tt>true</tt> if bridge successfully allocated
      *                  the channels which means it is in *operational* state.
+     *                  The result is also counted in {@link FocusStatistics}.
      */
     public void updateBridgeOperationalStatus(String bridgeJid,
                                               boolean isWorking)
     {
+        if (isWorking)
+        {
+            FocusStatistics.getInstance().channelsAllocated(bridgeJid);
+        }
+        else
+        {
+            FocusStatistics.getInstance().allocationFailed(bridgeJid);
+        }
+
         BridgeState bridge = bridges.get(bridgeJid);
         if (bridge != null)
         {
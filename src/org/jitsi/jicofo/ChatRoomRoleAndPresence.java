@@ -10,6 +10,7 @@ import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.event.*;
 import net.java.sip.communicator.util.*;
 import net.java.sip.communicator.util.Logger;
+import org.jitsi.impl.protocol.xmpp.*;
 import org.jitsi.jicofo.auth.*;
 import org.jitsi.protocol.xmpp.*;
 import org.jitsi.util.*;
@@ -301,6 +302,17 @@ public class ChatRoomRoleAndPresence
         // FIXME: consider changing to debug log level once tested
         logger.info("Authenticate request for: " + realJid + " as " + identity);
 
+        if (chatRoom instanceof ChatRoomImpl)
+        {
+            ChatRoomMember member
+                = ((ChatRoomImpl) chatRoom).findChatMemberForJid(realJid);
+            if (member != null)
+            {
+                checkGrantOwnerToAuthUser(member);
+            }
+            return;
+        }
+
         for (ChatRoomMember member : chatRoom.getMembers())
         {
             XmppChatMember xmppMember = (XmppChatMember) member;
@@ -81,11 +81,12 @@ public class FocusBundleActivator
     }
 
     /**
-     * Returns the instance of <tt>ConfigurationService</tt>.
+     * Returns the instance of <tt>ConfigurationService</tt> or <tt>null</tt>
+     * if the bundle has not been started.
      */
     public static ConfigurationService getConfigService()
     {
-        if (configService == null)
+        if (configService == null && bundleContext != null)
         {
             configService = ServiceUtils.getService(
                 bundleContext, ConfigurationService.class);
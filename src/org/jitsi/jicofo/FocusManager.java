@@ -6,10 +6,13 @@
  */
 package org.jitsi.jicofo;
 
+import net.java.sip.communicator.impl.protocol.jabber.extensions.*;
+import net.java.sip.communicator.impl.protocol.jabber.extensions.caps.*;
 import net.java.sip.communicator.service.shutdown.*;
 import net.java.sip.communicator.util.*;
 import net.java.sip.communicator.util.Logger;
 
+import org.jitsi.impl.protocol.xmpp.extensions.*;
 import org.jitsi.jicofo.log.*;
 import org.jitsi.protocol.*;
 import org.jitsi.service.configuration.*;
@@ -158,6 +161,27 @@ public class FocusManager
                 .addExtensionProvider(LogPacketExtension.LOG_ELEM_NAME,
                                       LogPacketExtension.NAMESPACE,
                                       new LogExtensionProvider());
+        // Entity capabilities advertised in MUC presence
+        ProviderManager
+            .getInstance()
+                .addExtensionProvider(CapsPacketExtension.ELEMENT_NAME,
+                                      CapsPacketExtension.NAMESPACE,
+                                      new CapsProvider());
+        // Media mute status advertised in MUC presence
+        ProviderManager
+            .getInstance()
+                .addExtensionProvider(
+                    AudioMutedPacketExt.ELEMENT_NAME,
+                    AudioMutedPacketExt.NAMESPACE,
+                    new DefaultPacketExtensionProvider<AudioMutedPacketExt>(
+                        AudioMutedPacketExt.class));
+        ProviderManager
+            .getInstance()
+                .addExtensionProvider(
+                    VideoMutedPacketExt.ELEMENT_NAME,
+                    VideoMutedPacketExt.NAMESPACE,
+                    new DefaultPacketExtensionProvider<VideoMutedPacketExt>(
+                        VideoMutedPacketExt.class));
         FocusBundleActivator
             .bundleContext.registerService(
                     JitsiMeetServices.class, jitsiMeetServices, null);
@@ -218,6 +242,8 @@ public class FocusManager
         {
             conferences.put(room, conference);
 
+            FocusStatistics.getInstance().conferenceCreated();
+
             StringBuilder options = new StringBuilder();
             for (Map.Entry<String, String> option : properties.entrySet())
             {
@@ -380,6 +406,16 @@ public class FocusManager
     {
         private static final long POLL_INTERVAL = 5000;
 
+        /**
+         * How often the join phase latencies are logged.
+         */
+        private static final long STATS_LOG_INTERVAL = 60000;
+
+        /**
+         * The last time when the join phase latencies have been logged.
+         */
+        private long lastStatsLog = System.currentTimeMillis();
+
         private final long timeout;
 
         private Thread timeoutThread;
@@ -463,6 +499,14 @@ public class FocusManager
                 if (!enabled)
                     break;
 
+                if (System.currentTimeMillis() - lastStatsLog
+                        >= STATS_LOG_INTERVAL)
+                {
+                    lastStatsLog = System.currentTimeMillis();
+
+                    FocusStatistics.getInstance().logJoinPhases();
+                }
+
                 // Loop over conferences
                 for (JitsiMeetConference conference
                     : new ArrayList<JitsiMeetConference>(conferences.values()))
@@ -0,0 +1,574 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo;
+
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.jicofo.util.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Statistics of the focus which are reported in the stats IQ. The counters
+ * are updated by {@link FocusManager}, {@link JitsiMeetConference} and
+ * {@link BridgeSelector} as things happen, so reading them does not require
+ * any locking nor iterating over the conferences.
+ *
+ * @author agent
+ */
+public class FocusStatistics
+{
+    /**
+     * The logger.
+     */
+    private final static Logger logger
+        = Logger.getLogger(FocusStatistics.class);
+
+    /**
+     * The phases of the process of joining the conference for which
+     * the latency is tracked.
+     */
+    public enum JoinPhase
+    {
+        /**
+         * Processing of the conference IQ which allocates the focus.
+         */
+        CONFERENCE_REQUEST("conference_request"),
+
+        /**
+         * {@link JitsiMeetConference#start()}.
+         */
+        CONFERENCE_START("conference_start"),
+
+        /**
+         * Joining the MUC room by the focus.
+         */
+        JOIN_ROOM("join_room"),
+
+        /**
+         * Discovery of the features of the participant.
+         */
+        DISCOVERY("discovery"),
+
+        /**
+         * Single attempt to allocate Colibri channels on the bridge.
+         */
+        ALLOCATE_CHANNELS("allocate_channels"),
+
+        /**
+         * Creation of Jingle offer, including the channel allocation.
+         */
+        CREATE_OFFER("create_offer"),
+
+        /**
+         * Sending of Jingle session-initiate.
+         */
+        INITIATE_SESSION("initiate_session"),
+
+        /**
+         * The time from session-initiate until session-accept has been
+         * received.
+         */
+        SESSION_ACCEPT("session_accept");
+
+        /**
+         * The name used in stats and logs.
+         */
+        private final String name;
+
+        JoinPhase(String name)
+        {
+            this.name = name;
+        }
+
+        /**
+         * Returns the name of the phase used in stats and logs.
+         */
+        public String getName()
+        {
+            return name;
+        }
+    }
+
+    /**
+     * The highest join phase latency in microseconds tracked accurately.
+     */
+    private static final long MAX_JOIN_PHASE_LATENCY = 10L * 60L * 1000000L;
+
+    /**
+     * The highest join latency in milliseconds tracked accurately by
+     * {@link #joinLatency}.
+     */
+    private static final long MAX_JOIN_LATENCY = 5L * 60L * 1000L;
+
+    /**
+     * The instance used by the focus.
+     */
+    private static final FocusStatistics instance = new FocusStatistics();
+
+    /**
+     * The number of conferences allocated since the start.
+     */
+    private final AtomicLong totalConferences = new AtomicLong();
+
+    /**
+     * The number of participants in all the conferences.
+     */
+    private final AtomicInteger participants = new AtomicInteger();
+
+    /**
+     * The number of participants added to the conferences since the start.
+     */
+    private final AtomicLong totalParticipants = new AtomicLong();
+
+    /**
+     * The number of established Jingle sessions.
+     */
+    private final AtomicInteger jingleSessions = new AtomicInteger();
+
+    /**
+     * The number of invitations which have been scheduled, but have not
+     * completed yet.
+     */
+    private final AtomicInteger pendingInvites = new AtomicInteger();
+
+    /**
+     * The number of invitations which have failed.
+     */
+    private final AtomicLong failedInvites = new AtomicLong();
+
+    /**
+     * The number of failed attempts to allocate Colibri channels.
+     */
+    private final AtomicLong allocationFailures = new AtomicLong();
+
+    /**
+     * Per bridge channel allocation counters by bridge JID.
+     */
+    private final ConcurrentMap<String, BridgeStats> bridges
+        = new ConcurrentHashMap<String, BridgeStats>();
+
+    /**
+     * The time it took from the start of invitation until the participant
+     * has accepted the Jingle session.
+     */
+    private final LatencyHistogram joinLatency
+        = new LatencyHistogram(MAX_JOIN_LATENCY);
+
+    /**
+     * The latencies of the join phases in microseconds indexed by
+     * {@link JoinPhase} ordinal.
+     */
+    private final LatencyHistogram[] joinPhases = createJoinPhaseHistograms();
+
+    /**
+     * The number of IQ requests sent to the focus component which are being
+     * processed.
+     */
+    private final AtomicInteger xmppRequestsInProgress = new AtomicInteger();
+
+    /**
+     * The time in microseconds it took the focus component to process
+     * the IQ requests.
+     */
+    private final LatencyHistogram xmppRequestLatency
+        = new LatencyHistogram(MAX_JOIN_PHASE_LATENCY);
+
+    /**
+     * The latencies of the join phases recorded since {@link #logJoinPhases()}
+     * has been called last time. Replaced with new histograms on every call.
+     */
+    private final AtomicReference<LatencyHistogram[]> intervalJoinPhases
+        = new AtomicReference<LatencyHistogram[]>(
+                createJoinPhaseHistograms());
+
+    /**
+     * Returns the instance which holds the statistics of the focus.
+     */
+    public static FocusStatistics getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * Called when new conference has been allocated.
+     */
+    public void conferenceCreated()
+    {
+        totalConferences.incrementAndGet();
+    }
+
+    /**
+     * Called when new participant has been added to the conference.
+     */
+    public void participantAdded()
+    {
+        participants.incrementAndGet();
+        totalParticipants.incrementAndGet();
+    }
+
+    /**
+     * Called when the participant has been removed from the conference.
+     */
+    public void participantRemoved()
+    {
+        participants.decrementAndGet();
+    }
+
+    /**
+     * Called when the participant has accepted the Jingle session.
+     *
+     * @param joinLatency the time in milliseconds from the start of
+     *                    invitation until the session has been accepted.
+     */
+    public void jingleSessionStarted(long joinLatency)
+    {
+        jingleSessions.incrementAndGet();
+        this.joinLatency.record(joinLatency);
+    }
+
+    /**
+     * Called when the Jingle session of the participant has ended.
+     */
+    public void jingleSessionEnded()
+    {
+        jingleSessions.decrementAndGet();
+    }
+
+    /**
+     * Called when the invitations of given number of participants have been
+     * scheduled.
+     */
+    public void invitesScheduled(int count)
+    {
+        pendingInvites.addAndGet(count);
+    }
+
+    /**
+     * Called when scheduled invitation has completed.
+     *
+     * @param success <tt>true</tt> if the participant has been invited.
+     */
+    public void inviteCompleted(boolean success)
+    {
+        pendingInvites.decrementAndGet();
+        if (!success)
+        {
+            failedInvites.incrementAndGet();
+        }
+    }
+
+    /**
+     * Called when the channels have been allocated on given bridge.
+     *
+     * @param bridgeJid the JID of the bridge.
+     */
+    public void channelsAllocated(String bridgeJid)
+    {
+        getBridgeStats(bridgeJid).allocations.incrementAndGet();
+    }
+
+    /**
+     * Called when the bridge has failed to allocate the channels.
+     *
+     * @param bridgeJid the JID of the bridge or <tt>null</tt> if there was
+     *                  no bridge to try.
+     */
+    public void allocationFailed(String bridgeJid)
+    {
+        allocationFailures.incrementAndGet();
+        if (bridgeJid != null)
+        {
+            getBridgeStats(bridgeJid).failures.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records the duration of the join phase.
+     *
+     * @param phase the phase.
+     * @param bridgeJid the JID of the bridge used by the conference or
+     *                  <tt>null</tt> if the phase is not related to any bridge.
+     * @param nanos the duration in nanoseconds as measured by
+     *              <tt>System.nanoTime()</tt>.
+     */
+    public void recordJoinPhase(JoinPhase phase, String bridgeJid, long nanos)
+    {
+        long micros = nanos / 1000L;
+
+        joinPhases[phase.ordinal()].record(micros);
+        intervalJoinPhases.get()[phase.ordinal()].record(micros);
+        if (bridgeJid != null)
+        {
+            BridgeStats stats = getBridgeStats(bridgeJid);
+
+            stats.joinPhases[phase.ordinal()].record(micros);
+            stats.intervalJoinPhases.get()[phase.ordinal()].record(micros);
+        }
+    }
+
+    /**
+     * Called when the focus component starts processing IQ request.
+     */
+    public void xmppRequestStarted()
+    {
+        xmppRequestsInProgress.incrementAndGet();
+    }
+
+    /**
+     * Called when the focus component has processed IQ request.
+     *
+     * @param nanos the processing time in nanoseconds as measured by
+     *              <tt>System.nanoTime()</tt>.
+     */
+    public void xmppRequestCompleted(long nanos)
+    {
+        xmppRequestsInProgress.decrementAndGet();
+        xmppRequestLatency.record(nanos / 1000L);
+    }
+
+    private BridgeStats getBridgeStats(String bridgeJid)
+    {
+        BridgeStats stats = bridges.get(bridgeJid);
+        if (stats == null)
+        {
+            stats = new BridgeStats();
+
+            BridgeStats existing = bridges.putIfAbsent(bridgeJid, stats);
+            if (existing != null)
+                stats = existing;
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the number of conferences allocated since the start.
+     */
+    public long getTotalConferenceCount()
+    {
+        return totalConferences.get();
+    }
+
+    /**
+     * Returns the number of participants in all the conferences.
+     */
+    public int getParticipantCount()
+    {
+        return participants.get();
+    }
+
+    /**
+     * Returns the number of participants added since the start.
+     */
+    public long getTotalParticipantCount()
+    {
+        return totalParticipants.get();
+    }
+
+    /**
+     * Returns the number of established Jingle sessions.
+     */
+    public int getJingleSessionCount()
+    {
+        return jingleSessions.get();
+    }
+
+    /**
+     * Returns the number of invitations in progress.
+     */
+    public int getPendingInviteCount()
+    {
+        return pendingInvites.get();
+    }
+
+    /**
+     * Returns the number of failed invitations.
+     */
+    public long getFailedInviteCount()
+    {
+        return failedInvites.get();
+    }
+
+    /**
+     * Returns the number of failed channel allocation attempts.
+     */
+    public long getAllocationFailureCount()
+    {
+        return allocationFailures.get();
+    }
+
+    /**
+     * Returns the histogram of the time it takes for the participant to join
+     * the conference(from the start of invitation until session-accept).
+     */
+    public LatencyHistogram getJoinLatency()
+    {
+        return joinLatency;
+    }
+
+    /**
+     * Returns the number of IQ requests being processed by the focus
+     * component.
+     */
+    public int getXmppRequestsInProgress()
+    {
+        return xmppRequestsInProgress.get();
+    }
+
+    /**
+     * Returns the histogram of the time in microseconds it took the focus
+     * component to process IQ requests.
+     */
+    public LatencyHistogram getXmppRequestLatency()
+    {
+        return xmppRequestLatency;
+    }
+
+    /**
+     * Returns the histogram of the join phase latencies in microseconds
+     * on all the bridges.
+     */
+    public LatencyHistogram getJoinPhaseLatency(JoinPhase phase)
+    {
+        return joinPhases[phase.ordinal()];
+    }
+
+    /**
+     * Returns the histogram of the join phase latencies in microseconds
+     * on given bridge or <tt>null</tt> if nothing has been recorded for
+     * the bridge.
+     */
+    public LatencyHistogram getJoinPhaseLatency(JoinPhase phase,
+                                                String bridgeJid)
+    {
+        BridgeStats stats = bridges.get(bridgeJid);
+
+        return stats != null ? stats.joinPhases[phase.ordinal()] : null;
+    }
+
+    /**
+     * Logs p50/p99/p999 of the join phases recorded since the last call,
+     * overall and per bridge, if there are any.
+     */
+    public void logJoinPhases()
+    {
+        String summary = takeJoinPhaseSummary();
+        if (summary != null)
+        {
+            logger.info(summary);
+        }
+    }
+
+    /**
+     * Describes the join phases recorded since the last call and starts new
+     * interval.
+     *
+     * @return the summary or <tt>null</tt> if no join phase has been recorded
+     *         since the last call.
+     */
+    String takeJoinPhaseSummary()
+    {
+        LatencyHistogram[] interval
+            = intervalJoinPhases.getAndSet(createJoinPhaseHistograms());
+
+        long count = 0;
+        for (LatencyHistogram histogram : interval)
+        {
+            count += histogram.getCount();
+        }
+
+        StringBuilder summary = new StringBuilder("Join phase latencies:");
+        appendJoinPhases(summary, "all", interval);
+        for (Map.Entry<String, BridgeStats> bridge : bridges.entrySet())
+        {
+            appendJoinPhases(
+                summary,
+                bridge.getKey(),
+                bridge.getValue().intervalJoinPhases.getAndSet(
+                        createJoinPhaseHistograms()));
+        }
+        return count > 0 ? summary.toString() : null;
+    }
+
+    private static void appendJoinPhases(StringBuilder summary,
+                                         String bridge,
+                                         LatencyHistogram[] histograms)
+    {
+        for (JoinPhase phase : JoinPhase.values())
+        {
+            LatencyHistogram histogram = histograms[phase.ordinal()];
+            if (histogram.getCount() == 0)
+                continue;
+
+            summary.append("\n    ").append(bridge)
+                .append(' ').append(phase.getName())
+                .append(": count=").append(histogram.getCount())
+                .append(", p50=").append(histogram.getValueAtPercentile(50))
+                .append("us, p99=").append(histogram.getValueAtPercentile(99))
+                .append("us, p999=")
+                .append(histogram.getValueAtPercentile(99.9))
+                .append("us, max=").append(histogram.getMax()).append("us");
+        }
+    }
+
+    private static LatencyHistogram[] createJoinPhaseHistograms()
+    {
+        LatencyHistogram[] histograms
+            = new LatencyHistogram[JoinPhase.values().length];
+        for (int i = 0; i < histograms.length; i++)
+        {
+            histograms[i] = new LatencyHistogram(MAX_JOIN_PHASE_LATENCY);
+        }
+        return histograms;
+    }
+
+    /**
+     * Returns the JIDs of the bridges for which the statistics are available.
+     */
+    public Set<String> getBridges()
+    {
+        return Collections.unmodifiableSet(bridges.keySet());
+    }
+
+    /**
+     * Returns the number of successful channel allocations on given bridge.
+     */
+    public long getBridgeAllocationCount(String bridgeJid)
+    {
+        BridgeStats stats = bridges.get(bridgeJid);
+
+        return stats != null ? stats.allocations.get() : 0;
+    }
+
+    /**
+     * Returns the number of failed channel allocations on given bridge.
+     */
+    public long getBridgeFailureCount(String bridgeJid)
+    {
+        BridgeStats stats = bridges.get(bridgeJid);
+
+        return stats != null ? stats.failures.get() : 0;
+    }
+
+    /**
+     * Channel allocation counters and join phase latencies of single bridge.
+     */
+    private static class BridgeStats
+    {
+        final AtomicLong allocations = new AtomicLong();
+
+        final AtomicLong failures = new AtomicLong();
+
+        final LatencyHistogram[] joinPhases = createJoinPhaseHistograms();
+
+        final AtomicReference<LatencyHistogram[]> intervalJoinPhases
+            = new AtomicReference<LatencyHistogram[]>(
+                    createJoinPhaseHistograms());
+    }
+}
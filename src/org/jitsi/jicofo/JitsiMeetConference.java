@@ -14,6 +14,7 @@ import net.java.sip.communicator.service.protocol.event.*;
 import net.java.sip.communicator.util.*;
 import net.java.sip.communicator.util.Logger;
 
+import org.jitsi.impl.protocol.xmpp.ChatRoomImpl;
 import org.jitsi.impl.protocol.xmpp.XmppProtocolProvider;
 import org.jitsi.impl.protocol.xmpp.extensions.*;
 import org.jitsi.jicofo.log.*;
@@ -22,11 +23,13 @@ import org.jitsi.jicofo.util.*;
 import org.jitsi.protocol.*;
 import org.jitsi.protocol.xmpp.*;
 import org.jitsi.protocol.xmpp.util.*;
+import org.jitsi.service.configuration.*;
 import org.jitsi.service.neomedia.*;
 import org.jitsi.util.*;
 import org.jitsi.videobridge.eventadmin.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 /**
  * Class represents the focus of Jitsi Meet conference. Responsibilities: a)
@@ -55,6 +58,19 @@ public class JitsiMeetConference implements RegistrationStateChangeListener,
 	 */
 	private final static int BRIDGE_FAILURE_ERR_CODE = 20;
 
+	/**
+	 * The name of configuration property which specifies the default maximum
+	 * number of participants invited in parallel. Can be overridden per
+	 * conference with {@link JitsiMeetConfig#INVITE_CONCURRENCY_PNAME}.
+	 */
+	public final static String INVITE_CONCURRENCY_PNAME
+		= "org.jitsi.jicofo.INVITE_CONCURRENCY";
+
+	/**
+	 * The default maximum number of participants invited in parallel.
+	 */
+	private final static int DEFAULT_INVITE_CONCURRENCY = 4;
+
 	/**
 	 * Name of MUC room that is hosting Jitsi Meet conference.
 	 */
@@ -127,6 +143,11 @@ public class JitsiMeetConference implements RegistrationStateChangeListener,
 	 */
 	private final List<Participant> participants = new CopyOnWriteArrayList<Participant>();
 
+	/**
+	 * Active conference participants indexed by their MUC address.
+	 */
+	private final ConcurrentMap<String, Participant> participantsByAddress = new ConcurrentHashMap<String, Participant>();
+
 	/**
 	 * Information about Jitsi Meet conference services like videobridge, SIP
 	 * gateway, Jirecon.
@@ -142,7 +163,7 @@ public class JitsiMeetConference implements RegistrationStateChangeListener,
 	/**
 	 * Recording functionality implementation.
 	 */
-	private Recorder recorder;
+	private volatile Recorder recorder;
 
 	/**
 	 * Chat room roles and presence handler.
@@ -150,9 +171,28 @@ public class JitsiMeetConference implements RegistrationStateChangeListener,
 	private ChatRoomRoleAndPresence rolesAndPresence;
 
 	/**
-	 * Indicates if this instance has been started(initialized).
+	 * Executor used to invite participants which limits the number of
+	 * invitations processed in parallel.
+	 */
+	private LimitedExecutor inviteExecutor;
+
+	/**
+	 * The time in milliseconds it took to invite the first participant of the
+	 * most recent invitation batch or <tt>-1</tt> if not known yet.
 	 */
-	private boolean started;
+	private volatile long firstInviteDelay = -1;
+
+	/**
+	 * The time in milliseconds it took to invite all participants of the most
+	 * recent invitation batch or <tt>-1</tt> if not known yet.
+	 */
+	private volatile long lastInviteDelay = -1;
+
+	/**
+	 * Indicates if this instance has been started(initialized). Read by the
+	 * invitations which run outside of the lock of this instance.
+	 */
+	private volatile boolean started;
 
 	/**
 	 * Idle timestamp for this focus, -1 means active, otherwise
@@ -201,6 +241,8 @@ public class JitsiMeetConference implements RegistrationStateChangeListener,
 		if (started)
 			return;
 
+		long startNanos = System.nanoTime();
+
 		protocolProviderHandler.start(serverAddress, xmppDomain,
 				xmppLoginPassword, xmppUsername, this);
 
@@ -243,6 +285,14 @@ public class JitsiMeetConference implements RegistrationStateChangeListener,
 		idleTimestamp = System.currentTimeMillis();
 
 		started = true;
+
+		long duration = System.nanoTime() - startNanos;
+
+		FocusStatistics.getInstance().recordJoinPhase(
+				FocusStatistics.JoinPhase.CONFERENCE_START, null, duration);
+		SignalingEvents.getInstance().record(
+				SignalingEvents.Type.CONFERENCE_CREATE, getRoomName(), 0,
+				duration);
 	}
 
 	/**
@@ -269,6 +319,7 @@ public class JitsiMeetConference implements RegistrationStateChangeListener,
 	private void joinTheRoom() {
 		logger.info("Joining the room: " + roomName);
 
+		long startNanos = System.nanoTime();
 		try {
 			chatRoom = chatOpSet.findRoom(roomName);
 
@@ -278,6 +329,10 @@ public class JitsiMeetConference implements RegistrationStateChangeListener,
 			chatRoom.join();
 
 			meetExtensionsHandler.init();
+
+			FocusStatistics.getInstance().recordJoinPhase(
+					FocusStatistics.JoinPhase.JOIN_ROOM, null,
+					System.nanoTime() - startNanos);
 		} catch (Exception e) {
 			logger.error(e, e);
 
@@ -348,17 +403,10 @@ public class JitsiMeetConference implements RegistrationStateChangeListener,
 
 		idleTimestamp = -1;
 
-		if (!initConference())
-			return;
-
-		// Invite peer takes time because of channel allocation, so schedule
-		// this on separate thread
-		FocusBundleActivator.getSharedThreadPool().submit(new Runnable() {
-			@Override
-			public void run() {
-				inviteChatMember(chatRoomMember);
-			}
-		});
+		// Invite peer takes time because of channel allocation, so it's
+		// scheduled on separate thread together with all the other members
+		// who have not been invited yet
+		initConference();
 	}
 
 	/**
@@ -367,26 +415,52 @@ public class JitsiMeetConference implements RegistrationStateChangeListener,
 	 *
 	 * @param chatRoomMember
 	 *            the chat member to be invited into the conference.
+	 *
+	 * @return <tt>true</tt> if the invitation has been sent or <tt>false</tt>
+	 *         if given member is the focus, has been invited already or we
+	 *         have failed to invite it.
 	 */
-	private void inviteChatMember(ChatRoomMember chatRoomMember) {
+	private boolean inviteChatMember(ChatRoomMember chatRoomMember) {
 		if (isFocusMember(chatRoomMember))
-			return;
+			return false;
 
-		if (findParticipantForChatMember(chatRoomMember) != null)
-			return;
+		Participant newParticipant;
+
+		// Invitations run in parallel, so check and add must be atomic. It is
+		// done under the same lock as stop(), so that the participant is
+		// either counted down by stop() or never added.
+		synchronized (this) {
+			if (!started) {
+				logger.info("Not inviting "
+						+ chatRoomMember.getContactAddress()
+						+ " - the conference has been stopped");
+				return false;
+			}
+
+			if (findParticipantForChatMember(chatRoomMember) != null)
+				return false;
+
+			newParticipant = new Participant((XmppChatMember) chatRoomMember);
+
+			participants.add(newParticipant);
+			participantsByAddress.put(chatRoomMember.getContactAddress(),
+					newParticipant);
+
+			FocusStatistics.getInstance().participantAdded();
+		}
 
 		logger.info("Inviting " + chatRoomMember.getContactAddress());
 
 		String address = chatRoomMember.getContactAddress();
 
-		Participant newParticipant = new Participant(
-				(XmppChatMember) chatRoomMember);
-
-		participants.add(newParticipant);
+		FocusStatistics stats = FocusStatistics.getInstance();
 
 		// Feature discovery
+		long startNanos = System.nanoTime();
 		List<String> features = DiscoveryUtil.discoverParticipantFeatures(
-				getXmppProvider(), address);
+				getXmppProvider(), (XmppChatMember) chatRoomMember);
+		stats.recordJoinPhase(FocusStatistics.JoinPhase.DISCOVERY, null,
+				System.nanoTime() - startNanos);
 
 		newParticipant.setSupportedFeatures(features);
 
@@ -394,20 +468,42 @@ public class JitsiMeetConference implements RegistrationStateChangeListener,
 				+ newParticipant.hasBundleSupport());
 
 		try {
+			startNanos = System.nanoTime();
 			List<ContentPacketExtension> offer = createOffer(newParticipant);
+			if (offer == null) {
+				logger.info("Not inviting " + address + " - left the"
+						+ " conference or the conference has been stopped");
+				return false;
+			}
+
+			String bridge = colibri.getJitsiVideobridge();
+			long offerNanos = System.nanoTime();
+			stats.recordJoinPhase(FocusStatistics.JoinPhase.CREATE_OFFER,
+					bridge, offerNanos - startNanos);
 
+			newParticipant.setSessionInitiateTime(offerNanos);
 			jingle.initiateSession(newParticipant.hasBundleSupport(), address,
 					offer);
+
+			stats.recordJoinPhase(FocusStatistics.JoinPhase.INITIATE_SESSION,
+					bridge, System.nanoTime() - offerNanos);
+
+			return true;
 		} catch (OperationFailedException e) {
 			// FIXME: retry ? sometimes it's just timeout
 			logger.error(
 					"Failed to invite " + chatRoomMember.getContactAddress(), e);
 
-			// Notify users about bridge is down event
-			if (BRIDGE_FAILURE_ERR_CODE == e.getErrorCode()) {
-				meetTools.sendPresenceExtension(chatRoom,
+			// Notify users about bridge is down event, unless the room has
+			// been left in the meantime
+			ChatRoom room = chatRoom;
+			if (BRIDGE_FAILURE_ERR_CODE == e.getErrorCode() && room != null
+					&& started) {
+				meetTools.sendPresenceExtension(room,
 						new BridgeIsDownPacketExt());
 			}
+
+			return false;
 		}
 	}
 
@@ -439,6 +535,8 @@ public class JitsiMeetConference implements RegistrationStateChangeListener,
 		// Set initial bridge if we haven't used any yet
 		if (StringUtils.isNullOrEmpty(colibri.getJitsiVideobridge())) {
 			if (!bridgesIterator.hasNext()) {
+				FocusStatistics.getInstance().allocationFailed(null);
+
 				throw new OperationFailedException(
 						"Failed to allocate channels - no bridge configured",
 						OperationFailedException.GENERAL_ERROR);
@@ -448,7 +546,9 @@ public class JitsiMeetConference implements RegistrationStateChangeListener,
 		}
 
 		boolean conferenceExists = colibri.getConferenceId() != null;
+		FocusStatistics stats = FocusStatistics.getInstance();
 		while (true) {
+			long startNanos = System.nanoTime();
 			try {
 				logger.info("Using " + colibri.getJitsiVideobridge()
 						+ " to allocate channels in " + roomName);
@@ -457,6 +557,11 @@ public class JitsiMeetConference implements RegistrationStateChangeListener,
 						.createColibriChannels(peer.hasBundleSupport(), peer
 								.getChatMember().getName(), true, contents);
 
+				stats.recordJoinPhase(
+						FocusStatistics.JoinPhase.ALLOCATE_CHANNELS,
+						colibri.getJitsiVideobridge(),
+						System.nanoTime() - startNanos);
+
 				bridgeSelector.updateBridgeOperationalStatus(
 						colibri.getJitsiVideobridge(), true);
 
@@ -478,6 +583,10 @@ public class JitsiMeetConference implements RegistrationStateChangeListener,
 			} catch (OperationFailedException exc) {
 				String faultyBridge = colibri.getJitsiVideobridge();
 
+				stats.recordJoinPhase(
+						FocusStatistics.JoinPhase.ALLOCATE_CHANNELS,
+						faultyBridge, System.nanoTime() - startNanos);
+
 				logger.error("Failed to allocate channels using bridge: "
 						+ colibri.getJitsiVideobridge(), exc);
 
@@ -508,7 +617,9 @@ public class JitsiMeetConference implements RegistrationStateChangeListener,
 	 * @param peer
 	 *            the participant for whom Jingle offer will be created.
 	 *
-	 * @return the list of contents describing conference Jingle offer.
+	 * @return the list of contents describing conference Jingle offer or
+	 *         <tt>null</tt> if the participant has left or the conference
+	 *         has been stopped while the channels were being allocated.
 	 *
 	 * @throws OperationFailedException
 	 *             if focus fails to allocate channels or something goes wrong.
@@ -546,7 +657,22 @@ public class JitsiMeetConference implements RegistrationStateChangeListener,
 
 		ColibriConferenceIQ peerChannels = allocateChannels(peer, contents);
 
-		peer.setColibriChannelsInfo(peerChannels);
+		// Under the same lock as onMemberLeft() and stop(), so that either
+		// they expire the channels or we do it here
+		synchronized (this) {
+			if (!started) {
+				// The bridge conference has been expired by stop(), so the
+				// channels have been allocated in a new one
+				colibri.expireConference();
+				return null;
+			}
+			if (!participants.contains(peer)) {
+				colibri.expireChannels(peerChannels);
+				return null;
+			}
+
+			peer.setColibriChannelsInfo(peerChannels);
+		}
 
 		for (ContentPacketExtension cpe : contents) {
 			ColibriConferenceIQ.Content colibriContent = peerChannels
@@ -705,13 +831,91 @@ public class JitsiMeetConference implements RegistrationStateChangeListener,
 		if (!checkAtLeastTwoParticipants())
 			return false;
 
+		List<ChatRoomMember> toInvite = new ArrayList<ChatRoomMember>();
 		for (ChatRoomMember member : chatRoom.getMembers()) {
-			inviteChatMember(member);
+			if (!isFocusMember(member)
+					&& findParticipantForChatMember(member) == null)
+				toInvite.add(member);
 		}
 
+		if (toInvite.isEmpty())
+			return true;
+
+		scheduleInvites(toInvite);
+
 		return true;
 	}
 
+	/**
+	 * Schedules the invitation of given chat room members, unless the
+	 * conference has been stopped.
+	 *
+	 * @param toInvite
+	 *            the list of members to be invited to the conference.
+	 */
+	private synchronized void scheduleInvites(List<ChatRoomMember> toInvite) {
+		if (!started) {
+			logger.info("Not scheduling invites in " + roomName
+					+ " - the conference has been stopped");
+			return;
+		}
+
+		// Colibri allocations are serialized by the operation set, so the
+		// first one creates the conference on the bridge and the others will
+		// join it. What runs in parallel is the discovery and the signaling.
+		InviteBatch batch = new InviteBatch(toInvite.size());
+		FocusStatistics.getInstance().invitesScheduled(toInvite.size());
+		Executor executor = getInviteExecutor();
+		for (ChatRoomMember member : toInvite) {
+			executor.execute(new InviteTask(member, batch));
+		}
+	}
+
+	/**
+	 * Lazy initializer for {@link #inviteExecutor}. The concurrency limit is
+	 * taken from the conference config and if not specified there from
+	 * {@link #INVITE_CONCURRENCY_PNAME} server property.
+	 */
+	private synchronized Executor getInviteExecutor() {
+		if (inviteExecutor == null) {
+			Integer limit = config != null ? config.getInviteConcurrency()
+					: null;
+			if (limit == null || limit <= 0) {
+				ConfigurationService configService = FocusBundleActivator
+						.getConfigService();
+				limit = configService != null ? configService.getInt(
+						INVITE_CONCURRENCY_PNAME, DEFAULT_INVITE_CONCURRENCY)
+						: DEFAULT_INVITE_CONCURRENCY;
+			}
+			if (limit <= 0)
+				limit = DEFAULT_INVITE_CONCURRENCY;
+
+			logger.info("Invite concurrency for " + roomName + ": " + limit);
+
+			inviteExecutor = new LimitedExecutor(
+					FocusBundleActivator.getSharedThreadPool(), limit);
+		}
+		return inviteExecutor;
+	}
+
+	/**
+	 * Returns the time in milliseconds it took to invite the first
+	 * participant of the most recent invitation batch or <tt>-1</tt> if no
+	 * participant has been invited yet.
+	 */
+	public long getFirstInviteDelay() {
+		return firstInviteDelay;
+	}
+
+	/**
+	 * Returns the time in milliseconds it took to invite all the participants
+	 * of the most recent invitation batch or <tt>-1</tt> if no batch has
+	 * been completed yet.
+	 */
+	public long getLastInviteDelay() {
+		return lastInviteDelay;
+	}
+
 	/**
 	 * Counts the number of non-focus chat room members and returns
 	 * <tt>true</tt> if there are at least two of them.
@@ -865,6 +1069,10 @@ public class JitsiMeetConference implements RegistrationStateChangeListener,
 				sendPrivateIQ(leftPeer);
 			}
 			participants.remove(leftPeer);
+			participantsByAddress.remove(
+					leftPeer.getChatMember().getContactAddress(), leftPeer);
+
+			participantRemoved(leftPeer);
 		} else {
 			logger.error("Member not found for " + chatRoomMember.getName()
 					+ ", room: " + chatRoom.getName());
@@ -898,8 +1106,24 @@ public class JitsiMeetConference implements RegistrationStateChangeListener,
 		if (!started)
 			return;
 
+		SignalingEvents.getInstance().record(
+				SignalingEvents.Type.CONFERENCE_STOP, getRoomName(),
+				participants.size(), 0);
+
+		// Invitations waiting for execution are dropped, the running ones
+		// will find the conference stopped
+		if (inviteExecutor != null) {
+			for (Runnable task : inviteExecutor.shutdown()) {
+				((InviteTask) task).cancel();
+			}
+		}
+
 		disposeConference();
 
+		for (Participant participant : participants) {
+			participantRemoved(participant);
+		}
+
 		leaveTheRoom();
 
 		disposeAccount();
@@ -909,6 +1133,22 @@ public class JitsiMeetConference implements RegistrationStateChangeListener,
 		started = false;
 	}
 
+	/**
+	 * Updates {@link FocusStatistics} for the participant removed from this
+	 * conference.
+	 *
+	 * @param participant
+	 *            the participant that has been removed.
+	 */
+	private void participantRemoved(Participant participant) {
+		FocusStatistics stats = FocusStatistics.getInstance();
+
+		stats.participantRemoved();
+		if (participant.getJingleSession() != null) {
+			stats.jingleSessionEnded();
+		}
+	}
+
 	/**
 	 * Destroys focus XMPP account.
 	 */
@@ -935,30 +1175,76 @@ public class JitsiMeetConference implements RegistrationStateChangeListener,
 		return null;
 	}
 
-	private Participant findParticipantForChatMember(ChatRoomMember chatMember) {
-		for (Participant participant : participants) {
-			if (participant.getChatMember().equals(chatMember))
-				return participant;
+	/**
+	 * Method called by {@link MeetExtensionsHandler} when participant has
+	 * advertised new nickname in MUC presence.
+	 * 
+	 * @param participant
+	 *            the participant whose nickname has changed.
+	 * @param nick
+	 *            the new nickname or <tt>null</tt> if it has been removed.
+	 */
+	void onMemberNickChanged(Participant participant, String nick) {
+		participant.setDisplayName(nick);
+
+		EventAdmin eventAdmin = FocusBundleActivator.getEventAdmin();
+		if (eventAdmin != null) {
+			eventAdmin.sendEvent(EventFactory.endpointDisplayNameChanged(
+					colibri.getConferenceId(),
+					// TODO: find a better way to get the endpoint ID
+					participant.getChatMember().getName(),
+					// Prevent NPE when adding to event hashtable
+					nick != null ? nick : ""));
 		}
-		return null;
 	}
 
-	Participant findParticipantForRoomJid(String roomJid) {
-		for (Participant participant : participants) {
-			if (participant.getChatMember().getContactAddress().equals(roomJid)) {
-				return participant;
-			}
+	/**
+	 * Method called by {@link MeetExtensionsHandler} when participant has
+	 * advertised new audio or video mute status in MUC presence. Updates the
+	 * muted status of the participant, so that it reflects the mute done by
+	 * the user as well as by the moderator.
+	 * 
+	 * @param participant
+	 *            the participant whose media state has changed.
+	 * @param audioMuted
+	 *            audio mute status or <tt>null</tt> if not advertised.
+	 * @param videoMuted
+	 *            video mute status or <tt>null</tt> if not advertised.
+	 */
+	void onMemberMediaStateChanged(Participant participant,
+			Boolean audioMuted, Boolean videoMuted) {
+		if (logger.isDebugEnabled()) {
+			logger.debug("Media state of "
+					+ participant.getChatMember().getContactAddress()
+					+ " audio muted: " + audioMuted + ", video muted: "
+					+ videoMuted);
+		}
+
+		if (audioMuted != null) {
+			participant.setMuted(audioMuted);
 		}
+	}
+
+	private Participant findParticipantForChatMember(ChatRoomMember chatMember) {
+		Participant participant = participantsByAddress.get(chatMember
+				.getContactAddress());
+
+		// The member might have left and joined again with the same nickname
+		if (participant != null
+				&& participant.getChatMember().equals(chatMember))
+			return participant;
+
 		return null;
 	}
 
+	Participant findParticipantForRoomJid(String roomJid) {
+		return participantsByAddress.get(roomJid);
+	}
+
 	ChatRoomMemberRole getRoleForMucJid(String mucJid) {
-		for (ChatRoomMember member : chatRoom.getMembers()) {
-			if (member.getContactAddress().equals(mucJid)) {
-				return member.getRole();
-			}
-		}
-		return null;
+		ChatRoomMember member = findMember(mucJid);
+
+		return member != null ? member.getRole() : null;
 	}
 
 	private void terminateParticipant(Participant participant)
@@ -990,6 +1276,18 @@ public class JitsiMeetConference implements RegistrationStateChangeListener,
 			// FIXME: we should reject it ?
 			logger.error("Reassigning jingle session for participant: "
 					+ peerJingleSession.getAddress());
+		} else {
+			FocusStatistics stats = FocusStatistics.getInstance();
+			long sinceInitiate = System.nanoTime()
+					- participant.getSessionInitiateTime();
+
+			stats.jingleSessionStarted(System.currentTimeMillis()
+					- participant.getCreationTimestamp());
+			stats.recordJoinPhase(FocusStatistics.JoinPhase.SESSION_ACCEPT,
+					colibri.getJitsiVideobridge(), sinceInitiate);
+			SignalingEvents.getInstance().record(
+					SignalingEvents.Type.SESSION_ACCEPT,
+					peerJingleSession.getAddress(), 0, sinceInitiate);
 		}
 
 		participant.setJingleSession(peerJingleSession);
@@ -1127,6 +1425,7 @@ public class JitsiMeetConference implements RegistrationStateChangeListener,
 	@Override
 	public void onAddSource(JingleSession jingleSession,
 			List<ContentPacketExtension> contents) {
+		long startNanos = System.nanoTime();
 		Participant participant = findParticipantForJingleSession(jingleSession);
 		if (participant == null) {
 			logger.error("Add-source: no peer state for "
@@ -1134,12 +1433,12 @@ public class JitsiMeetConference implements RegistrationStateChangeListener,
 			return;
 		}
 
+		MediaSSRCMap ssrcsToAdd = MediaSSRCMap.getSSRCsFromContent(contents);
+
 		participant.addSSRCsFromContent(contents);
 
 		participant.addSSRCGroupsFromContent(contents);
 
-		MediaSSRCMap ssrcsToAdd = MediaSSRCMap.getSSRCsFromContent(contents);
-
 		MediaSSRCGroupMap ssrcGroupsToAdd = MediaSSRCGroupMap
 				.getSSRCGroupsForContents(contents);
 
@@ -1148,6 +1447,7 @@ public class JitsiMeetConference implements RegistrationStateChangeListener,
 				participant.getSSRCGroupsCopy(),
 				participant.getColibriChannelsInfo());
 
+		int notified = 0;
 		for (Participant peerToNotify : participants) {
 			if (peerToNotify == participant)
 				continue;
@@ -1166,7 +1466,12 @@ public class JitsiMeetConference implements RegistrationStateChangeListener,
 
 			jingle.sendAddSourceIQ(ssrcsToAdd, ssrcGroupsToAdd,
 					peerJingleSession);
+			notified++;
 		}
+
+		SignalingEvents.getInstance().record(SignalingEvents.Type.SOURCE_ADD,
+				jingleSession.getAddress(), notified,
+				System.nanoTime() - startNanos);
 	}
 
 	/**
@@ -1304,6 +1609,18 @@ public class JitsiMeetConference implements RegistrationStateChangeListener,
 		return protocolProviderHandler.getProtocolProvider();
 	}
 
+	/**
+	 * Returns the trace of the most recent packets sent and received by the
+	 * focus in this conference or <tt>null</tt> if the trace is not
+	 * available.
+	 */
+	public PacketTrace getPacketTrace() {
+		ProtocolProviderService provider = getXmppProvider();
+
+		return provider instanceof XmppProtocolProvider ? ((XmppProtocolProvider) provider)
+				.getPacketTrace() : null;
+	}
+
 	/**
 	 * Attempts to modify conference recording state.
 	 *
@@ -1317,36 +1634,47 @@ public class JitsiMeetConference implements RegistrationStateChangeListener,
 	 * @param path
 	 *            output recording path(recorder implementation and deployment
 	 *            dependent).
-	 * @return new recording state(unchanged if modify attempt has failed).
+	 * @return the request which completes with <tt>false</tt> if the
+	 *         recording token has been rejected or <tt>null</tt> if
+	 *         the request has been denied. The new recording state is
+	 *         available from {@link #isRecording()} once it completes.
 	 */
-	public boolean modifyRecordingState(String from, String token,
+	public Recorder.RecordingRequest modifyRecordingState(String from,
+			String token,
 			boolean state, String path) {
 		ChatRoomMember member = findMember(from);
 		if (member == null) {
 			logger.error("No member found for address: " + from);
-			return false;
+			return null;
 		}
 		if (ChatRoomMemberRole.MODERATOR.compareTo(member.getRole()) < 0) {
 			logger.info("Recording - request denied, not a moderator: " + from);
-			return false;
+			return null;
 		}
 
 		Recorder recorder = getRecorder();
 		if (recorder == null) {
-			return false;
+			return null;
 		}
 
-		boolean isTokenCorrect = recorder
-				.setRecording(from, token, state, path);
-		if (!isTokenCorrect) {
-			logger.info("Incorrect recording token received ! Session: "
-					+ chatRoom.getName());
-		}
+		return recorder.setRecording(from, token, state, path);
+	}
+
+	/**
+	 * Returns <tt>true</tt> if the conference is being recorded or
+	 * the recording is being started.
+	 */
+	public boolean isRecording() {
+		Recorder recorder = this.recorder;
 
-		return recorder.isRecording();
+		return recorder != null && recorder.isRecording();
 	}
 
 	private ChatRoomMember findMember(String from) {
+		if (chatRoom instanceof ChatRoomImpl) {
+			return ((ChatRoomImpl) chatRoom).findChatMember(from);
+		}
+
 		for (ChatRoomMember member : chatRoom.getMembers()) {
 			if (member.getContactAddress().equals(from)) {
 				return member;
@@ -1484,4 +1812,98 @@ public class JitsiMeetConference implements RegistrationStateChangeListener,
 		 */
 		void conferenceEnded(JitsiMeetConference conference);
 	}
+
+	/**
+	 * Group of invitations scheduled at the same time. Measures how long it
+	 * takes to invite the first and the last participant of the group.
+	 */
+	private class InviteBatch {
+		/**
+		 * The time when the batch has been created.
+		 */
+		private final long startTimestamp = System.currentTimeMillis();
+
+		/**
+		 * The number of invitations which have not completed yet.
+		 */
+		private final AtomicInteger remaining;
+
+		/**
+		 * The number of participants successfully invited.
+		 */
+		private final AtomicInteger invited = new AtomicInteger();
+
+		InviteBatch(int size) {
+			this.remaining = new AtomicInteger(size);
+		}
+
+		/**
+		 * Called when the invitation of a member belonging to this batch has
+		 * completed.
+		 *
+		 * @param address
+		 *            the address of the member.
+		 * @param success
+		 *            <tt>true</tt> if the member has been invited.
+		 */
+		void inviteDone(String address, boolean success) {
+			long delay = System.currentTimeMillis() - startTimestamp;
+
+			if (success && invited.incrementAndGet() == 1) {
+				firstInviteDelay = delay;
+
+				logger.info("First invitee " + address + " in " + roomName
+						+ " invited in " + delay + " ms");
+			}
+
+			if (remaining.decrementAndGet() == 0 && invited.get() > 0) {
+				lastInviteDelay = delay;
+
+				logger.info("Invited " + invited.get() + " participant(s) to "
+						+ roomName + " in " + delay + " ms");
+			}
+		}
+	}
+
+	/**
+	 * Task which invites chat room member to the conference.
+	 */
+	private class InviteTask implements Runnable {
+		/**
+		 * The member to be invited.
+		 */
+		private final ChatRoomMember member;
+
+		/**
+		 * The batch to which this invitation belongs.
+		 */
+		private final InviteBatch batch;
+
+		InviteTask(ChatRoomMember member, InviteBatch batch) {
+			this.member = member;
+			this.batch = batch;
+		}
+
+		/**
+		 * Completes the bookkeeping of the invitation which will never run.
+		 */
+		void cancel() {
+			batch.inviteDone(member.getContactAddress(), false);
+			FocusStatistics.getInstance().inviteCompleted(false);
+		}
+
+		@Override
+		public void run() {
+			boolean success = false;
+			try {
+				success = inviteChatMember(member);
+			} catch (Exception e) {
+				logger.error("Failed to invite " + member.getContactAddress(),
+						e);
+			} finally {
+				batch.inviteDone(member.getContactAddress(), success);
+				FocusStatistics.getInstance().inviteCompleted(success);
+			}
+		}
+	}
 }
@@ -13,6 +13,7 @@ import net.java.sip.communicator.util.Logger;
 
 import org.jitsi.impl.protocol.xmpp.extensions.*;
 import org.jitsi.jicofo.log.*;
+import org.jitsi.jicofo.recording.*;
 import org.jitsi.protocol.xmpp.*;
 import org.jitsi.util.*;
 
@@ -24,6 +25,10 @@ import org.jivesoftware.smack.packet.Message; //disambiguation
 import org.jivesoftware.smack.provider.*;
 import org.jivesoftware.smackx.packet.*;
 
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
 /**
  * Class handles various Jitsi Meet extensions IQs like {@link MuteIq} and
  * Colibri for recording.
@@ -38,6 +43,18 @@ public class MeetExtensionsHandler implements PacketFilter, PacketListener {
 	private final static Logger logger = Logger
 			.getLogger(MeetExtensionsHandler.class);
 
+	/**
+	 * How long do we wait for the recorder to reply to the request, in
+	 * milliseconds.
+	 */
+	private static final long RECORDING_REQUEST_TIMEOUT = 15000;
+
+	/**
+	 * The timer used to time out the recording requests of all
+	 * the conferences, created on first use.
+	 */
+	private static Timer recordingTimer;
+
 	/**
 	 * Parent conference.
 	 */
@@ -46,7 +63,13 @@ public class MeetExtensionsHandler implements PacketFilter, PacketListener {
 	/**
 	 * Operation set that provider XMPP connection.
 	 */
-	private OperationSetDirectSmackXmpp smackXmpp;
+	private volatile OperationSetDirectSmackXmpp smackXmpp;
+
+	/**
+	 * Tracks presence of the room occupants in order to drop the presence
+	 * which carries no changes we're interested in.
+	 */
+	private final PresenceTracker presenceTracker = new PresenceTracker();
 
 	/**
 	 * Creates new instance of {@link MeetExtensionsHandler}.
@@ -87,6 +110,7 @@ public class MeetExtensionsHandler implements PacketFilter, PacketListener {
 			smackXmpp.removePacketHandler(this);
 			smackXmpp = null;
 		}
+		presenceTracker.clear();
 	}
 
 	@Override
@@ -144,13 +168,88 @@ public class MeetExtensionsHandler implements PacketFilter, PacketListener {
 				&& ((ColibriConferenceIQ) packet).getRecording() != null;
 	}
 
-	private void handleColibriIq(ColibriConferenceIQ colibriIQ) {
+	private void handleColibriIq(final ColibriConferenceIQ colibriIQ) {
 		ColibriConferenceIQ.Recording recording = colibriIQ.getRecording();
 
-		boolean recordingState = conference.modifyRecordingState(
-				colibriIQ.getFrom(), recording.getToken(),
-				recording.getState(), recording.getDirectory());
+		final Recorder.RecordingRequest request = conference
+				.modifyRecordingState(colibriIQ.getFrom(),
+						recording.getToken(), recording.getState(),
+						recording.getDirectory());
+
+		if (request == null) {
+			sendRecordingResult(colibriIQ, false);
+			return;
+		}
+
+		// Either the completion or the timeout answers the request
+		final AtomicBoolean answered = new AtomicBoolean();
+		final TimerTask timeout = new TimerTask() {
+			@Override
+			public void run() {
+				if (!answered.compareAndSet(false, true))
+					return;
 
+				request.cancel(false);
+
+				logger.error("Recording request timed out: "
+						+ colibriIQ.toXML());
+				sendError(colibriIQ, XMPPError.Condition.remote_server_timeout);
+			}
+		};
+
+		if (!request.isDone()) {
+			getRecordingTimer().schedule(timeout, RECORDING_REQUEST_TIMEOUT);
+		}
+
+		request.addListener(new Runnable() {
+			@Override
+			public void run() {
+				if (!answered.compareAndSet(false, true))
+					return;
+
+				timeout.cancel();
+				answerRecordingRequest(colibriIQ, request);
+			}
+		});
+	}
+
+	/**
+	 * Sends the response to the participant who requested the change of
+	 * the recording state once the request sent to the recorder is done.
+	 *
+	 * @param colibriIQ
+	 *            the recording request received from the participant.
+	 * @param request
+	 *            the request sent to the recorder, which is done.
+	 */
+	private void answerRecordingRequest(ColibriConferenceIQ colibriIQ,
+			Future<Boolean> request) {
+		try {
+			if (!request.get()) {
+				logger.info("Incorrect recording token received ! Session: "
+						+ conference.getRoomName());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			sendError(colibriIQ, XMPPError.Condition.interna_server_error);
+			return;
+		} catch (ExecutionException e) {
+			logger.error("Recording request failed", e.getCause());
+			sendError(colibriIQ, XMPPError.Condition.interna_server_error);
+			return;
+		} catch (CancellationException e) {
+			// The request is shared with other requesters and has timed out
+			// for one of them. If it has been cancelled because the
+			// conference has been disposed, nothing is sent.
+			sendError(colibriIQ, XMPPError.Condition.remote_server_timeout);
+			return;
+		}
+
+		sendRecordingResult(colibriIQ, conference.isRecording());
+	}
+
+	private void sendRecordingResult(ColibriConferenceIQ colibriIQ,
+			boolean recordingState) {
 		ColibriConferenceIQ response = new ColibriConferenceIQ();
 
 		response.setType(IQ.Type.RESULT);
@@ -160,7 +259,31 @@ public class MeetExtensionsHandler implements PacketFilter, PacketListener {
 
 		response.setRecording(new ColibriConferenceIQ.Recording(recordingState));
 
-		smackXmpp.getXmppConnection().sendPacket(response);
+		sendPacket(response);
+	}
+
+	private static synchronized Timer getRecordingTimer() {
+		if (recordingTimer == null) {
+			recordingTimer = new Timer("RecordingRequestTimeout", true);
+		}
+		return recordingTimer;
+	}
+
+	private void sendError(IQ request, XMPPError.Condition condition) {
+		sendPacket(createErrorResponse(request, new XMPPError(condition)));
+	}
+
+	/**
+	 * Sends the packet unless this instance has been disposed in the
+	 * meantime.
+	 */
+	private void sendPacket(Packet packet) {
+		OperationSetDirectSmackXmpp smackXmpp = this.smackXmpp;
+		if (smackXmpp != null) {
+			smackXmpp.getXmppConnection().sendPacket(packet);
+		} else {
+			logger.warn("Not sent, disposed: " + packet.toXML());
+		}
 	}
 
 	private boolean acceptMuteIq(Packet packet) {
@@ -285,13 +408,13 @@ public class MeetExtensionsHandler implements PacketFilter, PacketListener {
 				if (LogUtil.LOG_ID_PC_STATS.equals(log.getID())) {
 					String content = LogUtil.getContent(log);
 					if (content != null) {
-						Event event = EventFactory.peerConnectionStats(
+						List<Event> events = EventFactory.peerConnectionStats(
 								conference.getColibriConference()
 										.getConferenceId(),
 								// TODO: find a better way to get the endpoint
 								// ID
 								participant.getChatMember().getName(), content);
-						if (event != null)
+						for (Event event : events)
 							eventAdmin.sendEvent(event);
 					}
 				} else {
@@ -306,56 +429,61 @@ public class MeetExtensionsHandler implements PacketFilter, PacketListener {
 	}
 
 	private boolean acceptPresence(Packet packet) {
-		return packet instanceof Presence;
+		if (!(packet instanceof Presence))
+			return false;
+
+		// Only the presence of our conference room occupants
+		String from = packet.getFrom();
+		return from != null
+				&& conference.getRoomName().equalsIgnoreCase(
+						org.jivesoftware.smack.util.StringUtils
+								.parseBareAddress(from));
 	}
 
 	/**
-	 * Handles presence stanzas
+	 * Handles presence stanzas. The presence which does not change anything
+	 * we're interested in is dropped by {@link #presenceTracker}, otherwise
+	 * change events are dispatched to the conference.
 	 * 
 	 * @param presence
 	 */
 	private void handlePresence(Presence presence) {
-		// unavailable is sent when user leaves the room
-		if (!presence.isAvailable()) {
+		// Unavailable presence(sent when user leaves the room) clears the
+		// state and reports no changes
+		EnumSet<PresenceTracker.Change> changes = presenceTracker
+				.process(presence);
+		if (changes.isEmpty()) {
 			return;
 		}
 
-		Participant participant = conference.findParticipantForRoomJid(presence
-				.getFrom());
-		if (participant != null) {
-			// Check for changes to the display name
-			String oldDisplayName = participant.getDisplayName();
-			String newDisplayName = null;
-			for (PacketExtension pe : presence.getExtensions()) {
-				if (pe instanceof Nick) {
-					newDisplayName = ((Nick) pe).getName();
-					break;
-				}
-			}
+		String from = presence.getFrom();
+		Participant participant = conference.findParticipantForRoomJid(from);
+		if (participant == null) {
+			// Not a participant(yet), so make sure that the changes will be
+			// reported once it joins the conference
+			presenceTracker.forget(from);
+			return;
+		}
 
+		PresenceTracker.State state = presenceTracker.getState(from);
+		if (state == null) {
+			return;
+		}
+
+		if (changes.contains(PresenceTracker.Change.NICK)) {
+			String oldDisplayName = participant.getDisplayName();
+			String newDisplayName = state.getNick();
 			if ((oldDisplayName == null && newDisplayName != null)
 					|| (oldDisplayName != null && !oldDisplayName
 							.equals(newDisplayName))) {
-				participant.setDisplayName(newDisplayName);
-
-				// Prevent NPE when adding to event hashtable
-				if (newDisplayName == null) {
-					newDisplayName = "";
-				}
-				EventAdmin eventAdmin = FocusBundleActivator.getEventAdmin();
-				if (eventAdmin != null) {
-					eventAdmin.sendEvent(EventFactory
-							.endpointDisplayNameChanged(
-									conference.getColibriConference()
-											.getConferenceId(),
-									// TODO: find a better way to get the
-									// endpoint ID
-									participant.getChatMember().getName(),
-									newDisplayName));
-				}
+				conference.onMemberNickChanged(participant, newDisplayName);
 			}
 		}
 
+		if (changes.contains(PresenceTracker.Change.MEDIA_STATE)) {
+			conference.onMemberMediaStateChanged(participant,
+					state.isAudioMuted(), state.isVideoMuted());
+		}
 	}
 
 	/**
@@ -77,14 +77,14 @@ public class Participant {
 	private MediaSSRCGroupMap ssrcGroupsToRemove = new MediaSSRCGroupMap();
 
 	/**
-	 * The list of XMPP features supported by this participant.
+	 * The set of XMPP features supported by this participant.
 	 */
-	private List<String> supportedFeatures = new ArrayList<String>();
+	private FeatureSet supportedFeatures = FeatureSet.EMPTY;
 
 	/**
 	 * Remembers participant's muted status.
 	 */
-	private boolean mutedStatus;
+	private volatile boolean mutedStatus;
 
 	/**
      *
@@ -94,6 +94,18 @@ public class Participant {
 	/** The participant jabberid. */
 	private String jabberid;
 
+	/**
+	 * The time when this participant has been created, that is when its
+	 * invitation has started.
+	 */
+	private final long creationTimestamp = System.currentTimeMillis();
+
+	/**
+	 * The <tt>System.nanoTime()</tt> when Jingle session-initiate has been
+	 * sent to this participant.
+	 */
+	private volatile long sessionInitiateTime;
+
 	/**
 	 * Creates new {@link Participant} for given chat room member.
 	 *
@@ -108,6 +120,32 @@ public class Participant {
 		this.roomMember = roomMember;
 	}
 
+	/**
+	 * Returns the time in milliseconds when this participant has been created.
+	 */
+	public long getCreationTimestamp() {
+		return creationTimestamp;
+	}
+
+	/**
+	 * Returns the <tt>System.nanoTime()</tt> when Jingle session-initiate has
+	 * been sent to this participant.
+	 */
+	public long getSessionInitiateTime() {
+		return sessionInitiateTime;
+	}
+
+	/**
+	 * Remembers the time when Jingle session-initiate has been sent to this
+	 * participant.
+	 *
+	 * @param sessionInitiateTime
+	 *            the value of <tt>System.nanoTime()</tt>.
+	 */
+	public void setSessionInitiateTime(long sessionInitiateTime) {
+		this.sessionInitiateTime = sessionInitiateTime;
+	}
+
 	/**
 	 * Returns {@link JingleSession} established with this conference
 	 * participant or <tt>null</tt> if there is no session yet.
@@ -269,8 +307,8 @@ public class Participant {
 	 * mux.
 	 */
 	public boolean hasBundleSupport() {
-		return supportedFeatures.contains(DiscoveryUtil.FEATURE_RTCP_MUX)
-				&& supportedFeatures.contains(DiscoveryUtil.FEATURE_RTP_BUNDLE);
+		return supportedFeatures.containsAll(FeatureSet.Feature.RTCP_MUX,
+				FeatureSet.Feature.RTP_BUNDLE);
 	}
 
 	/**
@@ -282,39 +320,41 @@ public class Participant {
 	 * Returns <tt>true</tt> if this participant belongs to SIP gateway service.
 	 */
 	public boolean isSipGateway() {
-		return supportedFeatures.contains("http://jitsi.org/protocol/jigasi");
+		return supportedFeatures.contains(FeatureSet.Feature.JIGASI);
 	}
 
 	/**
 	 * Returns <tt>true</tt> if RTP audio is supported by this peer.
 	 */
 	public boolean hasAudioSupport() {
-		return supportedFeatures.contains(DiscoveryUtil.FEATURE_AUDIO);
+		return supportedFeatures.contains(FeatureSet.Feature.AUDIO);
 	}
 
 	/**
 	 * Returns <tt>true</tt> if RTP video is supported by this peer.
 	 */
 	public boolean hasVideoSupport() {
-		return supportedFeatures.contains(DiscoveryUtil.FEATURE_VIDEO);
+		return supportedFeatures.contains(FeatureSet.Feature.VIDEO);
 	}
 
 	/**
 	 * Returns <tt>true</tt> if this peer supports ICE transport.
 	 */
 	public boolean hasIceSupport() {
-		return supportedFeatures.contains(DiscoveryUtil.FEATURE_ICE);
+		return supportedFeatures.contains(FeatureSet.Feature.ICE);
 	}
 
 	/**
 	 * Returns <tt>true</tt> if this peer supports DTLS/SCTP.
 	 */
 	public boolean hasSctpSupport() {
-		return supportedFeatures.contains(DiscoveryUtil.FEATURE_SCTP);
+		return supportedFeatures.contains(FeatureSet.Feature.SCTP);
 	}
 
 	/**
-	 * Sets the list of features supported by this participant.
+	 * Sets the list of features supported by this participant. The list is
+	 * parsed into {@link FeatureSet} and only the features known to the focus
+	 * are retained.
 	 * 
 	 * @see DiscoveryUtil for the list of predefined feature constants.
 	 * @param supportedFeatures
@@ -325,7 +365,14 @@ public class Participant {
 			throw new NullPointerException("supportedFeatures");
 		}
 
-		this.supportedFeatures = supportedFeatures;
+		this.supportedFeatures = FeatureSet.parse(supportedFeatures);
+	}
+
+	/**
+	 * Returns the set of features supported by this participant.
+	 */
+	public FeatureSet getSupportedFeatures() {
+		return supportedFeatures;
 	}
 
 	/**
@@ -0,0 +1,212 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo;
+
+import org.jitsi.impl.protocol.xmpp.extensions.*;
+import org.jivesoftware.smack.packet.*;
+import org.jivesoftware.smackx.packet.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Keeps track of the MUC presence state of conference occupants. For every
+ * occupant we remember the fingerprint of the presence parts that are of any
+ * interest to the focus(nickname and media mute status). Clients
+ * re-send their presence many times per minute for reasons we do not care
+ * about, so comparing the fingerprints allows to drop unchanged presence
+ * before doing any more expensive processing.
+ *
+ * @author agent
+ */
+public class PresenceTracker
+{
+    /**
+     * Types of the presence changes detected by the tracker.
+     */
+    public enum Change
+    {
+        /**
+         * Occupant's nickname(display name) has changed.
+         */
+        NICK,
+
+        /**
+         * Audio or video mute status has changed.
+         */
+        MEDIA_STATE
+    }
+
+    /**
+     * Last known presence state indexed by occupant's MUC address.
+     */
+    private final ConcurrentMap<String, State> states
+        = new ConcurrentHashMap<String, State>();
+
+    /**
+     * Processes given presence and updates the state stored for the occupant
+     * it comes from.
+     *
+     * @param presence the presence stanza received from the room occupant.
+     *
+     * @return the set of changes detected when compared to the previous
+     *         presence of the same occupant. Empty set means that presence can
+     *         be dropped. Unavailable presence clears the state and always
+     *         produces an empty set.
+     */
+    public EnumSet<Change> process(Presence presence)
+    {
+        String address = presence.getFrom();
+        if (address == null)
+            return EnumSet.noneOf(Change.class);
+
+        if (!presence.isAvailable())
+        {
+            states.remove(address);
+            return EnumSet.noneOf(Change.class);
+        }
+
+        State newState = new State(presence);
+        State oldState = states.put(address, newState);
+
+        return newState.diff(oldState);
+    }
+
+    /**
+     * Returns the last state known for given occupant or <tt>null</tt> if
+     * there was no presence received from that occupant yet.
+     *
+     * @param address full MUC address of the occupant.
+     */
+    public State getState(String address)
+    {
+        return states.get(address);
+    }
+
+    /**
+     * Forgets the state of given occupant, so that the next presence will be
+     * reported as changed.
+     *
+     * @param address full MUC address of the occupant.
+     */
+    public void forget(String address)
+    {
+        states.remove(address);
+    }
+
+    /**
+     * Removes all the state stored by this instance.
+     */
+    public void clear()
+    {
+        states.clear();
+    }
+
+    /**
+     * Immutable fingerprint of occupant's presence.
+     */
+    public static class State
+    {
+        /**
+         * The nickname advertised with {@link Nick} extension.
+         */
+        private final String nick;
+
+        /**
+         * Audio mute status or <tt>null</tt> if not advertised.
+         */
+        private final Boolean audioMuted;
+
+        /**
+         * Video mute status or <tt>null</tt> if not advertised.
+         */
+        private final Boolean videoMuted;
+
+        /**
+         * The extensions are parsed into the classes below only if their
+         * providers have been registered, otherwise they are treated as not
+         * advertised.
+         */
+        private State(Presence presence)
+        {
+            PacketExtension nickExt = presence.getExtension(
+                Nick.ELEMENT_NAME, Nick.NAMESPACE);
+            nick = nickExt instanceof Nick
+                ? ((Nick) nickExt).getName() : null;
+
+            PacketExtension audioExt = presence.getExtension(
+                AudioMutedPacketExt.ELEMENT_NAME,
+                AudioMutedPacketExt.NAMESPACE);
+            audioMuted = audioExt instanceof AudioMutedPacketExt
+                ? ((AudioMutedPacketExt) audioExt).isMuted() : null;
+
+            PacketExtension videoExt = presence.getExtension(
+                VideoMutedPacketExt.ELEMENT_NAME,
+                VideoMutedPacketExt.NAMESPACE);
+            videoMuted = videoExt instanceof VideoMutedPacketExt
+                ? ((VideoMutedPacketExt) videoExt).isMuted() : null;
+        }
+
+        /**
+         * Returns the set of changes between <tt>previous</tt> and this state.
+         *
+         * @param previous previous state or <tt>null</tt> if this is the first
+         *                 presence of the occupant, in which case every part
+         *                 that has been advertised is considered changed.
+         */
+        private EnumSet<Change> diff(State previous)
+        {
+            EnumSet<Change> changes = EnumSet.noneOf(Change.class);
+
+            if (previous == null)
+            {
+                if (nick != null)
+                    changes.add(Change.NICK);
+                if (audioMuted != null || videoMuted != null)
+                    changes.add(Change.MEDIA_STATE);
+                return changes;
+            }
+
+            if (!equals(nick, previous.nick))
+                changes.add(Change.NICK);
+            if (!equals(audioMuted, previous.audioMuted)
+                    || !equals(videoMuted, previous.videoMuted))
+                changes.add(Change.MEDIA_STATE);
+
+            return changes;
+        }
+
+        private static boolean equals(Object a, Object b)
+        {
+            return a == null ? b == null : a.equals(b);
+        }
+
+        /**
+         * Returns the nickname or <tt>null</tt> if not advertised.
+         */
+        public String getNick()
+        {
+            return nick;
+        }
+
+        /**
+         * Returns audio mute status or <tt>null</tt> if not advertised.
+         */
+        public Boolean isAudioMuted()
+        {
+            return audioMuted;
+        }
+
+        /**
+         * Returns video mute status or <tt>null</tt> if not advertised.
+         */
+        public Boolean isVideoMuted()
+        {
+            return videoMuted;
+        }
+    }
+}
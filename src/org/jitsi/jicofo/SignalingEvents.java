@@ -0,0 +1,328 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo;
+
+import net.java.sip.communicator.util.*;
+
+import org.jitsi.service.configuration.*;
+
+import java.text.*;
+import java.util.*;
+
+/**
+ * Fixed size log of the focus signaling events, like conference start and
+ * stop, Colibri channel allocations, Jingle session-initiate/accept,
+ * source-add notifications and IQ timeouts. The entries are allocated up
+ * front and reused, so that recording an event costs a few field writes and
+ * the log can be kept on all the time. Each event carries wall clock time and
+ * the name of the thread, so that signaling stalls can be matched against
+ * GC and thread dumps. The events which took longer than
+ * {@link #SLOW_THRESHOLD_PNAME} and IQ timeouts are also logged as warnings.
+ *
+ * @author agent
+ */
+public class SignalingEvents
+{
+    /**
+     * The logger.
+     */
+    private final static Logger logger
+        = Logger.getLogger(SignalingEvents.class);
+
+    /**
+     * The name of configuration property which specifies how many events are
+     * remembered.
+     */
+    public static final String SIZE_PNAME
+        = "org.jitsi.jicofo.SIGNALING_EVENTS_SIZE";
+
+    /**
+     * The name of configuration property which specifies the duration in
+     * milliseconds above which the event is logged as warning. 0 or less
+     * disables the warnings about slow events.
+     */
+    public static final String SLOW_THRESHOLD_PNAME
+        = "org.jitsi.jicofo.SIGNALING_EVENTS_SLOW_THRESHOLD";
+
+    /**
+     * The default value of {@link #SIZE_PNAME}.
+     */
+    private static final int DEFAULT_SIZE = 1000;
+
+    /**
+     * The default value of {@link #SLOW_THRESHOLD_PNAME}.
+     */
+    private static final long DEFAULT_SLOW_THRESHOLD = 2000;
+
+    /**
+     * The types of the signaling events.
+     */
+    public enum Type
+    {
+        /**
+         * The conference has been started, the subject is the room name.
+         */
+        CONFERENCE_CREATE,
+
+        /**
+         * The conference has been stopped, the subject is the room name and
+         * the value is the number of participants left.
+         */
+        CONFERENCE_STOP,
+
+        /**
+         * Colibri channels allocation, the subject is the bridge and
+         * the value is 1 if the allocation succeeded or 0 otherwise.
+         */
+        CHANNEL_ALLOCATION,
+
+        /**
+         * Jingle session-initiate sent, the subject is the peer address.
+         */
+        SESSION_INITIATE,
+
+        /**
+         * Jingle session-accept received, the subject is the peer address and
+         * the duration is the time since session-initiate.
+         */
+        SESSION_ACCEPT,
+
+        /**
+         * Jingle source-add received, the subject is the peer address and
+         * the value is the number of participants notified.
+         */
+        SOURCE_ADD,
+
+        /**
+         * No reply has been received for the IQ, the subject is the address
+         * of the recipient.
+         */
+        IQ_TIMEOUT
+    }
+
+    /**
+     * The instance used by the focus, created on first use.
+     */
+    private static volatile SignalingEvents instance;
+
+    /**
+     * The ring of entries, allocated up front and overwritten.
+     */
+    private final Entry[] entries;
+
+    /**
+     * The duration in nanoseconds above which the event is logged.
+     */
+    private final long slowThresholdNanos;
+
+    /**
+     * The index of the entry which will be written next.
+     */
+    private int next;
+
+    /**
+     * The number of events recorded so far.
+     */
+    private long recordedCount;
+
+    /**
+     * Returns the instance used by the focus. It is configured from
+     * {@link FocusBundleActivator#getConfigService()} when called for the
+     * first time. Does not lock once the instance has been created, as it is
+     * called for every recorded event.
+     */
+    public static SignalingEvents getInstance()
+    {
+        SignalingEvents events = instance;
+        if (events != null)
+            return events;
+
+        synchronized (SignalingEvents.class)
+        {
+            if (instance == null)
+            {
+                int size = DEFAULT_SIZE;
+                long slowThreshold = DEFAULT_SLOW_THRESHOLD;
+
+                ConfigurationService config
+                    = FocusBundleActivator.getConfigService();
+                if (config != null)
+                {
+                    size = config.getInt(SIZE_PNAME, size);
+                    slowThreshold
+                        = config.getLong(SLOW_THRESHOLD_PNAME, slowThreshold);
+                }
+
+                instance
+                    = new SignalingEvents(Math.max(1, size), slowThreshold);
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * Creates new instance of <tt>SignalingEvents</tt>.
+     *
+     * @param capacity the number of events remembered.
+     * @param slowThresholdMillis the duration in milliseconds above which
+     *                            the event is logged as warning, 0 or less
+     *                            disables the warnings.
+     */
+    public SignalingEvents(int capacity, long slowThresholdMillis)
+    {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity: " + capacity);
+
+        this.entries = new Entry[capacity];
+        for (int i = 0; i < capacity; i++)
+        {
+            entries[i] = new Entry();
+        }
+        this.slowThresholdNanos
+            = slowThresholdMillis > 0
+                ? slowThresholdMillis * 1000000L : Long.MAX_VALUE;
+    }
+
+    /**
+     * Records the event which has no duration nor value.
+     *
+     * @param type the type of the event.
+     * @param subject the room, bridge or peer address the event is about.
+     */
+    public void record(Type type, String subject)
+    {
+        record(type, subject, 0, 0);
+    }
+
+    /**
+     * Records the event.
+     *
+     * @param type the type of the event.
+     * @param subject the room, bridge or peer address the event is about.
+     * @param value the value specific to the type of the event.
+     * @param durationNanos how long did the operation take in nanoseconds or
+     *                      0 if not applicable.
+     */
+    public void record(Type type, String subject, long value,
+                       long durationNanos)
+    {
+        long timestamp = System.currentTimeMillis();
+        String threadName = Thread.currentThread().getName();
+
+        synchronized (this)
+        {
+            Entry entry = entries[next];
+
+            next = (next + 1) % entries.length;
+            recordedCount++;
+
+            entry.timestamp = timestamp;
+            entry.type = type;
+            entry.threadName = threadName;
+            entry.subject = subject;
+            entry.value = value;
+            entry.durationNanos = durationNanos;
+        }
+
+        if (durationNanos > slowThresholdNanos || type == Type.IQ_TIMEOUT)
+        {
+            logger.warn(
+                "Slow signaling: " + type + " " + subject
+                    + " value=" + value
+                    + " duration_ms=" + durationNanos / 1000000L
+                    + " thread=" + threadName);
+        }
+    }
+
+    /**
+     * Returns the number of events recorded since this log was created.
+     */
+    public synchronized long getRecordedCount()
+    {
+        return recordedCount;
+    }
+
+    /**
+     * Returns the number of events currently held by this log.
+     */
+    public synchronized int size()
+    {
+        return (int) Math.min(recordedCount, entries.length);
+    }
+
+    /**
+     * Writes the remembered events from the oldest to the most recent into
+     * human readable text.
+     *
+     * @return the text with one line per event.
+     */
+    public String dump()
+    {
+        Entry[] snapshot;
+        synchronized (this)
+        {
+            int count = size();
+
+            snapshot = new Entry[count];
+            for (int i = 0; i < count; i++)
+            {
+                int idx = (next - count + i + entries.length) % entries.length;
+
+                snapshot[i] = entries[idx].copy();
+            }
+        }
+
+        DateFormat timeFormat = new SimpleDateFormat("HH:mm:ss.SSS");
+        StringBuilder out = new StringBuilder();
+        for (Entry entry : snapshot)
+        {
+            out.append(timeFormat.format(new Date(entry.timestamp)))
+                .append(' ').append(entry.type)
+                .append(' ').append(entry.subject)
+                .append(" value=").append(entry.value)
+                .append(" duration_us=").append(entry.durationNanos / 1000L)
+                .append(" thread=").append(entry.threadName)
+                .append('\n');
+        }
+        return out.toString();
+    }
+
+    /**
+     * Single signaling event.
+     */
+    private static class Entry
+    {
+        long timestamp;
+
+        Type type;
+
+        /**
+         * The name of the thread rather than the thread, so that the log
+         * does not keep terminated threads from being collected.
+         */
+        String threadName;
+
+        String subject;
+
+        long value;
+
+        long durationNanos;
+
+        Entry copy()
+        {
+            Entry copy = new Entry();
+
+            copy.timestamp = timestamp;
+            copy.type = type;
+            copy.threadName = threadName;
+            copy.subject = subject;
+            copy.value = value;
+            copy.durationNanos = durationNanos;
+            return copy;
+        }
+    }
+}
@@ -10,10 +10,13 @@ import net.java.sip.communicator.util.Logger;
 
 import org.jitsi.impl.protocol.xmpp.extensions.*;
 import org.jitsi.jicofo.*;
+import org.jitsi.service.configuration.*;
 import org.jitsi.util.*;
 
 import org.jivesoftware.smack.packet.*;
 
+import java.io.*;
+import java.nio.charset.*;
 import java.util.*;
 import java.util.concurrent.*;
 
@@ -38,6 +41,22 @@ public abstract class AbstractAuthAuthority
     private final static String AUTHENTICATION_LIFETIME_PNAME
             = "org.jitsi.jicofo.auth.AUTH_LIFETIME";
 
+    /**
+     * Name of configuration property which specifies the path to the file
+     * where authentication sessions are stored, so that they can be restored
+     * after restart. When not set the sessions are kept in memory only.
+     */
+    private final static String SESSION_STORE_FILE_PNAME
+            = "org.jitsi.jicofo.auth.SESSION_STORE_FILE";
+
+    /**
+     * Name of configuration property which specifies the secret used to sign
+     * stateless session tokens. When set, session IDs are signed tokens which
+     * can be verified by any focus instance configured with the same secret.
+     */
+    private final static String TOKEN_SECRET_PNAME
+            = "org.jitsi.jicofo.auth.TOKEN_SECRET";
+
     /**
      * Default lifetime of authentication session(24H).
      */
@@ -60,15 +79,28 @@ public abstract class AbstractAuthAuthority
     private Timer expireTimer;
 
     /**
-     * Synchronization root.
+     * The number of locks used to synchronize authentication processing(must
+     * be a power of 2).
+     */
+    private final static int LOCK_STRIPES = 32;
+
+    /**
+     * Locks used to synchronize the processing of authentication requests
+     * which concern the same user's machine. Requests that map to different
+     * locks are processed concurrently.
      */
-    protected final Object syncRoot = new Object();
+    private final Object[] locks = new Object[LOCK_STRIPES];
 
     /**
-     * The map of user JIDs to {@link AuthenticationSession}.
+     * Active authentication sessions indexed by session ID, JID and identity.
      */
-    private Map<String, AuthenticationSession> authenticationSessions
-            = new HashMap<String, AuthenticationSession>();
+    private final AuthenticationSessionStore authenticationSessions;
+
+    /**
+     * Issues and verifies signed session tokens or <tt>null</tt> if session
+     * IDs are random UUIDs known only to this instance.
+     */
+    private final SignedSessionTokens sessionTokens;
 
     /**
      * The list of registered {@link AuthenticationListener}s.
@@ -81,11 +113,58 @@ public abstract class AbstractAuthAuthority
      */
     public AbstractAuthAuthority()
     {
-        authenticationLifetime = FocusBundleActivator.getConfigService()
-                .getLong(AUTHENTICATION_LIFETIME_PNAME,
-                        DEFAULT_AUTHENTICATION_LIFETIME);
+        ConfigurationService config = FocusBundleActivator.getConfigService();
+
+        authenticationLifetime = config.getLong(
+                AUTHENTICATION_LIFETIME_PNAME, DEFAULT_AUTHENTICATION_LIFETIME);
 
         logger.info("Authentication lifetime: " + authenticationLifetime);
+
+        String sessionStoreFile = config.getString(SESSION_STORE_FILE_PNAME);
+        if (!StringUtils.isNullOrEmpty(sessionStoreFile))
+        {
+            logger.info("Authentication sessions stored in: "
+                            + sessionStoreFile);
+
+            authenticationSessions = new AuthenticationSessionStore(
+                    new FileSessionStorage(new File(sessionStoreFile)));
+        }
+        else
+        {
+            authenticationSessions = new AuthenticationSessionStore();
+        }
+
+        String tokenSecret = config.getString(TOKEN_SECRET_PNAME);
+        if (!StringUtils.isNullOrEmpty(tokenSecret))
+        {
+            logger.info("Using signed session tokens");
+
+            sessionTokens = new SignedSessionTokens(
+                    tokenSecret.getBytes(Charset.forName("UTF-8")),
+                    authenticationLifetime);
+        }
+        else
+        {
+            sessionTokens = null;
+        }
+
+        for (int i = 0; i < locks.length; i++)
+        {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Returns the lock which synchronizes authentication processing for given
+     * key(usually machine UID).
+     *
+     * @param key the key for which the lock will be returned.
+     */
+    protected Object getLock(String key)
+    {
+        int hash = key != null ? key.hashCode() : 0;
+
+        return locks[(hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1)];
     }
 
     /**
@@ -100,36 +179,22 @@ public abstract class AbstractAuthAuthority
     protected AuthenticationSession createNewSession(
             String machineUID, String authIdentity)
     {
-        synchronized (syncRoot)
+        AuthenticationSession session;
+        do
         {
-            AuthenticationSession session
-                = new AuthenticationSession(
-                        machineUID,
-                        createNonExistingUUID().toString(),
-                        authIdentity);
+            // Repeat in the unlikely case of ID collision
+            String sessionId = sessionTokens != null
+                    ? sessionTokens.issue(machineUID, authIdentity)
+                    : UUID.randomUUID().toString();
 
-            authenticationSessions.put(session.getSessionId(), session);
-
-            logger.info(
-                "Authentication session created for "
-                        + authIdentity + " SID: " + session.getSessionId());
-
-            return session;
+            session = new AuthenticationSession(
+                    machineUID, sessionId, authIdentity);
         }
-    }
+        while (!authenticationSessions.add(session));
 
-    /**
-     * Returns new <tt>UUID</tt> that does not collide with any of the existing
-     * ones.
-     */
-    private UUID createNonExistingUUID()
-    {
-        UUID uuid = UUID.randomUUID();
-        while (authenticationSessions.containsKey(uuid.toString()))
-        {
-            uuid = UUID.randomUUID();
-        }
-        return uuid;
+        logger.info("Authentication session created: " + session);
+
+        return session;
     }
 
     /**
@@ -153,19 +218,7 @@ public abstract class AbstractAuthAuthority
         {
             return null;
         }
-        synchronized (syncRoot)
-        {
-            for (AuthenticationSession session
-                    : authenticationSessions.values())
-            {
-                if (session.getUserIdentity().equals(authIdentity)
-                        && session.getMachineUID().equals(machineUID))
-                {
-                    return session;
-                }
-            }
-            return null;
-        }
+        return authenticationSessions.getByIdentity(authIdentity, machineUID);
     }
 
     /**
@@ -183,17 +236,7 @@ public abstract class AbstractAuthAuthority
         {
             return null;
         }
-        synchronized (syncRoot)
-        {
-            for(AuthenticationSession session : authenticationSessions.values())
-            {
-                if (jabberId.equals(session.getUserJabberId()))
-                {
-                    return session;
-                }
-            }
-        }
-        return null;
+        return authenticationSessions.getByJid(jabberId);
     }
 
     /**
@@ -205,7 +248,77 @@ public abstract class AbstractAuthAuthority
      */
     protected AuthenticationSession getSession(String sessionId)
     {
-        return authenticationSessions.get(sessionId);
+        AuthenticationSession session
+            = authenticationSessions.getBySessionId(sessionId);
+
+        if (sessionTokens == null || StringUtils.isNullOrEmpty(sessionId))
+        {
+            return session;
+        }
+
+        SignedSessionTokens.Token token = sessionTokens.verify(sessionId);
+        if (token == null)
+        {
+            // Expired, revoked or forged
+            if (session != null)
+            {
+                destroySession(sessionId);
+            }
+            return null;
+        }
+
+        if (session == null)
+        {
+            // Issued by another instance(or before restart)
+            session = new AuthenticationSession(
+                    token.getMachineUID(), sessionId, token.getIdentity());
+
+            if (authenticationSessions.add(session))
+            {
+                // Session ID is the token, so it is not logged
+                logger.info(
+                    "Authentication session from token for: "
+                        + session.getUserIdentity());
+            }
+            else
+            {
+                session = authenticationSessions.getBySessionId(sessionId);
+            }
+        }
+        return session;
+    }
+
+    /**
+     * Replaces the session with new one if its token has passed half of its
+     * lifetime, so that active users do not have to authenticate again when
+     * the token expires.
+     *
+     * @param session the session to be checked.
+     *
+     * @return new session which should be used instead of given one or the
+     *         same session if it does not need to be refreshed.
+     */
+    private AuthenticationSession refreshSession(
+            AuthenticationSession session)
+    {
+        if (sessionTokens == null)
+            return session;
+
+        SignedSessionTokens.Token token
+            = sessionTokens.verify(session.getSessionId());
+        if (token == null
+                || System.currentTimeMillis() - token.getIssued()
+                        < sessionTokens.getLifetime() / 2)
+        {
+            return session;
+        }
+
+        AuthenticationSession newSession = createNewSession(
+                session.getMachineUID(), session.getUserIdentity());
+
+        destroySession(session.getSessionId());
+
+        return newSession;
     }
 
     /**
@@ -226,17 +339,14 @@ public abstract class AbstractAuthAuthority
      */
     public void destroySession(String sessionId)
     {
-        synchronized (syncRoot)
-        {
-            AuthenticationSession session
-                    = authenticationSessions.get(sessionId);
+        AuthenticationSession session
+                = authenticationSessions.getBySessionId(sessionId);
 
-            if (session != null)
+        if (session != null)
+        {
+            if (authenticationSessions.remove(session))
             {
-                if (authenticationSessions.remove(sessionId) != null)
-                {
-                    logger.info("Authentication removed: " + session);
-                }
+                logger.info("Authentication removed: " + session);
             }
         }
     }
@@ -283,7 +393,13 @@ public abstract class AbstractAuthAuthority
     public IQ processAuthentication(
             ConferenceIq query, ConferenceIq response)
     {
-        synchronized (syncRoot)
+        String lockKey = query.getMachineUID();
+        if (StringUtils.isNullOrEmpty(lockKey))
+        {
+            lockKey = query.getFrom();
+        }
+
+        synchronized (getLock(lockKey))
         {
             return processAuthLocked(query, response);
         }
@@ -292,7 +408,8 @@ public abstract class AbstractAuthAuthority
     /**
      * Implements {@link AuthenticationAuthority#
      * processAuthentication(ConferenceIq, ConferenceIq, boolean)}. Runs in
-     * synchronized section of authentication sessions storage lock.
+     * synchronized section of the lock obtained with {@link #getLock(String)}
+     * for machine UID of the request.
      */
     protected abstract IQ processAuthLocked(
             ConferenceIq query, ConferenceIq response);
@@ -356,7 +473,9 @@ public abstract class AbstractAuthAuthority
     protected void authenticateJidWithSession(
         AuthenticationSession session, String peerJid, ConferenceIq response)
     {
-        session.setUserJabberId(peerJid);
+        session = refreshSession(session);
+
+        authenticationSessions.bindJid(session, peerJid);
 
         logger.info(
             "Authenticated jid: " + peerJid + " with session: " + session);
@@ -364,7 +483,7 @@ public abstract class AbstractAuthAuthority
         notifyUserAuthenticated(peerJid, session.getUserIdentity());
 
         // Re-new session activity timestamp
-        session.touch();
+        authenticationSessions.touch(session);
 
         // Update response
         response.setIdentity(session.getUserIdentity());
@@ -396,6 +515,12 @@ public abstract class AbstractAuthAuthority
         String logoutUrl = createLogoutUrl(sessionId);
         result.setLogoutUrl(logoutUrl);
 
+        // Signed token would be still accepted until it expires
+        if (sessionTokens != null)
+        {
+            sessionTokens.revoke(sessionId);
+        }
+
         // Destroy local application session
         destroySession(sessionId);
 
@@ -416,6 +541,12 @@ public abstract class AbstractAuthAuthority
      */
     public void start()
     {
+        int restored = authenticationSessions.restore(authenticationLifetime);
+        if (restored > 0)
+        {
+            logger.info("Restored " + restored + " authentication sessions");
+        }
+
         expireTimer = new Timer("AuthenticationExpireTimer", true);
         expireTimer.scheduleAtFixedRate(
             new ExpireTask(), EXPIRE_POLLING_INTERVAL, EXPIRE_POLLING_INTERVAL);
@@ -431,6 +562,8 @@ public abstract class AbstractAuthAuthority
             expireTimer.cancel();
             expireTimer = null;
         }
+
+        authenticationSessions.close();
     }
 
     /**
@@ -441,21 +574,18 @@ public abstract class AbstractAuthAuthority
         @Override
         public void run()
         {
-            synchronized (syncRoot)
+            // Visits only the sessions which are due to expire
+            for (AuthenticationSession session
+                    : authenticationSessions.expire(authenticationLifetime))
+            {
+                logger.info("Expiring session:" + session);
+            }
+
+            authenticationSessions.maintain();
+
+            if (sessionTokens != null)
             {
-                Iterator<AuthenticationSession> sessionsIter
-                    = authenticationSessions.values().iterator();
-                while (sessionsIter.hasNext())
-                {
-                    AuthenticationSession session = sessionsIter.next();
-                    if (System.currentTimeMillis()
-                            - session.getActivityTimestamp()
-                                    > authenticationLifetime)
-                    {
-                        logger.info("Expiring session:" + session);
-                        sessionsIter.remove();
-                    }
-                }
+                sessionTokens.purgeRevoked();
             }
         }
     }
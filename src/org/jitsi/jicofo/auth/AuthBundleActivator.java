@@ -11,17 +11,33 @@ import net.java.sip.communicator.util.Logger;
 
 import org.eclipse.jetty.ajp.*;
 import org.eclipse.jetty.server.*;
+import org.eclipse.jetty.server.handler.*;
 import org.eclipse.jetty.server.nio.*;
+import org.eclipse.jetty.server.ssl.*;
+import org.eclipse.jetty.util.ssl.*;
+import org.eclipse.jetty.util.thread.*;
+import org.jitsi.jicofo.metrics.*;
 import org.jitsi.service.configuration.*;
 import org.jitsi.util.*;
 import org.osgi.framework.*;
 
+import java.io.*;
 import java.lang.reflect.*;
+import java.util.*;
 
 /**
  * Implements <tt>BundleActivator</tt> for the OSGi bundle responsible for
  * authentication with external systems. Authentication URL pattern must be
  * configured in order to active the bundle {@link #LOGIN_URL_PNAME}.
+ * <p>
+ * The Jetty server started for Shibboleth authentication also serves
+ * the metrics if {@link MetricsHandler#ENABLED_PNAME} is set, packet
+ * traces if {@link PacketTraceHandler#PATH_PNAME} is set and signaling events
+ * if {@link SignalingEventsHandler#PATH_PNAME} is set. These are served
+ * only on separate connector bound to {@link #MONITORING_HOST_PNAME}, which is
+ * the loopback interface by default, and never on the public connectors. When
+ * Shibboleth is not used the server is started with the monitoring connector
+ * alone.
  *
  * @author Pawel Domas
  */
@@ -88,6 +104,59 @@ public class AuthBundleActivator
     private static final String JETTY_TLS_PORT_PNAME
         = AUTH_PNAME + ".jetty.tls.port";
 
+    /**
+     * The name of the <tt>System</tt> and/or <tt>ConfigurationService</tt>
+     * property which specifies the maximal number of threads used by Jetty
+     * to handle authentication requests. The default value is <tt>50</tt>.
+     */
+    private static final String JETTY_MAX_THREADS_PNAME
+        = AUTH_PNAME + ".jetty.maxThreads";
+
+    /**
+     * The name of the <tt>System</tt> and/or <tt>ConfigurationService</tt>
+     * property which specifies the maximal number of authentication requests
+     * waiting for the thread when all threads are busy. Requests exceeding
+     * the limit are rejected. The default value is <tt>1000</tt>.
+     */
+    private static final String JETTY_MAX_QUEUED_PNAME
+        = AUTH_PNAME + ".jetty.maxQueued";
+
+    /**
+     * The name of the <tt>System</tt> and/or <tt>ConfigurationService</tt>
+     * property which specifies the port on which the metrics and packet
+     * traces are served. The default value is <tt>8889</tt>.
+     */
+    private static final String MONITORING_PORT_PNAME
+        = AUTH_PNAME + ".jetty.monitoring.port";
+
+    /**
+     * The name of the <tt>System</tt> and/or <tt>ConfigurationService</tt>
+     * property which specifies the address of the interface on which
+     * the metrics and packet traces are served. The default value is
+     * <tt>127.0.0.1</tt>, so that the signaling dumps are not exposed to
+     * the network.
+     */
+    private static final String MONITORING_HOST_PNAME
+        = AUTH_PNAME + ".jetty.monitoring.host";
+
+    /**
+     * The name of the Jetty connector which serves the metrics and packet
+     * traces.
+     */
+    private static final String MONITORING_CONNECTOR_NAME = "monitoring";
+
+    /**
+     * The name of the public HTTP or HTTPS Jetty connector which serves
+     * Shibboleth authentication.
+     */
+    private static final String PUBLIC_CONNECTOR_NAME = "public";
+
+    /**
+     * The name of the AJP Jetty connector which serves Shibboleth
+     * authentication.
+     */
+    private static final String AJP_CONNECTOR_NAME = "ajp";
+
     /**
      * The <tt>Logger</tt>.
      */
@@ -125,8 +194,14 @@ public class AuthBundleActivator
         String loginUrl = cfg.getString(LOGIN_URL_PNAME);
         String logoutUrl = cfg.getString(LOGOUT_URL_PNAME);
 
+        List<Handler> monitoringHandlers = createMonitoringHandlers(cfg);
+
         if (StringUtils.isNullOrEmpty(loginUrl))
         {
+            if (!monitoringHandlers.isEmpty())
+            {
+                startJetty(cfg, null, monitoringHandlers);
+            }
             return;
         }
 
@@ -151,19 +226,80 @@ public class AuthBundleActivator
 
         authAuthority.start();
 
-        // FIXME move Jetty related code to separate class
-        if (!(authAuthority instanceof ShibbolethAuthAuthority))
+        ShibbolethAuthAuthority shibbolethAuthAuthority
+            = authAuthority instanceof ShibbolethAuthAuthority
+                ? (ShibbolethAuthAuthority) authAuthority : null;
+
+        if (shibbolethAuthAuthority != null || !monitoringHandlers.isEmpty())
         {
-            return;
+            startJetty(cfg, shibbolethAuthAuthority, monitoringHandlers);
         }
+    }
 
-        ShibbolethAuthAuthority shibbolethAuthAuthority
-            = (ShibbolethAuthAuthority) authAuthority;
+    /**
+     * Creates the handlers which serve the metrics, packet traces and
+     * signaling events if these are enabled in the configuration.
+     */
+    private static List<Handler> createMonitoringHandlers(
+            ConfigurationService cfg)
+    {
+        List<Handler> handlers = new ArrayList<Handler>();
+
+        if (cfg.getBoolean(MetricsHandler.ENABLED_PNAME, false))
+        {
+            String path
+                = cfg.getString(
+                        MetricsHandler.PATH_PNAME,
+                        MetricsHandler.DEFAULT_PATH);
+
+            logger.info("Serving metrics on " + path);
+
+            handlers.add(new MetricsHandler(path));
+        }
+
+        String tracePath = cfg.getString(PacketTraceHandler.PATH_PNAME);
+        if (!StringUtils.isNullOrEmpty(tracePath))
+        {
+            logger.info("Serving packet traces on " + tracePath);
+
+            handlers.add(new PacketTraceHandler(tracePath));
+        }
+
+        String eventsPath = cfg.getString(SignalingEventsHandler.PATH_PNAME);
+        if (!StringUtils.isNullOrEmpty(eventsPath))
+        {
+            logger.info("Serving signaling events on " + eventsPath);
 
+            handlers.add(new SignalingEventsHandler(eventsPath));
+        }
+        return handlers;
+    }
+
+    /**
+     * Starts Jetty server which handles Shibboleth authentication and/or
+     * serves the metrics and packet traces.
+     *
+     * @param cfg the <tt>ConfigurationService</tt> to be used or
+     *            <tt>null</tt> to use <tt>System</tt> properties.
+     * @param shibbolethAuthAuthority the Shibboleth authentication authority
+     *                                or <tt>null</tt> if Shibboleth is not
+     *                                used.
+     * @param monitoringHandlers the handlers which serve the metrics and
+     *                           packet traces(can be empty).
+     */
+    private void startJetty(ConfigurationService cfg,
+                            ShibbolethAuthAuthority shibbolethAuthAuthority,
+                            List<Handler> monitoringHandlers)
+        throws Exception
+    {
+        // FIXME move Jetty related code to separate class
         // The REST API of Videobridge does not start by default.
         int port = 8888, tlsPort = 8843;
         String sslContextFactoryKeyStorePassword, sslContextFactoryKeyStorePath;
         boolean sslContextFactoryNeedClientAuth = false;
+        int maxThreads = 50, maxQueued = 1000;
+        int monitoringPort = 8889;
+        String monitoringHost = "127.0.0.1";
 
         if (cfg == null)
         {
@@ -175,6 +311,13 @@ public class AuthBundleActivator
             sslContextFactoryNeedClientAuth
                 = Boolean.getBoolean(JETTY_SSLCONTEXTFACTORY_NEEDCLIENTAUTH);
             tlsPort = Integer.getInteger(JETTY_TLS_PORT_PNAME, tlsPort);
+            maxThreads
+                = Integer.getInteger(JETTY_MAX_THREADS_PNAME, maxThreads);
+            maxQueued = Integer.getInteger(JETTY_MAX_QUEUED_PNAME, maxQueued);
+            monitoringPort
+                = Integer.getInteger(MONITORING_PORT_PNAME, monitoringPort);
+            monitoringHost
+                = System.getProperty(MONITORING_HOST_PNAME, monitoringHost);
         }
         else
         {
@@ -188,6 +331,11 @@ public class AuthBundleActivator
                         JETTY_SSLCONTEXTFACTORY_NEEDCLIENTAUTH,
                         sslContextFactoryNeedClientAuth);
             tlsPort = cfg.getInt(JETTY_TLS_PORT_PNAME, tlsPort);
+            maxThreads = cfg.getInt(JETTY_MAX_THREADS_PNAME, maxThreads);
+            maxQueued = cfg.getInt(JETTY_MAX_QUEUED_PNAME, maxQueued);
+            monitoringPort = cfg.getInt(MONITORING_PORT_PNAME, monitoringPort);
+            monitoringHost
+                = cfg.getString(MONITORING_HOST_PNAME, monitoringHost);
         }
 
         try
@@ -195,85 +343,125 @@ public class AuthBundleActivator
             Server server = new Server();
 
             /*
-             * If HTTPS is not enabled, serve the REST API of Jitsi Videobridge
-             * over HTTP.
+             * Bound the number of threads and queued requests, so that
+             * the burst of logins does not exhaust the resources.
              */
-            if (sslContextFactoryKeyStorePath == null)
-            {
-                // HTTP
-                SelectChannelConnector httpConnector
-                    = new SelectChannelConnector();
+            QueuedThreadPool threadPool = new QueuedThreadPool(maxThreads);
 
-                httpConnector.setPort(port);
-                server.addConnector(httpConnector);
-            }
-            else
+            threadPool.setMaxQueued(maxQueued);
+            threadPool.setName("AuthJetty");
+            server.setThreadPool(threadPool);
+
+            // Only the monitoring connector is needed without Shibboleth
+            if (shibbolethAuthAuthority != null)
             {
-                // FIXME: add HTTPS
-                //HttpConfiguration httpCfg = new HttpConfiguration();
-
-                //httpCfg.setSecurePort(tlsPort);
-                //httpCfg.setSecureScheme("https");
-                /*File sslContextFactoryKeyStoreFile
-                    = getAbsoluteFile(sslContextFactoryKeyStorePath, cfg);
-                SslContextFactory sslContextFactory = new SslContextFactory();
-
-                sslContextFactory.setExcludeCipherSuites(
-                        "SSL_RSA_WITH_DES_CBC_SHA",
-                        "SSL_DHE_RSA_WITH_DES_CBC_SHA",
-                        "SSL_DHE_DSS_WITH_DES_CBC_SHA",
-                        "SSL_RSA_EXPORT_WITH_RC4_40_MD5",
-                        "SSL_RSA_EXPORT_WITH_DES40_CBC_SHA",
-                        "SSL_DHE_RSA_EXPORT_WITH_DES40_CBC_SHA",
-                        "SSL_DHE_DSS_EXPORT_WITH_DES40_CBC_SHA");
-                sslContextFactory.setIncludeCipherSuites(".*RC4.*");
-                if (sslContextFactoryKeyStorePassword != null)
+                /*
+                 * If HTTPS is not enabled, serve the REST API of Jitsi
+                 * Videobridge over HTTP.
+                 */
+                if (sslContextFactoryKeyStorePath == null)
                 {
-                    sslContextFactory.setKeyStorePassword(
-                            sslContextFactoryKeyStorePassword);
+                    // HTTP
+                    SelectChannelConnector httpConnector
+                        = new SelectChannelConnector();
+
+                    httpConnector.setName(PUBLIC_CONNECTOR_NAME);
+                    httpConnector.setPort(port);
+                    server.addConnector(httpConnector);
                 }
-                sslContextFactory.setKeyStorePath(
-                        sslContextFactoryKeyStoreFile.getPath());
-                sslContextFactory.setNeedClientAuth(
-                        sslContextFactoryNeedClientAuth);
+                else
+                {
+                    // HTTPS
+                    File sslContextFactoryKeyStoreFile
+                        = getAbsoluteFile(sslContextFactoryKeyStorePath, cfg);
+                    SslContextFactory sslContextFactory
+                        = new SslContextFactory();
+
+                    sslContextFactory.setExcludeCipherSuites(
+                            "SSL_RSA_WITH_DES_CBC_SHA",
+                            "SSL_DHE_RSA_WITH_DES_CBC_SHA",
+                            "SSL_DHE_DSS_WITH_DES_CBC_SHA",
+                            "SSL_RSA_EXPORT_WITH_RC4_40_MD5",
+                            "SSL_RSA_EXPORT_WITH_DES40_CBC_SHA",
+                            "SSL_DHE_RSA_EXPORT_WITH_DES40_CBC_SHA",
+                            "SSL_DHE_DSS_EXPORT_WITH_DES40_CBC_SHA",
+                            "SSL_RSA_WITH_RC4_128_MD5",
+                            "SSL_RSA_WITH_RC4_128_SHA",
+                            "TLS_ECDHE_RSA_WITH_RC4_128_SHA",
+                            "TLS_ECDHE_ECDSA_WITH_RC4_128_SHA");
+                    if (sslContextFactoryKeyStorePassword != null)
+                    {
+                        sslContextFactory.setKeyStorePassword(
+                                sslContextFactoryKeyStorePassword);
+                    }
+                    sslContextFactory.setKeyStorePath(
+                            sslContextFactoryKeyStoreFile.getPath());
+                    sslContextFactory.setNeedClientAuth(
+                            sslContextFactoryNeedClientAuth);
+
+                    SslSelectChannelConnector sslConnector
+                        = new SslSelectChannelConnector(sslContextFactory);
+
+                    sslConnector.setName(PUBLIC_CONNECTOR_NAME);
+                    sslConnector.setPort(tlsPort);
+                    server.addConnector(sslConnector);
+                }
+            }
 
-                HttpConfiguration httpsCfg = new HttpConfiguration(httpCfg);
+            HandlerList handlers = new HandlerList();
 
-                httpsCfg.addCustomizer(new SecureRequestCustomizer());
+            // Each context handles requests from its own connectors only
+            if (!monitoringHandlers.isEmpty())
+            {
+                SelectChannelConnector monitoringConnector
+                    = new SelectChannelConnector();
 
-                ServerConnector sslConnector
-                    = new ServerConnector(
-                            server,
-                            new SslConnectionFactory(
-                                    sslContextFactory,
-                                    "http/1.1"),
-                            new HttpConnectionFactory(httpsCfg));
-                sslConnector.setPort(tlsPort);
-                server.addConnector(sslConnector);*/
+                monitoringConnector.setName(MONITORING_CONNECTOR_NAME);
+                monitoringConnector.setHost(monitoringHost);
+                monitoringConnector.setPort(monitoringPort);
+                server.addConnector(monitoringConnector);
 
-                /*
-                The example borrowed from Jetty 8 docs
-                SslSelectChannelConnector ssl_connector = new SslSelectChannelConnector();
-                String jetty_home =
-                  System.getProperty("jetty.home","../jetty-distribution/target/distribution");
-                System.setProperty("jetty.home",jetty_home);
-                ssl_connector.setPort(8443);
-                SslContextFactory cf = ssl_connector.getSslContextFactory();
-                cf.setKeyStore(jetty_home + "/etc/keystore");
-                cf.setKeyStorePassword("OBF:1vn2343223434f43rt5sg23241zlu1vn4");
-                cf.setKeyManagerPassword("OBF:1234324fa4lf4351u2g");
-                 */
-            }
+                logger.info(
+                    "Serving monitoring on " + monitoringHost + ":"
+                        + monitoringPort);
+
+                HandlerList monitoring = new HandlerList();
+                for (Handler handler : monitoringHandlers)
+                {
+                    monitoring.addHandler(handler);
+                }
+
+                ContextHandler monitoringContext = new ContextHandler("/");
 
-            // AJP
-            Ajp13SocketConnector ajp13SocketConnector
-                = new Ajp13SocketConnector();
-            ajp13SocketConnector.setPort(8009);
+                monitoringContext.setConnectorNames(
+                        new String[] { MONITORING_CONNECTOR_NAME });
+                monitoringContext.setHandler(monitoring);
+                handlers.addHandler(monitoringContext);
+            }
 
-            server.addConnector(ajp13SocketConnector);
+            if (shibbolethAuthAuthority != null)
+            {
+                // AJP
+                Ajp13SocketConnector ajp13SocketConnector
+                    = new Ajp13SocketConnector();
+                ajp13SocketConnector.setName(AJP_CONNECTOR_NAME);
+                ajp13SocketConnector.setPort(8009);
+
+                server.addConnector(ajp13SocketConnector);
+
+                // Shibboleth handles every path, so it must not get
+                // the requests from the monitoring connector
+                ContextHandler shibbolethContext = new ContextHandler("/");
+
+                shibbolethContext.setConnectorNames(
+                        new String[] {
+                            PUBLIC_CONNECTOR_NAME, AJP_CONNECTOR_NAME });
+                shibbolethContext.setHandler(
+                        new ShibbolethHandler(shibbolethAuthAuthority));
+                handlers.addHandler(shibbolethContext);
+            }
 
-            server.setHandler(
-                    new ShibbolethHandler(shibbolethAuthAuthority));
+            server.setHandler(handlers);
 
             /*
              * The server will start a non-daemon background Thread which will
@@ -296,6 +484,55 @@ public class AuthBundleActivator
         }
     }
 
+    /**
+     * Resolves given path against the home directory of the application if
+     * the path is not absolute.
+     *
+     * @param path the path to be resolved.
+     * @param cfg the <tt>ConfigurationService</tt> used to obtain
+     *            the location of the home directory or <tt>null</tt> if
+     *            the location should be obtained from <tt>System</tt>
+     *            properties.
+     *
+     * @return the absolute <tt>File</tt> for given <tt>path</tt>.
+     */
+    private static File getAbsoluteFile(String path, ConfigurationService cfg)
+    {
+        File file = new File(path);
+
+        if (!file.isAbsolute())
+        {
+            String scHomeDirLocation, scHomeDirName;
+
+            if (cfg == null)
+            {
+                scHomeDirLocation
+                    = System.getProperty(
+                            ConfigurationService.PNAME_SC_HOME_DIR_LOCATION);
+                scHomeDirName
+                    = System.getProperty(
+                            ConfigurationService.PNAME_SC_HOME_DIR_NAME);
+            }
+            else
+            {
+                scHomeDirLocation = cfg.getScHomeDirLocation();
+                scHomeDirName = cfg.getScHomeDirName();
+            }
+            if (scHomeDirLocation == null)
+            {
+                scHomeDirLocation = System.getProperty("user.home");
+                if (scHomeDirLocation == null)
+                    scHomeDirLocation = ".";
+            }
+            if (scHomeDirName == null)
+                scHomeDirName = ".";
+            file
+                = new File(new File(scHomeDirLocation, scHomeDirName), path)
+                    .getAbsoluteFile();
+        }
+        return file;
+    }
+
     /**
      * {@inheritDoc}
      */
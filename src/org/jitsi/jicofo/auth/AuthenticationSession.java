@@ -36,13 +36,13 @@ public class AuthenticationSession
      * session instance, so that it can eventually expire after exceeding
      * time limit of inactivity.
      */
-    private long activityTimestamp = System.currentTimeMillis();
+    private volatile long activityTimestamp = System.currentTimeMillis();
 
     /**
      * User's jabber ID recently used with this session. Used to bind
      * anonymous JID to {@link #userIdentity}.
      */
-    private String userJabberId;
+    private volatile String userJabberId;
 
     /**
      * Creates new instance of <tt>AuthenticationSession</tt>.
@@ -68,6 +68,27 @@ public class AuthenticationSession
         this.userIdentity = userIdentity;
     }
 
+    /**
+     * Creates new instance of <tt>AuthenticationSession</tt> restored from
+     * {@link SessionStorage}.
+     * @param machineUID unique machine identifier of the session.
+     * @param sessionId unique session identifier.
+     * @param userIdentity user's identity in the scope of authentication
+     *                     system.
+     * @param userJabberId the Jabber ID recently bound to the session or
+     *                     <tt>null</tt> if none.
+     * @param activityTimestamp the timestamp of last activity on the session.
+     */
+    AuthenticationSession(String machineUID, String sessionId,
+                          String userIdentity, String userJabberId,
+                          long activityTimestamp)
+    {
+        this(machineUID, sessionId, userIdentity);
+
+        this.userJabberId = userJabberId;
+        this.activityTimestamp = activityTimestamp;
+    }
+
     /**
      * Returns session identifier.
      */
@@ -138,7 +159,8 @@ public class AuthenticationSession
         StringBuilder builder = new StringBuilder("AuthSession[");
         builder.append("ID=").append(userIdentity);
         builder.append(", JID=").append(userJabberId);
-        builder.append(", SID=").append(sessionId);
+        // The session ID is not included, as it is the bearer token of
+        // the session
         builder.append(", MUID=").append(machineUID);
         long lifetime = System.currentTimeMillis() - activityTimestamp;
         builder.append(", LIFE_TM_SEC=").append((lifetime/1000L));
@@ -0,0 +1,429 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.auth;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Stores {@link AuthenticationSession}s indexed by session ID, by the Jabber
+ * ID bound to the session and by user's identity and machine UID, so that
+ * none of the lookups requires a scan over all active sessions. The indexes
+ * are concurrent maps, so readers never block. Writers are synchronized only
+ * to keep the indexes consistent with each other, except for
+ * {@link #touch(AuthenticationSession)} which does not change the indexes.
+ * All the changes are passed to {@link SessionStorage}(if any), so that
+ * the sessions can be restored after restart. The storage is called after
+ * the lock has been released and the session is looked up again after it
+ * has been saved, so that the removal is always the last change saved for
+ * the session removed concurrently. Sessions are also kept in
+ * {@link SessionExpiryQueue}, so that expiring them does not require a scan
+ * over all active sessions.
+ *
+ * @author agent
+ */
+class AuthenticationSessionStore
+{
+    /**
+     * Sessions indexed by session ID.
+     */
+    private final ConcurrentMap<String, AuthenticationSession> bySessionId
+        = new ConcurrentHashMap<String, AuthenticationSession>();
+
+    /**
+     * Sessions indexed by the Jabber ID recently bound to the session.
+     */
+    private final ConcurrentMap<String, AuthenticationSession> byJid
+        = new ConcurrentHashMap<String, AuthenticationSession>();
+
+    /**
+     * Sessions indexed by user's identity and machine UID.
+     */
+    private final ConcurrentMap<IdentityKey, AuthenticationSession> byIdentity
+        = new ConcurrentHashMap<IdentityKey, AuthenticationSession>();
+
+    /**
+     * Resolution of {@link #expiryQueue} in milliseconds.
+     */
+    private final static long EXPIRY_RESOLUTION = 1000L;
+
+    /**
+     * Sessions ordered by their activity timestamp.
+     */
+    private final SessionExpiryQueue expiryQueue
+        = new SessionExpiryQueue(EXPIRY_RESOLUTION);
+
+    /**
+     * Persistent storage of the sessions or <tt>null</tt> if the sessions are
+     * kept in memory only.
+     */
+    private final SessionStorage storage;
+
+    /**
+     * Creates new instance of <tt>AuthenticationSessionStore</tt> which keeps
+     * the sessions in memory only.
+     */
+    AuthenticationSessionStore()
+    {
+        this(null);
+    }
+
+    /**
+     * Creates new instance of <tt>AuthenticationSessionStore</tt>.
+     *
+     * @param storage persistent storage of the sessions or <tt>null</tt> if
+     *                the sessions should be kept in memory only.
+     */
+    AuthenticationSessionStore(SessionStorage storage)
+    {
+        this.storage = storage;
+    }
+
+    /**
+     * Restores the sessions from {@link SessionStorage}. Sessions inactive
+     * for longer than given lifetime are discarded.
+     *
+     * @param lifetime authentication session lifetime in milliseconds.
+     *
+     * @return the number of sessions restored.
+     */
+    int restore(long lifetime)
+    {
+        if (storage == null)
+            return 0;
+
+        List<AuthenticationSession> expired
+            = new ArrayList<AuthenticationSession>();
+        int restored = 0;
+
+        synchronized (this)
+        {
+            long now = System.currentTimeMillis();
+            for (AuthenticationSession session : storage.load())
+            {
+                if (now - session.getActivityTimestamp() > lifetime)
+                {
+                    // Expired while we were down
+                    expired.add(session);
+                }
+                else if (index(session))
+                {
+                    restored++;
+                }
+            }
+        }
+
+        for (AuthenticationSession session : expired)
+        {
+            storage.sessionRemoved(session);
+        }
+        return restored;
+    }
+
+    /**
+     * Adds given session to the store unless there is one with the same ID
+     * already.
+     *
+     * @param session the session to be added.
+     *
+     * @return <tt>true</tt> if the session has been added or <tt>false</tt>
+     *         if its ID is in use.
+     */
+    boolean add(AuthenticationSession session)
+    {
+        synchronized (this)
+        {
+            if (!index(session))
+                return false;
+        }
+
+        if (storage != null)
+        {
+            storage.sessionAdded(session);
+
+            resaveIfRemoved(session);
+        }
+        return true;
+    }
+
+    /**
+     * Adds given session to the indexes.
+     */
+    private boolean index(AuthenticationSession session)
+    {
+        if (bySessionId.putIfAbsent(session.getSessionId(), session) != null)
+            return false;
+
+        byIdentity.put(
+            new IdentityKey(
+                session.getUserIdentity(), session.getMachineUID()),
+            session);
+
+        String jid = session.getUserJabberId();
+        if (jid != null)
+        {
+            byJid.put(jid, session);
+        }
+
+        expiryQueue.add(session);
+
+        return true;
+    }
+
+    /**
+     * Binds given Jabber ID to the session and updates the index.
+     *
+     * @param session the session to which the JID will be bound.
+     * @param jid the Jabber ID to be bound to the session.
+     */
+    void bindJid(AuthenticationSession session, String jid)
+    {
+        synchronized (this)
+        {
+            String oldJid = session.getUserJabberId();
+            if (oldJid != null)
+            {
+                byJid.remove(oldJid, session);
+            }
+
+            session.setUserJabberId(jid);
+
+            if (!isStored(session))
+                return;
+
+            if (jid != null)
+            {
+                byJid.put(jid, session);
+            }
+        }
+
+        if (storage != null)
+        {
+            storage.sessionUpdated(session);
+
+            resaveIfRemoved(session);
+        }
+    }
+
+    /**
+     * Re-news the activity timestamp of given session. Does not take the lock
+     * of this store, as {@link #expiryQueue} picks up the new timestamp once
+     * the session's old bucket becomes due.
+     *
+     * @param session the session to be touched.
+     */
+    void touch(AuthenticationSession session)
+    {
+        session.touch();
+
+        if (storage != null && isStored(session))
+        {
+            storage.sessionUpdated(session);
+
+            resaveIfRemoved(session);
+        }
+    }
+
+    /**
+     * Removes the sessions which have been inactive for longer than given
+     * <tt>lifetime</tt>. Only the sessions which are due to expire are
+     * visited.
+     *
+     * @param lifetime session lifetime in milliseconds.
+     *
+     * @return the list of sessions which have expired.
+     */
+    List<AuthenticationSession> expire(long lifetime)
+    {
+        List<AuthenticationSession> expired;
+        synchronized (this)
+        {
+            expired = expiryQueue.pollExpired(lifetime);
+
+            for (AuthenticationSession session : expired)
+            {
+                unindex(session);
+            }
+        }
+
+        if (storage != null)
+        {
+            for (AuthenticationSession session : expired)
+            {
+                storage.sessionRemoved(session);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Performs periodic maintenance of the persistent storage.
+     */
+    void maintain()
+    {
+        if (storage != null)
+        {
+            storage.maintain(getSessions());
+        }
+    }
+
+    /**
+     * Closes the persistent storage.
+     */
+    synchronized void close()
+    {
+        if (storage != null)
+        {
+            storage.close();
+        }
+    }
+
+    /**
+     * Removes given session from the store.
+     *
+     * @param session the session to be removed.
+     *
+     * @return <tt>true</tt> if the session was in the store.
+     */
+    boolean remove(AuthenticationSession session)
+    {
+        synchronized (this)
+        {
+            if (!isStored(session))
+                return false;
+
+            expiryQueue.remove(session);
+
+            unindex(session);
+        }
+
+        if (storage != null)
+        {
+            storage.sessionRemoved(session);
+        }
+        return true;
+    }
+
+    /**
+     * Returns <tt>true</tt> if given session is in this store.
+     */
+    private boolean isStored(AuthenticationSession session)
+    {
+        return bySessionId.get(session.getSessionId()) == session;
+    }
+
+    /**
+     * Called after the session has been saved outside of the lock. If it
+     * has been removed in the meantime, the removal might have been saved
+     * before, so it is saved again.
+     */
+    private void resaveIfRemoved(AuthenticationSession session)
+    {
+        if (!isStored(session))
+        {
+            storage.sessionRemoved(session);
+        }
+    }
+
+    /**
+     * Removes given session from the indexes.
+     */
+    private void unindex(AuthenticationSession session)
+    {
+        bySessionId.remove(session.getSessionId(), session);
+
+        byIdentity.remove(
+            new IdentityKey(
+                session.getUserIdentity(), session.getMachineUID()),
+            session);
+
+        String jid = session.getUserJabberId();
+        if (jid != null)
+        {
+            byJid.remove(jid, session);
+        }
+    }
+
+    /**
+     * Returns the session for given ID or <tt>null</tt> if not found.
+     */
+    AuthenticationSession getBySessionId(String sessionId)
+    {
+        return sessionId != null ? bySessionId.get(sessionId) : null;
+    }
+
+    /**
+     * Returns the session bound to given Jabber ID or <tt>null</tt> if not
+     * found.
+     */
+    AuthenticationSession getByJid(String jid)
+    {
+        return jid != null ? byJid.get(jid) : null;
+    }
+
+    /**
+     * Returns the session for given user's identity and machine UID or
+     * <tt>null</tt> if not found.
+     */
+    AuthenticationSession getByIdentity(String identity, String machineUID)
+    {
+        return byIdentity.get(new IdentityKey(identity, machineUID));
+    }
+
+    /**
+     * Returns a view of all the sessions currently stored. Safe to be
+     * iterated over while the store is being modified.
+     */
+    Collection<AuthenticationSession> getSessions()
+    {
+        return Collections.unmodifiableCollection(bySessionId.values());
+    }
+
+    /**
+     * Returns the number of stored sessions.
+     */
+    int size()
+    {
+        return bySessionId.size();
+    }
+
+    /**
+     * The key of user's identity and machine UID index.
+     */
+    private static class IdentityKey
+    {
+        private final String identity;
+
+        private final String machineUID;
+
+        IdentityKey(String identity, String machineUID)
+        {
+            this.identity = identity;
+            this.machineUID = machineUID;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (!(o instanceof IdentityKey))
+                return false;
+
+            IdentityKey other = (IdentityKey) o;
+
+            return identity.equals(other.identity)
+                && machineUID.equals(other.machineUID);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * identity.hashCode() + machineUID.hashCode();
+        }
+    }
+}
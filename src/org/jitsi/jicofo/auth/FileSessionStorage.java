@@ -0,0 +1,570 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.auth;
+
+import net.java.sip.communicator.util.*;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * {@link SessionStorage} implementation which keeps authentication sessions
+ * in a local file. Every change is appended to the file as a single line
+ * record, so that no random access is required. The record describing added
+ * or updated session contains its full state and the last record found for
+ * given session ID wins when the file is loaded. The file is compacted(
+ * rewritten with active sessions only) when the number of records becomes
+ * much larger than the number of active sessions.
+ * <p>
+ * The records are written by the background thread started by
+ * {@link #load()}, so that the threads which modify the sessions never wait
+ * for the disk. The compaction is done on the same thread and replaces
+ * the file with atomic rename of the temporary file. Session IDs are bearer
+ * credentials, so both files are readable by the owner only.
+ *
+ * @author agent
+ */
+public class FileSessionStorage
+    implements SessionStorage
+{
+    /**
+     * The logger.
+     */
+    private final static Logger logger
+        = Logger.getLogger(FileSessionStorage.class);
+
+    /**
+     * The type of the record which stores full session state.
+     */
+    private final static String RECORD_SESSION = "S";
+
+    /**
+     * The type of the record which marks the session as removed.
+     */
+    private final static String RECORD_REMOVED = "R";
+
+    /**
+     * Separates record fields.
+     */
+    private final static String SEPARATOR = "\t";
+
+    /**
+     * The encoding used for the file and for field values.
+     */
+    private final static String ENCODING = "UTF-8";
+
+    /**
+     * Compaction is not performed until the file contains at least this many
+     * records.
+     */
+    private final static int MIN_COMPACTION_RECORDS = 1000;
+
+    /**
+     * How long {@link #close()} waits for pending records to be written, in
+     * milliseconds.
+     */
+    private final static long CLOSE_TIMEOUT = 5000L;
+
+    /**
+     * The task which stops the writer thread.
+     */
+    private final static Object CLOSE = new Object();
+
+    /**
+     * The file where the sessions are stored.
+     */
+    private final File file;
+
+    /**
+     * The records to be appended and the compaction requests waiting for
+     * the writer thread.
+     */
+    private final BlockingQueue<Object> tasks
+        = new LinkedBlockingQueue<Object>();
+
+    /**
+     * The thread which writes the file or <tt>null</tt> if it has not been
+     * started yet.
+     */
+    private Thread writerThread;
+
+    /**
+     * The writer used to append records or <tt>null</tt> if the file has not
+     * been opened yet or could not be opened. Used by the writer thread only,
+     * once it has been started.
+     */
+    private Writer writer;
+
+    /**
+     * The number of records currently stored in the file. Used by the writer
+     * thread only, once it has been started.
+     */
+    private int recordCount;
+
+    /**
+     * Creates new instance of <tt>FileSessionStorage</tt>.
+     *
+     * @param file the file where the sessions will be stored.
+     */
+    public FileSessionStorage(File file)
+    {
+        if (file == null)
+            throw new NullPointerException("file");
+
+        this.file = file;
+    }
+
+    /**
+     * Loads the sessions and starts the thread which writes the records.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized List<AuthenticationSession> load()
+    {
+        if (writerThread != null)
+            throw new IllegalStateException("Loaded already");
+
+        Map<String, AuthenticationSession> sessions
+            = new LinkedHashMap<String, AuthenticationSession>();
+
+        recordCount = 0;
+
+        if (file.exists())
+        {
+            BufferedReader reader = null;
+            try
+            {
+                reader = new BufferedReader(
+                    new InputStreamReader(
+                        new FileInputStream(file), ENCODING));
+
+                String line;
+                while ((line = reader.readLine()) != null)
+                {
+                    recordCount++;
+                    readRecord(line, sessions);
+                }
+            }
+            catch (IOException e)
+            {
+                logger.error("Failed to load sessions from " + file, e);
+            }
+            finally
+            {
+                closeQuietly(reader);
+            }
+        }
+
+        logger.info(
+            "Loaded " + sessions.size() + " authentication sessions from "
+                + file + ", records: " + recordCount);
+
+        openWriter();
+
+        writerThread = new Thread("FileSessionStorage")
+        {
+            @Override
+            public void run()
+            {
+                runWriter();
+            }
+        };
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        return new ArrayList<AuthenticationSession>(sessions.values());
+    }
+
+    /**
+     * Parses single record and applies it to the map of sessions.
+     */
+    private void readRecord(
+            String line, Map<String, AuthenticationSession> sessions)
+    {
+        String[] fields = line.split(SEPARATOR, -1);
+        try
+        {
+            if (RECORD_SESSION.equals(fields[0]) && fields.length == 6)
+            {
+                String jid = decode(fields[4]);
+                AuthenticationSession session
+                    = new AuthenticationSession(
+                            decode(fields[2]),
+                            decode(fields[1]),
+                            decode(fields[3]),
+                            jid.length() > 0 ? jid : null,
+                            Long.parseLong(fields[5]));
+
+                sessions.put(session.getSessionId(), session);
+            }
+            else if (RECORD_REMOVED.equals(fields[0]) && fields.length == 2)
+            {
+                sessions.remove(decode(fields[1]));
+            }
+            else
+            {
+                logger.warn("Invalid session record: " + line);
+            }
+        }
+        catch (IllegalArgumentException e)
+        {
+            logger.warn("Invalid session record: " + line);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sessionAdded(AuthenticationSession session)
+    {
+        tasks.add(createSessionRecord(session));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sessionUpdated(AuthenticationSession session)
+    {
+        tasks.add(createSessionRecord(session));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sessionRemoved(AuthenticationSession session)
+    {
+        tasks.add(RECORD_REMOVED + SEPARATOR + encode(session.getSessionId()));
+    }
+
+    /**
+     * Schedules the compaction of the file, which is done if it contains more
+     * than twice as many records as there are active sessions.
+     *
+     * {@inheritDoc}
+     *
+     * @param sessions the live view of active sessions, which is read by
+     *                 the writer thread when it gets to the compaction. The
+     *                 records of the changes made after that are queued after
+     *                 the compaction, so they are appended to the new file.
+     */
+    @Override
+    public void maintain(Collection<AuthenticationSession> sessions)
+    {
+        tasks.add(sessions);
+    }
+
+    /**
+     * Waits for the records and the compaction requests and processes them
+     * until {@link #close()} is called.
+     */
+    private void runWriter()
+    {
+        try
+        {
+            while (true)
+            {
+                Object task = tasks.take();
+                if (task == CLOSE)
+                    break;
+
+                if (task instanceof String)
+                {
+                    appendRecord((String) task);
+
+                    // Flush once the queue is drained
+                    if (tasks.isEmpty())
+                    {
+                        flush();
+                    }
+                }
+                else
+                {
+                    @SuppressWarnings("unchecked")
+                    Collection<AuthenticationSession> sessions
+                        = (Collection<AuthenticationSession>) task;
+
+                    compact(sessions);
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            logger.warn("Interrupted, pending session records dropped");
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            closeQuietly(writer);
+            writer = null;
+        }
+    }
+
+    /**
+     * Compacts the file if it contains more than twice as many records as
+     * there are active sessions.
+     */
+    private void compact(Collection<AuthenticationSession> sessions)
+    {
+        if (writer == null
+                || recordCount < MIN_COMPACTION_RECORDS
+                || recordCount < 2 * sessions.size())
+        {
+            return;
+        }
+
+        File tmpFile = new File(file.getPath() + ".tmp");
+        Writer tmpWriter = null;
+        int newRecordCount = 0;
+        try
+        {
+            createOwnerOnly(tmpFile);
+
+            tmpWriter = new BufferedWriter(
+                new OutputStreamWriter(
+                    new FileOutputStream(tmpFile), ENCODING));
+
+            for (AuthenticationSession session : sessions)
+            {
+                tmpWriter.write(createSessionRecord(session));
+                tmpWriter.write('\n');
+                newRecordCount++;
+            }
+            tmpWriter.close();
+            tmpWriter = null;
+
+            flush();
+
+            // Rename replaces the file atomically on POSIX systems, so
+            // the old file stays in place if it fails(e.g. on Windows)
+            if (!tmpFile.renameTo(file))
+            {
+                throw new IOException("Failed to replace " + file);
+            }
+
+            // The writer still points to the old file
+            closeQuietly(writer);
+            writer = null;
+
+            logger.info(
+                "Compacted " + file + ", records: " + recordCount
+                    + " -> " + newRecordCount);
+
+            recordCount = newRecordCount;
+        }
+        catch (IOException e)
+        {
+            logger.error("Failed to compact " + file, e);
+
+            closeQuietly(tmpWriter);
+            if (tmpFile.exists() && !tmpFile.delete())
+            {
+                logger.warn("Failed to delete " + tmpFile);
+            }
+        }
+        finally
+        {
+            if (writer == null)
+            {
+                openWriter();
+            }
+        }
+    }
+
+    /**
+     * Writes the pending records and stops the writer thread.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void close()
+    {
+        Thread thread;
+        synchronized (this)
+        {
+            thread = writerThread;
+        }
+        if (thread == null)
+            return;
+
+        tasks.add(CLOSE);
+        try
+        {
+            thread.join(CLOSE_TIMEOUT);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive())
+        {
+            logger.warn("Timed out writing session records to " + file);
+        }
+    }
+
+    /**
+     * Opens the writer used to append the records to the file.
+     */
+    private void openWriter()
+    {
+        try
+        {
+            File dir = file.getAbsoluteFile().getParentFile();
+            if (dir != null && !dir.exists() && !dir.mkdirs())
+            {
+                logger.warn("Failed to create " + dir);
+            }
+
+            if (file.exists())
+            {
+                // Might have been created by older version
+                restrictToOwner(file);
+            }
+            else
+            {
+                createOwnerOnly(file);
+            }
+
+            writer = new BufferedWriter(
+                new OutputStreamWriter(
+                    new FileOutputStream(file, true), ENCODING));
+        }
+        catch (IOException e)
+        {
+            logger.error("Failed to open " + file, e);
+        }
+    }
+
+    /**
+     * Appends given record to the file.
+     */
+    private void appendRecord(String record)
+    {
+        if (writer == null)
+            return;
+
+        try
+        {
+            writer.write(record);
+            writer.write('\n');
+
+            recordCount++;
+        }
+        catch (IOException e)
+        {
+            logger.error("Failed to write session record to " + file, e);
+        }
+    }
+
+    /**
+     * Flushes the records appended to the file.
+     */
+    private void flush()
+    {
+        if (writer == null)
+            return;
+
+        try
+        {
+            writer.flush();
+        }
+        catch (IOException e)
+        {
+            logger.error("Failed to write session records to " + file, e);
+        }
+    }
+
+    /**
+     * Creates empty file which can be read and written by the owner only.
+     */
+    private static void createOwnerOnly(File file)
+        throws IOException
+    {
+        if (file.exists() && !file.delete())
+            throw new IOException("Failed to delete " + file);
+
+        if (!file.createNewFile())
+            throw new IOException("Failed to create " + file);
+
+        restrictToOwner(file);
+    }
+
+    /**
+     * Makes given file readable and writable by the owner only.
+     */
+    private static void restrictToOwner(File file)
+    {
+        boolean restricted
+            = file.setReadable(false, false)
+                && file.setWritable(false, false)
+                && file.setReadable(true, true)
+                && file.setWritable(true, true);
+
+        if (!restricted)
+        {
+            logger.warn("Failed to restrict access to " + file);
+        }
+    }
+
+    private static String createSessionRecord(AuthenticationSession session)
+    {
+        StringBuilder record = new StringBuilder(RECORD_SESSION);
+        record.append(SEPARATOR).append(encode(session.getSessionId()));
+        record.append(SEPARATOR).append(encode(session.getMachineUID()));
+        record.append(SEPARATOR).append(encode(session.getUserIdentity()));
+        record.append(SEPARATOR).append(encode(session.getUserJabberId()));
+        record.append(SEPARATOR).append(session.getActivityTimestamp());
+        return record.toString();
+    }
+
+    private static String encode(String value)
+    {
+        if (value == null)
+            return "";
+        try
+        {
+            return URLEncoder.encode(value, ENCODING);
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            // UTF-8 is always supported
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String decode(String value)
+    {
+        try
+        {
+            return URLDecoder.decode(value, ENCODING);
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            // UTF-8 is always supported
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable)
+    {
+        if (closeable == null)
+            return;
+        try
+        {
+            closeable.close();
+        }
+        catch (IOException e)
+        {
+            logger.error("Failed to close " + closeable, e);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.auth;
+
+import java.io.*;
+import java.nio.charset.*;
+
+/**
+ * The page returned by {@link ShibbolethHandler} after successful login. The
+ * page consists of constant parts encoded to bytes once, when the template
+ * is created, and the values inserted between them for every response. Values
+ * are escaped for the context in which they appear(HTML text or JavaScript
+ * string literal).
+ *
+ * @author agent
+ */
+class LoginPageTemplate
+{
+    /**
+     * The charset used to encode the page.
+     */
+    static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * The content type of the page.
+     */
+    static final String CONTENT_TYPE = "text/html; charset=UTF-8";
+
+    /**
+     * The page which closes the popup window and passes session ID to the
+     * opener.
+     */
+    private static final String[] CLOSE_PAGE =
+        {
+            "<html><head><head/><body>\n" +
+            "<h1>Hello ",
+            // display name
+            "!<h1/>\n" +
+            "<script>\n" +
+            "(function() {\n" +
+            " var sessionId = '",
+            // session ID
+            "';\n" +
+            " localStorage.setItem('sessionId', sessionId);\n" +
+            " console.info('sessionID :' + sessionId);\n" +
+            "var opener = window.opener;\n" +
+            "if (opener) {\n" +
+            "   var res = opener.postMessage(" +
+            "      { sessionId: sessionId },\n" +
+            "      window.opener.location.href);\n" +
+            "   console.info('res: ', res);\n" +
+            "   window.close();\n" +
+            "} else {\n" +
+            "   console.error('No opener !');\n" +
+            "}\n" +
+            "})();\n</script>\n\n" +
+            "</body></html>\n"
+        };
+
+    /**
+     * The page which redirects back to the conference room.
+     */
+    private static final String[] REDIRECT_PAGE =
+        {
+            "<html><head><head/><body>\n" +
+            "<h1>Hello ",
+            // display name
+            "!<h1/>\n" +
+            "<h2>You should be redirected back to the conference soon..." +
+            "<h2/>\n" +
+            "<script>\n" +
+            "(function() {\n" +
+            " var sessionId = '",
+            // session ID
+            "';\n" +
+            " localStorage.setItem('sessionId', sessionId);\n" +
+            " console.info('sessionID :' + sessionId);\n" +
+            " window.location.href='../",
+            // room name
+            "';\n" +
+            "})();\n</script>\n\n" +
+            "</body></html>\n"
+        };
+
+    /**
+     * Encoded constant parts of {@link #CLOSE_PAGE}.
+     */
+    private final byte[][] closeChunks = encode(CLOSE_PAGE);
+
+    /**
+     * Encoded constant parts of {@link #REDIRECT_PAGE}.
+     */
+    private final byte[][] redirectChunks = encode(REDIRECT_PAGE);
+
+    /**
+     * Renders the page.
+     *
+     * @param displayName user's display name.
+     * @param sessionId authentication session ID.
+     * @param room the name of conference room to which the user will be
+     *             redirected or <tt>null</tt> if the popup window should be
+     *             closed instead.
+     *
+     * @return the page encoded with {@link #CHARSET}.
+     */
+    byte[] render(String displayName, String sessionId, String room)
+    {
+        byte[][] chunks = room == null ? closeChunks : redirectChunks;
+        byte[][] values
+            = room == null
+                ? new byte[][] {
+                        escapeHtml(displayName), escapeJs(sessionId) }
+                : new byte[][] {
+                        escapeHtml(displayName), escapeJs(sessionId),
+                        escapeJs(room) };
+
+        int length = 0;
+        for (byte[] chunk : chunks)
+        {
+            length += chunk.length;
+        }
+        for (byte[] value : values)
+        {
+            length += value.length;
+        }
+
+        ByteArrayOutputStream page = new ByteArrayOutputStream(length);
+        for (int i = 0; i < chunks.length; i++)
+        {
+            page.write(chunks[i], 0, chunks[i].length);
+            if (i < values.length)
+            {
+                page.write(values[i], 0, values[i].length);
+            }
+        }
+        return page.toByteArray();
+    }
+
+    private static byte[][] encode(String[] parts)
+    {
+        byte[][] chunks = new byte[parts.length][];
+        for (int i = 0; i < parts.length; i++)
+        {
+            chunks[i] = parts[i].getBytes(CHARSET);
+        }
+        return chunks;
+    }
+
+    private static byte[] escapeHtml(String value)
+    {
+        StringBuilder escaped = new StringBuilder(value.length() + 16);
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            switch (c)
+            {
+            case '<':
+                escaped.append("&lt;");
+                break;
+            case '>':
+                escaped.append("&gt;");
+                break;
+            case '&':
+                escaped.append("&amp;");
+                break;
+            case '"':
+                escaped.append("&quot;");
+                break;
+            case '\'':
+                escaped.append("&#39;");
+                break;
+            default:
+                escaped.append(c);
+            }
+        }
+        return escaped.toString().getBytes(CHARSET);
+    }
+
+    private static byte[] escapeJs(String value)
+    {
+        StringBuilder escaped = new StringBuilder(value.length() + 16);
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            if (c == '\'' || c == '"' || c == '\\' || c == '/'
+                    || c == '<' || c == '>' || c < 0x20)
+            {
+                escaped.append(String.format("\\u%04x", (int) c));
+            }
+            else
+            {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString().getBytes(CHARSET);
+    }
+}
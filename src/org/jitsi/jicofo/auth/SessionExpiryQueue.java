@@ -0,0 +1,174 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.auth;
+
+import java.util.*;
+
+/**
+ * Keeps {@link AuthenticationSession}s ordered by their activity timestamp,
+ * so that the sessions which are due to expire can be found without looking
+ * at all the others. Sessions are grouped in buckets of fixed time
+ * resolution. The session is not moved when it is touched, so that the
+ * activity timestamp can be renewed without access to the queue. Instead,
+ * when the bucket where the session has been queued becomes due and
+ * the session turns out to be still active, it is moved to the bucket of its
+ * current activity timestamp.
+ * <p>
+ * The buckets are kept in <tt>TreeMap</tt>, so adding and removing
+ * the session costs O(log b), where b is the number of buckets(at most
+ * the session lifetime divided by the resolution). Touching the session costs
+ * nothing, as it is moved only when its old bucket becomes due.
+ * <p>
+ * This class is not thread safe - it is used under the lock of
+ * {@link AuthenticationSessionStore}.
+ *
+ * @author agent
+ */
+class SessionExpiryQueue
+{
+    /**
+     * The time span of single bucket in milliseconds.
+     */
+    private final long resolution;
+
+    /**
+     * Buckets of sessions indexed by activity timestamp divided by
+     * {@link #resolution}.
+     */
+    private final TreeMap<Long, Set<AuthenticationSession>> buckets
+        = new TreeMap<Long, Set<AuthenticationSession>>();
+
+    /**
+     * The buckets where the sessions have been queued, which can be older
+     * than their current activity timestamp.
+     */
+    private final Map<AuthenticationSession, Long> queuedBuckets
+        = new HashMap<AuthenticationSession, Long>();
+
+    /**
+     * Creates new instance of <tt>SessionExpiryQueue</tt>.
+     *
+     * @param resolution the time span of single bucket in milliseconds.
+     */
+    SessionExpiryQueue(long resolution)
+    {
+        if (resolution <= 0)
+            throw new IllegalArgumentException("resolution: " + resolution);
+
+        this.resolution = resolution;
+    }
+
+    /**
+     * Adds given session to the queue.
+     */
+    void add(AuthenticationSession session)
+    {
+        Long bucket = getBucket(session.getActivityTimestamp());
+
+        Long oldBucket = queuedBuckets.put(session, bucket);
+        if (oldBucket != null)
+        {
+            removeFromBucket(session, oldBucket);
+        }
+
+        Set<AuthenticationSession> sessions = buckets.get(bucket);
+        if (sessions == null)
+        {
+            sessions = new HashSet<AuthenticationSession>();
+            buckets.put(bucket, sessions);
+        }
+        sessions.add(session);
+    }
+
+    /**
+     * Removes given session from the queue.
+     */
+    void remove(AuthenticationSession session)
+    {
+        Long bucket = queuedBuckets.remove(session);
+        if (bucket != null)
+        {
+            removeFromBucket(session, bucket);
+        }
+    }
+
+    private void removeFromBucket(AuthenticationSession session, Long bucket)
+    {
+        Set<AuthenticationSession> sessions = buckets.get(bucket);
+        if (sessions != null)
+        {
+            sessions.remove(session);
+            if (sessions.isEmpty())
+            {
+                buckets.remove(bucket);
+            }
+        }
+    }
+
+    /**
+     * Removes from the queue and returns the sessions which have been
+     * inactive for longer than given <tt>lifetime</tt>. Only the buckets
+     * which are due are visited and the sessions found there which have been
+     * touched in the meantime are moved to the bucket of their current
+     * activity timestamp.
+     *
+     * @param lifetime session lifetime in milliseconds.
+     *
+     * @return the list of expired sessions(can be empty).
+     */
+    List<AuthenticationSession> pollExpired(long lifetime)
+    {
+        List<AuthenticationSession> expired
+            = new ArrayList<AuthenticationSession>();
+
+        long threshold = System.currentTimeMillis() - lifetime;
+        Long lastDueBucket = getBucket(threshold);
+
+        while (!buckets.isEmpty())
+        {
+            Long bucket = buckets.firstKey();
+            if (bucket > lastDueBucket)
+                break;
+
+            Set<AuthenticationSession> sessions = buckets.remove(bucket);
+            for (AuthenticationSession session : sessions)
+            {
+                if (session.getActivityTimestamp() < threshold)
+                {
+                    queuedBuckets.remove(session);
+                    expired.add(session);
+                }
+                else
+                {
+                    // Touched since it was queued, it lands in the last due
+                    // bucket or a later one
+                    add(session);
+                }
+            }
+
+            if (bucket.equals(lastDueBucket))
+            {
+                // Visited already, the sessions put back are not expired
+                break;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Returns the number of sessions in the queue.
+     */
+    int size()
+    {
+        return queuedBuckets.size();
+    }
+
+    private Long getBucket(long timestamp)
+    {
+        return timestamp / resolution;
+    }
+}
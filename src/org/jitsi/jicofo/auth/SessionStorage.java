@@ -0,0 +1,62 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.auth;
+
+import java.util.*;
+
+/**
+ * Interface for persistent storage of {@link AuthenticationSession}s which
+ * allows authentication sessions to survive focus restarts. It is notified
+ * by {@link AuthenticationSessionStore} about every change made to the
+ * sessions.
+ *
+ * @author agent
+ */
+public interface SessionStorage
+{
+    /**
+     * Loads the sessions saved in this storage.
+     *
+     * @return the list of sessions restored from the storage(including the
+     *         ones which might have expired in the meantime).
+     */
+    List<AuthenticationSession> load();
+
+    /**
+     * Called when new session has been created.
+     *
+     * @param session the session which has been created.
+     */
+    void sessionAdded(AuthenticationSession session);
+
+    /**
+     * Called when the JID or activity timestamp of the session has changed.
+     *
+     * @param session the session which has been modified.
+     */
+    void sessionUpdated(AuthenticationSession session);
+
+    /**
+     * Called when the session has been destroyed or has expired.
+     *
+     * @param session the session which has been removed.
+     */
+    void sessionRemoved(AuthenticationSession session);
+
+    /**
+     * Gives the storage the opportunity to do housekeeping work like
+     * compaction. Called periodically from the background thread.
+     *
+     * @param sessions all the sessions that are currently active.
+     */
+    void maintain(Collection<AuthenticationSession> sessions);
+
+    /**
+     * Releases the resources used by this storage.
+     */
+    void close();
+}
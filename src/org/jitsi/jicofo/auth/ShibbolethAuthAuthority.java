@@ -160,7 +160,7 @@ public class ShibbolethAuthAuthority
      */
     String authenticateUser(String machineUID, String authIdentity)
     {
-        synchronized (syncRoot)
+        synchronized (getLock(machineUID))
         {
             AuthenticationSession session
                 = findSessionForIdentity(machineUID, authIdentity);
@@ -11,6 +11,7 @@ import net.java.sip.communicator.util.Logger;
 import org.eclipse.jetty.server.*;
 import org.eclipse.jetty.server.handler.*;
 
+import org.jitsi.jicofo.util.*;
 import org.jitsi.protocol.xmpp.util.*;
 import org.jitsi.util.*;
 
@@ -18,6 +19,7 @@ import javax.servlet.*;
 import javax.servlet.http.*;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 /**
  * Implements a Jetty <tt>Handler</tt> which is meant to be used as a servlet
@@ -40,8 +42,40 @@ class ShibbolethHandler
     private static final Logger logger
             = Logger.getLogger(ShibbolethHandler.class);
 
+    /**
+     * How often the summary of login statistics is logged(in milliseconds).
+     */
+    private static final long STATS_LOG_INTERVAL = 60000L;
+
     private final ShibbolethAuthAuthority shibbolethAuthAuthority;
 
+    /**
+     * The page returned to the user after successful login.
+     */
+    private final LoginPageTemplate loginPage = new LoginPageTemplate();
+
+    /**
+     * The rate of login requests measured over the last minute.
+     */
+    private final RateMeter requestRate = new RateMeter(60000L, 12);
+
+    /**
+     * The time spent on handling login requests.
+     */
+    private final LatencyStats latency = new LatencyStats();
+
+    /**
+     * The number of login requests which have failed.
+     */
+    private final AtomicLong failedRequests = new AtomicLong();
+
+    /**
+     * The time when the summary of login statistics has been logged last
+     * time.
+     */
+    private final AtomicLong lastStatsLog
+        = new AtomicLong(System.currentTimeMillis());
+
     /**
      * Initializes a new <tt>ShibbolethHandler</tt> instance.
      *
@@ -64,17 +98,77 @@ class ShibbolethHandler
             throws IOException,
             ServletException
     {
+        long start = System.nanoTime();
+
+        requestRate.hit();
         try
         {
-            doHandle(target, baseRequest, request, response);
+            if (!doHandle(target, baseRequest, request, response))
+            {
+                failedRequests.incrementAndGet();
+            }
         }
         catch(Exception e)
         {
             logger.error(e, e);
 
+            failedRequests.incrementAndGet();
+
             response.sendError(
                 HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
         }
+        finally
+        {
+            latency.record((System.nanoTime() - start) / 1000000L);
+
+            maybeLogStats();
+        }
+    }
+
+    /**
+     * Returns the number of login requests received within the last minute.
+     */
+    public long getRequestRate()
+    {
+        return requestRate.getCount();
+    }
+
+    /**
+     * Returns the statistics of the time spent on handling login requests.
+     */
+    public LatencyStats getLatencyStats()
+    {
+        return latency;
+    }
+
+    /**
+     * Returns the number of login requests which have failed.
+     */
+    public long getFailedRequestCount()
+    {
+        return failedRequests.get();
+    }
+
+    /**
+     * Logs the summary of login statistics if {@link #STATS_LOG_INTERVAL}
+     * has elapsed since it has been logged last time.
+     */
+    private void maybeLogStats()
+    {
+        long now = System.currentTimeMillis();
+        long last = lastStatsLog.get();
+        if (now - last < STATS_LOG_INTERVAL
+                || !lastStatsLog.compareAndSet(last, now))
+        {
+            return;
+        }
+
+        logger.info(
+            "Login requests in last minute: " + getRequestRate()
+                + ", total: " + latency.getCount()
+                + ", failed: " + getFailedRequestCount()
+                + ", avg time: " + latency.getAverage() + " ms"
+                + ", max time: " + latency.getMax() + " ms");
     }
 
     /**
@@ -126,7 +220,13 @@ class ShibbolethHandler
         return value;
     }
 
-    private void doHandle(
+    /**
+     * Handles login request.
+     *
+     * @return <tt>true</tt> if the user has been authenticated or
+     *         <tt>false</tt> if an error has been sent in response.
+     */
+    private boolean doHandle(
         String target,
         Request baseRequest,
         HttpServletRequest request,
@@ -145,7 +245,7 @@ class ShibbolethHandler
             response.sendError(
                 HttpServletResponse.SC_BAD_REQUEST,
                 "Missing mandatory parameter 'room'");
-            return;
+            return false;
         }
         // Extract room name from MUC address
         room = MucUtil.extractName(room);
@@ -156,7 +256,7 @@ class ShibbolethHandler
             response.sendError(
                 HttpServletResponse.SC_BAD_REQUEST,
                 "Missing mandatory parameter 'machineUID'");
-            return;
+            return false;
         }
 
         // Check 'mail' attribute which should be set by Shibboleth through AJP
@@ -166,7 +266,7 @@ class ShibbolethHandler
             response.sendError(
                 HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
                 "Attribute 'mail' not provided - check server configuration");
-            return;
+            return false;
         }
 
         // User authenticated
@@ -177,11 +277,9 @@ class ShibbolethHandler
             response.sendError(
                 HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
                     "Authentication failed");
-            return;
+            return false;
         }
 
-        PrintWriter responseWriter = response.getWriter();
-
         String displayName = getShibAttr(request, "displayName");
         if (displayName == null)
         {
@@ -191,48 +289,16 @@ class ShibbolethHandler
         // Close this window or redirect ?
         boolean close = "true".equalsIgnoreCase(request.getParameter("close"));
 
-        responseWriter.println("<html><head><head/><body>");
-        responseWriter.println("<h1>Hello " + displayName + "!<h1/>");
-        if (!close)
-        {
-            responseWriter.println(
-                "<h2>You should be redirected back to the conference soon..." +
-                        "<h2/>");
-        }
-
-        // Store session-id script
-        String script =
-            "<script>\n" +
-                "(function() {\n" +
-                " var sessionId = '" + sessionId + "';\n" +
-                " localStorage.setItem('sessionId', sessionId);\n" +
-                " console.info('sessionID :' + sessionId);\n";
-
-        if (close)
-        {
-            // Pass session id and close the popup
-            script += "var opener = window.opener;\n"+
-                      "if (opener) {\n"+
-                      "   var res = opener.postMessage(" +
-                      "      { sessionId: sessionId },\n" +
-                      "      window.opener.location.href);\n"+
-                      "   console.info('res: ', res);\n" +
-                      "   window.close();\n"+
-                      "} else {\n" +
-                      "   console.error('No opener !');\n"+
-                      "}\n";
-        }
-        else
-        {
-            // Redirect back to the conference room
-            script += " window.location.href='../"+room+"';\n";
-        }
-
-        responseWriter.println(script +"})();\n</script>\n");
-
-        responseWriter.println("</body></html>");
+        byte[] page
+            = loginPage.render(displayName, sessionId, close ? null : room);
 
         response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(LoginPageTemplate.CONTENT_TYPE);
+        response.setContentLength(page.length);
+        response.getOutputStream().write(page);
+
         baseRequest.setHandled(true);
+
+        return true;
     }
 }
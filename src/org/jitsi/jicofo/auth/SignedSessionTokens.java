@@ -0,0 +1,354 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.auth;
+
+import net.java.sip.communicator.util.*;
+
+import javax.crypto.*;
+import javax.crypto.spec.*;
+import java.io.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Issues and verifies stateless authentication session tokens. The token
+ * carries user's identity, machine UID and expiration time and is signed
+ * with HMAC-SHA256 using the secret shared by all focus instances, so any of
+ * them can verify the token without access to the session created by
+ * another instance.
+ * <p>
+ * Token format: base64url(payload) + '.' + base64url(HMAC(payload)).
+ * <p>
+ * Tokens destroyed with logout are kept on the revocation list of the
+ * instance which has processed the logout until they would expire anyway.
+ *
+ * @author agent
+ */
+public class SignedSessionTokens
+{
+    /**
+     * The logger.
+     */
+    private final static Logger logger
+        = Logger.getLogger(SignedSessionTokens.class);
+
+    /**
+     * The name of MAC algorithm used to sign the tokens.
+     */
+    private final static String MAC_ALGORITHM = "HmacSHA256";
+
+    /**
+     * The version of token payload format.
+     */
+    private final static byte VERSION = 1;
+
+    /**
+     * The key used to sign the tokens.
+     */
+    private final SecretKeySpec key;
+
+    /**
+     * Token lifetime in milliseconds.
+     */
+    private final long lifetime;
+
+    /**
+     * Per thread <tt>Mac</tt> instances, so that the tokens can be verified
+     * concurrently without creating new <tt>Mac</tt> every time.
+     */
+    private final ThreadLocal<Mac> macs = new ThreadLocal<Mac>()
+    {
+        @Override
+        protected Mac initialValue()
+        {
+            try
+            {
+                Mac mac = Mac.getInstance(MAC_ALGORITHM);
+                mac.init(key);
+                return mac;
+            }
+            catch (GeneralSecurityException e)
+            {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    /**
+     * Random used to generate token nonces.
+     */
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * Revoked token nonces mapped to token expiration time.
+     */
+    private final ConcurrentMap<Long, Long> revoked
+        = new ConcurrentHashMap<Long, Long>();
+
+    /**
+     * Creates new instance of <tt>SignedSessionTokens</tt>.
+     *
+     * @param secret the secret shared by all focus instances used to sign
+     *               the tokens.
+     * @param lifetime token lifetime in milliseconds.
+     */
+    public SignedSessionTokens(byte[] secret, long lifetime)
+    {
+        if (secret == null || secret.length == 0)
+            throw new IllegalArgumentException("secret");
+        if (lifetime <= 0)
+            throw new IllegalArgumentException("lifetime: " + lifetime);
+
+        this.key = new SecretKeySpec(secret, MAC_ALGORITHM);
+        this.lifetime = lifetime;
+
+        // Fail early if the algorithm is not available
+        macs.get();
+    }
+
+    /**
+     * Returns token lifetime in milliseconds.
+     */
+    public long getLifetime()
+    {
+        return lifetime;
+    }
+
+    /**
+     * Issues new token.
+     *
+     * @param machineUID user's machine UID.
+     * @param identity user's authenticated identity.
+     *
+     * @return signed token string.
+     */
+    public String issue(String machineUID, String identity)
+    {
+        long issued = System.currentTimeMillis();
+        Token token
+            = new Token(
+                    machineUID, identity,
+                    issued, issued + lifetime, random.nextLong());
+
+        byte[] payload = token.toBytes();
+
+        return encode(payload) + "." + encode(macs.get().doFinal(payload));
+    }
+
+    /**
+     * Verifies given token.
+     *
+     * @param tokenString the token string to be verified.
+     *
+     * @return the <tt>Token</tt> or <tt>null</tt> if the token is invalid,
+     *         has expired or has been revoked.
+     */
+    public Token verify(String tokenString)
+    {
+        if (tokenString == null)
+            return null;
+
+        int dot = tokenString.indexOf('.');
+        if (dot <= 0)
+            return null;
+
+        try
+        {
+            byte[] payload = decode(tokenString.substring(0, dot));
+            byte[] signature = decode(tokenString.substring(dot + 1));
+
+            if (!MessageDigest.isEqual(
+                    macs.get().doFinal(payload), signature))
+            {
+                // The token is a credential, so it is never logged
+                logger.warn("Invalid token signature");
+                return null;
+            }
+
+            Token token = Token.fromBytes(payload);
+            if (token == null
+                    || token.getExpires() < System.currentTimeMillis()
+                    || revoked.containsKey(token.nonce))
+            {
+                return null;
+            }
+            return token;
+        }
+        catch (IOException e)
+        {
+            logger.warn("Malformed token");
+            return null;
+        }
+        catch (IllegalArgumentException e)
+        {
+            logger.warn("Malformed token");
+            return null;
+        }
+    }
+
+    /**
+     * Revokes given token, so that it will not be accepted until it expires.
+     *
+     * @param tokenString the token to be revoked.
+     *
+     * @return <tt>true</tt> if the token was valid and has been revoked.
+     */
+    public boolean revoke(String tokenString)
+    {
+        Token token = verify(tokenString);
+        if (token == null)
+            return false;
+
+        revoked.put(token.nonce, token.getExpires());
+        return true;
+    }
+
+    /**
+     * Removes expired tokens from the revocation list.
+     */
+    public void purgeRevoked()
+    {
+        long now = System.currentTimeMillis();
+
+        Iterator<Long> expires = revoked.values().iterator();
+        while (expires.hasNext())
+        {
+            if (expires.next() < now)
+            {
+                expires.remove();
+            }
+        }
+    }
+
+    private static String encode(byte[] data)
+    {
+        String base64 = new String(
+                net.java.sip.communicator.util.Base64.encode(data));
+
+        // URL safe variant without padding
+        int end = base64.length();
+        while (end > 0 && base64.charAt(end - 1) == '=')
+        {
+            end--;
+        }
+        return base64.substring(0, end).replace('+', '-').replace('/', '_');
+    }
+
+    private static byte[] decode(String data)
+    {
+        StringBuilder base64 = new StringBuilder(data.length() + 3);
+        base64.append(data.replace('-', '+').replace('_', '/'));
+        while (base64.length() % 4 != 0)
+        {
+            base64.append('=');
+        }
+
+        byte[] decoded
+            = net.java.sip.communicator.util.Base64.decode(base64.toString());
+        if (decoded == null)
+            throw new IllegalArgumentException("Invalid base64");
+
+        return decoded;
+    }
+
+    /**
+     * The content of verified session token.
+     */
+    public static class Token
+    {
+        private final String machineUID;
+
+        private final String identity;
+
+        private final long issued;
+
+        private final long expires;
+
+        private final long nonce;
+
+        private Token(String machineUID, String identity,
+                      long issued, long expires, long nonce)
+        {
+            this.machineUID = machineUID;
+            this.identity = identity;
+            this.issued = issued;
+            this.expires = expires;
+            this.nonce = nonce;
+        }
+
+        /**
+         * Returns user's machine UID.
+         */
+        public String getMachineUID()
+        {
+            return machineUID;
+        }
+
+        /**
+         * Returns user's authenticated identity.
+         */
+        public String getIdentity()
+        {
+            return identity;
+        }
+
+        /**
+         * Returns the time when the token has been issued.
+         */
+        public long getIssued()
+        {
+            return issued;
+        }
+
+        /**
+         * Returns the time when the token expires.
+         */
+        public long getExpires()
+        {
+            return expires;
+        }
+
+        private byte[] toBytes()
+        {
+            try
+            {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+
+                out.writeByte(VERSION);
+                out.writeUTF(machineUID);
+                out.writeUTF(identity);
+                out.writeLong(issued);
+                out.writeLong(expires);
+                out.writeLong(nonce);
+                out.flush();
+
+                return bytes.toByteArray();
+            }
+            catch (IOException e)
+            {
+                // Not thrown by ByteArrayOutputStream
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private static Token fromBytes(byte[] payload)
+            throws IOException
+        {
+            DataInputStream in
+                = new DataInputStream(new ByteArrayInputStream(payload));
+
+            if (in.readByte() != VERSION)
+                return null;
+
+            return new Token(
+                in.readUTF(), in.readUTF(),
+                in.readLong(), in.readLong(), in.readLong());
+        }
+    }
+}
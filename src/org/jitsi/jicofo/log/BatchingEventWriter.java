@@ -0,0 +1,267 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.log;
+
+import org.jitsi.util.*;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Takes events from {@link EventBuffer} on its own thread and passes them to
+ * {@link BatchHandler} in batches. The batch is flushed as soon as it
+ * reaches the flush size or when the flush interval elapses, whichever
+ * comes first, so the handler is called at most once per event burst and
+ * the events never wait longer than the flush interval.
+ *
+ * @param <T> the type of the events.
+ *
+ * @author agent
+ */
+class BatchingEventWriter<T>
+    implements Runnable
+{
+    /**
+     * The logger instance used by this class.
+     */
+    private final static Logger logger
+            = Logger.getLogger(BatchingEventWriter.class);
+
+    /**
+     * Writes batches of events.
+     *
+     * @param <T> the type of the events.
+     */
+    interface BatchHandler<T>
+    {
+        /**
+         * Writes given batch of events.
+         *
+         * @param batch the events to be written. The list is reused after
+         *              the method returns.
+         *
+         * @throws Exception if the batch could not be written. The events are
+         *         counted as failed and are not retried.
+         */
+        void writeBatch(List<T> batch)
+            throws Exception;
+    }
+
+    /**
+     * The buffer from which the events are taken.
+     */
+    private final EventBuffer<T> buffer;
+
+    /**
+     * The handler which writes the batches.
+     */
+    private final BatchHandler<T> handler;
+
+    /**
+     * The maximal number of events in single batch.
+     */
+    private final int flushSize;
+
+    /**
+     * The maximal time in milliseconds for which the events are held before
+     * being flushed.
+     */
+    private final long flushInterval;
+
+    /**
+     * The number of events written successfully.
+     */
+    private final AtomicLong writtenCount = new AtomicLong();
+
+    /**
+     * The number of events which failed to be written.
+     */
+    private final AtomicLong failedCount = new AtomicLong();
+
+    /**
+     * The number of batches written.
+     */
+    private final AtomicLong batchCount = new AtomicLong();
+
+    /**
+     * The writer thread.
+     */
+    private Thread thread;
+
+    /**
+     * Whether the writer is running.
+     */
+    private volatile boolean running;
+
+    /**
+     * The number of dropped events which has been logged last time.
+     */
+    private long loggedDroppedCount;
+
+    /**
+     * Creates new instance of <tt>BatchingEventWriter</tt>.
+     *
+     * @param buffer the buffer from which the events will be taken.
+     * @param handler the handler which writes the batches.
+     * @param flushSize the maximal number of events in single batch.
+     * @param flushInterval the maximal time in milliseconds for which the
+     *                      events are held before being flushed.
+     */
+    BatchingEventWriter(EventBuffer<T> buffer,
+                        BatchHandler<T> handler,
+                        int flushSize,
+                        long flushInterval)
+    {
+        if (flushSize <= 0)
+            throw new IllegalArgumentException("flushSize: " + flushSize);
+        if (flushInterval <= 0)
+            throw new IllegalArgumentException(
+                "flushInterval: " + flushInterval);
+
+        this.buffer = buffer;
+        this.handler = handler;
+        this.flushSize = flushSize;
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * Starts the writer thread.
+     *
+     * @param name the name of the writer thread.
+     */
+    synchronized void start(String name)
+    {
+        if (thread != null)
+            throw new IllegalStateException("already started");
+
+        running = true;
+
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the writer thread after it flushes the events which are in
+     * the buffer.
+     */
+    void stop()
+    {
+        Thread thread;
+        synchronized (this)
+        {
+            thread = this.thread;
+            this.thread = null;
+            running = false;
+        }
+        if (thread == null)
+            return;
+
+        buffer.wakeUp();
+        try
+        {
+            thread.join(flushInterval + 5000L);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run()
+    {
+        List<T> batch = new ArrayList<T>(flushSize);
+
+        while (running)
+        {
+            try
+            {
+                buffer.await(flushSize, flushInterval);
+            }
+            catch (InterruptedException e)
+            {
+                break;
+            }
+
+            flush(batch);
+        }
+
+        // Write what is left
+        while (buffer.size() > 0)
+        {
+            flush(batch);
+        }
+    }
+
+    /**
+     * Takes one batch from the buffer and writes it.
+     */
+    private void flush(List<T> batch)
+    {
+        if (buffer.drainTo(batch, flushSize) == 0)
+            return;
+
+        try
+        {
+            handler.writeBatch(batch);
+
+            writtenCount.addAndGet(batch.size());
+            batchCount.incrementAndGet();
+        }
+        catch (Throwable t)
+        {
+            failedCount.addAndGet(batch.size());
+
+            logger.error(
+                "Failed to write " + batch.size() + " events: " + t, t);
+            if (t instanceof ThreadDeath)
+                throw (ThreadDeath) t;
+        }
+        finally
+        {
+            batch.clear();
+        }
+
+        long dropped = buffer.getDroppedCount();
+        if (dropped != loggedDroppedCount)
+        {
+            logger.warn(
+                "Dropped " + (dropped - loggedDroppedCount)
+                    + " events, because the buffer was full(total: "
+                    + dropped + ")");
+            loggedDroppedCount = dropped;
+        }
+    }
+
+    /**
+     * Returns the number of events written successfully.
+     */
+    long getWrittenCount()
+    {
+        return writtenCount.get();
+    }
+
+    /**
+     * Returns the number of events which failed to be written.
+     */
+    long getFailedCount()
+    {
+        return failedCount.get();
+    }
+
+    /**
+     * Returns the number of batches written.
+     */
+    long getBatchCount()
+    {
+        return batchCount.get();
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.log;
+
+import java.util.*;
+
+/**
+ * Bounded ring buffer which decouples the threads producing the events from
+ * the thread which writes them. Adding an event never blocks - when
+ * the buffer is full the event is dropped according to
+ * {@link OverflowPolicy} and the drop is counted.
+ *
+ * @param <T> the type of buffered events.
+ *
+ * @author agent
+ */
+class EventBuffer<T>
+{
+    /**
+     * What to do when an event is added to full buffer.
+     */
+    enum OverflowPolicy
+    {
+        /**
+         * Drop the event being added.
+         */
+        DROP_NEWEST,
+
+        /**
+         * Drop the oldest event in the buffer to make room for the one
+         * being added.
+         */
+        DROP_OLDEST
+    }
+
+    /**
+     * The ring.
+     */
+    private final Object[] events;
+
+    /**
+     * The overflow policy.
+     */
+    private final OverflowPolicy overflowPolicy;
+
+    /**
+     * The index of the oldest event.
+     */
+    private int head;
+
+    /**
+     * The number of events in the buffer.
+     */
+    private int count;
+
+    /**
+     * The number of events for which the consumer waits or
+     * <tt>Integer.MAX_VALUE</tt> if there's no one waiting.
+     */
+    private int awaitedCount = Integer.MAX_VALUE;
+
+    /**
+     * Whether {@link #wakeUp()} has been called and the waiting thread has
+     * not returned from {@link #await(int, long)} yet.
+     */
+    private boolean wakeUpRequested;
+
+    /**
+     * The number of events added to the buffer.
+     */
+    private long addedCount;
+
+    /**
+     * The number of events dropped because the buffer was full.
+     */
+    private long droppedCount;
+
+    /**
+     * Creates new instance of <tt>EventBuffer</tt>.
+     *
+     * @param capacity the maximal number of events held by the buffer.
+     * @param overflowPolicy what to do when the buffer is full.
+     */
+    EventBuffer(int capacity, OverflowPolicy overflowPolicy)
+    {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity: " + capacity);
+        if (overflowPolicy == null)
+            throw new NullPointerException("overflowPolicy");
+
+        this.events = new Object[capacity];
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Adds an event to the buffer. Does not block.
+     *
+     * @param event the event to be added.
+     *
+     * @return <tt>false</tt> if the buffer was full and some event has been
+     *         dropped.
+     */
+    synchronized boolean offer(T event)
+    {
+        addedCount++;
+
+        if (count == events.length)
+        {
+            droppedCount++;
+
+            if (overflowPolicy == OverflowPolicy.DROP_NEWEST)
+                return false;
+
+            // Overwrite the oldest
+            events[head] = event;
+            head = (head + 1) % events.length;
+            return false;
+        }
+
+        events[(head + count) % events.length] = event;
+        count++;
+
+        if (count >= awaitedCount)
+        {
+            notifyAll();
+        }
+        return true;
+    }
+
+    /**
+     * Waits until there are at least <tt>minCount</tt> events in the buffer,
+     * until <tt>timeout</tt> elapses or until {@link #wakeUp()} is called.
+     *
+     * @param minCount the number of events to wait for.
+     * @param timeout maximal time to wait in milliseconds.
+     *
+     * @return the number of events in the buffer.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    synchronized int await(int minCount, long timeout)
+        throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + timeout;
+        try
+        {
+            awaitedCount = minCount;
+
+            long remaining = timeout;
+            while (count < minCount && remaining > 0 && !wakeUpRequested)
+            {
+                wait(remaining);
+
+                remaining = deadline - System.currentTimeMillis();
+            }
+            return count;
+        }
+        finally
+        {
+            awaitedCount = Integer.MAX_VALUE;
+            wakeUpRequested = false;
+        }
+    }
+
+    /**
+     * Wakes up the thread waiting in {@link #await(int, long)}.
+     */
+    synchronized void wakeUp()
+    {
+        wakeUpRequested = true;
+        notifyAll();
+    }
+
+    /**
+     * Removes at most <tt>maxCount</tt> oldest events from the buffer and
+     * adds them to given collection.
+     *
+     * @return the number of events removed.
+     */
+    @SuppressWarnings("unchecked")
+    synchronized int drainTo(Collection<? super T> collection, int maxCount)
+    {
+        int drained = Math.min(count, maxCount);
+        for (int i = 0; i < drained; i++)
+        {
+            collection.add((T) events[head]);
+            events[head] = null;
+            head = (head + 1) % events.length;
+        }
+        count -= drained;
+        return drained;
+    }
+
+    /**
+     * Returns the number of events in the buffer.
+     */
+    synchronized int size()
+    {
+        return count;
+    }
+
+    /**
+     * Returns the number of events added to the buffer(including dropped).
+     */
+    synchronized long getAddedCount()
+    {
+        return addedCount;
+    }
+
+    /**
+     * Returns the number of events dropped because the buffer was full.
+     */
+    synchronized long getDroppedCount()
+    {
+        return droppedCount;
+    }
+}
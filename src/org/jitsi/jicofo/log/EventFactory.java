@@ -6,11 +6,10 @@
  */
 package org.jitsi.jicofo.log;
 
+import org.jitsi.jicofo.*;
 import org.jitsi.util.*;
 import org.jitsi.videobridge.eventadmin.*;
 import org.jitsi.videobridge.influxdb.*;
-import org.json.simple.*;
-import org.json.simple.parser.*;
 
 import java.util.*;
 
@@ -38,6 +37,35 @@ public class EventFactory
     public static final String PEER_CONNECTION_STATS_TOPIC
             = "org/jitsi/jicofo/PEER_CONNECTION_STATS";
 
+    /**
+     * The name of the topic of an event carrying aggregated PeerConnection
+     * stats.
+     */
+    public static final String PEER_CONNECTION_STATS_AGGREGATE_TOPIC
+            = "org/jitsi/jicofo/PEER_CONNECTION_STATS_AGGREGATE";
+
+    /**
+     * The aggregator of PeerConnection stats, created on first use.
+     */
+    private static volatile PeerConnectionStatsAggregator
+        peerConnectionStatsAggregator;
+
+    /**
+     * The parsers of PeerConnection stats. The stats are parsed on packet
+     * threads of the connections, so every thread gets its own parser and
+     * reuses its buffers.
+     */
+    private static final ThreadLocal<PeerConnectionStatsParser>
+        peerConnectionStatsParsers
+            = new ThreadLocal<PeerConnectionStatsParser>()
+            {
+                @Override
+                protected PeerConnectionStatsParser initialValue()
+                {
+                    return new PeerConnectionStatsParser();
+                }
+            };
+
     /**
      * Creates a new "endpoint display name changed" <tt>Event</tt>, which
      * conference ID to the JID of the associated MUC.
@@ -63,59 +91,29 @@ public class EventFactory
     }
 
     /**
-     * Creates an Event after parsing <tt>stats</tt> as JSON in the format
-     * used in Jitsi Meet.
+     * Creates the Events after parsing <tt>stats</tt> as JSON in the format
+     * used in Jitsi Meet. The raw points are included only for the documents
+     * sampled by {@link PeerConnectionStatsAggregator}, the values of
+     * aggregated stats are added to the aggregates and the aggregates of
+     * the windows which have ended are returned as separate event. The windows
+     * of the endpoints which do not send the stats anymore are closed by
+     * the timer, which sends their aggregates on its own.
      * @param conferenceId the ID of the conference.
      * @param endpointId the ID of the endpoint.
-     * @param stats the string representation of
-     * @return
+     * @param stats the string representation of the stats JSON.
+     * @return the list of <tt>Event</tt>s to be sent(can be empty).
      */
-    public static Event peerConnectionStats(
-            String conferenceId,
-            String endpointId,
+    public static List<Event> peerConnectionStats(
+            final String conferenceId,
+            final String endpointId,
             String stats)
     {
-        Object[] values;
-
-        try
-        {
-            values = parsePeerConnectionStats(conferenceId, endpointId, stats);
-        }
-        catch (Exception e)
-        {
-            logger.warn("Failed to parse PeerConnection stats JSON: " + e);
-            return null;
-        }
+        List<Event> events = new ArrayList<Event>(2);
+        final PeerConnectionStatsAggregator aggregator
+            = getPeerConnectionStatsAggregator();
+        PeerConnectionStatsParser parser = peerConnectionStatsParsers.get();
+        final long now = System.currentTimeMillis();
 
-        InfluxDBEvent influxDBEvent = new InfluxDBEvent("peer_connection_stats",
-                                LoggingHandler.PEER_CONNECTION_STATS_COLUMNS,
-                                values);
-
-        // We specifically add a "time" column
-        influxDBEvent.setUseLocalTime(false);
-
-
-        return new Event(
-                PEER_CONNECTION_STATS_TOPIC, makeProperties(influxDBEvent));
-    }
-
-    /**
-     * Parses <tt>statsStr</tt> as JSON in the format used by Jitsi Meet, and
-     * returns an Object[][] containing the values to be used in an
-     * <tt>Event</tt> for the given JSON.
-     * @param conferenceId the value to use for the conference_id field.
-     * @param endpointId the value to use for the endpoint_id field.
-     * @param statsStr the PeerConnection JSON string.
-     * @return an Object[][] containing the values to be used in an
-     * <tt>Event</tt> for the given JSON.
-     * @throws Exception if parsing fails for any reason.
-     */
-    private static Object[] parsePeerConnectionStats(
-            String conferenceId,
-            String endpointId,
-            String statsStr)
-        throws Exception
-    {
         // An example JSON in the format that we expect:
         // {
         //   "timestamps": [1, 2, 3],
@@ -141,54 +139,157 @@ public class EventFactory
         //     ["bweforvideo", "VideoBwe", {"googActualEncBitrate": "12", "googAvailableSendBandwidth": "78"}]
         // ]
 
-        JSONParser parser = new JSONParser();
-        JSONObject jsonObject = (JSONObject) parser.parse(statsStr);
-
-        List<Object[]> values = new LinkedList<Object[]>();
-        JSONArray timestamps = (JSONArray) jsonObject.get("timestamps");
-        JSONObject stats = (JSONObject) jsonObject.get("stats");
-
-        for (int i = 0; i < timestamps.size(); i++)
+        try
         {
-            long timestamp = (Long) timestamps.get(i);
+            parser.scan(stats);
 
-            JSONArray value = new JSONArray();
-            for (Object groupName : stats.keySet())
+            if (aggregator.countDocument(conferenceId, endpointId, now))
             {
-                JSONArray groupValue = new JSONArray();
-                JSONObject group = ((JSONObject) stats.get(groupName));
-                Object type = group.get("type");
-
-                groupValue.add(groupName);
-                groupValue.add(type);
-
-                JSONObject s = new JSONObject();
-                for (Object statName : group.keySet())
+                Object[] values = parser.buildPoints(conferenceId, endpointId);
+                if (values.length > 0)
                 {
-                    if ("type".equals(statName))
-                        continue;
+                    InfluxDBEvent influxDBEvent
+                        = new InfluxDBEvent(
+                                "peer_connection_stats",
+                                LoggingHandler.PEER_CONNECTION_STATS_COLUMNS,
+                                values);
 
-                    JSONArray statValues = (JSONArray) group.get(statName);
-                    s.put(statName, statValues.get(i));
-                }
-                groupValue.add(s);
+                    // We specifically add a "time" column
+                    influxDBEvent.setUseLocalTime(false);
 
-                value.add(groupValue);
+                    events.add(
+                        new Event(
+                                PEER_CONNECTION_STATS_TOPIC,
+                                makeProperties(influxDBEvent)));
+                }
             }
-            Object[] point
-                = new Object[LoggingHandler.PEER_CONNECTION_STATS_COLUMNS.length];
 
-            point[0] = timestamp;
-            point[1] = conferenceId;
-            point[2] = endpointId;
-            point[3] = value.toJSONString();
+            parser.readValues(
+                aggregator.getAggregatedStats(),
+                new PeerConnectionStatsParser.StatValueListener()
+                {
+                    @Override
+                    public void statValue(
+                            String group, String stat, double value)
+                    {
+                        aggregator.record(
+                            conferenceId, endpointId, group, stat, value, now);
+                    }
+                });
+        }
+        catch (Exception e)
+        {
+            logger.warn("Failed to parse PeerConnection stats JSON: " + e);
+        }
+        finally
+        {
+            parser.release();
+        }
 
-            values.add(point);
+        Event aggregateEvent = peerConnectionStatsAggregate(aggregator);
+        if (aggregateEvent != null)
+        {
+            events.add(aggregateEvent);
         }
 
-        return values.toArray();
+        return events;
+    }
+
+    /**
+     * Creates the Event with the aggregates of the windows which have ended.
+     *
+     * @return the <tt>Event</tt> or <tt>null</tt> if no window has ended.
+     */
+    private static Event peerConnectionStatsAggregate(
+            PeerConnectionStatsAggregator aggregator)
+    {
+        Object[] aggregates = aggregator.pollCompleted();
+        if (aggregates.length == 0)
+            return null;
+
+        InfluxDBEvent influxDBEvent
+            = new InfluxDBEvent(
+                    "peer_connection_stats_aggregate",
+                    LoggingHandler.PEER_CONNECTION_STATS_AGGREGATE_COLUMNS,
+                    aggregates);
+
+        // The "time" column is the start of the window
+        influxDBEvent.setUseLocalTime(false);
+
+        return new Event(
+                PEER_CONNECTION_STATS_AGGREGATE_TOPIC,
+                makeProperties(influxDBEvent));
+    }
+
+    /**
+     * Returns the aggregator of PeerConnection stats configured with
+     * the properties of <tt>ConfigurationService</tt>. Starts the timer which
+     * sweeps the aggregator when called for the first time.
+     */
+    private static PeerConnectionStatsAggregator
+        getPeerConnectionStatsAggregator()
+    {
+        PeerConnectionStatsAggregator aggregator
+            = peerConnectionStatsAggregator;
+        if (aggregator != null)
+            return aggregator;
+
+        synchronized (EventFactory.class)
+        {
+            if (peerConnectionStatsAggregator == null)
+            {
+                final PeerConnectionStatsAggregator newAggregator
+                    = PeerConnectionStatsAggregator.create(
+                            FocusBundleActivator.getConfigService());
+
+                // Closes the windows of the endpoints which have stopped
+                // sending the stats
+                Timer timer = new Timer("PeerConnectionStatsAggregator", true);
+                timer.scheduleAtFixedRate(
+                    new TimerTask()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            sweepPeerConnectionStats(newAggregator);
+                        }
+                    },
+                    PeerConnectionStatsAggregator.SWEEP_INTERVAL,
+                    PeerConnectionStatsAggregator.SWEEP_INTERVAL);
+
+                peerConnectionStatsAggregator = newAggregator;
+            }
+            return peerConnectionStatsAggregator;
+        }
     }
 
+    /**
+     * Closes the windows which have ended and sends their aggregates to
+     * <tt>EventAdmin</tt>. Runs on the timer thread.
+     */
+    private static void sweepPeerConnectionStats(
+            PeerConnectionStatsAggregator aggregator)
+    {
+        try
+        {
+            aggregator.sweep(System.currentTimeMillis());
+
+            Event event = peerConnectionStatsAggregate(aggregator);
+            if (event == null)
+                return;
+
+            EventAdmin eventAdmin = FocusBundleActivator.getEventAdmin();
+            if (eventAdmin != null)
+            {
+                eventAdmin.sendEvent(event);
+            }
+        }
+        catch (Throwable t)
+        {
+            // Do not let the exception cancel the timer
+            logger.error("Failed to sweep PeerConnection stats", t);
+        }
+    }
 
     /**
      * Creates a new "room conference" <tt>Event</tt> which binds a COLIBRI
@@ -6,9 +6,13 @@
  */
 package org.jitsi.jicofo.log;
 
+import org.jitsi.jicofo.*;
+import org.jitsi.service.configuration.*;
 import org.jitsi.util.*;
 
 import java.io.*;
+import java.nio.charset.*;
+import java.util.concurrent.*;
 import java.util.zip.*;
 
 /**
@@ -30,48 +34,267 @@ public class LogUtil
      */
     public static final String LOG_ID_PC_STATS = "PeerConnectionStats";
 
+    /**
+     * The name of configuration property which specifies the maximal size
+     * in bytes of the content of deflated log message after decompression.
+     * Messages exceeding the limit are dropped.
+     */
+    public static final String MAX_INFLATED_SIZE_PNAME
+        = "org.jitsi.jicofo.log.MAX_INFLATED_SIZE";
+
+    /**
+     * The default value of {@link #MAX_INFLATED_SIZE_PNAME}.
+     */
+    private static final int DEFAULT_MAX_INFLATED_SIZE = 1024 * 1024;
+
+    /**
+     * The maximal number of idle <tt>Inflater</tt>s kept in
+     * {@link #inflaters}.
+     */
+    private static final int INFLATER_POOL_SIZE = 16;
+
+    /**
+     * The size of the chunk in which the data is inflated.
+     */
+    private static final int CHUNK_SIZE = 8192;
+
+    /**
+     * The capacity above which the per thread buffers are not retained after
+     * use, so that single huge message does not pin the memory.
+     */
+    private static final int MAX_RETAINED_BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * The charset of log message contents.
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Idle <tt>Inflater</tt>s. Inflaters which do not fit in the pool are
+     * ended, so that their native memory is released immediately instead of
+     * on finalization.
+     */
+    private static final BlockingQueue<Inflater> inflaters
+        = new ArrayBlockingQueue<Inflater>(INFLATER_POOL_SIZE);
+
+    /**
+     * Per thread buffers used to decode and inflate the messages.
+     */
+    private static final ThreadLocal<Buffers> buffers
+        = new ThreadLocal<Buffers>()
+        {
+            @Override
+            protected Buffers initialValue()
+            {
+                return new Buffers();
+            }
+        };
+
+    /**
+     * The value of {@link #MAX_INFLATED_SIZE_PNAME} or <tt>-1</tt> if not
+     * read yet.
+     */
+    private static volatile int maxInflatedSize = -1;
+
     /**
      * Extracts the message to be logged from a <tt>LogPacketExtension</tt>.
      * Takes care of base64 decoding and (optionally) decompression.
      * @param log the <tt>LogPacketExtension</tt> to handle.
-     * @return the decoded message contained in <tt>log</tt>.
+     * @return the decoded message contained in <tt>log</tt> or <tt>null</tt>
+     * if the message could not be decoded or its decompressed size exceeds
+     * {@link #MAX_INFLATED_SIZE_PNAME}.
      */
     public static String getContent(LogPacketExtension log)
     {
         String messageBase64 = log.getMessage();
-        byte[] messageBytes
-                = net.java.sip.communicator.util.Base64.decode(messageBase64);
+        if (messageBase64 == null)
+            return null;
 
-        if (Boolean.parseBoolean(log.getTagValue("deflated")))
+        Buffers buffers = LogUtil.buffers.get();
+        try
+        {
+            Buffer decoded = buffers.decoded;
+            try
+            {
+                net.java.sip.communicator.util.Base64.decode(
+                        messageBase64, decoded);
+            }
+            catch (Exception e)
+            {
+                if (logger.isInfoEnabled())
+                    logger.info("Failed to decode log request content:" + e);
+                return null;
+            }
+
+            if (Boolean.parseBoolean(log.getTagValue("deflated")))
+            {
+                return inflate(decoded, buffers);
+            }
+            else
+            {
+                return decoded.toString(UTF8);
+            }
+        }
+        finally
         {
-            // nowrap=true, because we expect "raw" deflate
-            Inflater inflater = new Inflater(true);
-            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            buffers.recycle();
+        }
+    }
 
-            inflater.setInput(messageBytes);
-            byte[] buf = new byte[10000];
+    /**
+     * Inflates "raw" deflate data.
+     *
+     * @param deflated the data to be inflated.
+     * @param buffers the buffers of current thread.
+     *
+     * @return inflated data decoded as UTF-8 string or <tt>null</tt> if
+     *         the data is invalid or exceeds maximal allowed size.
+     */
+    private static String inflate(Buffer deflated, Buffers buffers)
+    {
+        int maxSize = getMaxInflatedSize();
+        Buffer result = buffers.inflated;
+        byte[] chunk = buffers.chunk;
+        Inflater inflater = acquireInflater();
+
+        try
+        {
+            inflater.setInput(deflated.getBuffer(), 0, deflated.size());
 
             do
             {
-                try
+                int len = inflater.inflate(chunk);
+                if (len == 0
+                        && (inflater.needsInput()
+                            || inflater.needsDictionary()))
                 {
-                    int len = inflater.inflate(buf);
-                    result.write(buf, 0, len);
+                    if (logger.isInfoEnabled())
+                        logger.info("Truncated log request content");
+                    return null;
                 }
-                catch (DataFormatException dfe)
+                if (result.size() + len > maxSize)
                 {
-                    if (logger.isInfoEnabled())
-                        logger.info(
-                                "Failed to inflate log request content:" + dfe);
+                    logger.warn(
+                        "Log request content exceeds " + maxSize
+                            + " bytes after decompression");
                     return null;
                 }
-            } while (!inflater.finished());
+                result.write(chunk, 0, len);
+            }
+            while (!inflater.finished());
 
-            return result.toString();
+            return result.toString(UTF8);
+        }
+        catch (DataFormatException dfe)
+        {
+            if (logger.isInfoEnabled())
+                logger.info("Failed to inflate log request content:" + dfe);
+            return null;
         }
-        else
+        finally
+        {
+            releaseInflater(inflater);
+        }
+    }
+
+    private static Inflater acquireInflater()
+    {
+        Inflater inflater = inflaters.poll();
+
+        // nowrap=true, because we expect "raw" deflate
+        return inflater != null ? inflater : new Inflater(true);
+    }
+
+    private static void releaseInflater(Inflater inflater)
+    {
+        inflater.reset();
+        if (!inflaters.offer(inflater))
         {
-            return new String(messageBytes);
+            inflater.end();
+        }
+    }
+
+    private static int getMaxInflatedSize()
+    {
+        int maxSize = maxInflatedSize;
+        if (maxSize < 0)
+        {
+            ConfigurationService config
+                = FocusBundleActivator.getConfigService();
+            if (config == null)
+                return DEFAULT_MAX_INFLATED_SIZE;
+
+            maxSize
+                = config.getInt(
+                        MAX_INFLATED_SIZE_PNAME, DEFAULT_MAX_INFLATED_SIZE);
+            maxInflatedSize = maxSize;
+        }
+        return maxSize;
+    }
+
+    /**
+     * The buffers used by single thread.
+     */
+    private static class Buffers
+    {
+        /**
+         * Base64 decoded message.
+         */
+        Buffer decoded = new Buffer();
+
+        /**
+         * Inflated message.
+         */
+        Buffer inflated = new Buffer();
+
+        /**
+         * The chunk to which the data is inflated before it is appended to
+         * {@link #inflated}.
+         */
+        final byte[] chunk = new byte[CHUNK_SIZE];
+
+        /**
+         * Prepares the buffers to be used again.
+         */
+        void recycle()
+        {
+            decoded = decoded.recycle();
+            inflated = inflated.recycle();
+        }
+    }
+
+    /**
+     * <tt>ByteArrayOutputStream</tt> which gives access to its buffer.
+     */
+    private static class Buffer
+        extends ByteArrayOutputStream
+    {
+        Buffer()
+        {
+            super(CHUNK_SIZE);
+        }
+
+        byte[] getBuffer()
+        {
+            return buf;
+        }
+
+        String toString(Charset charset)
+        {
+            return new String(buf, 0, count, charset);
+        }
+
+        /**
+         * Resets this buffer or returns new one if this one has grown too
+         * big to be retained.
+         */
+        Buffer recycle()
+        {
+            if (buf.length > MAX_RETAINED_BUFFER_SIZE)
+                return new Buffer();
+
+            reset();
+            return this;
         }
     }
 }
@@ -0,0 +1,88 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.log;
+
+import org.jitsi.videobridge.eventadmin.*;
+import org.osgi.framework.*;
+
+/**
+ * Starts the InfluxDB logging the same way as the Jitsi Videobridge
+ * activator does and, if jicofo's {@link LoggingHandler} has been created,
+ * registers it also as <tt>LoggingHandler</tt> service, so that its counters
+ * can be exported by the metrics. Stops the writer thread of the handler
+ * when the bundle is stopped.
+ *
+ * @author agent
+ */
+public class LoggingBundleActivator
+    extends org.jitsi.videobridge.influxdb.Activator
+{
+    /**
+     * The handler created by the Jitsi Videobridge activator or
+     * <tt>null</tt> if the logging is disabled.
+     */
+    private LoggingHandler handler;
+
+    /**
+     * The registration of {@link #handler} as <tt>LoggingHandler</tt>
+     * service.
+     */
+    private ServiceRegistration<LoggingHandler> registration;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void start(BundleContext bundleContext)
+        throws Exception
+    {
+        super.start(bundleContext);
+
+        // The handler is registered by the superclass as event handler only
+        for (ServiceReference<EventHandler> ref
+                : bundleContext.getServiceReferences(EventHandler.class, null))
+        {
+            EventHandler eventHandler = bundleContext.getService(ref);
+            if (eventHandler instanceof LoggingHandler)
+            {
+                handler = (LoggingHandler) eventHandler;
+                break;
+            }
+            bundleContext.ungetService(ref);
+        }
+
+        if (handler != null)
+        {
+            registration
+                = bundleContext.registerService(
+                        LoggingHandler.class, handler, null);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void stop(BundleContext bundleContext)
+        throws Exception
+    {
+        if (registration != null)
+        {
+            registration.unregister();
+            registration = null;
+        }
+
+        // No more events once the event handler is unregistered
+        super.stop(bundleContext);
+
+        if (handler != null)
+        {
+            handler.stop();
+            handler = null;
+        }
+    }
+}
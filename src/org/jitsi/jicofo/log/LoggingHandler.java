@@ -7,12 +7,23 @@
 package org.jitsi.jicofo.log;
 
 import org.jitsi.service.configuration.*;
+import org.jitsi.util.*;
 import org.jitsi.videobridge.eventadmin.*;
 import org.jitsi.videobridge.influxdb.*;
+import org.json.simple.*;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
 
 /**
  * Extends <tt>org.jitsi.videobridge.influxdb.LoggingHandler</tt> with
  * jicofo-specific functionality.
+ * <p>
+ * Events are not written to InfluxDB on the thread which has produced them.
+ * They are put into bounded {@link EventBuffer} and written in batches by
+ * {@link BatchingEventWriter}, so that slow or unavailable InfluxDB does not
+ * delay the signalling. When the buffer is full the events are dropped.
  *
  * @author Boris Grozev
  */
@@ -47,6 +58,24 @@ public class LoggingHandler
                     "value"
             };
 
+    /**
+     * The names of the columns of a "peer connection stats aggregate" event.
+     */
+    static final String[] PEER_CONNECTION_STATS_AGGREGATE_COLUMNS
+            = new String[]
+            {
+                    "time",
+                    "conference_id",
+                    "endpoint_id",
+                    "group_name",
+                    "stat",
+                    "min",
+                    "max",
+                    "mean",
+                    "last",
+                    "count"
+            };
+
     /**
      * The names of the columns of a "conference room" event.
      */
@@ -58,6 +87,76 @@ public class LoggingHandler
                     "focus"
             };
 
+    /**
+     * The name of configuration property which specifies the maximal number
+     * of events waiting to be written to InfluxDB.
+     */
+    public static final String BUFFER_SIZE_PNAME
+        = "org.jitsi.jicofo.log.EVENT_BUFFER_SIZE";
+
+    /**
+     * The name of configuration property which specifies the maximal number
+     * of events written to InfluxDB in single request.
+     */
+    public static final String FLUSH_SIZE_PNAME
+        = "org.jitsi.jicofo.log.FLUSH_SIZE";
+
+    /**
+     * The name of configuration property which specifies the maximal time
+     * in milliseconds for which the events are held before being written to
+     * InfluxDB.
+     */
+    public static final String FLUSH_INTERVAL_PNAME
+        = "org.jitsi.jicofo.log.FLUSH_INTERVAL";
+
+    /**
+     * The name of configuration property which specifies which events are
+     * dropped when the buffer is full: "DROP_NEWEST" or "DROP_OLDEST".
+     */
+    public static final String OVERFLOW_POLICY_PNAME
+        = "org.jitsi.jicofo.log.OVERFLOW_POLICY";
+
+    /**
+     * The default value of {@link #BUFFER_SIZE_PNAME}.
+     */
+    private static final int DEFAULT_BUFFER_SIZE = 10000;
+
+    /**
+     * The default value of {@link #FLUSH_SIZE_PNAME}.
+     */
+    private static final int DEFAULT_FLUSH_SIZE = 100;
+
+    /**
+     * The default value of {@link #FLUSH_INTERVAL_PNAME}.
+     */
+    private static final long DEFAULT_FLUSH_INTERVAL = 1000L;
+
+    /**
+     * Connect and read timeout of the requests to InfluxDB in milliseconds.
+     */
+    private static final int HTTP_TIMEOUT = 5000;
+
+    /**
+     * The logger instance used by this class.
+     */
+    private final static Logger logger
+            = Logger.getLogger(LoggingHandler.class);
+
+    /**
+     * The URL to which the events are posted.
+     */
+    private final URL url;
+
+    /**
+     * The buffer of events waiting to be written.
+     */
+    private final EventBuffer<QueuedEvent> buffer;
+
+    /**
+     * Writes the events from {@link #buffer}.
+     */
+    private final BatchingEventWriter<QueuedEvent> writer;
+
     /**
      * Initializes a new <tt>LoggingHandler</tt> instance. Exposes the
      * constructor as public.
@@ -66,6 +165,203 @@ public class LoggingHandler
         throws Exception
     {
         super(cfg);
+
+        // The properties have been validated by super
+        url = new URL(
+                cfg.getString(URL_BASE_PNAME)
+                    + "/db/" + cfg.getString(DATABASE_PNAME)
+                    + "/series?u=" + cfg.getString(USER_PNAME)
+                    + "&p=" + cfg.getString(PASS_PNAME));
+
+        EventBuffer.OverflowPolicy overflowPolicy
+            = EventBuffer.OverflowPolicy.DROP_NEWEST;
+        String overflowPolicyStr = cfg.getString(OVERFLOW_POLICY_PNAME);
+        if (!StringUtils.isNullOrEmpty(overflowPolicyStr))
+        {
+            try
+            {
+                overflowPolicy
+                    = EventBuffer.OverflowPolicy.valueOf(
+                            overflowPolicyStr.trim().toUpperCase());
+            }
+            catch (IllegalArgumentException e)
+            {
+                logger.warn(
+                    "Invalid " + OVERFLOW_POLICY_PNAME + ": "
+                        + overflowPolicyStr + ", using " + overflowPolicy);
+            }
+        }
+
+        buffer
+            = new EventBuffer<QueuedEvent>(
+                    cfg.getInt(BUFFER_SIZE_PNAME, DEFAULT_BUFFER_SIZE),
+                    overflowPolicy);
+
+        writer
+            = new BatchingEventWriter<QueuedEvent>(
+                    buffer,
+                    new BatchingEventWriter.BatchHandler<QueuedEvent>()
+                    {
+                        @Override
+                        public void writeBatch(List<QueuedEvent> batch)
+                            throws IOException
+                        {
+                            post(toJSON(batch));
+                        }
+                    },
+                    cfg.getInt(FLUSH_SIZE_PNAME, DEFAULT_FLUSH_SIZE),
+                    cfg.getLong(FLUSH_INTERVAL_PNAME, DEFAULT_FLUSH_INTERVAL));
+        writer.start(LoggingHandler.class.getSimpleName());
+    }
+
+    /**
+     * Puts the event into the buffer from which it will be written to
+     * InfluxDB. Does not block.
+     *
+     * @param event the event to be logged.
+     */
+    @Override
+    protected void logEvent(InfluxDBEvent event)
+    {
+        buffer.offer(new QueuedEvent(event, System.currentTimeMillis()));
+    }
+
+    /**
+     * Stops the thread which writes the events, after it has written
+     * the events which are in the buffer.
+     */
+    public void stop()
+    {
+        writer.stop();
+    }
+
+    /**
+     * Returns the number of events waiting to be written.
+     */
+    public int getQueuedEventCount()
+    {
+        return buffer.size();
+    }
+
+    /**
+     * Returns the number of events dropped, because the buffer was full.
+     */
+    public long getDroppedEventCount()
+    {
+        return buffer.getDroppedCount();
+    }
+
+    /**
+     * Returns the number of events written to InfluxDB.
+     */
+    public long getWrittenEventCount()
+    {
+        return writer.getWrittenCount();
+    }
+
+    /**
+     * Returns the number of events which failed to be written to InfluxDB.
+     */
+    public long getFailedEventCount()
+    {
+        return writer.getFailedCount();
+    }
+
+    /**
+     * Converts a batch of events to the JSON accepted by InfluxDB: an array
+     * of series, one for every event.
+     */
+    @SuppressWarnings("unchecked")
+    private static String toJSON(List<QueuedEvent> batch)
+    {
+        JSONArray series = new JSONArray();
+
+        for (QueuedEvent queuedEvent : batch)
+        {
+            InfluxDBEvent event = queuedEvent.event;
+            boolean useLocalTime = event.useLocalTime();
+            Object[] values = event.getValues();
+
+            JSONArray columns = new JSONArray();
+            if (useLocalTime)
+                columns.add("time");
+            Collections.addAll(columns, event.getColumns());
+
+            JSONArray points = new JSONArray();
+            if (values.length > 0 && values[0] instanceof Object[])
+            {
+                // Multiple points
+                for (Object value : values)
+                {
+                    if (value instanceof Object[])
+                    {
+                        points.add(
+                            toPoint(
+                                (Object[]) value,
+                                useLocalTime, queuedEvent.time));
+                    }
+                }
+            }
+            else
+            {
+                points.add(toPoint(values, useLocalTime, queuedEvent.time));
+            }
+
+            JSONObject serie = new JSONObject();
+            serie.put("name", event.getName());
+            serie.put("columns", columns);
+            serie.put("points", points);
+
+            series.add(serie);
+        }
+        return series.toJSONString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JSONArray toPoint(
+            Object[] values, boolean useLocalTime, long time)
+    {
+        JSONArray point = new JSONArray();
+        if (useLocalTime)
+            point.add(time);
+        Collections.addAll(point, values);
+        return point;
+    }
+
+    /**
+     * Posts given JSON string to InfluxDB.
+     */
+    private void post(String json)
+        throws IOException
+    {
+        HttpURLConnection connection
+            = (HttpURLConnection) url.openConnection();
+        try
+        {
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-type", "application/json");
+            connection.setConnectTimeout(HTTP_TIMEOUT);
+            connection.setReadTimeout(HTTP_TIMEOUT);
+            connection.setDoOutput(true);
+
+            OutputStream out = connection.getOutputStream();
+            try
+            {
+                out.write(json.getBytes("UTF-8"));
+            }
+            finally
+            {
+                out.close();
+            }
+
+            int responseCode = connection.getResponseCode();
+            if (responseCode != HttpURLConnection.HTTP_OK)
+                throw new IOException("HTTP response code: " + responseCode);
+        }
+        finally
+        {
+            connection.disconnect();
+        }
     }
 
     @Override
@@ -83,7 +379,9 @@ public class LoggingHandler
                            event.getProperty("focus"));
 
         }
-        else if (EventFactory.PEER_CONNECTION_STATS_TOPIC.equals(topic))
+        else if (EventFactory.PEER_CONNECTION_STATS_TOPIC.equals(topic)
+                || EventFactory.PEER_CONNECTION_STATS_AGGREGATE_TOPIC.equals(
+                        topic))
         {
             logEvent(
                 (InfluxDBEvent) event.getProperty(EventFactory.EVENT_SOURCE));
@@ -129,4 +427,21 @@ public class LoggingHandler
                                                    displayName
                                            }));
     }
+
+    /**
+     * An event waiting in the buffer together with the time when it has been
+     * logged.
+     */
+    private static class QueuedEvent
+    {
+        final InfluxDBEvent event;
+
+        final long time;
+
+        QueuedEvent(InfluxDBEvent event, long time)
+        {
+            this.event = event;
+            this.time = time;
+        }
+    }
 }
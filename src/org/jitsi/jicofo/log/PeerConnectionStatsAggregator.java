@@ -0,0 +1,427 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.log;
+
+import org.jitsi.service.configuration.*;
+import org.jitsi.util.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Reduces the amount of PeerConnection statistics exported to InfluxDB.
+ * For selected stats keeps per endpoint minimum, maximum, mean and last
+ * value over fixed time window and exports only these aggregates once
+ * the window ends. Raw points are exported only for every n-th document
+ * received from the endpoint.
+ * <p>
+ * Windows are measured with local time, so that the clocks of the clients do
+ * not matter. The windows of endpoints which have stopped sending
+ * the statistics are closed by {@link #sweep(long)}, which is expected to be
+ * called periodically by a timer rather than by the threads which deliver
+ * the statistics.
+ * <p>
+ * The state of each endpoint is guarded by its own lock, so that
+ * the documents of different endpoints, which arrive on the packet threads
+ * of different connections, do not contend with each other nor with
+ * the sweep.
+ *
+ * @author agent
+ */
+public class PeerConnectionStatsAggregator
+{
+    /**
+     * The name of configuration property which specifies comma separated
+     * list of the names of the stats to be aggregated.
+     */
+    public static final String AGGREGATED_STATS_PNAME
+        = "org.jitsi.jicofo.log.PC_STATS_AGGREGATED";
+
+    /**
+     * The name of configuration property which specifies the length of
+     * aggregation window in milliseconds.
+     */
+    public static final String WINDOW_PNAME
+        = "org.jitsi.jicofo.log.PC_STATS_WINDOW";
+
+    /**
+     * The name of configuration property which specifies that raw points are
+     * exported for every n-th document received from the endpoint. 1 exports
+     * all raw points, 0 disables raw points.
+     */
+    public static final String RAW_SAMPLE_INTERVAL_PNAME
+        = "org.jitsi.jicofo.log.PC_STATS_RAW_SAMPLE_INTERVAL";
+
+    /**
+     * The default value of {@link #AGGREGATED_STATS_PNAME}.
+     */
+    private static final String DEFAULT_AGGREGATED_STATS
+        = "googActualEncBitrate,googAvailableSendBandwidth";
+
+    /**
+     * The default value of {@link #WINDOW_PNAME}.
+     */
+    private static final long DEFAULT_WINDOW = 60000L;
+
+    /**
+     * The default value of {@link #RAW_SAMPLE_INTERVAL_PNAME}.
+     */
+    private static final int DEFAULT_RAW_SAMPLE_INTERVAL = 10;
+
+    /**
+     * How often the windows of all the endpoints should be checked for
+     * completion in milliseconds.
+     */
+    public static final long SWEEP_INTERVAL = 1000L;
+
+    /**
+     * The names of aggregated stats.
+     */
+    private final Set<String> aggregatedStats;
+
+    /**
+     * The length of aggregation window in milliseconds.
+     */
+    private final long window;
+
+    /**
+     * Raw points are exported for every n-th document.
+     */
+    private final int rawSampleInterval;
+
+    /**
+     * Per endpoint state.
+     */
+    private final ConcurrentMap<String, EndpointStats> endpoints
+        = new ConcurrentHashMap<String, EndpointStats>();
+
+    /**
+     * Aggregates of the windows which have ended and have not been polled
+     * yet.
+     */
+    private final Queue<Object[]> completed
+        = new ConcurrentLinkedQueue<Object[]>();
+
+    /**
+     * Creates new instance of <tt>PeerConnectionStatsAggregator</tt>.
+     *
+     * @param aggregatedStats the names of the stats to be aggregated.
+     * @param window the length of aggregation window in milliseconds.
+     * @param rawSampleInterval raw points will be exported for every n-th
+     *                          document received from the endpoint(1 means
+     *                          all, 0 none).
+     */
+    public PeerConnectionStatsAggregator(Set<String> aggregatedStats,
+                                         long window,
+                                         int rawSampleInterval)
+    {
+        if (window <= 0)
+            throw new IllegalArgumentException("window: " + window);
+        if (rawSampleInterval < 0)
+            throw new IllegalArgumentException(
+                "rawSampleInterval: " + rawSampleInterval);
+
+        this.aggregatedStats
+            = Collections.unmodifiableSet(
+                    new HashSet<String>(aggregatedStats));
+        this.window = window;
+        this.rawSampleInterval = rawSampleInterval;
+    }
+
+    /**
+     * Creates new instance of <tt>PeerConnectionStatsAggregator</tt>
+     * configured with the properties of given <tt>ConfigurationService</tt>.
+     *
+     * @param cfg the <tt>ConfigurationService</tt> or <tt>null</tt> to use
+     *            the defaults.
+     */
+    public static PeerConnectionStatsAggregator create(
+            ConfigurationService cfg)
+    {
+        String statsStr = DEFAULT_AGGREGATED_STATS;
+        long window = DEFAULT_WINDOW;
+        int rawSampleInterval = DEFAULT_RAW_SAMPLE_INTERVAL;
+
+        if (cfg != null)
+        {
+            statsStr = cfg.getString(AGGREGATED_STATS_PNAME, statsStr);
+            window = cfg.getLong(WINDOW_PNAME, window);
+            rawSampleInterval
+                = cfg.getInt(RAW_SAMPLE_INTERVAL_PNAME, rawSampleInterval);
+        }
+
+        Set<String> stats = new HashSet<String>();
+        if (!StringUtils.isNullOrEmpty(statsStr))
+        {
+            for (String stat : statsStr.split(","))
+            {
+                stat = stat.trim();
+                if (stat.length() > 0)
+                    stats.add(stat);
+            }
+        }
+
+        return new PeerConnectionStatsAggregator(
+                stats, window, rawSampleInterval);
+    }
+
+    /**
+     * Returns the names of the stats which are aggregated.
+     */
+    public Set<String> getAggregatedStats()
+    {
+        return aggregatedStats;
+    }
+
+    /**
+     * Counts the document received from given endpoint and tells whether its
+     * raw points should be exported.
+     *
+     * @param conferenceId the ID of the conference.
+     * @param endpointId the ID of the endpoint.
+     * @param now current time in milliseconds.
+     *
+     * @return <tt>true</tt> if the raw points of the document should be
+     *         exported.
+     */
+    public boolean countDocument(
+            String conferenceId, String endpointId, long now)
+    {
+        while (true)
+        {
+            EndpointStats endpoint = getEndpoint(conferenceId, endpointId);
+            synchronized (endpoint)
+            {
+                if (endpoint.removed)
+                    continue;
+
+                endpoint.lastActivity = now;
+
+                return rawSampleInterval > 0
+                    && endpoint.documents++ % rawSampleInterval == 0;
+            }
+        }
+    }
+
+    /**
+     * Adds the value of the stat to the aggregate of current window.
+     *
+     * @param conferenceId the ID of the conference.
+     * @param endpointId the ID of the endpoint.
+     * @param group the name of the group to which the stat belongs.
+     * @param stat the name of the stat.
+     * @param value the value.
+     * @param now current time in milliseconds.
+     */
+    public void record(String conferenceId,
+                       String endpointId,
+                       String group,
+                       String stat,
+                       double value,
+                       long now)
+    {
+        while (true)
+        {
+            EndpointStats endpoint = getEndpoint(conferenceId, endpointId);
+            synchronized (endpoint)
+            {
+                if (endpoint.removed)
+                    continue;
+
+                endpoint.lastActivity = now;
+
+                String key = group + "/" + stat;
+                Aggregate aggregate = endpoint.aggregates.get(key);
+                if (aggregate != null
+                        && now >= aggregate.windowStart + window)
+                {
+                    completed.add(aggregate.toPoint(endpoint));
+                    aggregate = null;
+                }
+                if (aggregate == null)
+                {
+                    aggregate = new Aggregate(group, stat, now);
+                    endpoint.aggregates.put(key, aggregate);
+                }
+                aggregate.add(value);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the aggregates of the windows which have ended, either when
+     * the next value has been recorded or by {@link #sweep(long)}.
+     *
+     * @return an array of points(<tt>Object[]</tt> with the values of
+     *         {@link LoggingHandler#PEER_CONNECTION_STATS_AGGREGATE_COLUMNS})
+     *         which can be empty.
+     */
+    public Object[] pollCompleted()
+    {
+        List<Object[]> points = new ArrayList<Object[]>();
+        Object[] point;
+        while ((point = completed.poll()) != null)
+        {
+            points.add(point);
+        }
+        return points.toArray();
+    }
+
+    /**
+     * Closes the windows which have ended and removes the endpoints which
+     * have been inactive for longer than the window. The endpoints are locked
+     * one at a time.
+     *
+     * @param now current time in milliseconds.
+     */
+    public void sweep(long now)
+    {
+        for (Map.Entry<String, EndpointStats> entry : endpoints.entrySet())
+        {
+            EndpointStats endpoint = entry.getValue();
+            synchronized (endpoint)
+            {
+                Iterator<Aggregate> aggregateIter
+                    = endpoint.aggregates.values().iterator();
+                while (aggregateIter.hasNext())
+                {
+                    Aggregate aggregate = aggregateIter.next();
+                    if (now >= aggregate.windowStart + window)
+                    {
+                        completed.add(aggregate.toPoint(endpoint));
+                        aggregateIter.remove();
+                    }
+                }
+
+                if (endpoint.aggregates.isEmpty()
+                        && now - endpoint.lastActivity >= window)
+                {
+                    // The threads which have got this instance before it
+                    // has been removed will create new one
+                    endpoint.removed = true;
+                    endpoints.remove(entry.getKey(), endpoint);
+                }
+            }
+        }
+    }
+
+    private EndpointStats getEndpoint(String conferenceId, String endpointId)
+    {
+        String key = conferenceId + "/" + endpointId;
+        EndpointStats endpoint = endpoints.get(key);
+        if (endpoint == null)
+        {
+            endpoint = new EndpointStats(conferenceId, endpointId);
+
+            EndpointStats existing = endpoints.putIfAbsent(key, endpoint);
+            if (existing != null)
+                endpoint = existing;
+        }
+        return endpoint;
+    }
+
+    /**
+     * Returns the number of endpoints for which the state is kept.
+     */
+    int getEndpointCount()
+    {
+        return endpoints.size();
+    }
+
+    /**
+     * The state kept for single endpoint.
+     */
+    private static class EndpointStats
+    {
+        final String conferenceId;
+
+        final String endpointId;
+
+        /**
+         * Aggregates of current windows by group and stat name.
+         */
+        final Map<String, Aggregate> aggregates
+            = new HashMap<String, Aggregate>();
+
+        /**
+         * The number of documents received from the endpoint.
+         */
+        long documents;
+
+        /**
+         * The last time when the endpoint has sent the stats.
+         */
+        long lastActivity;
+
+        /**
+         * Whether this instance has been removed from {@link #endpoints}.
+         */
+        boolean removed;
+
+        EndpointStats(String conferenceId, String endpointId)
+        {
+            this.conferenceId = conferenceId;
+            this.endpointId = endpointId;
+        }
+    }
+
+    /**
+     * The aggregate of the values of single stat within single window.
+     */
+    private static class Aggregate
+    {
+        final String group;
+
+        final String stat;
+
+        final long windowStart;
+
+        double min = Double.POSITIVE_INFINITY;
+
+        double max = Double.NEGATIVE_INFINITY;
+
+        double sum;
+
+        double last;
+
+        long count;
+
+        Aggregate(String group, String stat, long windowStart)
+        {
+            this.group = group;
+            this.stat = stat;
+            this.windowStart = windowStart;
+        }
+
+        void add(double value)
+        {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            sum += value;
+            last = value;
+            count++;
+        }
+
+        Object[] toPoint(EndpointStats endpoint)
+        {
+            return new Object[]
+                {
+                    windowStart,
+                    endpoint.conferenceId,
+                    endpoint.endpointId,
+                    group,
+                    stat,
+                    min,
+                    max,
+                    sum / count,
+                    last,
+                    count
+                };
+        }
+    }
+}
@@ -0,0 +1,762 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.log;
+
+import java.text.*;
+import java.util.*;
+
+/**
+ * Parses PeerConnection statistics JSON in the format used by Jitsi Meet
+ * into the points of "peer connection stats" event. Unlike general purpose
+ * JSON parser it does not build the tree of the document. The document is
+ * scanned once and only the positions of timestamps, group names, types,
+ * stat names and values are recorded in reusable arrays. The points are then
+ * assembled by copying these regions of the input into reusable
+ * <tt>StringBuilder</tt>, so apart from the resulting strings nothing is
+ * allocated per parsed document.
+ * <p>
+ * The values are copied as they appear in the input, so the output is
+ * equivalent to, but not necessarily the same text as the one produced by
+ * json-simple. Groups and stats are written in the order in which they
+ * appear in the input.
+ * <p>
+ * This class is not thread safe - one instance should be used per thread.
+ *
+ * @author agent
+ */
+class PeerConnectionStatsParser
+{
+    /**
+     * The maximal nesting depth of the values which are skipped or copied
+     * as a whole.
+     */
+    private static final int MAX_DEPTH = 32;
+
+    /**
+     * The initial capacity of {@link #point}.
+     */
+    private static final int POINT_CAPACITY = 1024;
+
+    /**
+     * The capacity above which {@link #point} is not retained between
+     * the documents, so that single huge document does not pin the memory.
+     */
+    private static final int MAX_RETAINED_POINT_CAPACITY = 64 * 1024;
+
+    /**
+     * The number of <tt>int</tt>s describing single group in
+     * {@link #groups}: name start, name end, type start, type end,
+     * the index of the first stat and the number of stats.
+     */
+    private static final int GROUP_SIZE = 6;
+
+    /**
+     * The number of <tt>int</tt>s describing single stat in {@link #stats}:
+     * name start, name end, the index of the first value and the number of
+     * values.
+     */
+    private static final int STAT_SIZE = 4;
+
+    /**
+     * The document being parsed.
+     */
+    private String json;
+
+    /**
+     * Current position in {@link #json}.
+     */
+    private int pos;
+
+    /**
+     * Parsed timestamps.
+     */
+    private long[] timestamps = new long[16];
+
+    private int timestampCount;
+
+    /**
+     * The regions of {@link #json} describing the groups.
+     */
+    private int[] groups = new int[GROUP_SIZE * 16];
+
+    private int groupCount;
+
+    /**
+     * The regions of {@link #json} describing the stats.
+     */
+    private int[] stats = new int[STAT_SIZE * 128];
+
+    private int statCount;
+
+    /**
+     * The regions of {@link #json} holding the values of the stats(start and
+     * end of each value).
+     */
+    private int[] values = new int[2 * 1024];
+
+    private int valueCount;
+
+    /**
+     * The buffer in which the points are assembled.
+     */
+    private StringBuilder point = new StringBuilder(POINT_CAPACITY);
+
+    /**
+     * Values of selected stats read with
+     * {@link #readValues(Set, StatValueListener)}.
+     */
+    interface StatValueListener
+    {
+        /**
+         * Called for every numeric value of the stat, in the order of
+         * the timestamps.
+         *
+         * @param group the name of the group to which the stat belongs.
+         * @param stat the name of the stat.
+         * @param value the value.
+         */
+        void statValue(String group, String stat, double value);
+    }
+
+    /**
+     * Parses PeerConnection statistics JSON.
+     *
+     * @param conferenceId the value to use for the conference_id field.
+     * @param endpointId the value to use for the endpoint_id field.
+     * @param json the PeerConnection statistics JSON string.
+     *
+     * @return an array of points(<tt>Object[]</tt> with the values of
+     *         {@link LoggingHandler#PEER_CONNECTION_STATS_COLUMNS}), one for
+     *         every timestamp.
+     *
+     * @throws ParseException if <tt>json</tt> is not valid JSON or is not in
+     *         the expected format.
+     */
+    Object[] parse(String conferenceId, String endpointId, String json)
+        throws ParseException
+    {
+        try
+        {
+            scan(json);
+
+            return buildPoints(conferenceId, endpointId);
+        }
+        finally
+        {
+            release();
+        }
+    }
+
+    /**
+     * Scans PeerConnection statistics JSON, so that the points can be built
+     * with {@link #buildPoints(String, String)} and the values of selected
+     * stats can be read with {@link #readValues(Set, StatValueListener)}.
+     * {@link #release()} must be called when done.
+     *
+     * @param json the PeerConnection statistics JSON string.
+     *
+     * @throws ParseException if <tt>json</tt> is not valid JSON or is not in
+     *         the expected format.
+     */
+    void scan(String json)
+        throws ParseException
+    {
+        this.json = json;
+        this.pos = 0;
+        this.timestampCount = 0;
+        this.groupCount = 0;
+        this.statCount = 0;
+        this.valueCount = 0;
+
+        parseDocument();
+    }
+
+    /**
+     * Releases the document scanned last time.
+     */
+    void release()
+    {
+        this.json = null;
+        if (point.capacity() > MAX_RETAINED_POINT_CAPACITY)
+        {
+            point = new StringBuilder(POINT_CAPACITY);
+        }
+    }
+
+    private void parseDocument()
+        throws ParseException
+    {
+        boolean hasTimestamps = false, hasStats = false;
+
+        expect('{');
+        if (!consume('}'))
+        {
+            do
+            {
+                int keyStart = skipWhitespace();
+                skipString();
+                int keyEnd = pos;
+                expect(':');
+
+                if (keyEquals(keyStart, keyEnd, "timestamps"))
+                {
+                    parseTimestamps();
+                    hasTimestamps = true;
+                }
+                else if (keyEquals(keyStart, keyEnd, "stats"))
+                {
+                    parseStats();
+                    hasStats = true;
+                }
+                else
+                {
+                    skipValue(0);
+                }
+            }
+            while (consume(','));
+            expect('}');
+        }
+
+        if (skipWhitespace() != json.length())
+            throw error("Unexpected data after the document");
+        if (!hasTimestamps)
+            throw error("Missing 'timestamps'");
+        if (!hasStats)
+            throw error("Missing 'stats'");
+    }
+
+    private void parseTimestamps()
+        throws ParseException
+    {
+        timestampCount = 0;
+
+        expect('[');
+        if (consume(']'))
+            return;
+
+        do
+        {
+            long timestamp = parseLong();
+
+            if (timestampCount == timestamps.length)
+            {
+                timestamps
+                    = Arrays.copyOf(timestamps, 2 * timestamps.length);
+            }
+            timestamps[timestampCount++] = timestamp;
+        }
+        while (consume(','));
+        expect(']');
+    }
+
+    private void parseStats()
+        throws ParseException
+    {
+        groupCount = 0;
+        statCount = 0;
+        valueCount = 0;
+
+        expect('{');
+        if (consume('}'))
+            return;
+
+        do
+        {
+            int nameStart = skipWhitespace();
+            skipString();
+            int nameEnd = pos;
+            expect(':');
+
+            parseGroup(nameStart, nameEnd);
+        }
+        while (consume(','));
+        expect('}');
+    }
+
+    private void parseGroup(int nameStart, int nameEnd)
+        throws ParseException
+    {
+        groups = ensureCapacity(groups, GROUP_SIZE * (groupCount + 1));
+
+        int group = GROUP_SIZE * groupCount++;
+        groups[group] = nameStart;
+        groups[group + 1] = nameEnd;
+        // No type
+        groups[group + 2] = -1;
+        groups[group + 3] = -1;
+        groups[group + 4] = statCount;
+
+        expect('{');
+        if (!consume('}'))
+        {
+            do
+            {
+                int keyStart = skipWhitespace();
+                skipString();
+                int keyEnd = pos;
+                expect(':');
+
+                if (keyEquals(keyStart, keyEnd, "type"))
+                {
+                    groups[group + 2] = skipWhitespace();
+                    skipValue(0);
+                    groups[group + 3] = pos;
+                }
+                else
+                {
+                    parseStat(keyStart, keyEnd);
+                }
+            }
+            while (consume(','));
+            expect('}');
+        }
+
+        groups[group + 5] = statCount - groups[group + 4];
+    }
+
+    private void parseStat(int nameStart, int nameEnd)
+        throws ParseException
+    {
+        stats = ensureCapacity(stats, STAT_SIZE * (statCount + 1));
+
+        int stat = STAT_SIZE * statCount++;
+        stats[stat] = nameStart;
+        stats[stat + 1] = nameEnd;
+        stats[stat + 2] = valueCount;
+
+        expect('[');
+        if (!consume(']'))
+        {
+            do
+            {
+                values = ensureCapacity(values, 2 * (valueCount + 1));
+
+                values[2 * valueCount] = skipWhitespace();
+                skipValue(0);
+                values[2 * valueCount + 1] = pos;
+                valueCount++;
+            }
+            while (consume(','));
+            expect(']');
+        }
+
+        stats[stat + 3] = valueCount - stats[stat + 2];
+    }
+
+    /**
+     * Builds the points of the document scanned with {@link #scan(String)}.
+     *
+     * @param conferenceId the value to use for the conference_id field.
+     * @param endpointId the value to use for the endpoint_id field.
+     *
+     * @return an array of points(<tt>Object[]</tt> with the values of
+     *         {@link LoggingHandler#PEER_CONNECTION_STATS_COLUMNS}), one for
+     *         every timestamp.
+     *
+     * @throws ParseException if some stat has fewer values than there are
+     *         timestamps.
+     */
+    Object[] buildPoints(String conferenceId, String endpointId)
+        throws ParseException
+    {
+        Object[] points = new Object[timestampCount];
+
+        for (int i = 0; i < timestampCount; i++)
+        {
+            point.setLength(0);
+            point.append('[');
+            for (int g = 0; g < groupCount; g++)
+            {
+                int group = GROUP_SIZE * g;
+                if (g > 0)
+                    point.append(',');
+
+                point.append('[');
+                append(groups[group], groups[group + 1]);
+                point.append(',');
+                if (groups[group + 2] < 0)
+                    point.append("null");
+                else
+                    append(groups[group + 2], groups[group + 3]);
+                point.append(",{");
+
+                int firstStat = groups[group + 4];
+                int lastStat = firstStat + groups[group + 5];
+                for (int s = firstStat; s < lastStat; s++)
+                {
+                    int stat = STAT_SIZE * s;
+                    if (i >= stats[stat + 3])
+                    {
+                        throw new ParseException(
+                            "No value for timestamp " + i + " of stat "
+                                + json.substring(stats[stat], stats[stat + 1]),
+                            stats[stat]);
+                    }
+                    if (s > firstStat)
+                        point.append(',');
+
+                    append(stats[stat], stats[stat + 1]);
+                    point.append(':');
+
+                    int value = 2 * (stats[stat + 2] + i);
+                    append(values[value], values[value + 1]);
+                }
+                point.append("}]");
+            }
+            point.append(']');
+
+            Object[] row
+                = new Object[
+                        LoggingHandler.PEER_CONNECTION_STATS_COLUMNS.length];
+
+            row[0] = timestamps[i];
+            row[1] = conferenceId;
+            row[2] = endpointId;
+            row[3] = point.toString();
+
+            points[i] = row;
+        }
+        return points;
+    }
+
+    /**
+     * Reads numeric values of selected stats of the document scanned with
+     * {@link #scan(String)}. Values which are not numbers or strings holding
+     * numbers are skipped.
+     *
+     * @param statNames the names of the stats to read.
+     * @param listener the listener to which the values are passed.
+     */
+    void readValues(Set<String> statNames, StatValueListener listener)
+    {
+        if (statNames.isEmpty())
+            return;
+
+        for (int g = 0; g < groupCount; g++)
+        {
+            int group = GROUP_SIZE * g;
+            String groupName = null;
+
+            int firstStat = groups[group + 4];
+            int lastStat = firstStat + groups[group + 5];
+            for (int s = firstStat; s < lastStat; s++)
+            {
+                int stat = STAT_SIZE * s;
+                String statName
+                    = findName(statNames, stats[stat], stats[stat + 1]);
+                if (statName == null)
+                    continue;
+
+                if (groupName == null)
+                {
+                    groupName
+                        = json.substring(
+                                groups[group] + 1, groups[group + 1] - 1);
+                }
+
+                int firstValue = stats[stat + 2];
+                int lastValue = firstValue + stats[stat + 3];
+                for (int v = firstValue; v < lastValue; v++)
+                {
+                    int start = values[2 * v];
+                    int end = values[2 * v + 1];
+                    if (json.charAt(start) == '"')
+                    {
+                        // Numbers are sent as strings
+                        start++;
+                        end--;
+                    }
+                    if (start >= end)
+                        continue;
+
+                    double value;
+                    try
+                    {
+                        value = Double.parseDouble(json.substring(start, end));
+                    }
+                    catch (NumberFormatException e)
+                    {
+                        continue;
+                    }
+                    listener.statValue(groupName, statName, value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the name among <tt>names</tt> which is equal to the key in given
+     * region of the document.
+     */
+    private String findName(Set<String> names, int start, int end)
+    {
+        for (String name : names)
+        {
+            if (keyEquals(start, end, name))
+                return name;
+        }
+        return null;
+    }
+
+    private void append(int start, int end)
+    {
+        point.append(json, start, end);
+    }
+
+    private boolean keyEquals(int start, int end, String key)
+    {
+        // The key includes quotation marks
+        return end - start == key.length() + 2
+            && json.regionMatches(start + 1, key, 0, key.length());
+    }
+
+    /**
+     * Skips JSON value of any type starting at current position.
+     */
+    private void skipValue(int depth)
+        throws ParseException
+    {
+        if (depth > MAX_DEPTH)
+            throw error("Maximal nesting depth exceeded");
+
+        skipWhitespace();
+        int c = peek();
+        switch (c)
+        {
+        case '"':
+            skipString();
+            break;
+        case '{':
+            pos++;
+            if (!consume('}'))
+            {
+                do
+                {
+                    skipWhitespace();
+                    skipString();
+                    expect(':');
+                    skipValue(depth + 1);
+                }
+                while (consume(','));
+                expect('}');
+            }
+            break;
+        case '[':
+            pos++;
+            if (!consume(']'))
+            {
+                do
+                {
+                    skipValue(depth + 1);
+                }
+                while (consume(','));
+                expect(']');
+            }
+            break;
+        case 't':
+            skipLiteral("true");
+            break;
+        case 'f':
+            skipLiteral("false");
+            break;
+        case 'n':
+            skipLiteral("null");
+            break;
+        default:
+            skipNumber();
+        }
+    }
+
+    private void skipString()
+        throws ParseException
+    {
+        if (peek() != '"')
+            throw error("Expected string");
+
+        pos++;
+        while (true)
+        {
+            int c = peek();
+            if (c == '"')
+            {
+                pos++;
+                return;
+            }
+            else if (c == '\\')
+            {
+                pos++;
+                switch (peek())
+                {
+                case '"':
+                case '\\':
+                case '/':
+                case 'b':
+                case 'f':
+                case 'n':
+                case 'r':
+                case 't':
+                    pos++;
+                    break;
+                case 'u':
+                    pos++;
+                    for (int i = 0; i < 4; i++)
+                    {
+                        if (Character.digit(peek(), 16) < 0)
+                            throw error("Invalid unicode escape");
+                        pos++;
+                    }
+                    break;
+                default:
+                    throw error("Invalid escape sequence");
+                }
+            }
+            else if (c < 0x20)
+            {
+                // Control character or the end of the document
+                throw error("Unterminated string");
+            }
+            else
+            {
+                pos++;
+            }
+        }
+    }
+
+    /**
+     * Parses JSON number starting at current position which must be
+     * an integer fitting in <tt>long</tt>.
+     */
+    private long parseLong()
+        throws ParseException
+    {
+        int start = skipWhitespace();
+        skipNumber();
+
+        boolean negative = json.charAt(start) == '-';
+        long value = 0;
+        for (int i = negative ? start + 1 : start; i < pos; i++)
+        {
+            int digit = json.charAt(i) - '0';
+            if (digit < 0 || digit > 9
+                    || value > (Long.MAX_VALUE - digit) / 10)
+                throw new ParseException("Not a long integer", start);
+
+            value = 10 * value + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    private void skipNumber()
+        throws ParseException
+    {
+        if (peek() == '-')
+            pos++;
+        if (skipDigits() == 0)
+            throw error("Expected value");
+
+        if (peek() == '.')
+        {
+            pos++;
+            if (skipDigits() == 0)
+                throw error("Invalid number");
+        }
+
+        int c = peek();
+        if (c == 'e' || c == 'E')
+        {
+            pos++;
+            c = peek();
+            if (c == '+' || c == '-')
+                pos++;
+            if (skipDigits() == 0)
+                throw error("Invalid number");
+        }
+    }
+
+    private int skipDigits()
+    {
+        int start = pos;
+        while (true)
+        {
+            int c = peek();
+            if (c < '0' || c > '9')
+                return pos - start;
+            pos++;
+        }
+    }
+
+    private void skipLiteral(String literal)
+        throws ParseException
+    {
+        if (!json.startsWith(literal, pos))
+            throw error("Expected value");
+
+        pos += literal.length();
+    }
+
+    /**
+     * Skips whitespace and returns new position.
+     */
+    private int skipWhitespace()
+    {
+        while (true)
+        {
+            int c = peek();
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r')
+                return pos;
+            pos++;
+        }
+    }
+
+    /**
+     * Skips whitespace and consumes given character if it's the next one.
+     *
+     * @return <tt>true</tt> if the character has been consumed.
+     */
+    private boolean consume(char c)
+    {
+        skipWhitespace();
+        if (peek() != c)
+            return false;
+
+        pos++;
+        return true;
+    }
+
+    /**
+     * Skips whitespace and consumes given character.
+     *
+     * @throws ParseException if the next character is not <tt>c</tt>.
+     */
+    private void expect(char c)
+        throws ParseException
+    {
+        if (!consume(c))
+            throw error("Expected '" + c + "'");
+    }
+
+    /**
+     * Returns the character at current position or <tt>-1</tt> if the end of
+     * the document has been reached.
+     */
+    private int peek()
+    {
+        return pos < json.length() ? json.charAt(pos) : -1;
+    }
+
+    private ParseException error(String message)
+    {
+        return new ParseException(message + " at " + pos, pos);
+    }
+
+    private static int[] ensureCapacity(int[] array, int capacity)
+    {
+        return capacity <= array.length
+            ? array
+            : Arrays.copyOf(array, Math.max(capacity, 2 * array.length));
+    }
+}
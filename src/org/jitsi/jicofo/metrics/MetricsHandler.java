@@ -0,0 +1,463 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.metrics;
+
+import org.eclipse.jetty.server.*;
+import org.eclipse.jetty.server.handler.*;
+
+import org.jitsi.jicofo.*;
+import org.jitsi.jicofo.log.*;
+import org.jitsi.jicofo.util.*;
+import org.jitsi.videobridge.osgi.*;
+import org.osgi.framework.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Jetty <tt>Handler</tt> which serves the metrics of the focus in Prometheus
+ * text exposition format. The metrics are written straight from
+ * the counters of {@link FocusStatistics} and JVM management beans to
+ * the response, so scraping does not lock anything nor iterate over
+ * the conferences. Requests for other paths are left to the next handler.
+ * <p>
+ * The latency summaries are computed from the histograms kept since
+ * the start, so their quantiles move slowly once many values have been
+ * recorded. The rates should be derived from the <tt>_count</tt> samples.
+ *
+ * @author agent
+ */
+public class MetricsHandler
+    extends AbstractHandler
+{
+    /**
+     * The name of configuration property which enables the metrics endpoint.
+     * The endpoint is served by the Jetty instance of the authentication
+     * bundle on its monitoring connector, which listens on the loopback
+     * interface by default. Disabled by default.
+     */
+    public static final String ENABLED_PNAME
+        = "org.jitsi.jicofo.metrics.ENABLED";
+
+    /**
+     * The name of configuration property which specifies the path on which
+     * the metrics are served. The default is <tt>/metrics</tt>.
+     */
+    public static final String PATH_PNAME = "org.jitsi.jicofo.metrics.PATH";
+
+    /**
+     * The default value of {@link #PATH_PNAME}.
+     */
+    public static final String DEFAULT_PATH = "/metrics";
+
+    /**
+     * The content type of text exposition format.
+     */
+    private static final String CONTENT_TYPE
+        = "text/plain; version=0.0.4; charset=utf-8";
+
+    /**
+     * The percentiles reported for latency summaries.
+     */
+    private static final double[] PERCENTILES = { 50, 99, 99.9 };
+
+    /**
+     * The values of the quantile label corresponding to {@link #PERCENTILES}.
+     */
+    private static final String[] QUANTILES = { "0.5", "0.99", "0.999" };
+
+    /**
+     * The path on which the metrics are served.
+     */
+    private final String path;
+
+    /**
+     * The garbage collectors of the JVM. The list does not change while
+     * the JVM is running, so it is obtained only once.
+     */
+    private final List<GarbageCollectorMXBean> garbageCollectors
+        = ManagementFactory.getGarbageCollectorMXBeans();
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    /**
+     * Creates new instance of <tt>MetricsHandler</tt>.
+     *
+     * @param path the path on which the metrics will be served.
+     */
+    public MetricsHandler(String path)
+    {
+        this.path = path;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void handle(String target,
+                       Request baseRequest,
+                       HttpServletRequest request,
+                       HttpServletResponse response)
+        throws IOException,
+               ServletException
+    {
+        if (!path.equals(target))
+            return;
+
+        baseRequest.setHandled(true);
+
+        if (!"GET".equals(request.getMethod()))
+        {
+            response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+            return;
+        }
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(CONTENT_TYPE);
+
+        writeMetrics(response.getWriter());
+    }
+
+    /**
+     * Writes all the metrics to given <tt>Writer</tt>.
+     *
+     * @param out the <tt>Writer</tt> to which the metrics will be written.
+     */
+    public void writeMetrics(Writer out)
+        throws IOException
+    {
+        MetricsWriter metrics = new MetricsWriter(out);
+
+        writeFocusMetrics(metrics, FocusStatistics.getInstance());
+        writeExecutorMetrics(metrics);
+        writeLoggingMetrics(metrics);
+        writeJvmMetrics(metrics);
+    }
+
+    private void writeFocusMetrics(MetricsWriter metrics,
+                                   FocusStatistics stats)
+        throws IOException
+    {
+        metrics.family(
+            "jicofo_conferences", MetricsWriter.GAUGE,
+            "The number of conferences currently allocated.");
+        FocusManager focusManager = getService(FocusManager.class);
+        metrics.sample(
+            "jicofo_conferences",
+            focusManager != null ? focusManager.getConferenceCount() : 0);
+
+        metrics.family(
+            "jicofo_conferences_total", MetricsWriter.COUNTER,
+            "The number of conferences allocated since the start.");
+        metrics.sample(
+            "jicofo_conferences_total", stats.getTotalConferenceCount());
+
+        metrics.family(
+            "jicofo_participants", MetricsWriter.GAUGE,
+            "The number of participants in all the conferences.");
+        metrics.sample("jicofo_participants", stats.getParticipantCount());
+
+        metrics.family(
+            "jicofo_participants_total", MetricsWriter.COUNTER,
+            "The number of participants invited since the start.");
+        metrics.sample(
+            "jicofo_participants_total", stats.getTotalParticipantCount());
+
+        metrics.family(
+            "jicofo_jingle_sessions", MetricsWriter.GAUGE,
+            "The number of established Jingle sessions.");
+        metrics.sample(
+            "jicofo_jingle_sessions", stats.getJingleSessionCount());
+
+        metrics.family(
+            "jicofo_pending_invites", MetricsWriter.GAUGE,
+            "The number of invitations in progress.");
+        metrics.sample(
+            "jicofo_pending_invites", stats.getPendingInviteCount());
+
+        metrics.family(
+            "jicofo_failed_invites_total", MetricsWriter.COUNTER,
+            "The number of failed invitations.");
+        metrics.sample(
+            "jicofo_failed_invites_total", stats.getFailedInviteCount());
+
+        metrics.family(
+            "jicofo_channel_allocation_failures_total", MetricsWriter.COUNTER,
+            "The number of failed Colibri channel allocations.");
+        metrics.sample(
+            "jicofo_channel_allocation_failures_total",
+            stats.getAllocationFailureCount());
+
+        metrics.family(
+            "jicofo_join_seconds", MetricsWriter.SUMMARY,
+            "The time from the start of invitation until session-accept.");
+        writeSummary(
+            metrics, "jicofo_join_seconds", stats.getJoinLatency(), 1000d);
+
+        metrics.family(
+            "jicofo_join_phase_seconds", MetricsWriter.SUMMARY,
+            "The duration of the phases of joining the conference.");
+        for (FocusStatistics.JoinPhase phase
+                : FocusStatistics.JoinPhase.values())
+        {
+            writePhaseSummary(
+                metrics, "jicofo_join_phase_seconds", null, phase,
+                stats.getJoinPhaseLatency(phase));
+        }
+
+        Set<String> bridges = stats.getBridges();
+
+        metrics.family(
+            "jicofo_bridge_channel_allocations_total", MetricsWriter.COUNTER,
+            "The number of Colibri channel allocations on the bridge.");
+        for (String bridge : bridges)
+        {
+            metrics.sample(
+                "jicofo_bridge_channel_allocations_total",
+                "bridge", bridge,
+                stats.getBridgeAllocationCount(bridge));
+        }
+
+        metrics.family(
+            "jicofo_bridge_channel_allocation_failures_total",
+            MetricsWriter.COUNTER,
+            "The number of failed Colibri channel allocations on the bridge.");
+        for (String bridge : bridges)
+        {
+            metrics.sample(
+                "jicofo_bridge_channel_allocation_failures_total",
+                "bridge", bridge,
+                stats.getBridgeFailureCount(bridge));
+        }
+
+        metrics.family(
+            "jicofo_bridge_join_phase_seconds", MetricsWriter.SUMMARY,
+            "The duration of the phases of joining the conference on"
+                + " the bridge.");
+        for (String bridge : bridges)
+        {
+            for (FocusStatistics.JoinPhase phase
+                    : FocusStatistics.JoinPhase.values())
+            {
+                writePhaseSummary(
+                    metrics, "jicofo_bridge_join_phase_seconds", bridge, phase,
+                    stats.getJoinPhaseLatency(phase, bridge));
+            }
+        }
+
+        metrics.family(
+            "jicofo_xmpp_requests_in_progress", MetricsWriter.GAUGE,
+            "The number of IQs being processed by the focus component.");
+        metrics.sample(
+            "jicofo_xmpp_requests_in_progress",
+            stats.getXmppRequestsInProgress());
+
+        metrics.family(
+            "jicofo_xmpp_request_seconds", MetricsWriter.SUMMARY,
+            "The time it takes the focus component to process an IQ.");
+        writeSummary(
+            metrics, "jicofo_xmpp_request_seconds",
+            stats.getXmppRequestLatency(), 1000000d);
+    }
+
+    /**
+     * Writes the quantiles and the count of the histogram without labels
+     * other than the quantile.
+     *
+     * @param unitsPerSecond the number of histogram units in one second.
+     */
+    private static void writeSummary(MetricsWriter metrics,
+                                     String name,
+                                     LatencyHistogram histogram,
+                                     double unitsPerSecond)
+        throws IOException
+    {
+        for (int i = 0; i < PERCENTILES.length; i++)
+        {
+            metrics.sample(
+                name, "quantile", QUANTILES[i],
+                histogram.getValueAtPercentile(PERCENTILES[i])
+                    / unitsPerSecond);
+        }
+        metrics.sample(name + "_count", histogram.getCount());
+    }
+
+    /**
+     * Writes the quantiles and the count of the join phase histogram(which
+     * is in microseconds).
+     *
+     * @param bridge the JID of the bridge or <tt>null</tt> if the histogram
+     *               covers all the bridges.
+     * @param histogram the histogram or <tt>null</tt> if there isn't any.
+     */
+    private static void writePhaseSummary(MetricsWriter metrics,
+                                          String name,
+                                          String bridge,
+                                          FocusStatistics.JoinPhase phase,
+                                          LatencyHistogram histogram)
+        throws IOException
+    {
+        if (histogram == null || histogram.getCount() == 0)
+            return;
+
+        for (int i = 0; i < PERCENTILES.length; i++)
+        {
+            double value
+                = histogram.getValueAtPercentile(PERCENTILES[i]) / 1000000d;
+
+            if (bridge == null)
+            {
+                metrics.sample(
+                    name, "phase", phase.getName(),
+                    "quantile", QUANTILES[i], value);
+            }
+            else
+            {
+                metrics.sample(
+                    name, "bridge", bridge, "phase", phase.getName(),
+                    "quantile", QUANTILES[i], value);
+            }
+        }
+
+        if (bridge == null)
+        {
+            metrics.sample(
+                name + "_count", "phase", phase.getName(),
+                histogram.getCount());
+        }
+        else
+        {
+            metrics.sample(
+                name + "_count", "bridge", bridge, "phase", phase.getName(),
+                histogram.getCount());
+        }
+    }
+
+    private static void writeExecutorMetrics(MetricsWriter metrics)
+        throws IOException
+    {
+        ExecutorService sharedPool = FocusBundleActivator.getSharedThreadPool();
+        if (!(sharedPool instanceof ThreadPoolExecutor))
+            return;
+
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) sharedPool;
+
+        metrics.family(
+            "jicofo_shared_pool_active_threads", MetricsWriter.GAUGE,
+            "The number of threads of the shared pool executing tasks.");
+        metrics.sample(
+            "jicofo_shared_pool_active_threads", executor.getActiveCount());
+
+        metrics.family(
+            "jicofo_shared_pool_queued_tasks", MetricsWriter.GAUGE,
+            "The number of tasks waiting for a thread of the shared pool.");
+        metrics.sample(
+            "jicofo_shared_pool_queued_tasks", executor.getQueue().size());
+
+        metrics.family(
+            "jicofo_shared_pool_completed_tasks_total", MetricsWriter.COUNTER,
+            "The number of tasks completed by the shared pool.");
+        metrics.sample(
+            "jicofo_shared_pool_completed_tasks_total",
+            executor.getCompletedTaskCount());
+    }
+
+    private static void writeLoggingMetrics(MetricsWriter metrics)
+        throws IOException
+    {
+        LoggingHandler loggingHandler = getService(LoggingHandler.class);
+        if (loggingHandler == null)
+            return;
+
+        metrics.family(
+            "jicofo_influxdb_events_queued", MetricsWriter.GAUGE,
+            "The number of events waiting to be written to InfluxDB.");
+        metrics.sample(
+            "jicofo_influxdb_events_queued",
+            loggingHandler.getQueuedEventCount());
+
+        metrics.family(
+            "jicofo_influxdb_events_dropped_total", MetricsWriter.COUNTER,
+            "The number of events dropped because the buffer was full.");
+        metrics.sample(
+            "jicofo_influxdb_events_dropped_total",
+            loggingHandler.getDroppedEventCount());
+
+        metrics.family(
+            "jicofo_influxdb_events_written_total", MetricsWriter.COUNTER,
+            "The number of events written to InfluxDB.");
+        metrics.sample(
+            "jicofo_influxdb_events_written_total",
+            loggingHandler.getWrittenEventCount());
+
+        metrics.family(
+            "jicofo_influxdb_events_failed_total", MetricsWriter.COUNTER,
+            "The number of events which could not be written to InfluxDB.");
+        metrics.sample(
+            "jicofo_influxdb_events_failed_total",
+            loggingHandler.getFailedEventCount());
+    }
+
+    /**
+     * Returns the OSGi service of given class or <tt>null</tt> if there is no
+     * such service or the focus bundle has not been started.
+     */
+    private static <T> T getService(Class<T> serviceClass)
+    {
+        BundleContext bundleContext = FocusBundleActivator.bundleContext;
+
+        return bundleContext != null
+            ? ServiceUtils2.getService(bundleContext, serviceClass) : null;
+    }
+
+    private void writeJvmMetrics(MetricsWriter metrics)
+        throws IOException
+    {
+        metrics.family(
+            "jvm_gc_collections_total", MetricsWriter.COUNTER,
+            "The number of collections done by the garbage collector.");
+        for (GarbageCollectorMXBean gc : garbageCollectors)
+        {
+            metrics.sample(
+                "jvm_gc_collections_total", "gc", gc.getName(),
+                gc.getCollectionCount());
+        }
+
+        metrics.family(
+            "jvm_gc_collection_seconds_total", MetricsWriter.COUNTER,
+            "The time spent by the garbage collector.");
+        for (GarbageCollectorMXBean gc : garbageCollectors)
+        {
+            metrics.sample(
+                "jvm_gc_collection_seconds_total", "gc", gc.getName(),
+                gc.getCollectionTime() / 1000d);
+        }
+
+        MemoryUsage heap = memory.getHeapMemoryUsage();
+
+        metrics.family(
+            "jvm_memory_heap_used_bytes", MetricsWriter.GAUGE,
+            "The amount of used heap memory.");
+        metrics.sample("jvm_memory_heap_used_bytes", heap.getUsed());
+
+        metrics.family(
+            "jvm_memory_heap_committed_bytes", MetricsWriter.GAUGE,
+            "The amount of heap memory committed by the JVM.");
+        metrics.sample("jvm_memory_heap_committed_bytes", heap.getCommitted());
+
+        metrics.family(
+            "jvm_threads", MetricsWriter.GAUGE,
+            "The number of live threads.");
+        metrics.sample("jvm_threads", threads.getThreadCount());
+    }
+}
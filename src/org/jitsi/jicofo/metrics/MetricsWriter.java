@@ -0,0 +1,178 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.metrics;
+
+import java.io.*;
+
+/**
+ * Writes metrics in Prometheus text exposition format directly to
+ * the <tt>Writer</tt>, so that nothing is collected in between. The metric
+ * family is started with {@link #family(String, String, String)} and
+ * followed by one or more samples.
+ *
+ * @author agent
+ */
+public class MetricsWriter
+{
+    /**
+     * The metric type of monotonically increasing counter.
+     */
+    public static final String COUNTER = "counter";
+
+    /**
+     * The metric type of a value which can go up and down.
+     */
+    public static final String GAUGE = "gauge";
+
+    /**
+     * The metric type of quantiles with the count of observations.
+     */
+    public static final String SUMMARY = "summary";
+
+    /**
+     * The <tt>Writer</tt> to which the metrics are written.
+     */
+    private final Writer out;
+
+    /**
+     * Creates new instance of <tt>MetricsWriter</tt>.
+     *
+     * @param out the <tt>Writer</tt> to which the metrics will be written.
+     */
+    public MetricsWriter(Writer out)
+    {
+        this.out = out;
+    }
+
+    /**
+     * Writes the header of metric family.
+     *
+     * @param name the name of the metric.
+     * @param type the type of the metric, one of {@link #COUNTER},
+     *             {@link #GAUGE} or {@link #SUMMARY}.
+     * @param help the description of the metric.
+     */
+    public void family(String name, String type, String help)
+        throws IOException
+    {
+        out.write("# HELP ");
+        out.write(name);
+        out.write(' ');
+        out.write(help);
+        out.write("\n# TYPE ");
+        out.write(name);
+        out.write(' ');
+        out.write(type);
+        out.write('\n');
+    }
+
+    /**
+     * Writes the sample without labels.
+     */
+    public void sample(String name, long value)
+        throws IOException
+    {
+        out.write(name);
+        out.write(' ');
+        out.write(Long.toString(value));
+        out.write('\n');
+    }
+
+    /**
+     * Writes the sample with single label.
+     */
+    public void sample(String name, String label, String labelValue,
+                       long value)
+        throws IOException
+    {
+        startSample(name, label, labelValue);
+        out.write("} ");
+        out.write(Long.toString(value));
+        out.write('\n');
+    }
+
+    /**
+     * Writes the sample with single label.
+     */
+    public void sample(String name, String label, String labelValue,
+                       double value)
+        throws IOException
+    {
+        startSample(name, label, labelValue);
+        out.write("} ");
+        out.write(Double.toString(value));
+        out.write('\n');
+    }
+
+    /**
+     * Writes the sample with two labels.
+     */
+    public void sample(String name,
+                       String label1, String labelValue1,
+                       String label2, String labelValue2,
+                       double value)
+        throws IOException
+    {
+        startSample(name, label1, labelValue1);
+        writeLabel(',', label2, labelValue2);
+        out.write("} ");
+        out.write(Double.toString(value));
+        out.write('\n');
+    }
+
+    /**
+     * Writes the sample with three labels.
+     */
+    public void sample(String name,
+                       String label1, String labelValue1,
+                       String label2, String labelValue2,
+                       String label3, String labelValue3,
+                       double value)
+        throws IOException
+    {
+        startSample(name, label1, labelValue1);
+        writeLabel(',', label2, labelValue2);
+        writeLabel(',', label3, labelValue3);
+        out.write("} ");
+        out.write(Double.toString(value));
+        out.write('\n');
+    }
+
+    private void startSample(String name, String label, String labelValue)
+        throws IOException
+    {
+        out.write(name);
+        writeLabel('{', label, labelValue);
+    }
+
+    private void writeLabel(char separator, String label, String value)
+        throws IOException
+    {
+        out.write(separator);
+        out.write(label);
+        out.write("=\"");
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            switch (c)
+            {
+            case '\\':
+                out.write("\\\\");
+                break;
+            case '"':
+                out.write("\\\"");
+                break;
+            case '\n':
+                out.write("\\n");
+                break;
+            default:
+                out.write(c);
+            }
+        }
+        out.write('"');
+    }
+}
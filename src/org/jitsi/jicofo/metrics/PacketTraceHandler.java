@@ -0,0 +1,125 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.metrics;
+
+import net.java.sip.communicator.util.*;
+import net.java.sip.communicator.util.Logger;
+
+import org.eclipse.jetty.server.*;
+import org.eclipse.jetty.server.handler.*;
+
+import org.jitsi.jicofo.*;
+import org.jitsi.protocol.xmpp.util.*;
+import org.jitsi.util.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+import java.io.*;
+
+/**
+ * Jetty <tt>Handler</tt> which dumps {@link PacketTrace} of single
+ * conference on request, so that the signaling of a bad call can be looked
+ * at without enabling debug logging. The room is given by the <tt>room</tt>
+ * query parameter, which is the full MUC address of the conference room.
+ *
+ * @author agent
+ */
+public class PacketTraceHandler
+    extends AbstractHandler
+{
+    /**
+     * The logger.
+     */
+    private final static Logger logger
+        = Logger.getLogger(PacketTraceHandler.class);
+
+    /**
+     * The name of configuration property which specifies the path on which
+     * the packet traces are served, e.g. <tt>/debug/packets</tt>. Traces are
+     * not served if not set. The traces contain the Jingle and Colibri XML of
+     * the conferences, so they are served only on the monitoring connector of
+     * the authentication bundle, which listens on the loopback interface by
+     * default.
+     */
+    public static final String PATH_PNAME
+        = "org.jitsi.jicofo.metrics.PACKET_TRACE_PATH";
+
+    /**
+     * The name of the query parameter which specifies the room.
+     */
+    private static final String ROOM_PARAM = "room";
+
+    /**
+     * The path on which the traces are served.
+     */
+    private final String path;
+
+    /**
+     * Creates new instance of <tt>PacketTraceHandler</tt>.
+     *
+     * @param path the path on which the traces will be served.
+     */
+    public PacketTraceHandler(String path)
+    {
+        this.path = path;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void handle(String target,
+                       Request baseRequest,
+                       HttpServletRequest request,
+                       HttpServletResponse response)
+        throws IOException,
+               ServletException
+    {
+        if (!path.equals(target))
+            return;
+
+        baseRequest.setHandled(true);
+
+        if (!"GET".equals(request.getMethod()))
+        {
+            response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+            return;
+        }
+
+        String room = request.getParameter(ROOM_PARAM);
+        if (StringUtils.isNullOrEmpty(room))
+        {
+            response.sendError(
+                HttpServletResponse.SC_BAD_REQUEST,
+                "Missing '" + ROOM_PARAM + "' parameter");
+            return;
+        }
+
+        FocusManager focusManager
+            = ServiceUtils.getService(
+                    FocusBundleActivator.bundleContext, FocusManager.class);
+        JitsiMeetConference conference
+            = focusManager != null ? focusManager.getConference(room) : null;
+        PacketTrace trace
+            = conference != null ? conference.getPacketTrace() : null;
+        if (trace == null)
+        {
+            response.sendError(
+                HttpServletResponse.SC_NOT_FOUND,
+                "No packet trace for " + room);
+            return;
+        }
+
+        logger.info("Dumping packet trace of " + room);
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType("text/plain; charset=utf-8");
+
+        Writer out = response.getWriter();
+        out.write(trace.dump());
+    }
+}
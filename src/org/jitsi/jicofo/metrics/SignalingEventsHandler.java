@@ -0,0 +1,79 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.metrics;
+
+import org.eclipse.jetty.server.*;
+import org.eclipse.jetty.server.handler.*;
+
+import org.jitsi.jicofo.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+import java.io.*;
+
+/**
+ * Jetty <tt>Handler</tt> which dumps {@link SignalingEvents} of the whole
+ * focus on request, so that signaling stalls can be matched against GC logs
+ * and thread dumps.
+ *
+ * @author agent
+ */
+public class SignalingEventsHandler
+    extends AbstractHandler
+{
+    /**
+     * The name of configuration property which specifies the path on which
+     * the signaling events are served, e.g. <tt>/debug/events</tt>. Events
+     * are not served if not set.
+     */
+    public static final String PATH_PNAME
+        = "org.jitsi.jicofo.metrics.SIGNALING_EVENTS_PATH";
+
+    /**
+     * The path on which the events are served.
+     */
+    private final String path;
+
+    /**
+     * Creates new instance of <tt>SignalingEventsHandler</tt>.
+     *
+     * @param path the path on which the events will be served.
+     */
+    public SignalingEventsHandler(String path)
+    {
+        this.path = path;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void handle(String target,
+                       Request baseRequest,
+                       HttpServletRequest request,
+                       HttpServletResponse response)
+        throws IOException,
+               ServletException
+    {
+        if (!path.equals(target))
+            return;
+
+        baseRequest.setHandled(true);
+
+        if (!"GET".equals(request.getMethod()))
+        {
+            response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+            return;
+        }
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType("text/plain; charset=utf-8");
+
+        Writer out = response.getWriter();
+        out.write(SignalingEvents.getInstance().dump());
+    }
+}
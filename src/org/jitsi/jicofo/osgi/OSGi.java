@@ -143,7 +143,7 @@ public class OSGi
                 "org/jitsi/videobridge/eventadmin/Activator"
             },
             {
-                "org/jitsi/videobridge/influxdb/Activator"
+                "org/jitsi/jicofo/log/LoggingBundleActivator"
             },
             useMockProtocols
                 ? new String[] { "mock/MockMainMethodActivator" }
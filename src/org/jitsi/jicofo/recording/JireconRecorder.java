@@ -46,11 +46,6 @@ public class JireconRecorder
      */
     private final String token;
 
-    /**
-     * Recording status of the Jirecon component.
-     */
-    private JireconIq.Status status = JireconIq.Status.UNDEFINED;
-
     /**
      * Recording session identifier assigned by Jirecon.
      */
@@ -79,23 +74,13 @@ public class JireconRecorder
      * {@inheritDoc}
      */
     @Override
-    public boolean isRecording()
-    {
-        return JireconIq.Status.INITIATING == status
-            || JireconIq.Status.STARTED == status;
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public boolean setRecording(
+    public RecordingRequest setRecording(
             String from, String token, boolean doRecord, String path)
     {
         if (!StringUtils.isNullOrEmpty(this.token)
             && !this.token.equals(token))
         {
-            return false;
+            return completed(false);
         }
 
         if (!isRecording() && doRecord)
@@ -111,27 +96,7 @@ public class JireconRecorder
             recording.setAction(JireconIq.Action.START);
             recording.setOutput(path);
 
-            Packet reply
-                = xmpp.getXmppConnection().sendPacketAndGetReply(recording);
-            if (reply instanceof JireconIq)
-            {
-                JireconIq recResponse = (JireconIq) reply;
-                if (JireconIq.Status.INITIATING.equals(recResponse.getStatus()))
-                {
-                    recordingId = recResponse.getRid();
-                    logger.info("Received recording ID: " + recordingId);
-                    status = JireconIq.Status.INITIATING;
-                }
-                else
-                {
-                    logger.error(
-                        "Unexpected status received: " + recResponse.toXML());
-                }
-            }
-            else
-            {
-                logger.error("Unexpected response: " + reply.toXML());
-            }
+            return sendRequest(recording, State.STARTING);
         }
         else if (isRecording() && !doRecord)
         {
@@ -142,15 +107,52 @@ public class JireconRecorder
             recording.setType(IQ.Type.SET);
             recording.setFrom(from);
 
-            recording.setRid(recordingId);
+            recording.setRid(getRecordingId());
             recording.setMucJid(mucRoomJid);
             recording.setAction(JireconIq.Action.STOP);
 
-            xmpp.getXmppConnection().sendPacket(recording);
-
-            status = JireconIq.Status.STOPPING;
+            return sendRequest(recording, State.STOPPING);
         }
 
+        return completed(true);
+    }
+
+    private synchronized String getRecordingId()
+    {
+        return recordingId;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean processReply(IQ reply, State previousState)
+    {
+        if (IQ.Type.ERROR == reply.getType())
+        {
+            logger.error("Recording request failed: " + reply.toXML());
+            setState(previousState);
+        }
+        else if (State.STOPPING == getState())
+        {
+            // Jirecon will let us know when it's done with STOPPED status
+            logger.info("Stop recording accepted: " + getRecordingId());
+        }
+        else if (reply instanceof JireconIq
+            && JireconIq.Status.INITIATING.equals(
+                    ((JireconIq) reply).getStatus()))
+        {
+            synchronized (this)
+            {
+                recordingId = ((JireconIq) reply).getRid();
+            }
+            logger.info("Received recording ID: " + getRecordingId());
+        }
+        else
+        {
+            logger.error("Unexpected response: " + reply.toXML());
+            setState(previousState);
+        }
         return true;
     }
 
@@ -160,7 +162,7 @@ public class JireconRecorder
      * {@inheritDoc}
      */
     @Override
-    public boolean accept(Packet packet)
+    protected boolean acceptNotification(Packet packet)
     {
         return packet instanceof JireconIq;
     }
@@ -171,7 +173,7 @@ public class JireconRecorder
      * {@inheritDoc}
      */
     @Override
-    public void processPacket(Packet packet)
+    protected void processNotification(Packet packet)
     {
         JireconIq recording = (JireconIq) packet;
 
@@ -183,6 +185,7 @@ public class JireconRecorder
             return;
         }
 
+        String recordingId = getRecordingId();
         if (!recording.getRid().equals(recordingId))
         {
             logger.warn(
@@ -190,17 +193,31 @@ public class JireconRecorder
             return;
         }
 
-        if (status != recording.getStatus())
-        {
-            status = recording.getStatus();
+        JireconIq.Status status = recording.getStatus();
 
-            logger.info("Recording " + recordingId + " status: " + status);
+        logger.info("Recording " + recordingId + " status: " + status);
 
-            if (status == JireconIq.Status.STOPPED)
+        if (JireconIq.Status.INITIATING == status)
+        {
+            setState(State.STARTING);
+        }
+        else if (JireconIq.Status.STARTED == status)
+        {
+            setState(State.ON);
+        }
+        else if (JireconIq.Status.STOPPING == status)
+        {
+            setState(State.STOPPING);
+        }
+        else if (JireconIq.Status.STOPPED == status
+            || JireconIq.Status.ABORTED == status)
+        {
+            logger.info("Recording " + status + ": " + recordingId);
+            synchronized (this)
             {
-                logger.info("Recording STOPPED: " + recordingId);
-                recordingId = null;
+                this.recordingId = null;
             }
+            setState(State.OFF);
         }
         else
         {
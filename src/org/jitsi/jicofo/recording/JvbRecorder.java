@@ -32,11 +32,6 @@ public class JvbRecorder
      */
     private final String conferenceId;
 
-    /**
-     * Recording status.
-     */
-    boolean isRecording;
-
     /**
      * Creates new instance of <tt>JvbRecorder</tt>.
      * @param conferenceId colibri conference ID obtained when allocated
@@ -58,17 +53,8 @@ public class JvbRecorder
      * {@inheritDoc}
      */
     @Override
-    public boolean isRecording()
-    {
-        return isRecording;
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public boolean setRecording(String from, String token,
-                                boolean doRecord, String path)
+    public RecordingRequest setRecording(String from, String token,
+                                         boolean doRecord, String path)
     {
         ColibriConferenceIQ toggleRecordingIq = new ColibriConferenceIQ();
 
@@ -76,26 +62,38 @@ public class JvbRecorder
         toggleRecordingIq.setTo(recorderComponentJid);
         toggleRecordingIq.setType(IQ.Type.SET);
 
+        boolean isRecording = isRecording();
+
         toggleRecordingIq.setRecording(
             new ColibriConferenceIQ.Recording(!isRecording, token));
 
-        Packet reply
-            = xmpp.getXmppConnection()
-                    .sendPacketAndGetReply(toggleRecordingIq);
+        return sendRequest(
+            toggleRecordingIq, isRecording ? State.STOPPING : State.STARTING);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean processReply(IQ reply, State previousState)
+    {
         logger.info("REC reply received: " + reply.toXML());
-        if (reply instanceof ColibriConferenceIQ)
+        if (reply instanceof ColibriConferenceIQ
+            && IQ.Type.RESULT == reply.getType())
         {
             ColibriConferenceIQ colibriReply = (ColibriConferenceIQ) reply;
             ColibriConferenceIQ.Recording recording
                 = colibriReply.getRecording();
             if (recording != null)
             {
-                isRecording = recording.getState();
-                logger.info("REC status: " + conferenceId + ": " + isRecording);
+                setState(recording.getState() ? State.ON : State.OFF);
+                logger.info(
+                    "REC status: " + conferenceId + ": " + isRecording());
             }
             else
             {
                 // Recording token is invalid
+                setState(previousState);
                 return false;
             }
         }
@@ -104,53 +102,27 @@ public class JvbRecorder
             logger.error(
                 conferenceId
                     + " unexpected response received: " + reply.toXML());
+            setState(previousState);
         }
         return true;
     }
 
+    /**
+     * The bridge does not notify about recording status changes.
+     *
+     * {@inheritDoc}
+     */
     @Override
-    public boolean accept(Packet packet)
+    protected boolean acceptNotification(Packet packet)
     {
         return false;
-        /*if (!(packet instanceof ColibriConferenceIQ))
-            return false;
-
-        ColibriConferenceIQ colibriIQ = (ColibriConferenceIQ) packet;
-        // Packets must be with <recording/> and from the bridge
-        if (colibriIQ.getRecording() == null
-                || !recorderComponentJid.equals(packet.getFrom()))
-        {
-            return false;
-        }
-
-        if (!conferenceId.equals(colibriIQ.getID()))
-        {
-            logger.warn(
-                "Received colibri IQ from different conference: "
-                        + colibriIQ.getID() + ", expected: " + conferenceId);
-            return false;
-        }
-
-        return true;*/
     }
 
+    /**
+     * {@inheritDoc}
+     */
     @Override
-    public void processPacket(Packet packet)
+    protected void processNotification(Packet packet)
     {
-        //FIXME: should notify the conference about status change,
-        //       but currently all processing is done on the fly using
-        //       XmppConnection.sendPacketAndGetReply
-
-        /*ColibriConferenceIQ colibriIq = (ColibriConferenceIQ) packet;
-
-        ColibriConferenceIQ.Recording recordingElem
-            = colibriIq.getRecording();
-
-        logger.info(
-            conferenceId
-                + " recording status from the bridge received: "
-                + isRecording);
-
-        isRecording = recordingElem.getState();*/
     }
 }
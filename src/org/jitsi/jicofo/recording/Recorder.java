@@ -6,21 +6,66 @@
  */
 package org.jitsi.jicofo.recording;
 
+import net.java.sip.communicator.util.*;
+
 import org.jitsi.protocol.xmpp.*;
 
 import org.jivesoftware.smack.*;
 import org.jivesoftware.smack.filter.*;
+import org.jivesoftware.smack.packet.*;
+
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Abstract class used by {@link org.jitsi.jicofo.JitsiMeetConference} for
  * controlling recording functionality.
  *
+ * The requests are sent to the recorder component without waiting for
+ * the reply, which is picked up by the packet listener of this instance.
+ * The recording goes through the {@link State}s as the requests are sent and
+ * the replies or notifications are received. Only one request can be in
+ * progress at a time. The callers are notified about the completion of
+ * the request by {@link RecordingRequest#addListener(Runnable)}, so that no
+ * thread has to wait for the reply.
+ *
  * @author Pawel Domas
  */
 public abstract class Recorder
     implements PacketListener,
                PacketFilter
 {
+    /**
+     * The logger.
+     */
+    private final static Logger logger = Logger.getLogger(Recorder.class);
+
+    /**
+     * The recording state of the conference.
+     */
+    public enum State
+    {
+        /**
+         * The conference is not being recorded.
+         */
+        OFF,
+
+        /**
+         * The request to start the recording has been sent.
+         */
+        STARTING,
+
+        /**
+         * The conference is being recorded.
+         */
+        ON,
+
+        /**
+         * The request to stop the recording has been sent.
+         */
+        STOPPING
+    }
+
     /**
      * Recorder component XMPP address.
      */
@@ -31,6 +76,16 @@ public abstract class Recorder
      */
     protected final OperationSetDirectSmackXmpp xmpp;
 
+    /**
+     * Current recording state.
+     */
+    private State state = State.OFF;
+
+    /**
+     * The request waiting for the reply or <tt>null</tt> if there is none.
+     */
+    private RecordingRequest pendingRequest;
+
     public Recorder(String recorderComponentJid,
                     OperationSetDirectSmackXmpp xmpp)
     {
@@ -45,27 +100,325 @@ public abstract class Recorder
     public void dispose()
     {
         xmpp.removePacketHandler(this);
+
+        RecordingRequest request;
+        synchronized (this)
+        {
+            request = pendingRequest;
+        }
+        if (request != null)
+        {
+            request.cancel(false);
+        }
+    }
+
+    /**
+     * Returns current recording state.
+     */
+    public synchronized State getState()
+    {
+        return state;
     }
 
     /**
      * Returns current conference recording status.
      * @return <tt>true</tt> if the conference is currently being recorded
-     *         or <tt>false</tt> otherwise.
+     *         or the recording is being started, <tt>false</tt> otherwise.
      */
-    public abstract boolean isRecording();
+    public synchronized boolean isRecording()
+    {
+        return state == State.STARTING || state == State.ON;
+    }
 
     /**
      * Toggles recording status of the conference handled by this instance.
+     * Does not block, the request is completed when the recorder component
+     * replies.
      *
      * @param from JID of the user that wants to modify recording status.
      * @param token recording security token(check by the implementation).
      * @param doRecord <tt>true</tt> to enable recording.
      * @param path output recording path(implementation specific).
      *
-     * @return <tt>true</tt> if security token was successfully verified and
-     *         appropriate control actions have been taken or <tt>false</tt>
-     *         otherwise.
+     * @return {@link RecordingRequest} which completes with <tt>true</tt> if
+     *         security token was successfully verified and appropriate control
+     *         actions have been taken or with <tt>false</tt> otherwise.
      */
-    public abstract boolean setRecording(
+    public abstract RecordingRequest setRecording(
         String from, String token, boolean doRecord, String path);
+
+    /**
+     * Called when the reply to the request sent with
+     * {@link #sendRequest(IQ, State)} is received. Implementations should
+     * move to the next state using {@link #setState(State)}.
+     *
+     * @param reply the reply from the recorder component.
+     * @param previousState the state from before the request has been sent.
+     *
+     * @return <tt>true</tt> if the request has been accepted or
+     *         <tt>false</tt> if the token has been rejected.
+     */
+    protected abstract boolean processReply(IQ reply, State previousState);
+
+    /**
+     * Returns <tt>true</tt> if the packet is the notification sent by
+     * the recorder component which should be passed to
+     * {@link #processNotification(Packet)}.
+     */
+    protected abstract boolean acceptNotification(Packet packet);
+
+    /**
+     * Processes the notification from the recorder component accepted by
+     * {@link #acceptNotification(Packet)}.
+     */
+    protected abstract void processNotification(Packet packet);
+
+    /**
+     * Sets new recording state.
+     */
+    protected synchronized void setState(State newState)
+    {
+        if (state != newState)
+        {
+            logger.info(
+                "Recording state " + recorderComponentJid + ": "
+                    + state + " -> " + newState);
+
+            state = newState;
+        }
+    }
+
+    /**
+     * Sends the request to the recorder component and moves to given state.
+     * The returned request completes once the reply is processed by
+     * {@link #processReply(IQ, State)}. Cancelling it gives up on the reply
+     * and moves back to the state from before the request.
+     *
+     * @param request the request to be sent.
+     * @param transitionalState the state until the reply is received.
+     *
+     * @return the {@link RecordingRequest} sent or the one which is already
+     *         in progress, in which case nothing is sent.
+     */
+    protected RecordingRequest sendRequest(IQ request,
+                                           State transitionalState)
+    {
+        RecordingRequest recordingRequest;
+        synchronized (this)
+        {
+            if (pendingRequest != null)
+            {
+                logger.warn(
+                    "Recording request already in progress: "
+                        + pendingRequest.packetId);
+                // The result of the pending request decides the state
+                return pendingRequest;
+            }
+
+            recordingRequest
+                = new RecordingRequest(request.getPacketID(), state);
+            pendingRequest = recordingRequest;
+
+            setState(transitionalState);
+        }
+
+        xmpp.getXmppConnection().sendPacket(request);
+
+        return recordingRequest;
+    }
+
+    /**
+     * Returns {@link RecordingRequest} which has been completed with given
+     * value.
+     */
+    protected RecordingRequest completed(boolean result)
+    {
+        RecordingRequest request = new RecordingRequest(null, null);
+
+        request.complete(result);
+
+        return request;
+    }
+
+    /**
+     * Accepts the reply to the pending request and the notifications.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean accept(Packet packet)
+    {
+        return isPendingReply(packet) || acceptNotification(packet);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void processPacket(Packet packet)
+    {
+        RecordingRequest request = null;
+        synchronized (this)
+        {
+            if (isPendingReply(packet))
+            {
+                request = pendingRequest;
+                pendingRequest = null;
+            }
+        }
+
+        if (request == null)
+        {
+            // The reply may have been accepted for a request which has been
+            // cancelled since
+            if (acceptNotification(packet))
+                processNotification(packet);
+            return;
+        }
+
+        boolean result;
+        try
+        {
+            result = processReply((IQ) packet, request.previousState);
+        }
+        catch (RuntimeException e)
+        {
+            setState(request.previousState);
+            request.fail(e);
+            throw e;
+        }
+        request.complete(result);
+    }
+
+    private synchronized boolean isPendingReply(Packet packet)
+    {
+        if (pendingRequest == null || !(packet instanceof IQ))
+            return false;
+
+        IQ.Type type = ((IQ) packet).getType();
+
+        return (IQ.Type.RESULT == type || IQ.Type.ERROR == type)
+            && pendingRequest.packetId.equals(packet.getPacketID());
+    }
+
+    /**
+     * Moves back to the state from before the request, if it has not been
+     * replied yet.
+     */
+    private void requestCancelled(RecordingRequest request)
+    {
+        synchronized (this)
+        {
+            if (pendingRequest != request)
+                return;
+
+            pendingRequest = null;
+            setState(request.previousState);
+        }
+
+        logger.warn("No reply to recording request: " + request.packetId);
+    }
+
+    /**
+     * The <tt>Future</tt> of the request sent to the recorder component.
+     */
+    public class RecordingRequest
+        extends FutureTask<Boolean>
+    {
+        /**
+         * The ID of the request packet.
+         */
+        private final String packetId;
+
+        /**
+         * The state from before the request has been sent.
+         */
+        private final State previousState;
+
+        /**
+         * The listeners to be notified once the request is done or
+         * <tt>null</tt> if they have been notified already.
+         */
+        private List<Runnable> listeners = new ArrayList<Runnable>();
+
+        private RecordingRequest(String packetId, State previousState)
+        {
+            super(new Callable<Boolean>()
+            {
+                @Override
+                public Boolean call()
+                {
+                    throw new IllegalStateException("Completed on reply");
+                }
+            });
+
+            this.packetId = packetId;
+            this.previousState = previousState;
+        }
+
+        void complete(boolean result)
+        {
+            set(result);
+        }
+
+        void fail(Throwable t)
+        {
+            setException(t);
+        }
+
+        /**
+         * Adds the listener which will be called once this request is done,
+         * completed or cancelled, on the thread which has completed it. If
+         * the request is done already the listener is called immediately.
+         *
+         * @param listener the listener to be called.
+         */
+        public void addListener(Runnable listener)
+        {
+            synchronized (this)
+            {
+                if (listeners != null)
+                {
+                    listeners.add(listener);
+                    return;
+                }
+            }
+            listener.run();
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning)
+        {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+
+            if (cancelled)
+            {
+                requestCancelled(this);
+            }
+            return cancelled;
+        }
+
+        @Override
+        protected void done()
+        {
+            List<Runnable> toNotify;
+            synchronized (this)
+            {
+                toNotify = listeners;
+                listeners = null;
+            }
+
+            for (Runnable listener : toNotify)
+            {
+                try
+                {
+                    listener.run();
+                }
+                catch (RuntimeException e)
+                {
+                    logger.error("Recording request listener failed", e);
+                }
+            }
+        }
+    }
 }
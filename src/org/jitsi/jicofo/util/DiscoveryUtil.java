@@ -6,9 +6,11 @@
  */
 package org.jitsi.jicofo.util;
 
+import net.java.sip.communicator.impl.protocol.jabber.extensions.caps.*;
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.util.*;
 import org.jitsi.protocol.xmpp.*;
+import org.jivesoftware.smack.packet.*;
 
 import java.util.*;
 
@@ -59,15 +61,24 @@ public class DiscoveryUtil
      */
     public final static String FEATURE_RTP_BUNDLE = "urn:ietf:rfc:5888";
 
+    /**
+     * Jigasi SIP gateway feature name.
+     */
+    public final static String FEATURE_JIGASI
+            = "http://jitsi.org/protocol/jigasi";
+
     /**
      * Gets the list of features supported by participant. If we fail to 
-     * obtain it due to network failure default feature list is returned. 
+     * obtain it due to network failure default feature list is returned.
+     * Entity capabilities advertised in participant's MUC presence are used
+     * to skip the discovery if we already know given client version.
+     *
      * @param protocolProvider protocol provider service instance that will 
      *        be used for discovery.
-     * @param address XMPP address of the participant.
+     * @param member the chat member of the participant.
      */
     public static List<String> discoverParticipantFeatures
-        (ProtocolProviderService protocolProvider, String address)
+        (ProtocolProviderService protocolProvider, XmppChatMember member)
     {
         OperationSetSimpleCaps disco 
             = protocolProvider.getOperationSet(OperationSetSimpleCaps.class);
@@ -77,9 +88,12 @@ public class DiscoveryUtil
                 "Service discovery not supported by " + protocolProvider);
             return getDefaultParticipantFeatureSet();
         }
-        
+
+        String address = member.getContactAddress();
+
         // Discover participant feature set
-        List<String> participantFeatures = disco.getFeatures(address);
+        List<String> participantFeatures
+            = disco.getFeatures(address, getCaps(member.getPresence()));
         if (participantFeatures == null)
         {
             logger.error(
@@ -89,15 +103,47 @@ public class DiscoveryUtil
             return getDefaultParticipantFeatureSet();
         }
 
-        logger.info(address +", features: ");
-        for (String feature : participantFeatures)
+        logger.info(
+            address + " supports " + participantFeatures.size() + " features");
+
+        if (logger.isDebugEnabled())
         {
-            logger.info(feature);
+            logger.debug(address + ", features: " + participantFeatures);
         }
 
         return participantFeatures;
     }
 
+    /**
+     * Extracts XEP-0115 entity capabilities from given <tt>presence</tt>.
+     *
+     * @param presence the presence which may contain caps extension.
+     *
+     * @return <tt>EntityCapsManager.Caps</tt> advertised in the
+     *         <tt>presence</tt> or <tt>null</tt> if there are none.
+     */
+    public static EntityCapsManager.Caps getCaps(Presence presence)
+    {
+        if (presence == null)
+            return null;
+
+        PacketExtension ext
+            = presence.getExtension(
+                    CapsPacketExtension.ELEMENT_NAME,
+                    CapsPacketExtension.NAMESPACE);
+        if (!(ext instanceof CapsPacketExtension))
+            return null;
+
+        CapsPacketExtension caps = (CapsPacketExtension) ext;
+        if (caps.getNode() == null || caps.getHash() == null
+            || caps.getVersion() == null)
+            return null;
+
+        return new EntityCapsManager.Caps(
+                caps.getNode(), caps.getHash(),
+                caps.getVersion(), caps.getExtensions());
+    }
+
     /**
      * Returns default participant feature set.
      */
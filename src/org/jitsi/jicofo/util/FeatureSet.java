@@ -0,0 +1,216 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.util;
+
+import java.util.*;
+
+/**
+ * Immutable set of the features known to the focus which are supported by
+ * conference participant. The list of feature URIs obtained through service
+ * discovery is parsed once and stored as a bit mask, so that checking for
+ * particular capability does not require a search through the whole list.
+ * <p>
+ * There is one shared instance for every combination of features, so all
+ * the participants that run the same client version(advertise the same caps
+ * hash) will end up referencing the same object.
+ *
+ * @author agent
+ */
+public final class FeatureSet
+{
+    /**
+     * Features recognized by the focus.
+     */
+    public enum Feature
+    {
+        /**
+         * RTP audio.
+         */
+        AUDIO(DiscoveryUtil.FEATURE_AUDIO),
+
+        /**
+         * RTP video.
+         */
+        VIDEO(DiscoveryUtil.FEATURE_VIDEO),
+
+        /**
+         * ICE transport.
+         */
+        ICE(DiscoveryUtil.FEATURE_ICE),
+
+        /**
+         * DTLS/SCTP.
+         */
+        SCTP(DiscoveryUtil.FEATURE_SCTP),
+
+        /**
+         * RTCP mux.
+         */
+        RTCP_MUX(DiscoveryUtil.FEATURE_RTCP_MUX),
+
+        /**
+         * RTP bundle.
+         */
+        RTP_BUNDLE(DiscoveryUtil.FEATURE_RTP_BUNDLE),
+
+        /**
+         * Jigasi SIP gateway.
+         */
+        JIGASI(DiscoveryUtil.FEATURE_JIGASI);
+
+        /**
+         * Feature URI as advertised in disco#info.
+         */
+        private final String uri;
+
+        /**
+         * Bit which represents this feature in the mask.
+         */
+        private final int bit;
+
+        private Feature(String uri)
+        {
+            this.uri = uri;
+            this.bit = 1 << ordinal();
+        }
+
+        /**
+         * Returns the URI of this feature.
+         */
+        public String getUri()
+        {
+            return uri;
+        }
+    }
+
+    /**
+     * Maps feature URIs to {@link Feature}s.
+     */
+    private static final Map<String, Feature> uriMap
+        = new HashMap<String, Feature>();
+
+    /**
+     * Shared instances indexed by the bit mask.
+     */
+    private static final FeatureSet[] instances
+        = new FeatureSet[1 << Feature.values().length];
+
+    static
+    {
+        for (Feature feature : Feature.values())
+        {
+            uriMap.put(feature.uri, feature);
+        }
+        for (int i = 0; i < instances.length; i++)
+        {
+            instances[i] = new FeatureSet(i);
+        }
+    }
+
+    /**
+     * Empty feature set.
+     */
+    public static final FeatureSet EMPTY = instances[0];
+
+    /**
+     * The bit mask of features contained in this set.
+     */
+    private final int mask;
+
+    private FeatureSet(int mask)
+    {
+        this.mask = mask;
+    }
+
+    /**
+     * Parses given list of feature URIs. The URIs not recognized by the focus
+     * are ignored.
+     *
+     * @param features the list of feature URIs discovered for participant.
+     *
+     * @return shared <tt>FeatureSet</tt> instance which contains recognized
+     *         features.
+     */
+    public static FeatureSet parse(Collection<String> features)
+    {
+        int mask = 0;
+        for (String uri : features)
+        {
+            Feature feature = uriMap.get(uri);
+            if (feature != null)
+            {
+                mask |= feature.bit;
+            }
+        }
+        return instances[mask];
+    }
+
+    /**
+     * Returns shared <tt>FeatureSet</tt> instance that contains given
+     * features.
+     *
+     * @param features the features to be included in the set.
+     */
+    public static FeatureSet of(Feature ... features)
+    {
+        int mask = 0;
+        for (Feature feature : features)
+        {
+            mask |= feature.bit;
+        }
+        return instances[mask];
+    }
+
+    /**
+     * Returns <tt>true</tt> if given <tt>feature</tt> is contained in this
+     * set.
+     */
+    public boolean contains(Feature feature)
+    {
+        return (mask & feature.bit) != 0;
+    }
+
+    /**
+     * Returns <tt>true</tt> if all of given <tt>features</tt> are contained in
+     * this set.
+     */
+    public boolean containsAll(Feature ... features)
+    {
+        return of(features).isSubsetOf(this);
+    }
+
+    /**
+     * Returns <tt>true</tt> if every feature of this set is contained in
+     * <tt>other</tt> set.
+     */
+    private boolean isSubsetOf(FeatureSet other)
+    {
+        return (mask & other.mask) == mask;
+    }
+
+    /**
+     * Returns the features of this set as new <tt>EnumSet</tt>.
+     */
+    public EnumSet<Feature> toEnumSet()
+    {
+        EnumSet<Feature> set = EnumSet.noneOf(Feature.class);
+        for (Feature feature : Feature.values())
+        {
+            if (contains(feature))
+            {
+                set.add(feature);
+            }
+        }
+        return set;
+    }
+
+    @Override
+    public String toString()
+    {
+        return toEnumSet().toString();
+    }
+}
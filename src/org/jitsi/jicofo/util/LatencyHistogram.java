@@ -0,0 +1,182 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.util;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * Histogram of latencies with fixed log-linear buckets, so that percentiles
+ * can be reported. Every power of two range is divided into
+ * {@link #SUB_BUCKET_COUNT} equal sub-buckets, which keeps the relative error
+ * of reported values around 3% regardless of their magnitude. Recording
+ * a value does not allocate and does not lock, so it can be done on hot
+ * paths from multiple threads.
+ *
+ * @author agent
+ */
+public class LatencyHistogram
+{
+    /**
+     * The number of bits used to index sub-buckets.
+     */
+    private static final int SUB_BUCKET_BITS = 5;
+
+    /**
+     * The number of sub-buckets in every power of two range.
+     */
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The counts of values in each bucket.
+     */
+    private final AtomicLongArray counts;
+
+    /**
+     * The highest value which is tracked accurately. Bigger values are
+     * counted in the last bucket.
+     */
+    private final long highestTrackableValue;
+
+    /**
+     * The number of recorded values.
+     */
+    private final AtomicLong totalCount = new AtomicLong();
+
+    /**
+     * The biggest recorded value.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Creates new instance of <tt>LatencyHistogram</tt>.
+     *
+     * @param highestTrackableValue the highest value which is tracked
+     *                              accurately.
+     */
+    public LatencyHistogram(long highestTrackableValue)
+    {
+        if (highestTrackableValue < SUB_BUCKET_COUNT)
+            throw new IllegalArgumentException(
+                "highestTrackableValue: " + highestTrackableValue);
+
+        this.highestTrackableValue = highestTrackableValue;
+        this.counts
+            = new AtomicLongArray(bucketIndex(highestTrackableValue) + 1);
+    }
+
+    /**
+     * Records single value. Negative values are counted as 0.
+     *
+     * @param value the value to be recorded.
+     */
+    public void record(long value)
+    {
+        if (value < 0)
+            value = 0;
+
+        counts.incrementAndGet(
+            bucketIndex(Math.min(value, highestTrackableValue)));
+        totalCount.incrementAndGet();
+
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value))
+        {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Returns the number of recorded values.
+     */
+    public long getCount()
+    {
+        return totalCount.get();
+    }
+
+    /**
+     * Returns the biggest recorded value.
+     */
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    /**
+     * Returns the value below which given percentage of the recorded values
+     * falls. The value is the upper bound of the bucket in which
+     * the percentile is located, but never more than {@link #getMax()}.
+     *
+     * @param percentile the percentile between 0 and 100.
+     *
+     * @return the value at given percentile or 0 if nothing has been recorded.
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("percentile: " + percentile);
+
+        // Sum the buckets instead of using totalCount, as values might be
+        // recorded while we iterate
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++)
+        {
+            total += counts.get(i);
+        }
+        if (total == 0)
+            return 0;
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100d * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++)
+        {
+            seen += counts.get(i);
+            if (seen >= target)
+            {
+                return Math.min(bucketUpperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Returns the index of the bucket for given non-negative value.
+     */
+    private static int bucketIndex(long value)
+    {
+        if (value < SUB_BUCKET_COUNT)
+            return (int) value;
+
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+
+        return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * Returns the highest value which falls into the bucket with given index.
+     */
+    private static long bucketUpperBound(int index)
+    {
+        if (index < SUB_BUCKET_COUNT)
+            return index;
+
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        int subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+
+        return ((long) (SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "count=" + getCount()
+            + ", p50=" + getValueAtPercentile(50)
+            + ", p99=" + getValueAtPercentile(99)
+            + ", max=" + getMax();
+    }
+}
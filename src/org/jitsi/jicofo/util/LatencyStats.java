@@ -0,0 +1,99 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.util;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * Accumulates the durations of some repeated operation(like MUC room setup),
+ * so that the count, average, maximum and the most recent value can be
+ * reported. Safe to be used from multiple threads without locking.
+ *
+ * @author agent
+ */
+public class LatencyStats
+{
+    /**
+     * The number of recorded operations.
+     */
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * The sum of all recorded durations in milliseconds.
+     */
+    private final AtomicLong total = new AtomicLong();
+
+    /**
+     * The longest recorded duration in milliseconds.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * The most recently recorded duration in milliseconds.
+     */
+    private volatile long last;
+
+    /**
+     * Records the duration of single operation.
+     *
+     * @param millis the duration in milliseconds.
+     */
+    public void record(long millis)
+    {
+        count.incrementAndGet();
+        total.addAndGet(millis);
+        last = millis;
+
+        long currentMax = max.get();
+        while (millis > currentMax && !max.compareAndSet(currentMax, millis))
+        {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Returns the number of recorded operations.
+     */
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    /**
+     * Returns the average duration in milliseconds or 0 if nothing has been
+     * recorded yet.
+     */
+    public long getAverage()
+    {
+        long n = count.get();
+
+        return n > 0 ? total.get() / n : 0;
+    }
+
+    /**
+     * Returns the longest recorded duration in milliseconds.
+     */
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    /**
+     * Returns the most recently recorded duration in milliseconds.
+     */
+    public long getLast()
+    {
+        return last;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "count=" + getCount() + ", avg=" + getAverage()
+            + "ms, max=" + getMax() + "ms, last=" + getLast() + "ms";
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.util;
+
+import net.java.sip.communicator.util.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * An <tt>Executor</tt> which runs tasks on the underlying executor, but never
+ * more than the given number at the same time. Tasks that exceed the limit
+ * are queued and submitted in order of arrival as the running ones complete.
+ * Unlike blocking on a semaphore, queued tasks do not occupy the threads of
+ * the (shared) underlying executor while they wait.
+ *
+ * @author agent
+ */
+public class LimitedExecutor
+    implements Executor
+{
+    /**
+     * The logger.
+     */
+    private final static Logger logger
+        = Logger.getLogger(LimitedExecutor.class);
+
+    /**
+     * The executor used to run the tasks.
+     */
+    private final Executor executor;
+
+    /**
+     * The maximum number of tasks running at the same time.
+     */
+    private final int limit;
+
+    /**
+     * Tasks waiting to be submitted to the underlying executor.
+     */
+    private final Queue<Runnable> queue = new LinkedList<Runnable>();
+
+    /**
+     * The number of tasks currently submitted to the underlying executor.
+     */
+    private int running;
+
+    /**
+     * Indicates if {@link #shutdown()} has been called.
+     */
+    private boolean shutdown;
+
+    /**
+     * Creates new instance of <tt>LimitedExecutor</tt>.
+     *
+     * @param executor the executor that will run the tasks.
+     * @param limit the maximum number of tasks that will be running at the
+     *              same time.
+     */
+    public LimitedExecutor(Executor executor, int limit)
+    {
+        if (executor == null)
+            throw new NullPointerException("executor");
+        if (limit <= 0)
+            throw new IllegalArgumentException("limit: " + limit);
+
+        this.executor = executor;
+        this.limit = limit;
+    }
+
+    /**
+     * Returns the maximum number of tasks running at the same time.
+     */
+    public int getLimit()
+    {
+        return limit;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(Runnable task)
+    {
+        if (task == null)
+            throw new NullPointerException("task");
+
+        synchronized (queue)
+        {
+            if (shutdown)
+                throw new RejectedExecutionException("Executor shut down");
+
+            if (running >= limit)
+            {
+                queue.add(task);
+                return;
+            }
+            running++;
+        }
+
+        submit(task);
+    }
+
+    /**
+     * Stops accepting new tasks and removes the ones waiting for execution.
+     * Tasks that are already running are not interrupted.
+     *
+     * @return the list of tasks that have been waiting for execution and
+     *         will never be run.
+     */
+    public List<Runnable> shutdown()
+    {
+        synchronized (queue)
+        {
+            shutdown = true;
+
+            List<Runnable> dropped = new ArrayList<Runnable>(queue);
+            queue.clear();
+            return dropped;
+        }
+    }
+
+    /**
+     * Returns the number of tasks waiting for execution.
+     */
+    public int getQueueSize()
+    {
+        synchronized (queue)
+        {
+            return queue.size();
+        }
+    }
+
+    /**
+     * Submits given task to the underlying executor. The task is wrapped, so
+     * that the next queued task is submitted when it completes.
+     *
+     * @param task the task to be submitted.
+     */
+    private void submit(final Runnable task)
+    {
+        try
+        {
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        task.run();
+                    }
+                    finally
+                    {
+                        onTaskDone();
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            logger.error("Task rejected: " + task, e);
+
+            onTaskDone();
+        }
+    }
+
+    /**
+     * Called when task completes in order to submit the next one.
+     */
+    private void onTaskDone()
+    {
+        Runnable next;
+        synchronized (queue)
+        {
+            next = queue.poll();
+            if (next == null)
+            {
+                running--;
+                return;
+            }
+        }
+
+        submit(next);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.util;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * Counts the events which occurred within sliding time window. The window
+ * is divided into fixed number of slots, so the count is accurate to the
+ * length of single slot. Recording an event does not require locking except
+ * for the moment when new slot is entered.
+ *
+ * @author agent
+ */
+public class RateMeter
+{
+    /**
+     * The length of single slot in milliseconds.
+     */
+    private final long slotLength;
+
+    /**
+     * Event counts of the slots.
+     */
+    private final AtomicLongArray counts;
+
+    /**
+     * The numbers of the time slots to which {@link #counts} correspond.
+     */
+    private final AtomicLongArray slots;
+
+    /**
+     * Creates new instance of <tt>RateMeter</tt>.
+     *
+     * @param window the length of the window in milliseconds.
+     * @param slotCount the number of slots into which the window is divided.
+     */
+    public RateMeter(long window, int slotCount)
+    {
+        if (slotCount <= 0)
+            throw new IllegalArgumentException("slotCount: " + slotCount);
+        if (window < slotCount)
+            throw new IllegalArgumentException("window: " + window);
+
+        this.slotLength = window / slotCount;
+        this.counts = new AtomicLongArray(slotCount);
+        this.slots = new AtomicLongArray(slotCount);
+    }
+
+    /**
+     * Records single event.
+     */
+    public void hit()
+    {
+        long slot = System.currentTimeMillis() / slotLength;
+        int idx = (int) (slot % counts.length());
+
+        if (slots.get(idx) != slot)
+        {
+            synchronized (this)
+            {
+                if (slots.get(idx) != slot)
+                {
+                    counts.set(idx, 0);
+                    slots.set(idx, slot);
+                }
+            }
+        }
+        counts.incrementAndGet(idx);
+    }
+
+    /**
+     * Returns the number of events recorded within the window.
+     */
+    public long getCount()
+    {
+        long currentSlot = System.currentTimeMillis() / slotLength;
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++)
+        {
+            if (currentSlot - slots.get(i) < counts.length())
+            {
+                count += counts.get(i);
+            }
+        }
+        return count;
+    }
+}
@@ -10,10 +10,12 @@ import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
 import net.java.sip.communicator.util.*;
 import net.java.sip.communicator.util.Logger;
 
+import org.jitsi.impl.protocol.xmpp.*;
 import org.jitsi.impl.protocol.xmpp.extensions.*;
 import org.jitsi.jicofo.*;
 import org.jitsi.jicofo.auth.*;
 import org.jitsi.jicofo.reservation.*;
+import org.jitsi.jicofo.util.*;
 import org.jitsi.util.*;
 import org.jivesoftware.smack.packet.*;
 import org.osgi.framework.*;
@@ -150,6 +152,8 @@ public class FocusComponent extends AbstractComponent {
 
 	@Override
 	protected IQ handleIQGet(IQ iq) throws Exception {
+		FocusStatistics.getInstance().xmppRequestStarted();
+		long requestStart = System.nanoTime();
 		try {
 			org.jivesoftware.smack.packet.IQ smackIq = IQUtils.convert(iq);
 			if (smackIq instanceof ColibriStatsIQ) {
@@ -170,6 +174,20 @@ public class FocusComponent extends AbstractComponent {
 						"graceful_shutdown", focusManager
 								.isShutdownInProgress() ? "true" : "false"));
 
+				// MUC room creation latency
+				LatencyStats roomSetupStats = ChatRoomImpl.getRoomSetupStats();
+				statsReply.addStat(new ColibriStatsExtension.Stat(
+						"room_setup_count", Long.toString(roomSetupStats
+								.getCount())));
+				statsReply.addStat(new ColibriStatsExtension.Stat(
+						"room_setup_avg_time", Long.toString(roomSetupStats
+								.getAverage())));
+				statsReply.addStat(new ColibriStatsExtension.Stat(
+						"room_setup_max_time", Long.toString(roomSetupStats
+								.getMax())));
+
+				addFocusStats(statsReply, FocusStatistics.getInstance());
+
 				return IQUtils.convert(statsReply);
 			} else if (smackIq instanceof LoginUrlIQ) {
 				org.jivesoftware.smack.packet.IQ result = handleAuthUrlIq((LoginUrlIQ) smackIq);
@@ -180,6 +198,9 @@ public class FocusComponent extends AbstractComponent {
 		} catch (Exception e) {
 			logger.error(e, e);
 			throw e;
+		} finally {
+			FocusStatistics.getInstance().xmppRequestCompleted(
+					System.nanoTime() - requestStart);
 		}
 	}
 
@@ -200,11 +221,17 @@ public class FocusComponent extends AbstractComponent {
 	 */
 	@Override
 	public IQ handleIQSet(IQ iq) throws Exception {
+		FocusStatistics.getInstance().xmppRequestStarted();
+		long requestStart = System.nanoTime();
 		try {
 			org.jivesoftware.smack.packet.IQ smackIq = IQUtils.convert(iq);
 
 			if (smackIq instanceof ConferenceIq) {
+				long startNanos = System.nanoTime();
 				org.jivesoftware.smack.packet.IQ response = handleConferenceIq((ConferenceIq) smackIq);
+				FocusStatistics.getInstance().recordJoinPhase(
+						FocusStatistics.JoinPhase.CONFERENCE_REQUEST, null,
+						System.nanoTime() - startNanos);
 
 				return response != null ? IQUtils.convert(response) : null;
 			} else if (smackIq instanceof GracefulShutdownIQ) {
@@ -254,6 +281,9 @@ public class FocusComponent extends AbstractComponent {
 		} catch (Exception e) {
 			logger.error(e, e);
 			throw e;
+		} finally {
+			FocusStatistics.getInstance().xmppRequestCompleted(
+					System.nanoTime() - requestStart);
 		}
 	}
 
@@ -375,6 +405,93 @@ public class FocusComponent extends AbstractComponent {
 		return response;
 	}
 
+	/**
+	 * Adds the statistics collected by {@link FocusStatistics} to the stats
+	 * IQ reply.
+	 *
+	 * @param statsReply
+	 *            the reply to which the stats will be added.
+	 * @param stats
+	 *            the statistics of the focus.
+	 */
+	private static void addFocusStats(ColibriStatsIQ statsReply,
+			FocusStatistics stats) {
+		addStat(statsReply, "total_conferences",
+				stats.getTotalConferenceCount());
+		addStat(statsReply, "participants", stats.getParticipantCount());
+		addStat(statsReply, "total_participants",
+				stats.getTotalParticipantCount());
+		addStat(statsReply, "jingle_sessions", stats.getJingleSessionCount());
+		addStat(statsReply, "pending_invites", stats.getPendingInviteCount());
+		addStat(statsReply, "failed_invites", stats.getFailedInviteCount());
+		addStat(statsReply, "allocation_failures",
+				stats.getAllocationFailureCount());
+
+		LatencyHistogram joinLatency = stats.getJoinLatency();
+		addStat(statsReply, "join_count", joinLatency.getCount());
+		addStat(statsReply, "join_time_p50",
+				joinLatency.getValueAtPercentile(50));
+		addStat(statsReply, "join_time_p90",
+				joinLatency.getValueAtPercentile(90));
+		addStat(statsReply, "join_time_p99",
+				joinLatency.getValueAtPercentile(99));
+		addStat(statsReply, "join_time_max", joinLatency.getMax());
+
+		for (FocusStatistics.JoinPhase phase : FocusStatistics.JoinPhase
+				.values()) {
+			addJoinPhaseStats(statsReply, phase, "",
+					stats.getJoinPhaseLatency(phase));
+		}
+
+		for (String bridge : stats.getBridges()) {
+			addStat(statsReply, "bridge_allocations:" + bridge,
+					stats.getBridgeAllocationCount(bridge));
+			addStat(statsReply, "bridge_allocation_failures:" + bridge,
+					stats.getBridgeFailureCount(bridge));
+
+			for (FocusStatistics.JoinPhase phase : FocusStatistics.JoinPhase
+					.values()) {
+				addJoinPhaseStats(statsReply, phase, ":" + bridge,
+						stats.getJoinPhaseLatency(phase, bridge));
+			}
+		}
+	}
+
+	/**
+	 * Adds the count and p50/p99/p999 in microseconds of the join phase to
+	 * the stats IQ reply. Nothing is added if the phase has not been
+	 * recorded.
+	 *
+	 * @param statsReply
+	 *            the reply to which the stats will be added.
+	 * @param phase
+	 *            the join phase.
+	 * @param suffix
+	 *            appended to the names of the stats.
+	 * @param histogram
+	 *            the latencies of the phase or <tt>null</tt>.
+	 */
+	private static void addJoinPhaseStats(ColibriStatsIQ statsReply,
+			FocusStatistics.JoinPhase phase, String suffix,
+			LatencyHistogram histogram) {
+		if (histogram == null || histogram.getCount() == 0)
+			return;
+
+		String prefix = "join_" + phase.getName();
+		addStat(statsReply, prefix + "_count" + suffix, histogram.getCount());
+		addStat(statsReply, prefix + "_p50_us" + suffix,
+				histogram.getValueAtPercentile(50));
+		addStat(statsReply, prefix + "_p99_us" + suffix,
+				histogram.getValueAtPercentile(99));
+		addStat(statsReply, prefix + "_p999_us" + suffix,
+				histogram.getValueAtPercentile(99.9));
+	}
+
+	private static void addStat(ColibriStatsIQ statsReply, String name,
+			Object value) {
+		statsReply.addStat(new ColibriStatsExtension.Stat(name, value));
+	}
+
 	private org.jivesoftware.smack.packet.IQ handleAuthUrlIq(
 			LoginUrlIQ authUrlIq) {
 		if (authAuthority == null) {
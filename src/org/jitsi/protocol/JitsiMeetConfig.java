@@ -72,6 +72,12 @@ public class JitsiMeetConfig
     public static final String ENABLE_FIREFOX_HACKS_PNAME
             = "enableFirefoxHacks";
 
+    /**
+     * The name of the configuration property which specifies the maximum
+     * number of participants invited in parallel when the conference starts.
+     */
+    public static final String INVITE_CONCURRENCY_PNAME = "inviteConcurrency";
+
     private final Map<String, String> properties;
 
     /**
@@ -147,6 +153,15 @@ public class JitsiMeetConfig
         return getBoolean(ENABLE_FIREFOX_HACKS_PNAME);
     }
 
+    /**
+     * Returns the maximum number of participants that can be invited at the
+     * same time or <tt>null</tt> if it has not been specified.
+     */
+    public Integer getInviteConcurrency()
+    {
+        return getInt(INVITE_CONCURRENCY_PNAME);
+    }
+
     private Boolean getBoolean(String name)
     {
         String stringValue = properties.get(name);
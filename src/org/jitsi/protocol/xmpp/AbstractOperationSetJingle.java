@@ -122,6 +122,9 @@ public abstract class AbstractOperationSetJingle
         }
 
         getConnection().sendPacket(inviteIQ);
+
+        SignalingEvents.getInstance().record(
+            SignalingEvents.Type.SESSION_INITIATE, address);
     }
 
     /**
@@ -6,6 +6,7 @@
  */
 package org.jitsi.protocol.xmpp;
 
+import net.java.sip.communicator.impl.protocol.jabber.extensions.caps.*;
 import net.java.sip.communicator.service.protocol.*;
 
 import java.util.*;
@@ -49,5 +50,23 @@ public interface OperationSetSimpleCaps
      */
     List<String> getFeatures(String node);
 
+    /**
+     * Returns the list of features supported by given <tt>node</tt>. If
+     * the entity has advertised XEP-0115 capabilities the result will be
+     * served from the cache shared by all entities which advertise the same
+     * verification string, so that disco#info query is sent only once per
+     * client version.
+     *
+     * @param node XMPP address of the entity for which features wil be
+     *        discovered.
+     * @param caps entity capabilities advertised by the <tt>node</tt> in
+     *        it's presence or <tt>null</tt> if not available.
+     *
+     * @return the list of features supported by given <tt>node</tt> or
+     *         <tt>null</tt> if we have failed to obtain the list due to some
+     *         errors.
+     */
+    List<String> getFeatures(String node, EntityCapsManager.Caps caps);
+
     //boolean hasFeatureSupport(String node, String subnode, String[] features);
 }
@@ -8,6 +8,8 @@ package org.jitsi.protocol.xmpp;
 
 import net.java.sip.communicator.service.protocol.*;
 
+import org.jivesoftware.smack.packet.*;
+
 /**
  * XMPP extended interface of {@link ChatRoomMember}.
  *
@@ -20,4 +22,10 @@ public interface XmppChatMember
      * Returns ths original user's connection Jabber ID and not the MUC address.
      */
     String getJabberID();
+
+    /**
+     * Returns the last MUC presence received from this member or
+     * <tt>null</tt> if not available.
+     */
+    Presence getPresence();
 }
@@ -0,0 +1,135 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.protocol.xmpp.util;
+
+import com.googlecode.concurrentlinkedhashmap.*;
+
+import java.util.*;
+
+/**
+ * Bounded cache of entity feature lists keyed by XEP-0115 verification
+ * string ('ver' attribute of the caps element). Clients of the same version
+ * advertise the same 'ver', so once we have discovered (and verified) the
+ * features for one of them we can skip the disco#info round trip for all
+ * the others. The least recently used entries are evicted once the capacity
+ * is exceeded and entries older than the time to live are discarded on
+ * access.
+ *
+ * @author agent
+ */
+public class EntityCapsCache
+{
+    /**
+     * The map which stores cache entries.
+     */
+    private final ConcurrentLinkedHashMap<String, Entry> entries;
+
+    /**
+     * Cache entry time to live in milliseconds.
+     */
+    private final long ttl;
+
+    /**
+     * Creates new instance of <tt>EntityCapsCache</tt>.
+     *
+     * @param capacity the maximum number of entries held by this cache.
+     * @param ttl the time in milliseconds after which entry will expire.
+     */
+    public EntityCapsCache(int capacity, long ttl)
+    {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity: " + capacity);
+
+        this.ttl = ttl;
+        this.entries
+            = new ConcurrentLinkedHashMap.Builder<String, Entry>()
+                    .maximumWeightedCapacity(capacity)
+                    .build();
+    }
+
+    /**
+     * Returns the list of features cached for given caps verification string
+     * or <tt>null</tt> if we have no valid entry for it.
+     *
+     * @param ver XEP-0115 verification string advertised by the entity.
+     */
+    public List<String> get(String ver)
+    {
+        if (ver == null)
+            return null;
+
+        Entry entry = entries.get(ver);
+        if (entry == null)
+            return null;
+
+        if (System.currentTimeMillis() - entry.timestamp > ttl)
+        {
+            entries.remove(ver, entry);
+            return null;
+        }
+
+        return entry.features;
+    }
+
+    /**
+     * Stores the list of features discovered for given caps verification
+     * string. The caller is responsible for verifying that <tt>ver</tt>
+     * matches the features, as the entry will be shared by all entities
+     * which advertise the same <tt>ver</tt>.
+     *
+     * @param ver XEP-0115 verification string.
+     * @param features the list of features discovered for <tt>ver</tt>.
+     */
+    public void put(String ver, List<String> features)
+    {
+        if (ver == null || features == null)
+            return;
+
+        entries.put(
+            ver,
+            new Entry(
+                Collections.unmodifiableList(
+                    new ArrayList<String>(features))));
+    }
+
+    /**
+     * Returns the number of entries currently stored in this cache.
+     */
+    public int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Removes all entries from this cache.
+     */
+    public void clear()
+    {
+        entries.clear();
+    }
+
+    /**
+     * Cache entry.
+     */
+    private static class Entry
+    {
+        /**
+         * The moment when the entry was created.
+         */
+        final long timestamp = System.currentTimeMillis();
+
+        /**
+         * Unmodifiable list of features.
+         */
+        final List<String> features;
+
+        Entry(List<String> features)
+        {
+            this.features = features;
+        }
+    }
+}
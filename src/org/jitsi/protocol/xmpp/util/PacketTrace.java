@@ -0,0 +1,268 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.protocol.xmpp.util;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
+
+import org.jivesoftware.smack.packet.*;
+
+import java.text.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Fixed size ring buffer which remembers the summaries of the most recent
+ * packets sent and received over XMPP connection, so that the signaling of
+ * single conference can be inspected after the fact without enabling debug
+ * logging. Only the references to type, action, addresses and packet ID are
+ * stored and the entries are reused. Every n-th packet is serialized when
+ * recorded, outside of the lock of the trace, so that its XML(and size) can be
+ * dumped without keeping the packet, which could be modified or hold on to
+ * the memory later.
+ *
+ * @author agent
+ */
+public class PacketTrace
+{
+    /**
+     * The ring of entries, allocated up front and overwritten.
+     */
+    private final Entry[] entries;
+
+    /**
+     * Every n-th packet is serialized for XML dump, 0 means none.
+     */
+    private final int xmlSampleInterval;
+
+    /**
+     * Counts the packets for XML sampling, so that the decision can be made
+     * before the lock is taken.
+     */
+    private final AtomicLong xmlSampleCounter = new AtomicLong();
+
+    /**
+     * The index of the entry which will be written next.
+     */
+    private int next;
+
+    /**
+     * The number of packets recorded so far.
+     */
+    private long recordedCount;
+
+    /**
+     * Creates new instance of <tt>PacketTrace</tt>.
+     *
+     * @param capacity the number of packets remembered.
+     * @param xmlSampleInterval every n-th packet will be serialized so that
+     *                          its XML can be dumped, 0 disables XML.
+     */
+    public PacketTrace(int capacity, int xmlSampleInterval)
+    {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity: " + capacity);
+        if (xmlSampleInterval < 0)
+            throw new IllegalArgumentException(
+                "xmlSampleInterval: " + xmlSampleInterval);
+
+        this.entries = new Entry[capacity];
+        for (int i = 0; i < capacity; i++)
+        {
+            entries[i] = new Entry();
+        }
+        this.xmlSampleInterval = xmlSampleInterval;
+    }
+
+    /**
+     * Records the packet.
+     *
+     * @param packet the packet sent or received.
+     * @param outgoing <tt>true</tt> if the packet is being sent.
+     */
+    public void record(Packet packet, boolean outgoing)
+    {
+        String xml = null;
+        if (xmlSampleInterval > 0
+                && xmlSampleCounter.incrementAndGet() % xmlSampleInterval == 0)
+        {
+            xml = packet.toXML();
+        }
+
+        synchronized (this)
+        {
+            recordEntry(packet, outgoing, xml);
+        }
+    }
+
+    private void recordEntry(Packet packet, boolean outgoing, String xml)
+    {
+        Entry entry = entries[next];
+
+        next = (next + 1) % entries.length;
+        recordedCount++;
+
+        entry.timestamp = System.currentTimeMillis();
+        entry.outgoing = outgoing;
+        entry.from = packet.getFrom();
+        entry.to = packet.getTo();
+        entry.packetId = packet.getPacketID();
+        entry.xml = xml;
+
+        if (packet instanceof IQ)
+        {
+            entry.kind = "iq";
+            entry.type = ((IQ) packet).getType();
+            entry.action
+                = packet instanceof JingleIQ
+                    ? ((JingleIQ) packet).getAction() : packet.getClass();
+        }
+        else if (packet instanceof Presence)
+        {
+            entry.kind = "presence";
+            entry.type = ((Presence) packet).getType();
+            entry.action = null;
+        }
+        else if (packet instanceof Message)
+        {
+            entry.kind = "message";
+            entry.type = ((Message) packet).getType();
+            entry.action = null;
+        }
+        else
+        {
+            entry.kind = "packet";
+            entry.type = null;
+            entry.action = packet.getClass();
+        }
+    }
+
+    /**
+     * Returns the number of packets recorded since this trace was created.
+     */
+    public synchronized long getRecordedCount()
+    {
+        return recordedCount;
+    }
+
+    /**
+     * Returns the number of entries currently held by this trace.
+     */
+    public synchronized int size()
+    {
+        return (int) Math.min(recordedCount, entries.length);
+    }
+
+    /**
+     * Writes the remembered packets from the oldest to the most recent into
+     * human readable text.
+     *
+     * @return the text with one line per packet followed by XML of sampled
+     *         packets.
+     */
+    public String dump()
+    {
+        Entry[] snapshot;
+        synchronized (this)
+        {
+            int count = size();
+
+            snapshot = new Entry[count];
+            for (int i = 0; i < count; i++)
+            {
+                int idx = (next - count + i + entries.length) % entries.length;
+
+                snapshot[i] = entries[idx].copy();
+            }
+        }
+
+        DateFormat timeFormat = new SimpleDateFormat("HH:mm:ss.SSS");
+        StringBuilder out = new StringBuilder();
+        for (Entry entry : snapshot)
+        {
+            entry.appendTo(out, timeFormat);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Summary of single packet.
+     */
+    private static class Entry
+    {
+        long timestamp;
+
+        boolean outgoing;
+
+        String kind;
+
+        /**
+         * IQ, presence or message type.
+         */
+        Object type;
+
+        /**
+         * Jingle action or the class of the packet.
+         */
+        Object action;
+
+        String from;
+
+        String to;
+
+        String packetId;
+
+        /**
+         * The XML of the packet if it has been sampled for XML dump.
+         */
+        String xml;
+
+        Entry copy()
+        {
+            Entry copy = new Entry();
+
+            copy.timestamp = timestamp;
+            copy.outgoing = outgoing;
+            copy.kind = kind;
+            copy.type = type;
+            copy.action = action;
+            copy.from = from;
+            copy.to = to;
+            copy.packetId = packetId;
+            copy.xml = xml;
+            return copy;
+        }
+
+        void appendTo(StringBuilder out, DateFormat timeFormat)
+        {
+            out.append(timeFormat.format(new Date(timestamp)))
+                .append(outgoing ? " --> " : " <-- ")
+                .append(kind);
+            if (type != null)
+            {
+                out.append(' ').append(type);
+            }
+            if (action instanceof Class)
+            {
+                out.append(' ').append(((Class<?>) action).getSimpleName());
+            }
+            else if (action != null)
+            {
+                out.append(' ').append(action);
+            }
+            out.append(" from=").append(from)
+                .append(" to=").append(to)
+                .append(" id=").append(packetId);
+
+            if (xml != null)
+            {
+                out.append(" size=").append(xml.length())
+                    .append("\n    ").append(xml);
+            }
+            out.append('\n');
+        }
+    }
+}
@@ -10,6 +10,7 @@ import mock.xmpp.*;
 import net.java.sip.communicator.service.protocol.*;
 import net.java.sip.communicator.service.protocol.globalstatus.*;
 import org.jitsi.protocol.xmpp.*;
+import org.jivesoftware.smack.packet.*;
 
 /**
  * @author Pawel Domas
@@ -122,4 +123,10 @@ public class MockRoomMember
     {
         return null;
     }
+
+    @Override
+    public Presence getPresence()
+    {
+        return null;
+    }
 }
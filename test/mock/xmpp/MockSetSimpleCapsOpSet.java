@@ -1,5 +1,6 @@
 package mock.xmpp;
 
+import net.java.sip.communicator.impl.protocol.jabber.extensions.caps.*;
 import org.jitsi.protocol.xmpp.*;
 
 import java.util.*;
@@ -96,6 +97,12 @@ public class MockSetSimpleCapsOpSet
         return Arrays.asList(capsNode.getFeatures());
     }
 
+    @Override
+    public List<String> getFeatures(String node, EntityCapsManager.Caps caps)
+    {
+        return getFeatures(node);
+    }
+
     //@Override
     public boolean hasFeatureSupport(String node, String subnode,
                                      String[] features)
@@ -0,0 +1,172 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.impl.protocol.xmpp;
+
+import net.java.sip.communicator.service.protocol.*;
+
+import org.jitsi.protocol.xmpp.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.lang.reflect.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link ChatMemberRegistry}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class ChatMemberRegistryTest
+{
+    private static final String ROOM = "room@conference.example.com/";
+
+    @Test
+    public void testAddRemove()
+    {
+        ChatMemberRegistry<XmppChatMember> registry
+            = new ChatMemberRegistry<XmppChatMember>();
+
+        FakeMember alice = new FakeMember(ROOM + "alice", "alice@example.com");
+        FakeMember bob = new FakeMember(ROOM + "bob", null);
+
+        assertTrue(registry.add(alice.proxy));
+        assertTrue(registry.add(bob.proxy));
+        assertFalse(
+            registry.add(new FakeMember(ROOM + "alice", null).proxy));
+
+        assertEquals(2, registry.size());
+        assertSame(alice.proxy, registry.get(ROOM + "alice"));
+        assertSame(alice.proxy, registry.getByJid("alice@example.com"));
+        assertNull(registry.get(ROOM + "carol"));
+
+        assertSame(alice.proxy, registry.remove(ROOM + "alice"));
+        assertNull(registry.remove(ROOM + "alice"));
+        assertNull(registry.get(ROOM + "alice"));
+        assertNull(registry.getByJid("alice@example.com"));
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void testSnapshot()
+    {
+        ChatMemberRegistry<XmppChatMember> registry
+            = new ChatMemberRegistry<XmppChatMember>();
+
+        FakeMember alice = new FakeMember(ROOM + "alice", null);
+        registry.add(alice.proxy);
+
+        List<ChatRoomMember> snapshot = registry.getSnapshot();
+        assertEquals(1, snapshot.size());
+
+        try
+        {
+            snapshot.clear();
+            fail("Snapshot must not be modifiable");
+        }
+        catch (UnsupportedOperationException e)
+        {
+            // OK
+        }
+
+        // Existing snapshot is not affected by the changes
+        registry.add(new FakeMember(ROOM + "bob", null).proxy);
+        assertEquals(1, snapshot.size());
+        assertEquals(2, registry.getSnapshot().size());
+
+        // Snapshot is shared until membership changes
+        assertSame(registry.getSnapshot(), registry.getSnapshot());
+    }
+
+    @Test
+    public void testJidKnownLater()
+    {
+        ChatMemberRegistry<XmppChatMember> registry
+            = new ChatMemberRegistry<XmppChatMember>();
+
+        FakeMember alice = new FakeMember(ROOM + "alice", null);
+        registry.add(alice.proxy);
+
+        assertNull(registry.getByJid("alice@example.com"));
+
+        alice.jid = "alice@example.com";
+        registry.updateJid(ROOM + "alice");
+
+        assertSame(alice.proxy, registry.getByJid("alice@example.com"));
+
+        // Unknown address is ignored
+        registry.updateJid(ROOM + "bob");
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void testRejoinKeepsJidIndex()
+    {
+        ChatMemberRegistry<XmppChatMember> registry
+            = new ChatMemberRegistry<XmppChatMember>();
+
+        FakeMember first = new FakeMember(ROOM + "alice", "alice@example.com");
+        registry.add(first.proxy);
+
+        // The same user joins again under different nickname before
+        // the old occupant is removed
+        FakeMember second
+            = new FakeMember(ROOM + "alice2", "alice@example.com");
+        registry.add(second.proxy);
+        registry.remove(ROOM + "alice");
+
+        assertSame(second.proxy, registry.getByJid("alice@example.com"));
+    }
+
+    /**
+     * {@link XmppChatMember} which provides only the MUC address and the real
+     * JID, which can be changed by the test.
+     */
+    private static class FakeMember
+        implements InvocationHandler
+    {
+        final String address;
+
+        String jid;
+
+        final XmppChatMember proxy;
+
+        FakeMember(String address, String jid)
+        {
+            this.address = address;
+            this.jid = jid;
+            this.proxy
+                = (XmppChatMember) Proxy.newProxyInstance(
+                        getClass().getClassLoader(),
+                        new Class[] { XmppChatMember.class },
+                        this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+        {
+            String name = method.getName();
+
+            if ("getContactAddress".equals(name))
+                return address;
+            else if ("getJabberID".equals(name))
+                return jid;
+            else if ("equals".equals(name))
+                return proxy == args[0];
+            else if ("hashCode".equals(name))
+                return System.identityHashCode(proxy);
+            else if ("toString".equals(name))
+                return address;
+
+            throw new UnsupportedOperationException(name);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link FocusStatistics}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class FocusStatisticsTest
+{
+    @Test
+    public void testCounters()
+    {
+        FocusStatistics stats = new FocusStatistics();
+
+        stats.conferenceCreated();
+        stats.conferenceCreated();
+
+        stats.invitesScheduled(3);
+        stats.participantAdded();
+        stats.participantAdded();
+        stats.inviteCompleted(true);
+        stats.inviteCompleted(false);
+        stats.jingleSessionStarted(120);
+
+        assertEquals(2, stats.getTotalConferenceCount());
+        assertEquals(2, stats.getParticipantCount());
+        assertEquals(1, stats.getPendingInviteCount());
+        assertEquals(1, stats.getFailedInviteCount());
+        assertEquals(1, stats.getJingleSessionCount());
+        assertEquals(1, stats.getJoinLatency().getCount());
+        assertEquals(120, stats.getJoinLatency().getMax());
+
+        stats.jingleSessionEnded();
+        stats.participantRemoved();
+
+        assertEquals(0, stats.getJingleSessionCount());
+        assertEquals(1, stats.getParticipantCount());
+        assertEquals(2, stats.getTotalParticipantCount());
+    }
+
+    @Test
+    public void testBridges()
+    {
+        FocusStatistics stats = new FocusStatistics();
+
+        stats.channelsAllocated("jvb1");
+        stats.channelsAllocated("jvb1");
+        stats.allocationFailed("jvb2");
+        stats.allocationFailed(null);
+
+        assertEquals(2, stats.getBridges().size());
+        assertEquals(2, stats.getBridgeAllocationCount("jvb1"));
+        assertEquals(0, stats.getBridgeFailureCount("jvb1"));
+        assertEquals(1, stats.getBridgeFailureCount("jvb2"));
+        assertEquals(0, stats.getBridgeAllocationCount("jvb3"));
+        assertEquals(2, stats.getAllocationFailureCount());
+    }
+
+    @Test
+    public void testJoinPhases()
+    {
+        FocusStatistics stats = new FocusStatistics();
+        FocusStatistics.JoinPhase phase
+            = FocusStatistics.JoinPhase.ALLOCATE_CHANNELS;
+
+        stats.recordJoinPhase(phase, "jvb1", 2000000L);
+        stats.recordJoinPhase(phase, "jvb2", 4000000L);
+        stats.recordJoinPhase(
+            FocusStatistics.JoinPhase.DISCOVERY, null, 500000L);
+
+        assertEquals(2, stats.getJoinPhaseLatency(phase).getCount());
+        assertEquals(4000, stats.getJoinPhaseLatency(phase).getMax());
+        assertEquals(1, stats.getJoinPhaseLatency(phase, "jvb1").getCount());
+        assertEquals(2000, stats.getJoinPhaseLatency(phase, "jvb1").getMax());
+        assertEquals(
+            0,
+            stats.getJoinPhaseLatency(
+                    FocusStatistics.JoinPhase.DISCOVERY, "jvb1").getCount());
+        assertNull(stats.getJoinPhaseLatency(phase, "jvb3"));
+
+        // Must not fail
+        stats.logJoinPhases();
+    }
+
+    @Test
+    public void testJoinPhaseInterval()
+    {
+        FocusStatistics stats = new FocusStatistics();
+        FocusStatistics.JoinPhase phase
+            = FocusStatistics.JoinPhase.ALLOCATE_CHANNELS;
+
+        stats.recordJoinPhase(phase, "jvb1", 9000000L);
+
+        String summary = stats.takeJoinPhaseSummary();
+        assertTrue(summary, summary.contains("all allocate_channels: count=1"));
+        assertTrue(summary, summary.contains("jvb1 allocate_channels"));
+
+        // Nothing new in this interval
+        assertNull(stats.takeJoinPhaseSummary());
+
+        stats.recordJoinPhase(phase, null, 1000000L);
+
+        // Only the values of current interval are reported
+        summary = stats.takeJoinPhaseSummary();
+        assertTrue(summary, summary.contains("all allocate_channels: count=1"));
+        assertTrue(summary, summary.contains("max=1000us"));
+        assertFalse(summary, summary.contains("jvb1"));
+
+        // Cumulative histogram is not affected
+        assertEquals(2, stats.getJoinPhaseLatency(phase).getCount());
+    }
+}
@@ -1,5 +1,13 @@
 package org.jitsi.jicofo;
 
+import org.jitsi.impl.protocol.xmpp.*;
+import org.jitsi.jicofo.auth.*;
+import org.jitsi.jicofo.log.*;
+import org.jitsi.jicofo.metrics.*;
+import org.jitsi.jicofo.recording.*;
+import org.jitsi.jicofo.util.*;
+import org.jitsi.protocol.xmpp.util.*;
+
 import org.junit.runner.*;
 import org.junit.runners.*;
 
@@ -14,7 +22,31 @@ import org.junit.runners.*;
         MockTest.class,
         AdvertiseSSRCsTest.class,
         BundleTest.class,
-        RolesTest.class
+        RolesTest.class,
+        FocusStatisticsTest.class,
+        PresenceTrackerTest.class,
+        SignalingEventsTest.class,
+        AuthenticationSessionStoreTest.class,
+        FileSessionStorageTest.class,
+        LoginPageTemplateTest.class,
+        SessionExpiryQueueTest.class,
+        SignedSessionTokensTest.class,
+        BatchingEventWriterTest.class,
+        EventBufferTest.class,
+        LogUtilTest.class,
+        PeerConnectionStatsAggregatorTest.class,
+        PeerConnectionStatsParserTest.class,
+        MetricsHandlerTest.class,
+        MetricsWriterTest.class,
+        JvbRecorderTest.class,
+        FeatureSetTest.class,
+        LatencyHistogramTest.class,
+        LatencyStatsTest.class,
+        LimitedExecutorTest.class,
+        RateMeterTest.class,
+        EntityCapsCacheTest.class,
+        PacketTraceTest.class,
+        ChatMemberRegistryTest.class
     })
 public class FocusTestSuite
 {
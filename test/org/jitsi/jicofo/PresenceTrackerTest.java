@@ -0,0 +1,115 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo;
+
+import org.jitsi.impl.protocol.xmpp.extensions.*;
+import org.jivesoftware.smack.packet.*;
+import org.jivesoftware.smackx.packet.*;
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link PresenceTracker}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class PresenceTrackerTest
+{
+    private static final String ADDRESS = "room@conference.server.net/user";
+
+    private static Presence createPresence(String nick, Boolean audioMuted)
+    {
+        Presence presence = new Presence(Presence.Type.available);
+        presence.setFrom(ADDRESS);
+
+        if (nick != null)
+        {
+            presence.addExtension(new Nick(nick));
+        }
+        if (audioMuted != null)
+        {
+            AudioMutedPacketExt audioMutedExt = new AudioMutedPacketExt();
+            audioMutedExt.setText(String.valueOf(audioMuted));
+            presence.addExtension(audioMutedExt);
+        }
+        return presence;
+    }
+
+    @Test
+    public void testChanges()
+    {
+        PresenceTracker tracker = new PresenceTracker();
+
+        EnumSet<PresenceTracker.Change> changes
+            = tracker.process(createPresence("nick1", false));
+        assertEquals(
+            EnumSet.of(
+                PresenceTracker.Change.NICK,
+                PresenceTracker.Change.MEDIA_STATE),
+            changes);
+
+        // Same presence re-sent
+        assertTrue(tracker.process(createPresence("nick1", false)).isEmpty());
+
+        changes = tracker.process(createPresence("nick1", true));
+        assertEquals(EnumSet.of(PresenceTracker.Change.MEDIA_STATE), changes);
+        assertEquals(Boolean.TRUE, tracker.getState(ADDRESS).isAudioMuted());
+
+        changes = tracker.process(createPresence("nick2", true));
+        assertEquals(EnumSet.of(PresenceTracker.Change.NICK), changes);
+        assertEquals("nick2", tracker.getState(ADDRESS).getNick());
+    }
+
+    @Test
+    public void testUnavailable()
+    {
+        PresenceTracker tracker = new PresenceTracker();
+
+        tracker.process(createPresence("nick", null));
+        assertNotNull(tracker.getState(ADDRESS));
+
+        Presence unavailable = new Presence(Presence.Type.unavailable);
+        unavailable.setFrom(ADDRESS);
+
+        assertTrue(tracker.process(unavailable).isEmpty());
+        assertNull(tracker.getState(ADDRESS));
+
+        // Reported again after rejoin
+        assertEquals(
+            EnumSet.of(PresenceTracker.Change.NICK),
+            tracker.process(createPresence("nick", null)));
+    }
+
+    @Test
+    public void testUnparsedExtensions()
+    {
+        PresenceTracker tracker = new PresenceTracker();
+
+        // Without registered providers Smack creates the default extensions
+        Presence presence = new Presence(Presence.Type.available);
+        presence.setFrom(ADDRESS);
+
+        DefaultPacketExtension nick
+            = new DefaultPacketExtension(Nick.ELEMENT_NAME, Nick.NAMESPACE);
+        nick.setValue("name", "nick");
+        presence.addExtension(nick);
+        presence.addExtension(
+            new DefaultPacketExtension(
+                AudioMutedPacketExt.ELEMENT_NAME,
+                AudioMutedPacketExt.NAMESPACE));
+
+        assertTrue(tracker.process(presence).isEmpty());
+        assertNull(tracker.getState(ADDRESS).getNick());
+        assertNull(tracker.getState(ADDRESS).isAudioMuted());
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link SignalingEvents}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class SignalingEventsTest
+{
+    @Test
+    public void testRing()
+    {
+        SignalingEvents events = new SignalingEvents(2, 0);
+
+        assertEquals(0, events.size());
+        assertEquals("", events.dump());
+
+        events.record(SignalingEvents.Type.CONFERENCE_CREATE, "room1");
+        events.record(
+            SignalingEvents.Type.CHANNEL_ALLOCATION, "jvb1", 1, 3000000L);
+        events.record(SignalingEvents.Type.SOURCE_ADD, "peer1", 5, 0);
+
+        assertEquals(3, events.getRecordedCount());
+        assertEquals(2, events.size());
+
+        String[] lines = events.dump().split("\n");
+
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].contains("CHANNEL_ALLOCATION jvb1 value=1"));
+        assertTrue(lines[0].contains("duration_us=3000"));
+        assertTrue(lines[1].contains("SOURCE_ADD peer1 value=5"));
+        assertTrue(
+            lines[1].contains("thread=" + Thread.currentThread().getName()));
+    }
+
+    @Test
+    public void testSlowEvent()
+    {
+        SignalingEvents events = new SignalingEvents(4, 1);
+
+        // Must not fail when logged
+        events.record(
+            SignalingEvents.Type.SESSION_ACCEPT, "peer1", 0, 5000000L);
+        events.record(SignalingEvents.Type.IQ_TIMEOUT, "jvb1");
+
+        assertEquals(2, events.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity()
+    {
+        new SignalingEvents(0, 0);
+    }
+}
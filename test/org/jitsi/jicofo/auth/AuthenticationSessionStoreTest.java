@@ -0,0 +1,123 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.auth;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link AuthenticationSessionStore}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class AuthenticationSessionStoreTest
+{
+    @Test
+    public void testIndexes()
+    {
+        AuthenticationSessionStore store = new AuthenticationSessionStore();
+
+        AuthenticationSession session1
+            = new AuthenticationSession("muid1", "sid1", "user1@server.com");
+        AuthenticationSession session2
+            = new AuthenticationSession("muid2", "sid2", "user1@server.com");
+
+        assertTrue(store.add(session1));
+        assertTrue(store.add(session2));
+        // Duplicated session ID
+        assertFalse(store.add(
+            new AuthenticationSession("muid3", "sid1", "user3@server.com")));
+
+        assertEquals(2, store.size());
+        assertSame(session1, store.getBySessionId("sid1"));
+        assertSame(
+            session2, store.getByIdentity("user1@server.com", "muid2"));
+        assertNull(store.getByIdentity("user1@server.com", "muid3"));
+
+        store.bindJid(session1, "user1@server.com/res1");
+        assertSame(session1, store.getByJid("user1@server.com/res1"));
+
+        // Re-bind to new JID
+        store.bindJid(session1, "user1@server.com/res2");
+        assertNull(store.getByJid("user1@server.com/res1"));
+        assertSame(session1, store.getByJid("user1@server.com/res2"));
+
+        assertTrue(store.remove(session1));
+        assertFalse(store.remove(session1));
+
+        assertNull(store.getBySessionId("sid1"));
+        assertNull(store.getByJid("user1@server.com/res2"));
+        assertNull(store.getByIdentity("user1@server.com", "muid1"));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void testRemovedWhileSaved()
+    {
+        final List<String> records = new ArrayList<String>();
+        final AuthenticationSessionStore[] store
+            = new AuthenticationSessionStore[1];
+
+        store[0] = new AuthenticationSessionStore(new SessionStorage()
+        {
+            @Override
+            public List<AuthenticationSession> load()
+            {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public void sessionAdded(AuthenticationSession session)
+            {
+                records.add("added");
+
+                // Removed by another thread before it has been saved
+                store[0].remove(session);
+            }
+
+            @Override
+            public void sessionUpdated(AuthenticationSession session)
+            {
+                records.add("updated");
+            }
+
+            @Override
+            public void sessionRemoved(AuthenticationSession session)
+            {
+                records.add("removed");
+            }
+
+            @Override
+            public void maintain(Collection<AuthenticationSession> sessions)
+            {
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        });
+
+        AuthenticationSession session
+            = new AuthenticationSession("muid1", "sid1", "user1@server.com");
+
+        assertTrue(store[0].add(session));
+        assertNull(store[0].getBySessionId("sid1"));
+        assertEquals("removed", records.get(records.size() - 1));
+
+        // Removed sessions are not saved when touched
+        records.clear();
+        store[0].touch(session);
+        assertTrue(records.isEmpty());
+    }
+}
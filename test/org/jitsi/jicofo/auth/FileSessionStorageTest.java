@@ -0,0 +1,171 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.auth;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.io.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link FileSessionStorage}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class FileSessionStorageTest
+{
+    private File file;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        file = File.createTempFile("sessions", ".log");
+        file.deleteOnExit();
+    }
+
+    @After
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+    @Test
+    public void testRestore()
+    {
+        AuthenticationSessionStore store
+            = new AuthenticationSessionStore(new FileSessionStorage(file));
+        assertEquals(0, store.restore(60000));
+
+        AuthenticationSession session1
+            = new AuthenticationSession("muid1", "sid1", "user1@server.com");
+        AuthenticationSession session2
+            = new AuthenticationSession("muid2", "sid2", "user\t2");
+
+        store.add(session1);
+        store.add(session2);
+        store.bindJid(session1, "user1@server.com/res");
+        store.remove(session2);
+        store.close();
+
+        store = new AuthenticationSessionStore(new FileSessionStorage(file));
+        assertEquals(1, store.restore(60000));
+
+        AuthenticationSession restored = store.getBySessionId("sid1");
+        assertNotNull(restored);
+        assertEquals("muid1", restored.getMachineUID());
+        assertEquals("user1@server.com", restored.getUserIdentity());
+        assertEquals(
+            session1.getActivityTimestamp(), restored.getActivityTimestamp());
+        assertSame(restored, store.getByJid("user1@server.com/res"));
+        assertNull(store.getBySessionId("sid2"));
+        store.close();
+    }
+
+    @Test
+    public void testExpiredNotRestored()
+    {
+        FileSessionStorage storage = new FileSessionStorage(file);
+        storage.load();
+        storage.sessionAdded(
+            new AuthenticationSession(
+                "muid1", "sid1", "user1", null,
+                System.currentTimeMillis() - 10000));
+        storage.close();
+
+        AuthenticationSessionStore store
+            = new AuthenticationSessionStore(new FileSessionStorage(file));
+        assertEquals(0, store.restore(5000));
+        store.close();
+    }
+
+    @Test
+    public void testCompaction()
+        throws IOException
+    {
+        FileSessionStorage storage = new FileSessionStorage(file);
+        storage.load();
+
+        AuthenticationSession session
+            = new AuthenticationSession("muid1", "sid1", "user1");
+        storage.sessionAdded(session);
+        for (int i = 0; i < 2000; i++)
+        {
+            storage.sessionUpdated(session);
+        }
+
+        storage.maintain(Collections.singletonList(session));
+
+        // Still appends after compaction
+        storage.sessionAdded(
+            new AuthenticationSession("muid2", "sid2", "user2"));
+        storage.close();
+
+        assertEquals(2, countLines(file));
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+
+        FileSessionStorage reloaded = new FileSessionStorage(file);
+        List<AuthenticationSession> loaded = reloaded.load();
+        assertEquals(2, loaded.size());
+        reloaded.close();
+    }
+
+    @Test
+    public void testOwnerOnly()
+        throws IOException
+    {
+        assertTrue(file.delete());
+
+        FileSessionStorage storage = new FileSessionStorage(file);
+        storage.load();
+        storage.close();
+
+        assertTrue(file.exists());
+        assertTrue(file.canRead());
+        assertTrue(file.canWrite());
+
+        // Owner only permissions can be checked where POSIX is available
+        try
+        {
+            Set<java.nio.file.attribute.PosixFilePermission> permissions
+                = java.nio.file.Files.getPosixFilePermissions(file.toPath());
+
+            assertEquals(
+                java.nio.file.attribute.PosixFilePermissions.fromString(
+                    "rw-------"),
+                permissions);
+        }
+        catch (UnsupportedOperationException e)
+        {
+            // Not a POSIX file system
+        }
+    }
+
+    private static int countLines(File file)
+        throws IOException
+    {
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try
+        {
+            int count = 0;
+            while (reader.readLine() != null)
+            {
+                count++;
+            }
+            return count;
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.auth;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link LoginPageTemplate}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class LoginPageTemplateTest
+{
+    @Test
+    public void testRender()
+    {
+        LoginPageTemplate template = new LoginPageTemplate();
+
+        String redirect
+            = new String(
+                    template.render("Joe", "abc123", "room1"),
+                    LoginPageTemplate.CHARSET);
+
+        assertTrue(redirect.contains("<h1>Hello Joe!<h1/>"));
+        assertTrue(redirect.contains("var sessionId = 'abc123';"));
+        assertTrue(redirect.contains("window.location.href='../room1';"));
+        assertFalse(redirect.contains("window.close()"));
+
+        String close
+            = new String(
+                    template.render("Joe", "abc123", null),
+                    LoginPageTemplate.CHARSET);
+
+        assertTrue(close.contains("var sessionId = 'abc123';"));
+        assertTrue(close.contains("window.close()"));
+        assertFalse(close.contains("window.location.href"));
+    }
+
+    @Test
+    public void testEscaping()
+    {
+        LoginPageTemplate template = new LoginPageTemplate();
+
+        String page
+            = new String(
+                    template.render(
+                        "<script>", "a'b", "</script>"),
+                    LoginPageTemplate.CHARSET);
+
+        assertFalse(page.contains("<h1>Hello <script>"));
+        assertTrue(page.contains("<h1>Hello &lt;script&gt;!<h1/>"));
+        assertTrue(page.contains("var sessionId = 'a\\u0027b';"));
+        assertTrue(page.contains("href='../\\u003c\\u002fscript\\u003e';"));
+    }
+}
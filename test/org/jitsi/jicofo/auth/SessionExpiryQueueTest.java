@@ -0,0 +1,86 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.auth;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link SessionExpiryQueue}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class SessionExpiryQueueTest
+{
+    @Test
+    public void testExpire()
+    {
+        SessionExpiryQueue queue = new SessionExpiryQueue(10);
+
+        long now = System.currentTimeMillis();
+        AuthenticationSession old
+            = new AuthenticationSession("muid1", "sid1", "user1", null,
+                                        now - 10000);
+        AuthenticationSession touched
+            = new AuthenticationSession("muid2", "sid2", "user2", null,
+                                        now - 10000);
+        AuthenticationSession fresh
+            = new AuthenticationSession("muid3", "sid3", "user3", null, now);
+
+        queue.add(old);
+        queue.add(touched);
+        queue.add(fresh);
+        assertEquals(3, queue.size());
+
+        // The queue notices the new timestamp when the bucket becomes due
+        touched.touch();
+
+        List<AuthenticationSession> expired = queue.pollExpired(5000);
+        assertEquals(1, expired.size());
+        assertSame(old, expired.get(0));
+        assertEquals(2, queue.size());
+
+        assertTrue(queue.pollExpired(5000).isEmpty());
+
+        queue.remove(fresh);
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void testRemoveTouched()
+    {
+        SessionExpiryQueue queue = new SessionExpiryQueue(10);
+
+        AuthenticationSession session
+            = new AuthenticationSession("muid1", "sid1", "user1", null,
+                                        System.currentTimeMillis() - 10000);
+        queue.add(session);
+
+        // Removed from the bucket where it has been queued
+        session.touch();
+        queue.remove(session);
+        assertEquals(0, queue.size());
+
+        session
+            = new AuthenticationSession("muid2", "sid2", "user2", null,
+                                        System.currentTimeMillis() - 10000);
+        queue.add(session);
+        session.touch();
+
+        // Moved to the current bucket and removed from there
+        assertTrue(queue.pollExpired(5000).isEmpty());
+        queue.remove(session);
+        assertEquals(0, queue.size());
+        assertTrue(queue.pollExpired(0).isEmpty());
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.auth;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link SignedSessionTokens}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class SignedSessionTokensTest
+{
+    @Test
+    public void testIssueVerify()
+    {
+        SignedSessionTokens tokens
+            = new SignedSessionTokens("secret".getBytes(), 60000);
+
+        String tokenStr = tokens.issue("muid1", "user1@server.com");
+
+        // Another instance with the same secret
+        SignedSessionTokens.Token token
+            = new SignedSessionTokens("secret".getBytes(), 60000)
+                    .verify(tokenStr);
+        assertNotNull(token);
+        assertEquals("muid1", token.getMachineUID());
+        assertEquals("user1@server.com", token.getIdentity());
+
+        // Different secret
+        assertNull(
+            new SignedSessionTokens("other".getBytes(), 60000)
+                .verify(tokenStr));
+
+        // Tampered payload
+        char c = tokenStr.charAt(3);
+        String tampered
+            = tokenStr.substring(0, 3) + (c == 'A' ? 'B' : 'A')
+                + tokenStr.substring(4);
+        assertNull(tokens.verify(tampered));
+
+        assertNull(tokens.verify("garbage"));
+        assertNull(tokens.verify("garbage.garbage"));
+    }
+
+    @Test
+    public void testExpireAndRevoke()
+        throws InterruptedException
+    {
+        SignedSessionTokens tokens
+            = new SignedSessionTokens("secret".getBytes(), 50);
+
+        String token1 = tokens.issue("muid1", "user1");
+        String token2 = tokens.issue("muid1", "user1");
+        assertFalse(token1.equals(token2));
+
+        assertTrue(tokens.revoke(token1));
+        assertNull(tokens.verify(token1));
+        assertNotNull(tokens.verify(token2));
+
+        Thread.sleep(100);
+
+        assertNull(tokens.verify(token2));
+        tokens.purgeRevoked();
+    }
+}
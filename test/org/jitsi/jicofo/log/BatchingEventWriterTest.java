@@ -0,0 +1,148 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.log;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link BatchingEventWriter}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class BatchingEventWriterTest
+{
+    @Test
+    public void testBatches()
+        throws InterruptedException
+    {
+        EventBuffer<Integer> buffer
+            = new EventBuffer<Integer>(
+                    100, EventBuffer.OverflowPolicy.DROP_NEWEST);
+        RecordingHandler handler = new RecordingHandler();
+        BatchingEventWriter<Integer> writer
+            = new BatchingEventWriter<Integer>(buffer, handler, 10, 100000);
+
+        for (int i = 0; i < 25; i++)
+        {
+            buffer.offer(i);
+        }
+
+        writer.start("test");
+
+        // Two full batches are written without waiting for the interval
+        handler.awaitEvents(20, 5000);
+
+        // The rest is written on stop
+        writer.stop();
+
+        assertEquals(25, handler.events.size());
+        for (int i = 0; i < 25; i++)
+        {
+            assertEquals(Integer.valueOf(i), handler.events.get(i));
+        }
+        assertEquals(Arrays.asList(10, 10, 5), handler.batchSizes);
+        assertEquals(25, writer.getWrittenCount());
+        assertEquals(3, writer.getBatchCount());
+    }
+
+    @Test
+    public void testFlushInterval()
+        throws InterruptedException
+    {
+        EventBuffer<Integer> buffer
+            = new EventBuffer<Integer>(
+                    100, EventBuffer.OverflowPolicy.DROP_NEWEST);
+        RecordingHandler handler = new RecordingHandler();
+        BatchingEventWriter<Integer> writer
+            = new BatchingEventWriter<Integer>(buffer, handler, 10, 50);
+
+        writer.start("test");
+        try
+        {
+            buffer.offer(1);
+            buffer.offer(2);
+
+            // Less than flush size - written after the interval
+            assertTrue(handler.awaitEvents(2, 5000));
+            assertEquals(Arrays.asList(2), handler.batchSizes);
+        }
+        finally
+        {
+            writer.stop();
+        }
+    }
+
+    @Test
+    public void testFailure()
+        throws InterruptedException
+    {
+        EventBuffer<Integer> buffer
+            = new EventBuffer<Integer>(
+                    100, EventBuffer.OverflowPolicy.DROP_NEWEST);
+        BatchingEventWriter<Integer> writer
+            = new BatchingEventWriter<Integer>(
+                    buffer,
+                    new BatchingEventWriter.BatchHandler<Integer>()
+                    {
+                        @Override
+                        public void writeBatch(List<Integer> batch)
+                            throws Exception
+                        {
+                            throw new Exception("test");
+                        }
+                    },
+                    10, 50);
+
+        for (int i = 0; i < 15; i++)
+        {
+            buffer.offer(i);
+        }
+
+        writer.start("test");
+        writer.stop();
+
+        assertEquals(0, writer.getWrittenCount());
+        assertEquals(15, writer.getFailedCount());
+    }
+
+    private static class RecordingHandler
+        implements BatchingEventWriter.BatchHandler<Integer>
+    {
+        final List<Integer> events = new ArrayList<Integer>();
+
+        final List<Integer> batchSizes = new ArrayList<Integer>();
+
+        @Override
+        public synchronized void writeBatch(List<Integer> batch)
+        {
+            events.addAll(batch);
+            batchSizes.add(batch.size());
+            notifyAll();
+        }
+
+        synchronized boolean awaitEvents(int count, long timeout)
+            throws InterruptedException
+        {
+            long deadline = System.currentTimeMillis() + timeout;
+            while (events.size() < count)
+            {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                    return false;
+                wait(remaining);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.log;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link EventBuffer}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class EventBufferTest
+{
+    @Test
+    public void testDropNewest()
+    {
+        EventBuffer<Integer> buffer
+            = new EventBuffer<Integer>(
+                    3, EventBuffer.OverflowPolicy.DROP_NEWEST);
+
+        for (int i = 0; i < 5; i++)
+        {
+            assertEquals(i < 3, buffer.offer(i));
+        }
+
+        assertEquals(3, buffer.size());
+        assertEquals(5, buffer.getAddedCount());
+        assertEquals(2, buffer.getDroppedCount());
+
+        List<Integer> drained = new ArrayList<Integer>();
+        assertEquals(3, buffer.drainTo(drained, 10));
+        assertEquals(Arrays.asList(0, 1, 2), drained);
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testDropOldest()
+    {
+        EventBuffer<Integer> buffer
+            = new EventBuffer<Integer>(
+                    3, EventBuffer.OverflowPolicy.DROP_OLDEST);
+
+        for (int i = 0; i < 5; i++)
+        {
+            buffer.offer(i);
+        }
+
+        assertEquals(3, buffer.size());
+        assertEquals(2, buffer.getDroppedCount());
+
+        List<Integer> drained = new ArrayList<Integer>();
+        assertEquals(2, buffer.drainTo(drained, 2));
+        assertEquals(Arrays.asList(2, 3), drained);
+
+        // Wrap around
+        buffer.offer(5);
+        buffer.offer(6);
+
+        drained.clear();
+        assertEquals(3, buffer.drainTo(drained, 10));
+        assertEquals(Arrays.asList(4, 5, 6), drained);
+    }
+
+    @Test
+    public void testAwait()
+        throws InterruptedException
+    {
+        final EventBuffer<Integer> buffer
+            = new EventBuffer<Integer>(
+                    10, EventBuffer.OverflowPolicy.DROP_NEWEST);
+
+        // Times out
+        long start = System.currentTimeMillis();
+        assertEquals(0, buffer.await(1, 50));
+        assertTrue(System.currentTimeMillis() - start >= 50);
+
+        // Woken up by the producer
+        new Thread()
+        {
+            @Override
+            public void run()
+            {
+                buffer.offer(1);
+                buffer.offer(2);
+            }
+        }.start();
+
+        assertEquals(2, buffer.await(2, 5000));
+    }
+}
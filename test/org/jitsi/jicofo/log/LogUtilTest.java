@@ -0,0 +1,116 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.log;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+import java.util.zip.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link LogUtil}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class LogUtilTest
+{
+    @Test
+    public void testPlain()
+        throws Exception
+    {
+        String content = "{\"stats\": \"\u017c\u00f3\u0142w\"}";
+
+        assertEquals(
+            content,
+            LogUtil.getContent(createLog(content.getBytes("UTF-8"), false)));
+    }
+
+    @Test
+    public void testDeflated()
+        throws Exception
+    {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 5000; i++)
+        {
+            content.append("value").append(i).append(',');
+        }
+        String expected = content.toString();
+        byte[] deflated = deflate(expected.getBytes("UTF-8"));
+
+        // Repeat to use pooled inflater and recycled buffers
+        for (int i = 0; i < 3; i++)
+        {
+            assertEquals(
+                expected, LogUtil.getContent(createLog(deflated, true)));
+        }
+    }
+
+    @Test
+    public void testInvalidDeflated()
+        throws Exception
+    {
+        byte[] deflated = deflate(new byte[10000]);
+
+        // Truncated
+        assertNull(
+            LogUtil.getContent(
+                    createLog(
+                        Arrays.copyOf(deflated, deflated.length / 2), true)));
+
+        // Garbage
+        assertNull(
+            LogUtil.getContent(
+                    createLog(new byte[] { (byte) 0xff, 1, 2, 3 }, true)));
+    }
+
+    @Test
+    public void testMaxInflatedSize()
+        throws Exception
+    {
+        // Highly compressible data which exceeds default limit
+        byte[] deflated = deflate(new byte[4 * 1024 * 1024]);
+
+        assertTrue(deflated.length < 10000);
+        assertNull(LogUtil.getContent(createLog(deflated, true)));
+    }
+
+    private static LogPacketExtension createLog(byte[] message, boolean deflated)
+    {
+        LogPacketExtension log = new LogPacketExtension();
+
+        log.setMessage(
+            new String(net.java.sip.communicator.util.Base64.encode(message)));
+        if (deflated)
+        {
+            log.addTag("deflated", "true");
+        }
+        return log;
+    }
+
+    private static byte[] deflate(byte[] data)
+    {
+        // nowrap=true, because "raw" deflate is expected
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data);
+        deflater.finish();
+
+        byte[] buffer = new byte[data.length + 1024];
+        int length = 0;
+        while (!deflater.finished())
+        {
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        deflater.end();
+
+        return Arrays.copyOf(buffer, length);
+    }
+}
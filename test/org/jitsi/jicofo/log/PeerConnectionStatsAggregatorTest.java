@@ -0,0 +1,123 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.log;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link PeerConnectionStatsAggregator}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class PeerConnectionStatsAggregatorTest
+{
+    private static final String BITRATE = "googActualEncBitrate";
+
+    @Test
+    public void testRawSampling()
+    {
+        PeerConnectionStatsAggregator aggregator
+            = new PeerConnectionStatsAggregator(
+                    Collections.<String>emptySet(), 1000, 3);
+
+        int sampled = 0;
+        for (int i = 0; i < 9; i++)
+        {
+            if (aggregator.countDocument("c", "e1", 0))
+                sampled++;
+        }
+        assertEquals(3, sampled);
+
+        // Every endpoint has its own counter
+        assertTrue(aggregator.countDocument("c", "e2", 0));
+
+        PeerConnectionStatsAggregator noRaw
+            = new PeerConnectionStatsAggregator(
+                    Collections.<String>emptySet(), 1000, 0);
+        assertFalse(noRaw.countDocument("c", "e1", 0));
+    }
+
+    @Test
+    public void testAggregate()
+    {
+        PeerConnectionStatsAggregator aggregator
+            = new PeerConnectionStatsAggregator(
+                    Collections.singleton(BITRATE), 1000, 1);
+
+        aggregator.record("c", "e1", "bwe", BITRATE, 10, 0);
+        aggregator.record("c", "e1", "bwe", BITRATE, 30, 100);
+        aggregator.record("c", "e1", "bwe", BITRATE, 20, 200);
+        aggregator.record("c", "e2", "bwe", BITRATE, 5, 300);
+
+        // Window has not ended yet
+        aggregator.sweep(500);
+        assertEquals(0, aggregator.pollCompleted().length);
+
+        // The value which belongs to the next window closes the current one
+        aggregator.record("c", "e1", "bwe", BITRATE, 40, 1000);
+
+        // Closed without the sweep
+        Object[] points = aggregator.pollCompleted();
+        assertEquals(1, points.length);
+        assertArrayEquals(
+            new Object[] {
+                0L, "c", "e1", "bwe", BITRATE, 10.0, 30.0, 20.0, 20.0, 3L },
+            (Object[]) points[0]);
+
+        // Windows of the endpoints which do not send are closed by the sweep
+        aggregator.record("c", "e2", "bwe", BITRATE, 50, 1200);
+        assertEquals(0, aggregator.pollCompleted().length);
+
+        // Both windows have ended and endpoints were inactive for the window
+        aggregator.sweep(2300);
+        points = aggregator.pollCompleted();
+        assertEquals(2, points.length);
+        Map<String, Object[]> byEndpoint = new HashMap<String, Object[]>();
+        for (Object point : points)
+        {
+            byEndpoint.put((String) ((Object[]) point)[2], (Object[]) point);
+        }
+        assertArrayEquals(
+            new Object[] {
+                300L, "c", "e2", "bwe", BITRATE, 5.0, 50.0, 27.5, 50.0, 2L },
+            byEndpoint.get("e2"));
+        assertArrayEquals(
+            new Object[] {
+                1000L, "c", "e1", "bwe", BITRATE, 40.0, 40.0, 40.0, 40.0, 1L },
+            byEndpoint.get("e1"));
+        assertEquals(0, aggregator.getEndpointCount());
+    }
+
+    @Test
+    public void testRecordAfterRemoved()
+    {
+        PeerConnectionStatsAggregator aggregator
+            = new PeerConnectionStatsAggregator(
+                    Collections.singleton(BITRATE), 1000, 1);
+
+        assertTrue(aggregator.countDocument("c", "e1", 0));
+        aggregator.sweep(1000);
+        assertEquals(0, aggregator.getEndpointCount());
+
+        // The endpoint which comes back starts from scratch
+        assertTrue(aggregator.countDocument("c", "e1", 1500));
+        aggregator.record("c", "e1", "bwe", BITRATE, 10, 1500);
+        assertEquals(1, aggregator.getEndpointCount());
+
+        aggregator.sweep(2500);
+        Object[] points = aggregator.pollCompleted();
+        assertEquals(1, points.length);
+        assertEquals(1500L, ((Object[]) points[0])[0]);
+    }
+}
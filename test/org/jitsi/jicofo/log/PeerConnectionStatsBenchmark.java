@@ -0,0 +1,223 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.log;
+
+import org.json.simple.*;
+import org.json.simple.parser.*;
+
+import java.lang.management.*;
+import java.util.*;
+
+/**
+ * Compares {@link PeerConnectionStatsParser} with the previous
+ * implementation based on json-simple tree. Prints the time and the number
+ * of bytes allocated per parsed document. Run with:
+ * <pre>
+ * java -cp ... org.jitsi.jicofo.log.PeerConnectionStatsBenchmark
+ *     [groups] [stats per group] [timestamps] [iterations]
+ * </pre>
+ *
+ * @author agent
+ */
+public class PeerConnectionStatsBenchmark
+{
+    public static void main(String[] args)
+        throws Exception
+    {
+        int groups = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int stats = args.length > 1 ? Integer.parseInt(args[1]) : 15;
+        int timestamps = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int iterations = args.length > 3 ? Integer.parseInt(args[3]) : 20000;
+
+        final String json = createStats(groups, stats, timestamps);
+
+        System.out.println(
+            "Document: " + json.length() + " chars, " + groups + " groups, "
+                + stats + " stats, " + timestamps + " timestamps");
+
+        final PeerConnectionStatsParser parser
+            = new PeerConnectionStatsParser();
+
+        Runnable streaming = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    parser.parse("conference", "endpoint", json);
+                }
+                catch (java.text.ParseException e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        Runnable tree = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    parseWithJsonSimple("conference", "endpoint", json);
+                }
+                catch (ParseException e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+
+        // Warm up
+        run(streaming, iterations);
+        run(tree, iterations);
+
+        report("json-simple", tree, iterations);
+        report("streaming", streaming, iterations);
+    }
+
+    private static void report(String name, Runnable task, int iterations)
+    {
+        long allocatedBefore = getAllocatedBytes();
+        long start = System.nanoTime();
+
+        run(task, iterations);
+
+        long time = System.nanoTime() - start;
+        long allocated = getAllocatedBytes() - allocatedBefore;
+
+        System.out.println(
+            name + ": " + (time / iterations / 1000) + " us/doc"
+                + (allocatedBefore < 0
+                    ? "" : ", " + (allocated / iterations) + " bytes/doc"));
+    }
+
+    private static void run(Runnable task, int iterations)
+    {
+        for (int i = 0; i < iterations; i++)
+        {
+            task.run();
+        }
+    }
+
+    /**
+     * Returns the number of bytes allocated by current thread or <tt>-1</tt>
+     * if not supported by the JVM.
+     */
+    private static long getAllocatedBytes()
+    {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean)
+        {
+            return ((com.sun.management.ThreadMXBean) threads)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * Creates PeerConnection stats JSON in the format used by Jitsi Meet.
+     */
+    static String createStats(int groups, int stats, int timestamps)
+    {
+        Random random = new Random(0);
+        StringBuilder json = new StringBuilder();
+
+        json.append("{\"timestamps\":[");
+        for (int t = 0; t < timestamps; t++)
+        {
+            if (t > 0)
+                json.append(',');
+            json.append(1428000000000L + 1000L * t);
+        }
+        json.append("],\"stats\":{");
+        for (int g = 0; g < groups; g++)
+        {
+            if (g > 0)
+                json.append(',');
+            json.append("\"ssrc_").append(g).append("_send\":{")
+                .append("\"type\":\"ssrc\"");
+            for (int s = 0; s < stats; s++)
+            {
+                json.append(",\"googStat").append(s).append("\":[");
+                for (int t = 0; t < timestamps; t++)
+                {
+                    if (t > 0)
+                        json.append(',');
+                    json.append('"').append(random.nextInt(100000))
+                        .append('"');
+                }
+                json.append(']');
+            }
+            json.append('}');
+        }
+        json.append("}}");
+
+        return json.toString();
+    }
+
+    /**
+     * The implementation of PeerConnection stats parsing used before
+     * {@link PeerConnectionStatsParser}.
+     */
+    @SuppressWarnings("unchecked")
+    static Object[] parseWithJsonSimple(
+            String conferenceId,
+            String endpointId,
+            String statsStr)
+        throws ParseException
+    {
+        JSONParser parser = new JSONParser();
+        JSONObject jsonObject = (JSONObject) parser.parse(statsStr);
+
+        List<Object[]> values = new LinkedList<Object[]>();
+        JSONArray timestamps = (JSONArray) jsonObject.get("timestamps");
+        JSONObject stats = (JSONObject) jsonObject.get("stats");
+
+        for (int i = 0; i < timestamps.size(); i++)
+        {
+            long timestamp = (Long) timestamps.get(i);
+
+            JSONArray value = new JSONArray();
+            for (Object groupName : stats.keySet())
+            {
+                JSONArray groupValue = new JSONArray();
+                JSONObject group = ((JSONObject) stats.get(groupName));
+                Object type = group.get("type");
+
+                groupValue.add(groupName);
+                groupValue.add(type);
+
+                JSONObject s = new JSONObject();
+                for (Object statName : group.keySet())
+                {
+                    if ("type".equals(statName))
+                        continue;
+
+                    JSONArray statValues = (JSONArray) group.get(statName);
+                    s.put(statName, statValues.get(i));
+                }
+                groupValue.add(s);
+
+                value.add(groupValue);
+            }
+            Object[] point
+                = new Object[
+                        LoggingHandler.PEER_CONNECTION_STATS_COLUMNS.length];
+
+            point[0] = timestamp;
+            point[1] = conferenceId;
+            point[2] = endpointId;
+            point[3] = value.toJSONString();
+
+            values.add(point);
+        }
+
+        return values.toArray();
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.log;
+
+import org.json.simple.*;
+import org.json.simple.parser.*;
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link PeerConnectionStatsParser}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class PeerConnectionStatsParserTest
+{
+    @Test
+    public void testSameAsJsonSimple()
+        throws Exception
+    {
+        PeerConnectionStatsParser parser = new PeerConnectionStatsParser();
+
+        String[] documents = {
+            PeerConnectionStatsBenchmark.createStats(5, 7, 3),
+            "{ \"timestamps\" : [ 1, 2 ],\n"
+                + "  \"other\" : { \"a\" : [ true, null, -1.5e3 ] },\n"
+                + "  \"stats\" : {\n"
+                + "    \"group1\" : { \"type\" : \"some string\",\n"
+                + "                 \"stat1\" : [ \"some\", \"\\\"q\\/\" ],\n"
+                + "                 \"stat2\" : [ 12, 0.5 ] },\n"
+                + "    \"bweforvideo\" : { \"stat3\" : [ \"\\u0041\", \"\" ],\n"
+                + "                      \"type\" : \"VideoBwe\" },\n"
+                + "    \"empty\" : { }\n"
+                + "  }\n"
+                + "}",
+            "{\"stats\":{\"g\":{\"type\":\"t\",\"s\":[\"1\"]}},"
+                + "\"timestamps\":[42]}",
+            "{\"timestamps\":[],\"stats\":{}}"
+        };
+
+        for (String document : documents)
+        {
+            Object[] expected
+                = PeerConnectionStatsBenchmark.parseWithJsonSimple(
+                        "conf", "ep", document);
+            Object[] actual = parser.parse("conf", "ep", document);
+
+            assertEquals(expected.length, actual.length);
+            for (int i = 0; i < expected.length; i++)
+            {
+                Object[] expectedPoint = (Object[]) expected[i];
+                Object[] actualPoint = (Object[]) actual[i];
+
+                assertEquals(expectedPoint[0], actualPoint[0]);
+                assertEquals("conf", actualPoint[1]);
+                assertEquals("ep", actualPoint[2]);
+                // Group order is not defined by json-simple
+                assertEquals(
+                    parseGroups((String) expectedPoint[3]),
+                    parseGroups((String) actualPoint[3]));
+            }
+        }
+    }
+
+    @Test
+    public void testOutputFormat()
+        throws Exception
+    {
+        PeerConnectionStatsParser parser = new PeerConnectionStatsParser();
+
+        Object[] points
+            = parser.parse(
+                    "conf", "ep",
+                    "{\"timestamps\":[1,2],\"stats\":{"
+                        + "\"g1\":{\"type\":\"t1\",\"a\":[\"x\",\"y\"]},"
+                        + "\"g2\":{\"b\":[3,4],\"c\":[\"5\",\"6\"]}}}");
+
+        assertEquals(2, points.length);
+        assertEquals(
+            "[[\"g1\",\"t1\",{\"a\":\"x\"}],[\"g2\",null,{\"b\":3,\"c\":\"5\"}]]",
+            ((Object[]) points[0])[3]);
+        assertEquals(
+            "[[\"g1\",\"t1\",{\"a\":\"y\"}],[\"g2\",null,{\"b\":4,\"c\":\"6\"}]]",
+            ((Object[]) points[1])[3]);
+        assertEquals(2L, ((Object[]) points[1])[0]);
+    }
+
+    @Test
+    public void testInvalid()
+    {
+        PeerConnectionStatsParser parser = new PeerConnectionStatsParser();
+
+        String[] documents = {
+            "",
+            "[]",
+            "{\"timestamps\":[1]}",
+            "{\"stats\":{}}",
+            "{\"timestamps\":[1.5],\"stats\":{}}",
+            "{\"timestamps\":[99999999999999999999],\"stats\":{}}",
+            "{\"timestamps\":[1,2],\"stats\":{\"g\":{\"s\":[\"1\"]}}}",
+            "{\"timestamps\":[1],\"stats\":{\"g\":{\"s\":\"1\"}}}",
+            "{\"timestamps\":[1],\"stats\":{\"g\":{\"s\":[\"1]}}}",
+            "{\"timestamps\":[1],\"stats\":{\"g\":{\"s\":[\"\\x\"]}}}",
+            "{\"timestamps\":[1],\"stats\":{\"g\":{\"s\":[tru]}}}",
+            "{\"timestamps\":[1],\"stats\":{}} x"
+        };
+
+        for (String document : documents)
+        {
+            try
+            {
+                parser.parse("conf", "ep", document);
+                fail("Parsed invalid document: " + document);
+            }
+            catch (java.text.ParseException e)
+            {
+                // OK
+            }
+        }
+
+        // Still usable after failures
+        try
+        {
+            assertEquals(
+                1,
+                parser.parse(
+                        "conf", "ep",
+                        "{\"timestamps\":[1],\"stats\":{}}").length);
+        }
+        catch (java.text.ParseException e)
+        {
+            fail(e.toString());
+        }
+    }
+
+    @Test
+    public void testReadValues()
+        throws Exception
+    {
+        PeerConnectionStatsParser parser = new PeerConnectionStatsParser();
+        final List<String> values = new ArrayList<String>();
+
+        parser.scan(
+            "{\"timestamps\":[1,2,3],\"stats\":{"
+                + "\"bweforvideo\":{\"type\":\"VideoBwe\","
+                + "\"googActualEncBitrate\":[\"12\",34,\"\"],"
+                + "\"other\":[\"1\",\"2\",\"3\"]},"
+                + "\"ssrc\":{\"googActualEncBitrate\":[\"x\",\"5.5\"]}}}");
+        try
+        {
+            parser.readValues(
+                Collections.singleton("googActualEncBitrate"),
+                new PeerConnectionStatsParser.StatValueListener()
+                {
+                    @Override
+                    public void statValue(
+                            String group, String stat, double value)
+                    {
+                        values.add(group + ":" + stat + "=" + value);
+                    }
+                });
+        }
+        finally
+        {
+            parser.release();
+        }
+
+        assertEquals(
+            Arrays.asList(
+                "bweforvideo:googActualEncBitrate=12.0",
+                "bweforvideo:googActualEncBitrate=34.0",
+                "ssrc:googActualEncBitrate=5.5"),
+            values);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<Object> parseGroups(String point)
+        throws ParseException
+    {
+        return new HashSet<Object>((JSONArray) new JSONParser().parse(point));
+    }
+}
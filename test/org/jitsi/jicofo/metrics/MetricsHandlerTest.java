@@ -0,0 +1,61 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.metrics;
+
+import org.jitsi.jicofo.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.io.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link MetricsHandler}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class MetricsHandlerTest
+{
+    @Test
+    public void testWriteMetrics()
+        throws Exception
+    {
+        FocusStatistics stats = FocusStatistics.getInstance();
+        stats.channelsAllocated("jvb.example.com");
+        stats.recordJoinPhase(
+            FocusStatistics.JoinPhase.ALLOCATE_CHANNELS,
+            "jvb.example.com", 3000000L);
+
+        StringWriter out = new StringWriter();
+        new MetricsHandler(MetricsHandler.DEFAULT_PATH).writeMetrics(out);
+        String metrics = out.toString();
+
+        assertTrue(metrics.contains("# TYPE jicofo_conferences gauge\n"));
+        assertTrue(
+            metrics.contains(
+                "jicofo_bridge_channel_allocations_total"
+                    + "{bridge=\"jvb.example.com\"} "));
+        assertTrue(
+            metrics.contains(
+                "jicofo_bridge_join_phase_seconds{bridge=\"jvb.example.com\","
+                    + "phase=\"allocate_channels\",quantile=\"0.99\"} "));
+        assertTrue(metrics.contains("jvm_threads "));
+
+        // Every line is either a comment or a sample with a value
+        for (String line : metrics.split("\n"))
+        {
+            assertTrue(
+                line,
+                line.startsWith("# ")
+                    || line.matches("[a-z_]+(\\{.*\\})? [0-9.E-]+"));
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.metrics;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.io.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link MetricsWriter}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class MetricsWriterTest
+{
+    @Test
+    public void testFormat()
+        throws Exception
+    {
+        StringWriter out = new StringWriter();
+        MetricsWriter metrics = new MetricsWriter(out);
+
+        metrics.family("m", MetricsWriter.GAUGE, "Some metric.");
+        metrics.sample("m", 5);
+        metrics.sample("m", "a", "x\"y\\z\n", 6);
+        metrics.sample("m", "a", "1", "b", "2", 0.5);
+        metrics.sample("m", "a", "1", "b", "2", "c", "3", 1.5);
+
+        assertEquals(
+            "# HELP m Some metric.\n"
+                + "# TYPE m gauge\n"
+                + "m 5\n"
+                + "m{a=\"x\\\"y\\\\z\\n\"} 6\n"
+                + "m{a=\"1\",b=\"2\"} 0.5\n"
+                + "m{a=\"1\",b=\"2\",c=\"3\"} 1.5\n",
+            out.toString());
+    }
+}
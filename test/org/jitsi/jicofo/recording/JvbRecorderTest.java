@@ -0,0 +1,288 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.recording;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.colibri.*;
+
+import org.jitsi.protocol.xmpp.*;
+
+import org.jivesoftware.smack.*;
+import org.jivesoftware.smack.filter.*;
+import org.jivesoftware.smack.packet.*;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for asynchronous recording control of {@link JvbRecorder}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class JvbRecorderTest
+{
+    private static final String BRIDGE = "jvb.example.com";
+
+    private RecordingXmpp xmpp;
+
+    private JvbRecorder recorder;
+
+    @Before
+    public void setUp()
+    {
+        xmpp = new RecordingXmpp();
+        recorder = new JvbRecorder("conf1", BRIDGE, xmpp);
+    }
+
+    @Test
+    public void testStartAndStop()
+        throws Exception
+    {
+        Future<Boolean> start = recorder.setRecording("user", "t", true, null);
+
+        assertFalse(start.isDone());
+        assertEquals(Recorder.State.STARTING, recorder.getState());
+        assertTrue(recorder.isRecording());
+
+        ColibriConferenceIQ request = (ColibriConferenceIQ) xmpp.lastSent();
+        assertTrue(request.getRecording().getState());
+
+        deliver(createReply(request, Boolean.TRUE));
+
+        assertTrue(start.get(0, TimeUnit.MILLISECONDS));
+        assertEquals(Recorder.State.ON, recorder.getState());
+
+        Future<Boolean> stop = recorder.setRecording("user", "t", false, null);
+
+        assertEquals(Recorder.State.STOPPING, recorder.getState());
+        assertFalse(recorder.isRecording());
+
+        deliver(createReply((IQ) xmpp.lastSent(), Boolean.FALSE));
+
+        assertTrue(stop.get(0, TimeUnit.MILLISECONDS));
+        assertEquals(Recorder.State.OFF, recorder.getState());
+    }
+
+    @Test
+    public void testInvalidToken()
+        throws Exception
+    {
+        Future<Boolean> start = recorder.setRecording("user", "t", true, null);
+
+        // No recording element when the token is not accepted
+        deliver(createReply((IQ) xmpp.lastSent(), null));
+
+        assertFalse(start.get(0, TimeUnit.MILLISECONDS));
+        assertEquals(Recorder.State.OFF, recorder.getState());
+    }
+
+    @Test
+    public void testErrorReply()
+        throws Exception
+    {
+        Future<Boolean> start = recorder.setRecording("user", "t", true, null);
+
+        IQ error = IQ.createErrorResponse(
+            (IQ) xmpp.lastSent(),
+            new XMPPError(XMPPError.Condition.interna_server_error));
+        deliver(error);
+
+        assertTrue(start.get(0, TimeUnit.MILLISECONDS));
+        assertEquals(Recorder.State.OFF, recorder.getState());
+    }
+
+    @Test
+    public void testNoReply()
+        throws Exception
+    {
+        Future<Boolean> start = recorder.setRecording("user", "t", true, null);
+        IQ request = (IQ) xmpp.lastSent();
+
+        try
+        {
+            start.get(10, TimeUnit.MILLISECONDS);
+            fail("No reply, should time out");
+        }
+        catch (TimeoutException e)
+        {
+            start.cancel(false);
+        }
+
+        assertEquals(Recorder.State.OFF, recorder.getState());
+
+        // Late reply must be ignored
+        assertFalse(recorder.accept(createReply(request, Boolean.TRUE)));
+        assertEquals(Recorder.State.OFF, recorder.getState());
+
+        // Next request can be sent
+        recorder.setRecording("user", "t", true, null);
+        assertEquals(2, xmpp.sent.size());
+    }
+
+    @Test
+    public void testRequestInProgress()
+        throws Exception
+    {
+        Future<Boolean> first = recorder.setRecording("user", "t", true, null);
+
+        Future<Boolean> second = recorder.setRecording("user", "t", true, null);
+
+        // The pending request is returned and nothing is sent
+        assertSame(first, second);
+        assertFalse(second.isDone());
+        assertEquals(1, xmpp.sent.size());
+        assertEquals(Recorder.State.STARTING, recorder.getState());
+
+        deliver(createReply((IQ) xmpp.lastSent(), Boolean.TRUE));
+
+        assertTrue(second.get(0, TimeUnit.MILLISECONDS));
+        assertEquals(Recorder.State.ON, recorder.getState());
+    }
+
+    @Test
+    public void testListener()
+    {
+        final List<String> calls = new ArrayList<String>();
+
+        Recorder.RecordingRequest start
+            = recorder.setRecording("user", "t", true, null);
+        start.addListener(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                calls.add("start");
+            }
+        });
+
+        assertTrue(calls.isEmpty());
+
+        deliver(createReply((IQ) xmpp.lastSent(), Boolean.TRUE));
+
+        assertEquals(Collections.singletonList("start"), calls);
+
+        // Called immediately when the request is done already
+        start.addListener(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                calls.add("done");
+            }
+        });
+        assertEquals(Arrays.asList("start", "done"), calls);
+
+        // Called when cancelled
+        Recorder.RecordingRequest stop
+            = recorder.setRecording("user", "t", false, null);
+        stop.addListener(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                calls.add("stop");
+            }
+        });
+        stop.cancel(false);
+
+        assertEquals(Arrays.asList("start", "done", "stop"), calls);
+        assertEquals(Recorder.State.ON, recorder.getState());
+    }
+
+    @Test
+    public void testReplyAfterCancel()
+    {
+        recorder = new JvbRecorder("conf1", BRIDGE, xmpp)
+        {
+            @Override
+            protected void processNotification(Packet packet)
+            {
+                fail("Processed as notification: " + packet.toXML());
+            }
+        };
+
+        Future<Boolean> start = recorder.setRecording("user", "t", true, null);
+        IQ reply = createReply((IQ) xmpp.lastSent(), Boolean.TRUE);
+
+        // Cancelled between accept() and processPacket()
+        assertTrue(recorder.accept(reply));
+        start.cancel(false);
+        recorder.processPacket(reply);
+
+        assertEquals(Recorder.State.OFF, recorder.getState());
+    }
+
+    private void deliver(Packet packet)
+    {
+        assertTrue(recorder.accept(packet));
+        recorder.processPacket(packet);
+    }
+
+    private static ColibriConferenceIQ createReply(IQ request, Boolean state)
+    {
+        ColibriConferenceIQ reply = new ColibriConferenceIQ();
+
+        reply.setType(IQ.Type.RESULT);
+        reply.setPacketID(request.getPacketID());
+        reply.setFrom(BRIDGE);
+        if (state != null)
+        {
+            reply.setRecording(new ColibriConferenceIQ.Recording(state));
+        }
+        return reply;
+    }
+
+    /**
+     * Remembers the packets sent, replies are never received.
+     */
+    private static class RecordingXmpp
+        implements OperationSetDirectSmackXmpp,
+                   XmppConnection
+    {
+        final List<Packet> sent = new ArrayList<Packet>();
+
+        Packet lastSent()
+        {
+            return sent.get(sent.size() - 1);
+        }
+
+        @Override
+        public XmppConnection getXmppConnection()
+        {
+            return this;
+        }
+
+        @Override
+        public void addPacketHandler(PacketListener listener,
+                                     PacketFilter filter)
+        {
+        }
+
+        @Override
+        public void removePacketHandler(PacketListener listener)
+        {
+        }
+
+        @Override
+        public void sendPacket(Packet packet)
+        {
+            sent.add(packet);
+        }
+
+        @Override
+        public Packet sendPacketAndGetReply(Packet packet)
+        {
+            throw new AssertionError("Must not block");
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.util;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link FeatureSet}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class FeatureSetTest
+{
+    @Test
+    public void testParse()
+    {
+        List<String> features = new ArrayList<String>();
+        features.add("http://jabber.org/protocol/disco#info");
+        features.add(DiscoveryUtil.FEATURE_AUDIO);
+        features.add(DiscoveryUtil.FEATURE_RTCP_MUX);
+        features.add(DiscoveryUtil.FEATURE_RTP_BUNDLE);
+
+        FeatureSet set = FeatureSet.parse(features);
+
+        assertTrue(set.contains(FeatureSet.Feature.AUDIO));
+        assertFalse(set.contains(FeatureSet.Feature.VIDEO));
+        assertFalse(set.contains(FeatureSet.Feature.JIGASI));
+        assertTrue(
+            set.containsAll(
+                FeatureSet.Feature.RTCP_MUX, FeatureSet.Feature.RTP_BUNDLE));
+        assertFalse(
+            set.containsAll(
+                FeatureSet.Feature.RTCP_MUX, FeatureSet.Feature.ICE));
+
+        assertEquals(
+            EnumSet.of(
+                FeatureSet.Feature.AUDIO,
+                FeatureSet.Feature.RTCP_MUX,
+                FeatureSet.Feature.RTP_BUNDLE),
+            set.toEnumSet());
+    }
+
+    @Test
+    public void testSharedInstances()
+    {
+        List<String> features1
+            = DiscoveryUtil.getDefaultParticipantFeatureSet();
+        List<String> features2
+            = new ArrayList<String>(
+                    DiscoveryUtil.getDefaultParticipantFeatureSet());
+        Collections.reverse(features2);
+
+        assertSame(FeatureSet.parse(features1), FeatureSet.parse(features2));
+
+        assertSame(
+            FeatureSet.EMPTY,
+            FeatureSet.parse(Collections.<String>emptyList()));
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.util;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link LatencyHistogram}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class LatencyHistogramTest
+{
+    @Test
+    public void testPercentiles()
+    {
+        LatencyHistogram histogram = new LatencyHistogram(60000);
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+
+        for (int i = 1; i <= 1000; i++)
+        {
+            histogram.record(i);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(1, histogram.getValueAtPercentile(0));
+        assertEquals(1000, histogram.getValueAtPercentile(100));
+        assertWithinError(500, histogram.getValueAtPercentile(50));
+        assertWithinError(990, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void testSmallValuesAreExact()
+    {
+        LatencyHistogram histogram = new LatencyHistogram(1000);
+
+        histogram.record(-5);
+        histogram.record(3);
+        histogram.record(31);
+
+        assertEquals(0, histogram.getValueAtPercentile(33));
+        assertEquals(3, histogram.getValueAtPercentile(50));
+        assertEquals(31, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testValuesAboveHighestTrackable()
+    {
+        LatencyHistogram histogram = new LatencyHistogram(1000);
+
+        histogram.record(10);
+        histogram.record(5000);
+
+        assertEquals(2, histogram.getCount());
+        assertEquals(5000, histogram.getMax());
+        assertEquals(10, histogram.getValueAtPercentile(50));
+        assertTrue(histogram.getValueAtPercentile(100) >= 1000);
+    }
+
+    private static void assertWithinError(long expected, long actual)
+    {
+        assertTrue(
+            "expected: " + expected + " actual: " + actual,
+            Math.abs(expected - actual) <= expected / 32 + 1);
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.util;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link LatencyStats}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class LatencyStatsTest
+{
+    @Test
+    public void testRecord()
+    {
+        LatencyStats stats = new LatencyStats();
+
+        assertEquals(0, stats.getCount());
+        assertEquals(0, stats.getAverage());
+
+        stats.record(100);
+        stats.record(300);
+        stats.record(50);
+
+        assertEquals(3, stats.getCount());
+        assertEquals(150, stats.getAverage());
+        assertEquals(300, stats.getMax());
+        assertEquals(50, stats.getLast());
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.util;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link LimitedExecutor}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class LimitedExecutorTest
+{
+    @Test
+    public void testConcurrencyLimit()
+        throws InterruptedException
+    {
+        ExecutorService pool = Executors.newFixedThreadPool(10);
+        try
+        {
+            final int limit = 3;
+            final int taskCount = 20;
+
+            LimitedExecutor executor = new LimitedExecutor(pool, limit);
+
+            final AtomicInteger running = new AtomicInteger();
+            final AtomicInteger maxRunning = new AtomicInteger();
+            final CountDownLatch done = new CountDownLatch(taskCount);
+
+            for (int i = 0; i < taskCount; i++)
+            {
+                executor.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        int now = running.incrementAndGet();
+                        synchronized (maxRunning)
+                        {
+                            if (now > maxRunning.get())
+                                maxRunning.set(now);
+                        }
+                        try
+                        {
+                            Thread.sleep(10);
+                        }
+                        catch (InterruptedException e)
+                        {
+                            Thread.currentThread().interrupt();
+                        }
+                        running.decrementAndGet();
+                        done.countDown();
+                    }
+                });
+            }
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertTrue(maxRunning.get() <= limit);
+            assertTrue(maxRunning.get() > 1);
+            assertEquals(0, executor.getQueueSize());
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailingTaskReleasesSlot()
+        throws InterruptedException
+    {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try
+        {
+            LimitedExecutor executor = new LimitedExecutor(pool, 1);
+
+            final CountDownLatch done = new CountDownLatch(1);
+
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    throw new RuntimeException("test");
+                }
+            });
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    done.countDown();
+                }
+            });
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testShutdown()
+        throws InterruptedException
+    {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try
+        {
+            LimitedExecutor executor = new LimitedExecutor(pool, 1);
+
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(1);
+            final AtomicBoolean queuedRan = new AtomicBoolean();
+
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    started.countDown();
+                    try
+                    {
+                        release.await();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    done.countDown();
+                }
+            });
+            Runnable queued = new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    queuedRan.set(true);
+                }
+            };
+            executor.execute(queued);
+
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            List<Runnable> dropped = executor.shutdown();
+            assertEquals(1, dropped.size());
+            assertSame(queued, dropped.get(0));
+            assertEquals(0, executor.getQueueSize());
+
+            try
+            {
+                executor.execute(queued);
+                fail("Task accepted after shutdown");
+            }
+            catch (RejectedExecutionException e)
+            {
+                // expected
+            }
+
+            // The running task completes, the dropped one is never run
+            release.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+            assertFalse(queuedRan.get());
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+}
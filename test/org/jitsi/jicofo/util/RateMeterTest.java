@@ -0,0 +1,47 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.jicofo.util;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link RateMeter}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class RateMeterTest
+{
+    @Test
+    public void testCount()
+        throws InterruptedException
+    {
+        RateMeter meter = new RateMeter(200, 4);
+
+        assertEquals(0, meter.getCount());
+
+        for (int i = 0; i < 10; i++)
+        {
+            meter.hit();
+        }
+
+        assertEquals(10, meter.getCount());
+
+        // Wait for the window to pass
+        Thread.sleep(300);
+
+        assertEquals(0, meter.getCount());
+
+        meter.hit();
+
+        assertEquals(1, meter.getCount());
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.protocol.xmpp.util;
+
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link EntityCapsCache}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class EntityCapsCacheTest
+{
+    @Test
+    public void testPutGet()
+    {
+        EntityCapsCache cache = new EntityCapsCache(10, 60000);
+
+        List<String> features = new ArrayList<String>();
+        features.add("urn:xmpp:jingle:1");
+        features.add("urn:xmpp:jingle:apps:rtp:audio");
+
+        cache.put("ver1", features);
+
+        // Modification of source list must not affect cached entry
+        features.add("urn:xmpp:jingle:apps:rtp:video");
+
+        List<String> cached = cache.get("ver1");
+        assertNotNull(cached);
+        assertEquals(2, cached.size());
+        assertTrue(cached.contains("urn:xmpp:jingle:1"));
+
+        assertNull(cache.get("ver2"));
+        assertNull(cache.get(null));
+    }
+
+    @Test
+    public void testCapacity()
+    {
+        EntityCapsCache cache = new EntityCapsCache(2, 60000);
+
+        cache.put("ver1", Collections.singletonList("f1"));
+        cache.put("ver2", Collections.singletonList("f2"));
+        cache.put("ver3", Collections.singletonList("f3"));
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("ver1"));
+        assertNotNull(cache.get("ver3"));
+    }
+
+    @Test
+    public void testExpire()
+        throws InterruptedException
+    {
+        EntityCapsCache cache = new EntityCapsCache(10, 50);
+
+        cache.put("ver1", Collections.singletonList("f1"));
+
+        assertNotNull(cache.get("ver1"));
+
+        Thread.sleep(100);
+
+        assertNull(cache.get("ver1"));
+        assertEquals(0, cache.size());
+    }
+}
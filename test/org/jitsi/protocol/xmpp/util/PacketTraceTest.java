@@ -0,0 +1,90 @@
+/*
+ * Jicofo, the Jitsi Conference Focus.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package org.jitsi.protocol.xmpp.util;
+
+import net.java.sip.communicator.impl.protocol.jabber.extensions.jingle.*;
+
+import org.jivesoftware.smack.packet.*;
+import org.junit.*;
+import org.junit.runner.*;
+import org.junit.runners.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link PacketTrace}.
+ *
+ * @author agent
+ */
+@RunWith(JUnit4.class)
+public class PacketTraceTest
+{
+    @Test
+    public void testRing()
+    {
+        PacketTrace trace = new PacketTrace(3, 0);
+
+        assertEquals("", trace.dump());
+
+        for (int i = 0; i < 5; i++)
+        {
+            Message message = new Message("to" + i);
+            message.setFrom("from" + i);
+            trace.record(message, i % 2 == 0);
+        }
+
+        assertEquals(5, trace.getRecordedCount());
+        assertEquals(3, trace.size());
+
+        String[] lines = trace.dump().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0], lines[0].contains(" --> message normal"));
+        assertTrue(lines[0], lines[0].contains(" from=from2 to=to2 "));
+        assertTrue(lines[1], lines[1].contains(" <-- message"));
+        assertTrue(lines[2], lines[2].contains(" from=from4 to=to4 "));
+    }
+
+    @Test
+    public void testActionAndXmlSampling()
+    {
+        PacketTrace trace = new PacketTrace(10, 2);
+
+        JingleIQ jingle = new JingleIQ();
+        jingle.setAction(JingleAction.SESSION_INITIATE);
+        jingle.setType(IQ.Type.SET);
+        trace.record(jingle, true);
+
+        Presence presence = new Presence(Presence.Type.available);
+        presence.setPacketID("p1");
+        trace.record(presence, false);
+
+        String[] lines = trace.dump().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0], lines[0].contains("iq set session-initiate"));
+        assertFalse(lines[0], lines[0].contains("size="));
+        assertTrue(lines[1], lines[1].contains("presence available"));
+        assertTrue(lines[1], lines[1].contains(" id=p1 size="));
+        assertTrue(lines[2], lines[2].trim().startsWith("<presence"));
+    }
+
+    @Test
+    public void testXmlCapturedWhenRecorded()
+    {
+        PacketTrace trace = new PacketTrace(10, 1);
+
+        Message message = new Message("to");
+        message.setBody("before");
+        trace.record(message, true);
+
+        // The packet modified after it has been sent does not affect the dump
+        message.setBody("after");
+
+        String dump = trace.dump();
+        assertTrue(dump, dump.contains("before"));
+        assertFalse(dump, dump.contains("after"));
+    }
+}